@@ -0,0 +1,72 @@
+package com._42six.amino.benchmarks;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bitmap operations used when combining index bitmaps.  The "left" bitmap is sized like a bucket value's feature
+ * fact bitmap and "right" like the selector mask of a hypothesis.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AminoBitmapBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int leftBits;
+
+    @Param({"10", "1000"})
+    public int rightBits;
+
+    /** Spread the positions over the whole hash range, or pack them into the first 2^24 bits */
+    @Param({"true", "false"})
+    public boolean spread;
+
+    private AminoBitmap left;
+    private AminoBitmap right;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        final int maxPosition = spread ? BenchmarkData.MAX_POSITION : (1 << 24);
+        right = BenchmarkData.bitmap(rightBits, maxPosition, random);
+        left = BenchmarkData.superset(right, leftBits, maxPosition, random);
+    }
+
+    private AminoBitmap leftCopy() {
+        // OR and AND replace the wrapped bitmap rather than modifying it, so sharing it is safe
+        final AminoBitmap copy = new AminoBitmap();
+        copy.setBitmap(left.getBitmap());
+        return copy;
+    }
+
+    @Benchmark
+    public AminoBitmap or() {
+        final AminoBitmap result = leftCopy();
+        result.OR(right);
+        return result;
+    }
+
+    @Benchmark
+    public AminoBitmap and() {
+        final AminoBitmap result = leftCopy();
+        result.AND(right);
+        return result;
+    }
+
+    @Benchmark
+    public int andCardinality() {
+        return left.andCardiniality(right);
+    }
+
+    @Benchmark
+    public int cardinality() {
+        return left.cardinality();
+    }
+}
@@ -0,0 +1,63 @@
+package com._42six.amino.benchmarks;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic data shared by the benchmarks.  Bit positions are spread over the same range BitmapIndex hashes into, so
+ * the bitmaps have the same (sparse) shape as the ones in the index tables.
+ */
+public final class BenchmarkData {
+
+    /** The largest position BitmapIndex will hand out */
+    public static final int MAX_POSITION = Integer.MAX_VALUE - 64;
+
+    private BenchmarkData() {
+        // Static methods only
+    }
+
+    /**
+     * @return count distinct positions in [0, maxPosition), in increasing order
+     */
+    public static int[] sortedPositions(int count, int maxPosition, Random random) {
+        final int[] positions = new int[count];
+        int n = 0;
+        while (n < count) {
+            for (int i = n; i < count; i++) {
+                positions[i] = random.nextInt(maxPosition);
+            }
+            Arrays.sort(positions, 0, count);
+            // Drop duplicates and refill the tail
+            n = 0;
+            for (int i = 0; i < count; i++) {
+                if (n == 0 || positions[n - 1] != positions[i]) {
+                    positions[n++] = positions[i];
+                }
+            }
+        }
+        return positions;
+    }
+
+    public static AminoBitmap bitmap(int[] sortedPositions) {
+        final AminoBitmap bitmap = new AminoBitmap();
+        for (int position : sortedPositions) {
+            bitmap.set(position);
+        }
+        return bitmap;
+    }
+
+    public static AminoBitmap bitmap(int count, int maxPosition, Random random) {
+        return bitmap(sortedPositions(count, maxPosition, random));
+    }
+
+    /**
+     * @return A bitmap with every bit of subset plus extra random bits
+     */
+    public static AminoBitmap superset(AminoBitmap subset, int extra, int maxPosition, Random random) {
+        final AminoBitmap bitmap = bitmap(extra, maxPosition, random);
+        bitmap.OR(subset);
+        return bitmap;
+    }
+}
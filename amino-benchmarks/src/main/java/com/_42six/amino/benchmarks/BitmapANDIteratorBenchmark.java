@@ -0,0 +1,112 @@
+package com._42six.amino.benchmarks;
+
+import com._42six.amino.bitmap.iterators.BitmapANDIterator;
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import com.google.gson.Gson;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans an in memory byBucket shard through the BitmapANDIterator, the way a byBucket query does on a tablet server
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BitmapANDIteratorBenchmark {
+
+    private static final String ROW = "0:numbers:number";
+
+    /** Number of bucket values in the shard */
+    @Param({"10000"})
+    public int bucketValues;
+
+    /** Feature facts set per bucket value */
+    @Param({"20", "500"})
+    public int bitsPerValue;
+
+    /** Features in the hypothesis */
+    @Param({"3", "30"})
+    public int selectorBits;
+
+    @Param({"2"})
+    public int numberOfHashes;
+
+    /** Percentage of the bucket values that match the hypothesis */
+    @Param({"1"})
+    public int matchPercent;
+
+    /** How the CompareBits are sent to the iterator, the binary option or the JSON that older clients send */
+    @Param({"binary", "json"})
+    public String optionEncoding;
+
+    /** Whether the iterator tests the stored EWAH words directly or decodes each value */
+    @Param({BitmapANDIterator.MATCH_MODE_VIEW, BitmapANDIterator.MATCH_MODE_DECODE})
+    public String matchMode;
+
+    private final TreeMap<Key, Value> shard = new TreeMap<>();
+    private final Map<String, String> options = new HashMap<>();
+    private final List<BitmapANDIterator.CompareBits> compareBits = new ArrayList<>();
+    private Value sampleValue;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        for (int salt = 0; salt < numberOfHashes; salt++) {
+            compareBits.add(new BitmapANDIterator.CompareBits(
+                    BenchmarkData.bitmap(selectorBits, BenchmarkData.MAX_POSITION, random),
+                    selectorBits, new ArrayList<AminoBitmap>()));
+        }
+
+        for (int i = 0; i < bucketValues; i++) {
+            final boolean matches = random.nextInt(100) < matchPercent;
+            final String bucketValue = String.format("%08d", i);
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                final AminoBitmap bitmap = matches
+                        ? BenchmarkData.superset(compareBits.get(salt).getNonRangeBitmap(), bitsPerValue, BenchmarkData.MAX_POSITION, random)
+                        : BenchmarkData.bitmap(bitsPerValue, BenchmarkData.MAX_POSITION, random);
+                shard.put(new Key(ROW, bucketValue, Integer.toString(salt)), BitmapUtils.toValue(bitmap));
+            }
+        }
+        sampleValue = shard.firstEntry().getValue();
+        options.put(BitmapANDIterator.OPTION_BITS, "json".equals(optionEncoding)
+                ? new Gson().toJson(compareBits) : BitmapANDIterator.encodeBits(compareBits));
+        options.put(BitmapANDIterator.OPTION_MATCH_MODE, matchMode);
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) throws IOException {
+        final BitmapANDIterator iterator = new BitmapANDIterator();
+        iterator.init(new SortedMapIterator(shard), options, null);
+        iterator.seek(new Range(), Collections.<ByteSequence>emptyList(), false);
+        while (iterator.hasTop() && iterator.getTopKey() != null) {
+            blackhole.consume(iterator.getTopKey());
+            iterator.next();
+        }
+    }
+
+    /** Parsing the options, which happens on every tablet for every query */
+    @Benchmark
+    public BitmapANDIterator init() throws IOException {
+        final BitmapANDIterator iterator = new BitmapANDIterator();
+        iterator.init(new SortedMapIterator(shard), options, null);
+        return iterator;
+    }
+
+    @Benchmark
+    public boolean filter() {
+        return new BitmapANDIterator().filter(compareBits.get(0), sampleValue);
+    }
+}
@@ -0,0 +1,54 @@
+package com._42six.amino.benchmarks;
+
+import com._42six.amino.common.Bucket;
+import com._42six.amino.common.Feature;
+import com._42six.amino.common.FeatureFact;
+import com._42six.amino.common.NominalFeatureFact;
+import com._42six.amino.common.index.BitmapIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The feature fact hashing done by the ByBucket, BitLookup and Hypothesis mappers for every record
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BitmapIndexBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int numberOfHashes;
+
+    private Bucket bucket;
+    private Feature feature;
+    private FeatureFact featureFact;
+
+    @Setup
+    public void setup() {
+        bucket = new Bucket("numbers", "number", "1234567", "Number", "U", "U");
+        feature = new Feature("Has Digit");
+        featureFact = new NominalFeatureFact("7");
+    }
+
+    @Benchmark
+    public void featureFactIndex(Blackhole blackhole) {
+        for (int salt = 0; salt < numberOfHashes; salt++) {
+            blackhole.consume(BitmapIndex.getFeatureFactIndex(bucket, feature, featureFact, salt));
+        }
+    }
+
+    @Benchmark
+    public int featureIndex() {
+        return BitmapIndex.getFeatureIndex(feature);
+    }
+
+    @Benchmark
+    public int bucketValueIndex() {
+        return BitmapIndex.getBucketValueIndex(bucket);
+    }
+}
@@ -0,0 +1,116 @@
+package com._42six.amino.benchmarks;
+
+import com._42six.amino.bitmap.BitmapRunValue;
+import com._42six.amino.bitmap.BitmapValue;
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapCodec;
+import com._42six.amino.common.bitmap.BitmapCodecs;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the shuffled bitmap values and of the bitmaps stored in the index tables
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BitmapSerializationBenchmark {
+
+    /** Number of indexes in a combined map output value / bitmap */
+    @Param({"1", "100", "10000"})
+    public int bits;
+
+    @Param({"ewah", "roaring"})
+    public String codec;
+
+    private final DataOutputBuffer out = new DataOutputBuffer();
+    private final DataInputBuffer in = new DataInputBuffer();
+
+    private BitmapRunValue runValue;
+    private byte[] runValueBytes;
+    private BitmapValue legacyValue;
+    private byte[] legacyValueBytes;
+
+    private BitmapCodec bitmapCodec;
+    private AminoBitmap bitmap;
+    private byte[] bitmapBytes;
+
+    @Setup
+    @SuppressWarnings("deprecation")
+    public void setup() throws IOException {
+        final int[] positions = BenchmarkData.sortedPositions(bits, BenchmarkData.MAX_POSITION, new Random(42));
+
+        runValue = new BitmapRunValue();
+        legacyValue = new BitmapValue();
+        for (int position : positions) {
+            runValue.addIndex(position);
+            legacyValue.addIndex(position);
+        }
+        runValueBytes = write(runValue);
+        legacyValueBytes = write(legacyValue);
+
+        bitmapCodec = BitmapCodecs.forName(codec);
+        bitmap = BenchmarkData.bitmap(positions);
+        bitmapBytes = BitmapUtils.toValue(bitmap, bitmapCodec).get();
+    }
+
+    private byte[] write(org.apache.hadoop.io.Writable writable) throws IOException {
+        out.reset();
+        writable.write(out);
+        final byte[] bytes = new byte[out.getLength()];
+        System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    @Benchmark
+    public int writeRunValue() throws IOException {
+        out.reset();
+        runValue.write(out);
+        return out.getLength();
+    }
+
+    @Benchmark
+    public BitmapRunValue readRunValue() throws IOException {
+        in.reset(runValueBytes, runValueBytes.length);
+        final BitmapRunValue value = new BitmapRunValue();
+        value.readFields(in);
+        return value;
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public int writeLegacyValue() throws IOException {
+        out.reset();
+        legacyValue.write(out);
+        return out.getLength();
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public BitmapValue readLegacyValue() throws IOException {
+        in.reset(legacyValueBytes, legacyValueBytes.length);
+        final BitmapValue value = new BitmapValue();
+        value.readFields(in);
+        return value;
+    }
+
+    @Benchmark
+    public Value bitmapToValue() {
+        return BitmapUtils.toValue(bitmap, bitmapCodec);
+    }
+
+    @Benchmark
+    public AminoBitmap bitmapFromValue() {
+        return BitmapUtils.fromValue(bitmapBytes);
+    }
+}
@@ -0,0 +1,234 @@
+package com._42six.amino.benchmarks;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import com._42six.amino.query.services.accumulo.FeatureFactLookup;
+import com._42six.amino.query.services.accumulo.PairCounter;
+import org.apache.accumulo.core.client.*;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.*;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two scans of AccumuloQueryService.createNonPersistedHypotheses against a mock instance: read the byBucket
+ * bitmaps of the selected bucket values, then look up every feature fact they reference and count the matches per
+ * bucket value.  legacyLookup is the HashMap/one Range per bit version, primitiveLookup uses the FeatureFactLookup
+ * and PairCounter.
+ *
+ * Bucket values pick their feature facts from a shared pool, so facts are referenced by many bucket values the way
+ * popular feature values are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NonPersistedHypothesisBenchmark {
+
+    private static final String BY_BUCKET_TABLE = "amino_bitmap_byBucket";
+    private static final String FEATURE_LOOKUP_TABLE = "amino_feature_lookup";
+    private static final String BUCKET_ROW = "0:1:number";
+    private static final String BUCKET_NAME = "number";
+    private static final Authorizations AUTHS = new Authorizations();
+
+    @Param({"2"})
+    public int numberOfHashes;
+
+    /** Number of bucket values selected */
+    @Param({"100", "2000"})
+    public int bucketValues;
+
+    @Param({"20"})
+    public int featuresPerValue;
+
+    /** Number of distinct feature facts the bucket values pick from */
+    @Param({"5000"})
+    public int featureFactPool;
+
+    private Connector connector;
+    private List<String> selected;
+
+    @Setup
+    public void setup() throws Exception {
+        final Random random = new Random(42);
+        connector = new MockInstance("benchmark").getConnector("root", new PasswordToken(""));
+        connector.tableOperations().create(BY_BUCKET_TABLE);
+        connector.tableOperations().create(FEATURE_LOOKUP_TABLE);
+
+        // The feature fact indexes of each fact, per salt
+        final int[][] factIndexes = new int[featureFactPool][numberOfHashes];
+        final BatchWriter featureWriter = connector.createBatchWriter(FEATURE_LOOKUP_TABLE, new BatchWriterConfig());
+        for (int fact = 0; fact < featureFactPool; fact++) {
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                factIndexes[fact][salt] = random.nextInt(BenchmarkData.MAX_POSITION);
+                final Mutation m = new Mutation(Integer.toString(factIndexes[fact][salt]));
+                m.put(salt + "#" + BUCKET_NAME, Integer.toString(fact % 10), new Value(Integer.toString(fact).getBytes()));
+                featureWriter.addMutation(m);
+            }
+        }
+        featureWriter.close();
+
+        selected = new ArrayList<>(bucketValues);
+        final BatchWriter bucketWriter = connector.createBatchWriter(BY_BUCKET_TABLE, new BatchWriterConfig());
+        for (int v = 0; v < bucketValues; v++) {
+            final String bucketValue = Integer.toString(v);
+            selected.add(bucketValue);
+            final int[] facts = new int[featuresPerValue];
+            for (int f = 0; f < featuresPerValue; f++) {
+                facts[f] = random.nextInt(featureFactPool);
+            }
+            final Mutation m = new Mutation(BUCKET_ROW);
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                final int[] positions = new int[featuresPerValue];
+                for (int f = 0; f < featuresPerValue; f++) {
+                    positions[f] = factIndexes[facts[f]][salt];
+                }
+                Arrays.sort(positions);
+                m.put(bucketValue, Integer.toString(salt), BitmapUtils.toValue(bitmap(positions)));
+            }
+            bucketWriter.addMutation(m);
+        }
+        bucketWriter.close();
+    }
+
+    @Benchmark
+    public void legacyLookup(Blackhole blackhole) throws Exception {
+        final Set<Range> featureRanges = new HashSet<>();
+        final HashMap<Key, HashSet<String>> featureFactToBucketValueMap = new HashMap<>();
+
+        final BatchScanner bucketScanner = connector.createBatchScanner(BY_BUCKET_TABLE, AUTHS, 4);
+        bucketScanner.setRanges(bucketRanges());
+        for (Map.Entry<Key, Value> it : bucketScanner) {
+            final Iterator<Integer> bitmapIterator = BitmapUtils.fromValue(it.getValue()).iterator();
+            final String bucketValue = it.getKey().getColumnFamily().toString();
+            final String salt = it.getKey().getColumnQualifier().toString();
+            while (bitmapIterator.hasNext()) {
+                final Key featureLookupKey = new Key(bitmapIterator.next().toString(), salt + "#" + BUCKET_NAME);
+                featureRanges.add(new Range(featureLookupKey, featureLookupKey.followingKey(PartialKey.ROW_COLFAM)));
+                HashSet<String> hs = featureFactToBucketValueMap.get(featureLookupKey);
+                if (hs == null) {
+                    hs = new HashSet<>();
+                    featureFactToBucketValueMap.put(featureLookupKey, hs);
+                }
+                hs.add(bucketValue);
+            }
+        }
+        bucketScanner.close();
+
+        final Map<String, Map<String, Integer>> counts = new HashMap<>();
+        final BatchScanner featureScanner = connector.createBatchScanner(FEATURE_LOOKUP_TABLE, AUTHS, 4);
+        featureScanner.setRanges(featureRanges);
+        for (Map.Entry<Key, Value> scanEntry : featureScanner) {
+            final String feature = scanEntry.getKey().getColumnQualifier().toString() + "=" + scanEntry.getValue();
+            final Key indexKey = new Key(scanEntry.getKey().getRow(), scanEntry.getKey().getColumnFamily());
+            for (String bucketValue : featureFactToBucketValueMap.get(indexKey)) {
+                Map<String, Integer> map = counts.get(bucketValue);
+                if (map == null) {
+                    map = new HashMap<>();
+                    counts.put(bucketValue, map);
+                }
+                final Integer i = map.get(feature);
+                map.put(feature, (i == null) ? 1 : i + 1);
+            }
+        }
+        featureScanner.close();
+
+        int matches = 0;
+        for (Map<String, Integer> featureCounts : counts.values()) {
+            for (Integer count : featureCounts.values()) {
+                if (count == numberOfHashes) {
+                    matches++;
+                }
+            }
+        }
+        blackhole.consume(matches);
+    }
+
+    @Benchmark
+    public void primitiveLookup(Blackhole blackhole) throws Exception {
+        final Map<String, Integer> bucketValueIds = new HashMap<>(selected.size());
+        for (int i = 0; i < selected.size(); i++) {
+            bucketValueIds.put(selected.get(i), i);
+        }
+
+        final FeatureFactLookup lookup = new FeatureFactLookup();
+        final BatchScanner bucketScanner = connector.createBatchScanner(BY_BUCKET_TABLE, AUTHS, 4);
+        bucketScanner.setRanges(bucketRanges());
+        for (Map.Entry<Key, Value> it : bucketScanner) {
+            final Integer bucketValueId = bucketValueIds.get(it.getKey().getColumnFamily().toString());
+            final int salt = Integer.parseInt(it.getKey().getColumnQualifier().toString());
+            lookup.add(bucketValueId, salt, BitmapUtils.fromValue(it.getValue()));
+        }
+        bucketScanner.close();
+        lookup.build();
+
+        final Map<String, Integer> featureIds = new HashMap<>();
+        final PairCounter counter = new PairCounter(lookup.size());
+        final Text row = new Text();
+        final Text colFam = new Text();
+        final BatchScanner featureScanner = connector.createBatchScanner(FEATURE_LOOKUP_TABLE, AUTHS, 4);
+        featureScanner.setRanges(lookup.getRanges());
+        for (int salt = 0; salt < numberOfHashes; salt++) {
+            featureScanner.fetchColumnFamily(new Text(salt + "#" + BUCKET_NAME));
+        }
+        for (Map.Entry<Key, Value> scanEntry : featureScanner) {
+            scanEntry.getKey().getRow(row);
+            scanEntry.getKey().getColumnFamily(colFam);
+            final int index = Integer.parseInt(row.toString());
+            final String cf = colFam.toString();
+            final int salt = Integer.parseInt(cf.substring(0, cf.indexOf('#')));
+            final int position = lookup.indexOf(index, salt);
+            if (position < 0) {
+                continue;
+            }
+
+            final String feature = scanEntry.getKey().getColumnQualifier().toString() + "=" + scanEntry.getValue();
+            Integer featureId = featureIds.get(feature);
+            if (featureId == null) {
+                featureId = featureIds.size();
+                featureIds.put(feature, featureId);
+            }
+            for (int p = position; lookup.matches(p, index, salt); p++) {
+                counter.increment(lookup.bucketValueAt(p), featureId);
+            }
+        }
+        featureScanner.close();
+
+        int matches = 0;
+        for (int slot = 0; slot < counter.capacity(); slot++) {
+            if (counter.countAt(slot) == numberOfHashes) {
+                matches++;
+            }
+        }
+        blackhole.consume(matches);
+    }
+
+    private List<Range> bucketRanges() {
+        final List<Range> ranges = new ArrayList<>(selected.size());
+        for (String bucketValue : selected) {
+            ranges.add(new Range(new Key(BUCKET_ROW, bucketValue), true,
+                    new Key(BUCKET_ROW, bucketValue).followingKey(PartialKey.ROW_COLFAM), false));
+        }
+        return ranges;
+    }
+
+    private static AminoBitmap bitmap(int[] sortedPositions) {
+        final AminoBitmap bitmap = new AminoBitmap();
+        int last = -1;
+        for (int position : sortedPositions) {
+            if (position != last) {
+                bitmap.set(position);
+                last = position;
+            }
+        }
+        return bitmap;
+    }
+}
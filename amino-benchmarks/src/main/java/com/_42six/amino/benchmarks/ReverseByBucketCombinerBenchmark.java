@@ -0,0 +1,96 @@
+package com._42six.amino.benchmarks;
+
+import com._42six.amino.bitmap.iterators.ReverseByBucketCombiner;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines the feature value bitmaps of each shard:salt row of an in memory reverse byBucket table, the way a reverse
+ * query does on a tablet server.  AND features are nominal values, OR features are several ratio values of the same
+ * feature that are OR'd together before being AND'd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReverseByBucketCombinerBenchmark {
+
+    private static final String DATASOURCE_BUCKET = "1#number#";
+
+    @Param({"4"})
+    public int shards;
+
+    @Param({"2"})
+    public int numberOfHashes;
+
+    /** Number of bucket values with each feature value set */
+    @Param({"1000", "100000"})
+    public int bitsPerFeatureValue;
+
+    @Param({"3"})
+    public int andFeatures;
+
+    /** Number of OR'd values in the single OR feature */
+    @Param({"0", "10"})
+    public int orValues;
+
+    private final TreeMap<Key, Value> table = new TreeMap<>();
+    private final Map<String, String> options = new HashMap<>();
+    private final List<Range> rows = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        final Set<AbstractMap.SimpleImmutableEntry<String, String>> andIds = new HashSet<>();
+        final Set<String> orIds = new HashSet<>();
+        final String orFeature = DATASOURCE_BUCKET + "999";
+
+        for (int shard = 0; shard < shards; shard++) {
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                final String row = shard + ":" + salt;
+                rows.add(new Range(row));
+                for (int f = 0; f < andFeatures; f++) {
+                    final String cf = DATASOURCE_BUCKET + f;
+                    andIds.add(new AbstractMap.SimpleImmutableEntry<>(cf, "value" + f));
+                    table.put(new Key(row, cf, "value" + f), BitmapUtils.toValue(
+                            BenchmarkData.bitmap(bitsPerFeatureValue, BenchmarkData.MAX_POSITION, random)));
+                }
+                for (int v = 0; v < orValues; v++) {
+                    orIds.add(orFeature);
+                    table.put(new Key(row, orFeature, "value" + v), BitmapUtils.toValue(
+                            BenchmarkData.bitmap(bitsPerFeatureValue, BenchmarkData.MAX_POSITION, random)));
+                }
+            }
+        }
+
+        options.put(ReverseByBucketCombiner.OPTION_NUM_RANGES, "1");
+        options.put(ReverseByBucketCombiner.OPTION_AND_IDS, ReverseByBucketCombiner.encodeAndIds(andIds));
+        if (!orIds.isEmpty()) {
+            options.put(ReverseByBucketCombiner.OPTION_OR_IDS, ReverseByBucketCombiner.encodeOrIds(orIds));
+        }
+    }
+
+    @Benchmark
+    public void combineRows(Blackhole blackhole) throws IOException {
+        for (Range row : rows) {
+            final ReverseByBucketCombiner iterator = new ReverseByBucketCombiner();
+            iterator.init(new SortedMapIterator(table), options, null);
+            iterator.seek(row, Collections.<ByteSequence>emptyList(), false);
+            if (iterator.hasTop()) {
+                blackhole.consume(iterator.getTopValue());
+            }
+        }
+    }
+}
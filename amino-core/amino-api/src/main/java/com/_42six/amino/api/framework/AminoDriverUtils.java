@@ -1,6 +1,12 @@
 package com._42six.amino.api.framework;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
 
 import com._42six.amino.api.job.AminoJob;
 import com._42six.amino.api.job.AminoReducer;
@@ -9,9 +15,12 @@ public class AminoDriverUtils
 {
 	private static final String AMINO_REDUCER_CLASS_KEY = "amino.reducer.class";
 	private static final String AMINO_JOB_CLASS_KEY = "amino.job.class";
+	private static final String AMINO_FUSED_JOB_CLASSES_KEY = "amino.fused.job.classes";
 	public static final String AMINO_ENRICHMENT_BUCKET = "amino.enrichment.bucket";
 	public static final String ENRICHMENT_ROOT_OUTPUT = "amino.enrichment.output.root";
 	public static final String ENRICHMENT_OUTPUT = "amino.enrichment.output";
+	public static final String AMINO_SORT_DATASOURCE = "amino.sort.name.datasource";
+	public static final String AMINO_SORT_FIELD = "amino.sort.name.field";
 	
 	public static AminoReducer getAminoReducer(Configuration config) throws ClassNotFoundException, InstantiationException, IllegalAccessException 
 	{
@@ -46,4 +55,58 @@ public class AminoDriverUtils
 	{
 		config.setClass(AMINO_JOB_CLASS_KEY, aj, AminoJob.class);
 	}
+
+	/**
+	 * Gets the jobs that are being run together over one map and shuffle, in the order of their outputs
+	 * @return the jobs, or an empty list if the jobs are not being fused
+	 */
+	public static List<AminoJob> getFusedAminoJobs(Configuration config) throws ClassNotFoundException, InstantiationException, IllegalAccessException
+	{
+		final List<AminoJob> jobs = new ArrayList<>();
+		for(String className : config.getTrimmedStringCollection(AMINO_FUSED_JOB_CLASSES_KEY)) {
+			AminoJob job = config.getClassByName(className).asSubclass(AminoJob.class).newInstance();
+			job.setConfig(config);
+			jobs.add(job);
+		}
+		return jobs;
+	}
+
+	public static void setFusedAminoJobs(Configuration config, List<Class<? extends AminoJob>> jobs)
+	{
+		final String[] classNames = new String[jobs.size()];
+		for(int i = 0; i < classNames.length; i++) {
+			classNames[i] = jobs.get(i).getName();
+		}
+		config.setStrings(AMINO_FUSED_JOB_CLASSES_KEY, classNames);
+	}
+
+	/**
+	 * The MultipleOutputs name that a fused job writes its results to
+	 * @param index the position of the job in {@link #getFusedAminoJobs(Configuration)}
+	 */
+	public static String getFusedOutputName(int index)
+	{
+		return "job" + index;
+	}
+
+	/**
+	 * Get the field each sorted dataset is sorted by.  To enable sorting, the sort datasources and fields need to have
+	 * the same number of values
+	 * @param config
+	 * @return The sort field, keyed by dataset name
+	 */
+	public static Map<String, Text> getSortFields(Configuration config)
+	{
+		String[] sortDatasetName = config.getStrings(AMINO_SORT_DATASOURCE);
+		String[] sortDatasetField = config.getStrings(AMINO_SORT_FIELD);
+
+		Map<String, Text> sortFields = new HashMap<String, Text>();
+		if (sortDatasetName != null && sortDatasetField != null
+				&& sortDatasetName.length > 0 && sortDatasetName.length == sortDatasetField.length) {
+			for (int i = 0; i < sortDatasetName.length; ++i) {
+				sortFields.put(sortDatasetName[i], new Text(sortDatasetField[i]));
+			}
+		}
+		return sortFields;
+	}
 }
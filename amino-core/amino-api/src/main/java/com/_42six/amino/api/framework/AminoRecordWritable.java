@@ -0,0 +1,175 @@
+package com._42six.amino.api.framework;
+
+import com._42six.amino.api.model.Row;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A record passed from the {@link FrameworkMapper} to the {@link FrameworkReducer}.  Unlike a MapWritable, it does not
+ * write class ids, and the fields in the {@link RecordSchema} are written as a small id instead of their name.  Fields
+ * that are not in the schema are written with their name.  Every value is written as text, which is how the reducers
+ * see it in a {@link Row}.
+ *
+ * The record is encoded once when it is {@link #set(MapWritable)}, so writing it out again for each of its buckets
+ * only copies the bytes.
+ */
+public final class AminoRecordWritable implements Writable, Configurable {
+
+    private Configuration conf;
+    private RecordSchema schema;
+
+    /** The encoded record, if it is up to date */
+    private final DataOutputBuffer encoded = new DataOutputBuffer();
+    private boolean encodedIsCurrent = false;
+
+    /** The decoded fields.  The values of a record that was set from a MapWritable are only decoded if asked for */
+    private boolean decoded = true;
+    private int size = 0;
+    private String[] names = new String[0];
+    private String[] values = new String[0];
+
+    /**
+     * Used by Hadoop, which then calls {@link #setConf(Configuration)} with the job configuration holding the schema
+     */
+    public AminoRecordWritable() {
+        this.schema = new RecordSchema();
+    }
+
+    public AminoRecordWritable(RecordSchema schema) {
+        this.schema = schema;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        try {
+            this.schema = RecordSchema.load(conf);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not load the record schema", e);
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    /**
+     * Sets the record from the DataLoader's MapWritable, encoding it straight away
+     */
+    public void set(MapWritable record) throws IOException {
+        encoded.reset();
+        ensureCapacity(record.size());
+        size = 0;
+        WritableUtils.writeVInt(encoded, record.size());
+        for (Map.Entry<Writable, Writable> field : record.entrySet()) {
+            final int id = (field.getKey() instanceof Text) ? schema.getId((Text) field.getKey()) : -1;
+            final String name = field.getKey().toString();
+            WritableUtils.writeVInt(encoded, id);
+            if (id < 0) {
+                Text.writeString(encoded, name);
+            }
+            if (field.getValue() instanceof Text) {
+                // Same bytes as writeString, without decoding and encoding the value again
+                ((Text) field.getValue()).write(encoded);
+            } else {
+                Text.writeString(encoded, field.getValue().toString());
+            }
+            names[size++] = name;
+        }
+        encodedIsCurrent = true;
+        decoded = false;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (!encodedIsCurrent) {
+            encode();
+        }
+        out.write(encoded.getData(), 0, encoded.getLength());
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        encodedIsCurrent = false;
+        decoded = true;
+        size = WritableUtils.readVInt(in);
+        ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            final int id = WritableUtils.readVInt(in);
+            names[i] = (id < 0) ? Text.readString(in) : schema.getName(id);
+            values[i] = Text.readString(in);
+        }
+    }
+
+    /**
+     * @return The value of the field, or null if the record does not have it
+     */
+    public String get(String name) throws IOException {
+        if (!decoded) {
+            decode();
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The fields of the record, keyed by name
+     */
+    public Row toRow() throws IOException {
+        if (!decoded) {
+            decode();
+        }
+        final Row row = new Row();
+        for (int i = 0; i < size; i++) {
+            row.put(names[i], values[i]);
+        }
+        return row;
+    }
+
+    private void encode() throws IOException {
+        encoded.reset();
+        WritableUtils.writeVInt(encoded, size);
+        for (int i = 0; i < size; i++) {
+            final int id = schema.getId(new Text(names[i]));
+            WritableUtils.writeVInt(encoded, id);
+            if (id < 0) {
+                Text.writeString(encoded, names[i]);
+            }
+            Text.writeString(encoded, values[i]);
+        }
+        encodedIsCurrent = true;
+    }
+
+    private void decode() throws IOException {
+        final DataInputBuffer in = new DataInputBuffer();
+        in.reset(encoded.getData(), encoded.getLength());
+        readFields(in);
+
+        // Decoding did not change the record
+        encodedIsCurrent = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (names.length < capacity) {
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com._42six.amino.api.framework;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Groups the records of a bucket into one reduce call, whatever their sort field
+ */
+public class BucketGroupingComparator extends WritableComparator {
+
+    protected BucketGroupingComparator() {
+        super(SortedBucketKey.class, true);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public int compare(WritableComparable a, WritableComparable b) {
+        return ((SortedBucketKey) a).getBucket().compareTo(((SortedBucketKey) b).getBucket());
+    }
+}
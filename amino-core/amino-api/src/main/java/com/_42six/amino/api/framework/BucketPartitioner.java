@@ -0,0 +1,14 @@
+package com._42six.amino.api.framework;
+
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Sends every record of a bucket to the same reducer, whatever its sort field
+ */
+public class BucketPartitioner extends Partitioner<SortedBucketKey, AminoRecordWritable> {
+
+    @Override
+    public int getPartition(SortedBucketKey key, AminoRecordWritable value, int numPartitions) {
+        return (key.getBucket().hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+}
@@ -0,0 +1,304 @@
+package com._42six.amino.api.framework;
+
+import com.google.common.collect.AbstractIterator;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Distinct serialized Writables.  Two Writables are the same if they serialize to the same bytes.  They are kept in
+ * memory until {@link #spill()} is called, which writes them to a local file as a run, sorted by their bytes.  Reading
+ * them back merges the runs with what is still in memory, dropping the duplicates, so the memory used does not grow with
+ * the number of distinct Writables.  They come back sorted by their bytes rather than in the order they were added.
+ */
+public class DistinctWritableBuffer implements Closeable {
+
+    /** Roughly what each Writable held in memory costs beyond its bytes */
+    static final int MEMORY_OVERHEAD_BYTES = 64;
+
+    /** Past this many runs they are merged into one, so reading them does not open too many files */
+    static final int MAX_RUNS = 32;
+
+    private static final Comparator<byte[]> BYTES_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] left, byte[] right) {
+            return WritableComparator.compareBytes(left, 0, left.length, right, 0, right.length);
+        }
+    };
+
+    private final File spillDirectory;
+
+    private final Set<ByteBuffer> memory = new HashSet<>();
+    private long memorySize = 0;
+    /** The Writables in memory, sorted, if they have not changed since */
+    private List<byte[]> sortedMemory;
+
+    private final List<File> runs = new ArrayList<>();
+
+    /** The files opened by the iterators, closed with the buffer if they were not read to the end */
+    private final List<Closeable> openReaders = new ArrayList<>();
+
+    /**
+     * @param spillDirectory Where the runs are written
+     */
+    public DistinctWritableBuffer(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Adds a Writable that has already been serialized
+     *
+     * @return false if it was already in memory.  A duplicate of a spilled Writable is only dropped when reading.
+     */
+    public boolean add(byte[] bytes, int offset, int length) {
+        if (!memory.add(ByteBuffer.wrap(Arrays.copyOfRange(bytes, offset, offset + length)))) {
+            return false;
+        }
+        memorySize += length + MEMORY_OVERHEAD_BYTES;
+        sortedMemory = null;
+        return true;
+    }
+
+    /**
+     * @return The number of bytes held in memory, including the bookkeeping
+     */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    public boolean isEmpty() {
+        return memory.isEmpty() && runs.isEmpty();
+    }
+
+    /**
+     * @return The number of runs written to disk
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Writes the Writables in memory to a new run
+     */
+    public void spill() throws IOException {
+        if (memory.isEmpty()) {
+            return;
+        }
+        writeRun(sortedMemory().iterator());
+        memory.clear();
+        memorySize = 0;
+        sortedMemory = null;
+
+        if (runs.size() > MAX_RUNS) {
+            final List<File> merging = new ArrayList<>(runs);
+            final MergeIterator merged = new MergeIterator(merging, Collections.<byte[]>emptyList(), Long.MAX_VALUE);
+            try {
+                runs.clear();
+                writeRun(merged);
+            } finally {
+                merged.closeRuns();
+            }
+            for (File run : merging) {
+                delete(run);
+            }
+        }
+    }
+
+    /**
+     * Reads the distinct Writables back in the order of their bytes.  Like the values of a reducer, each one is read
+     * into the same instance
+     *
+     * @param reuse The instance to read each Writable into
+     * @param limit The most Writables to read
+     */
+    public <T extends Writable> Iterator<T> iterator(final T reuse, long limit) {
+        final MergeIterator merged;
+        try {
+            merged = new MergeIterator(runs, sortedMemory(), limit);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the spilled buffer", e);
+        }
+        openReaders.add(merged);
+        final DataInputBuffer in = new DataInputBuffer();
+
+        return new AbstractIterator<T>() {
+            @Override
+            protected T computeNext() {
+                try {
+                    if (!merged.hasNext()) {
+                        if (openReaders.remove(merged)) {
+                            merged.close();
+                        }
+                        return endOfData();
+                    }
+                    final byte[] bytes = merged.next();
+                    in.reset(bytes, bytes.length);
+                    reuse.readFields(in);
+                    return reuse;
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read the buffer", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the runs
+     */
+    @Override
+    public void close() throws IOException {
+        for (Closeable reader : openReaders) {
+            reader.close();
+        }
+        openReaders.clear();
+        for (File run : runs) {
+            delete(run);
+        }
+        runs.clear();
+        memory.clear();
+        memorySize = 0;
+        sortedMemory = null;
+    }
+
+    private List<byte[]> sortedMemory() {
+        if (sortedMemory == null) {
+            sortedMemory = new ArrayList<>(memory.size());
+            for (ByteBuffer bytes : memory) {
+                sortedMemory.add(bytes.array());
+            }
+            Collections.sort(sortedMemory, BYTES_ORDER);
+        }
+        return sortedMemory;
+    }
+
+    private void writeRun(Iterator<byte[]> sorted) throws IOException {
+        final File run = File.createTempFile("amino-distinct", ".run", spillDirectory);
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+            while (sorted.hasNext()) {
+                final byte[] bytes = sorted.next();
+                WritableUtils.writeVInt(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * One sorted source of the merge
+     */
+    private static final class Source {
+        private final Iterator<byte[]> memory;
+        private final DataInputStream run;
+        byte[] head;
+
+        Source(Iterator<byte[]> memory) {
+            this.memory = memory;
+            this.run = null;
+        }
+
+        Source(DataInputStream run) {
+            this.memory = null;
+            this.run = run;
+        }
+
+        /**
+         * @return false once the source is used up
+         */
+        boolean advance() throws IOException {
+            if (memory != null) {
+                head = memory.hasNext() ? memory.next() : null;
+            } else {
+                final int length;
+                try {
+                    length = WritableUtils.readVInt(run);
+                } catch (EOFException e) {
+                    head = null;
+                    return false;
+                }
+                head = new byte[length];
+                run.readFully(head);
+            }
+            return head != null;
+        }
+    }
+
+    /**
+     * Merges the sorted sources, skipping the duplicates
+     */
+    private static final class MergeIterator extends AbstractIterator<byte[]> implements Closeable {
+        private final PriorityQueue<Source> sources = new PriorityQueue<>(11, new Comparator<Source>() {
+            @Override
+            public int compare(Source left, Source right) {
+                return BYTES_ORDER.compare(left.head, right.head);
+            }
+        });
+        private final List<DataInputStream> files = new ArrayList<>();
+        private final long limit;
+        private long returned = 0;
+        private byte[] previous;
+
+        MergeIterator(List<File> runs, List<byte[]> memory, long limit) throws IOException {
+            this.limit = limit;
+            try {
+                for (File run : runs) {
+                    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+                    files.add(in);
+                    push(new Source(in));
+                }
+                push(new Source(memory.iterator()));
+            } catch (IOException e) {
+                closeRuns();
+                throw e;
+            }
+        }
+
+        private void push(Source source) throws IOException {
+            if (source.advance()) {
+                sources.add(source);
+            }
+        }
+
+        @Override
+        protected byte[] computeNext() {
+            try {
+                while (returned < limit && !sources.isEmpty()) {
+                    final Source smallest = sources.poll();
+                    final byte[] bytes = smallest.head;
+                    push(smallest);
+                    if (previous == null || BYTES_ORDER.compare(previous, bytes) != 0) {
+                        previous = bytes;
+                        returned++;
+                        return bytes;
+                    }
+                }
+                closeRuns();
+                return endOfData();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the spilled buffer", e);
+            }
+        }
+
+        void closeRuns() throws IOException {
+            for (DataInputStream in : files) {
+                in.close();
+            }
+            files.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeRuns();
+        }
+    }
+}
@@ -24,6 +24,8 @@ import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.CounterGroup;
 import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -42,6 +44,9 @@ public final class FrameworkDriver extends Configured implements Tool {
     private static final String AMINO_NUM_REDUCERS_ENRICH_PHASE1 = "amino.enrich.phase1.num.reducers";
     private static final String AMINO_NUM_REDUCERS_ENRICH_PHASE2 = "amino.enrich.phase2.num.reducers";
 
+    /** Run the jobs that share a DataLoader as one MapReduce job, see {@link #runFusedJobs(List, Configuration)} */
+    public static final String AMINO_FUSE_JOBS = "amino.fuse.jobs";
+
     private static final int DEFAULT_NUM_REDUCERS = 14;
 
     private static final Logger logger = LoggerFactory.getLogger(FrameworkDriver.class);
@@ -52,6 +57,7 @@ public final class FrameworkDriver extends Configured implements Tool {
 
     private String enrichmentOutput = "";
     private static boolean stopOnFirstPhase = false;
+    private static boolean fuseJobs = false;
 
     public static final String STATUS_FILE = "status.pid";
 
@@ -80,6 +86,7 @@ public final class FrameworkDriver extends Configured implements Tool {
         gnuOptions.addOption("b", "base_dir", true, "The base directory of the running job");
         gnuOptions.addOption("c", "amino_config_file_path", true, "A CSV of filenames or paths which will be acted like a classpath setting up configurations!");
         gnuOptions.addOption("stop", "stop_on_first_phase", false, "Stop after the first phase of an AminoEnrichmentJob");
+        gnuOptions.addOption("fuse", "fuse_jobs", false, "Run the jobs that share a DataLoader as a single MapReduce job");
 
         Option propertyOverride = new Option("D", "property_override", true, "A map of key/value configuration properties to override (ie: 'key=value')");
         propertyOverride.setValueSeparator('=');
@@ -134,6 +141,7 @@ public final class FrameworkDriver extends Configured implements Tool {
         final String baseDir = commandLine.getOptionValue("base_dir");
 
         stopOnFirstPhase = commandLine.hasOption("stop");
+        fuseJobs = commandLine.hasOption("fuse");
 
         // Set the base dir config value if it was provided.
         if(StringUtils.isNotEmpty(baseDir)){
@@ -242,51 +250,11 @@ public final class FrameworkDriver extends Configured implements Tool {
             // AminoConfiguration.loadDefault(conf, "AminoDefaults", true);
             // boolean complete = createTables(conf);
 
-            for (AminoJob aj : jobs) {
-                aj.setConfig(conf);
-                logger.info("Running Job -> " + aj.getJobName());
-                if (complete) {
-                    Job job = new Job(conf, aj.getJobName());
-                    job.setJarByClass(aj.getClass());
-
-                    // Add the class to the conf it can be grabbed in the Reduce phase
-                    AminoDriverUtils.setAminoJob(job.getConfiguration(), aj.getClass());
-
-                    int jobType = setJobParameters(job, aj);
-
-                    // Call job configuration for special properties
-                    jobConfiguration(job);
-
-                    complete = job.waitForCompletion(true);
-
-                    if (jobType == JOB_TYPE_ENRICHMENT || jobType == JOB_TYPE_REUSE_ENRICHMENT) {
-                        if (!stopOnFirstPhase) {
-                            stopOnFirstPhase = conf.getBoolean("stop.on.first.phase", stopOnFirstPhase);
-                        }
-                        if (complete && !stopOnFirstPhase) {
-                            complete = runSecondPhaseEnrichmentJob((AminoEnrichmentJob) aj, conf, jobType);
-                            if (jobType == JOB_TYPE_REUSE_ENRICHMENT)
-                                ((AminoReuseEnrichmentJob) aj).directoryCleanup(conf);
-                        } else if (!complete) {
-                            System.err.println("Job failed, unable to run second enrichment step");
-                        }
-                    } else {
-                        final Counters counters = job.getCounters();
-                        final CounterGroup taskCounter = counters.getGroup("org.apache.hadoop.mapreduce.TaskCounter");
-                        Counter c = taskCounter.findCounter("MAP_INPUT_RECORDS", false);
-                        if(c == null || c.getValue() == 0){
-                            logger.error("There were no records for the mapper to process");
-                            complete = false;
-                            break;
-                        }
-                        c = taskCounter.findCounter("MAP_OUTPUT_RECORDS", false);
-                        if(c == null || c.getValue() == 0){
-                            logger.error("The mapper produced no records to process");
-                            complete = false;
-                            break;
-                        }
-                    }
+            for (List<AminoJob> group : groupJobs(jobs, conf)) {
+                if (!complete) {
+                    break;
                 }
+                complete = (group.size() == 1) ? runJob(group.get(0), conf) : runFusedJobs(group, conf);
             }
 
             updateStatus(complete ? JobStatus.COMPLETE : JobStatus.FAILED);
@@ -299,6 +267,141 @@ public final class FrameworkDriver extends Configured implements Tool {
         return complete ? 0 : 1;
     }
 
+    /**
+     * Groups the jobs that can share a single map and shuffle.  Jobs can be fused if they are not enrichment jobs and
+     * have the same DataLoader and domain, as then they read the same input into the same buckets.  Unless fusing is
+     * turned on, every job is in a group of its own.
+     *
+     * @return The groups in the order that their first job was loaded
+     */
+    static List<List<AminoJob>> groupJobs(Iterable<? extends AminoJob> jobs, Configuration conf) {
+        final boolean fuse = fuseJobs || conf.getBoolean(AMINO_FUSE_JOBS, false);
+        final Map<String, List<AminoJob>> groups = new LinkedHashMap<>();
+        for (AminoJob aj : jobs) {
+            aj.setConfig(conf);
+            final String groupKey;
+            if (fuse && !(aj instanceof AminoEnrichmentJob)) {
+                groupKey = aj.getDataLoaderClass().getName() + "|" + aj.getAminoDomainID() + "|" + aj.getAminoDomainName()
+                        + "|" + aj.getAminoDomainDescription();
+            } else {
+                groupKey = String.valueOf(groups.size()) + "|" + aj.getClass().getName();
+            }
+            List<AminoJob> group = groups.get(groupKey);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(groupKey, group);
+            }
+            group.add(aj);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Runs a single AminoJob, and the second phase if it is an enrichment job
+     *
+     * @return true if the job completed
+     */
+    private boolean runJob(AminoJob aj, Configuration conf) throws Exception {
+        logger.info("Running Job -> " + aj.getJobName());
+        Job job = new Job(conf, aj.getJobName());
+        job.setJarByClass(aj.getClass());
+
+        // Add the class to the conf it can be grabbed in the Reduce phase
+        AminoDriverUtils.setAminoJob(job.getConfiguration(), aj.getClass());
+
+        int jobType = setJobParameters(job, aj);
+
+        // Call job configuration for special properties
+        jobConfiguration(job);
+
+        boolean complete = job.waitForCompletion(true);
+
+        if (jobType == JOB_TYPE_ENRICHMENT || jobType == JOB_TYPE_REUSE_ENRICHMENT) {
+            if (!stopOnFirstPhase) {
+                stopOnFirstPhase = conf.getBoolean("stop.on.first.phase", stopOnFirstPhase);
+            }
+            if (complete && !stopOnFirstPhase) {
+                complete = runSecondPhaseEnrichmentJob((AminoEnrichmentJob) aj, conf, jobType);
+                if (jobType == JOB_TYPE_REUSE_ENRICHMENT)
+                    ((AminoReuseEnrichmentJob) aj).directoryCleanup(conf);
+            } else if (!complete) {
+                System.err.println("Job failed, unable to run second enrichment step");
+            }
+            return complete;
+        }
+        return complete && checkMapRecords(job);
+    }
+
+    /**
+     * Runs jobs that share a DataLoader and domain as one MapReduce job.  The raw input is read, bucketed and shuffled
+     * once, and every job's AminoReducers are run on each DatasetCollection in the {@link FrameworkReducer}.  Each job
+     * writes its results to its own files, named after {@link AminoDriverUtils#getFusedOutputName(int)}, in the usual
+     * output directory.  The later jobs read every file in that directory, so they read these like any other part
+     * file, and each named output has its own record writer, so it writes its own metadata file.
+     *
+     * @return true if the job completed
+     */
+    private boolean runFusedJobs(List<AminoJob> jobs, Configuration conf) throws Exception {
+        final List<Class<? extends AminoJob>> jobClasses = new ArrayList<>(jobs.size());
+        final List<String> jobNames = new ArrayList<>(jobs.size());
+        for (AminoJob aj : jobs) {
+            jobClasses.add(aj.getClass());
+            jobNames.add(aj.getJobName());
+        }
+        final String jobName = "Fused " + StringUtils.join(jobNames, ", ");
+        logger.info("Running Job -> " + jobName);
+
+        final AminoJob first = jobs.get(0);
+        final Job job = new Job(conf, jobName);
+        job.setJarByClass(first.getClass());
+        AminoDriverUtils.setAminoJob(job.getConfiguration(), first.getClass());
+        AminoDriverUtils.setFusedAminoJobs(job.getConfiguration(), jobClasses);
+
+        // The jobs all have the same DataLoader and domain, so the input and bucket caches of the first do for all of them
+        setJobParameters(job, first);
+
+        // Everything goes through MultipleOutputs, so only create the default output if something is written to it
+        LazyOutputFormat.setOutputFormatClass(job, AminoOutputFormat.class);
+        for (int i = 0; i < jobs.size(); i++) {
+            MultipleOutputs.addNamedOutput(job, AminoDriverUtils.getFusedOutputName(i), AminoOutputFormat.class,
+                    BucketStripped.class, AminoWritable.class);
+        }
+        MultipleOutputs.setCountersEnabled(job, true);
+
+        jobConfiguration(job);
+
+        if (!job.waitForCompletion(true) || !checkMapRecords(job)) {
+            return false;
+        }
+
+        final CounterGroup outputCounters = job.getCounters().getGroup(MultipleOutputs.class.getName());
+        for (int i = 0; i < jobs.size(); i++) {
+            final Counter c = outputCounters.findCounter(AminoDriverUtils.getFusedOutputName(i), false);
+            logger.info("{} wrote {} records to {}", jobNames.get(i), (c == null) ? 0 : c.getValue(),
+                    AminoDriverUtils.getFusedOutputName(i));
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the mapper had records to read and produced some
+     */
+    private boolean checkMapRecords(Job job) throws IOException {
+        final Counters counters = job.getCounters();
+        final CounterGroup taskCounter = counters.getGroup("org.apache.hadoop.mapreduce.TaskCounter");
+        Counter c = taskCounter.findCounter("MAP_INPUT_RECORDS", false);
+        if(c == null || c.getValue() == 0){
+            logger.error("There were no records for the mapper to process");
+            return false;
+        }
+        c = taskCounter.findCounter("MAP_OUTPUT_RECORDS", false);
+        if(c == null || c.getValue() == 0){
+            logger.error("The mapper produced no records to process");
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Adds configuration options to the job.
      *
@@ -391,8 +494,11 @@ public final class FrameworkDriver extends Configured implements Tool {
             job.setMapperClass(FrameworkMapper.class);
             job.setReducerClass(FrameworkReducer.class);
 
-            job.setMapOutputKeyClass(BucketStripped.class);
-            job.setMapOutputValueClass(MapWritable.class);
+            job.setMapOutputKeyClass(SortedBucketKey.class);
+            job.setMapOutputValueClass(AminoRecordWritable.class);
+
+            job.setPartitionerClass(BucketPartitioner.class);
+            job.setGroupingComparatorClass(BucketGroupingComparator.class);
 
             job.setOutputKeyClass(BucketStripped.class);
             job.setOutputValueClass(AminoWritable.class);
@@ -415,7 +521,9 @@ public final class FrameworkDriver extends Configured implements Tool {
             System.out.println("Output will be written to: " + outputPaths);
             AminoOutputFormat.setOutputPath(job, new Path(outputPaths));
 
-            CacheBuilder.buildCaches(AminoDataUtils.createDataLoader(conf), aj, output, conf);
+            final DataLoader dataLoader = AminoDataUtils.createDataLoader(conf);
+            RecordSchema.fromDataLoader(dataLoader).store(conf);
+            CacheBuilder.buildCaches(dataLoader, aj, output, conf);
             return JOB_TYPE_NORMAL;
         }
     }
@@ -474,8 +582,11 @@ public final class FrameworkDriver extends Configured implements Tool {
         job.setMapperClass(FrameworkMapper.class);
         job.setReducerClass(FrameworkReducer.class);
 
-        job.setMapOutputKeyClass(BucketStripped.class);
-        job.setMapOutputValueClass(MapWritable.class);
+        job.setMapOutputKeyClass(SortedBucketKey.class);
+        job.setMapOutputValueClass(AminoRecordWritable.class);
+
+        job.setPartitionerClass(BucketPartitioner.class);
+        job.setGroupingComparatorClass(BucketGroupingComparator.class);
 
         job.setOutputKeyClass(BucketStripped.class);
         job.setOutputValueClass(AminoWritable.class);
@@ -499,7 +610,9 @@ public final class FrameworkDriver extends Configured implements Tool {
         System.out.println("Output will be written to: " + PathUtils.getJobDataPath(output));
         AminoOutputFormat.setOutputPath(job, new Path(PathUtils.getJobDataPath(output)));
         JobUtilities.deleteDirectory(job.getConfiguration(), output);
-        CacheBuilder.buildCaches(AminoDataUtils.createDataLoader(job.getConfiguration()), aej, output, job.getConfiguration());
+        final DataLoader dataLoader = AminoDataUtils.createDataLoader(job.getConfiguration());
+        RecordSchema.fromDataLoader(dataLoader).store(job.getConfiguration());
+        CacheBuilder.buildCaches(dataLoader, aej, output, job.getConfiguration());
 
         return job.waitForCompletion(true);
     }
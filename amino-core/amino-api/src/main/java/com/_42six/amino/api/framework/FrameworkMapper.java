@@ -1,17 +1,38 @@
 package com._42six.amino.api.framework;
 
+import com._42six.amino.api.model.DatasetCollection;
 import com._42six.amino.common.Bucket;
 import com._42six.amino.common.BucketStripped;
 import com._42six.amino.common.service.datacache.BucketCache;
+import com._42six.amino.data.DataLoader;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Mapper;
 
 import java.io.IOException;
+import java.util.Map;
 
-public final class FrameworkMapper extends Mapper<MapWritable, MapWritable, BucketStripped, MapWritable> {
+public final class FrameworkMapper extends Mapper<MapWritable, MapWritable, SortedBucketKey, AminoRecordWritable> {
+
+    private AminoRecordWritable record;
+    private Map<String, Text> sortFields;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        record = new AminoRecordWritable(RecordSchema.load(context.getConfiguration()));
+        sortFields = AminoDriverUtils.getSortFields(context.getConfiguration());
+    }
 
     public void map(MapWritable key, MapWritable value, Context context) throws IOException, InterruptedException {
+        boolean encoded = false;
+
+        // The records of sorted datasets are sorted by the shuffle, on the value of their sort field
+        final String dataset = getDatasetName(value);
+        final Text sortField = sortFields.get(dataset);
+        final Writable sortValue = (sortField == null) ? null : value.get(sortField);
+
         // Go through available buckets. If this record has a value for that bucket, write the record to the context
         for (Bucket bucket : BucketCache.getBuckets(key)) {
             if (value.containsKey(bucket.getBucketName())) {
@@ -20,10 +41,30 @@ public final class FrameworkMapper extends Mapper<MapWritable, MapWritable, Buck
                 bucketCopy.setBucketValue(bucketValue);
                 bucketCopy.computeHash();
 
+                // Encode the record once, every bucket writes out the same bytes
+                if (!encoded) {
+                    record.set(value);
+                    encoded = true;
+                }
+
                 //Convert the full bucket to a light weight bucket for hdfs
                 BucketStripped stripped = BucketStripped.fromBucket(bucketCopy);
-                context.write(stripped, value);
+                if (sortField == null) {
+                    context.write(new SortedBucketKey(stripped), record);
+                } else {
+                    context.write(new SortedBucketKey(stripped, dataset,
+                            (sortValue == null) ? null : new Text(sortValue.toString())), record);
+                }
             }
         }
     }
+
+    /**
+     * @return The dataset of the record, which is the default dataset if the DataLoader did not name one, as in the
+     * {@link DatasetCollection}
+     */
+    static String getDatasetName(MapWritable value) {
+        final Writable dataset = value.get(DataLoader.DATASET_NAME);
+        return (dataset == null) ? DatasetCollection.DATASET_KEY_VALUE_DEFAULT : dataset.toString();
+    }
 }
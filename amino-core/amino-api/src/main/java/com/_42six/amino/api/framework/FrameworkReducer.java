@@ -2,29 +2,59 @@ package com._42six.amino.api.framework;
 
 import com._42six.amino.api.job.AminoJob;
 import com._42six.amino.api.job.AminoReducer;
+import com._42six.amino.api.job.StreamingAminoReducer;
 import com._42six.amino.api.model.DatasetCollection;
+import com._42six.amino.api.model.StreamingDatasetCollection;
 import com._42six.amino.common.AminoWritable;
 import com._42six.amino.common.Bucket;
-import com._42six.amino.common.BucketStripped;
 import com._42six.amino.common.service.datacache.BucketCache;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
-public final class FrameworkReducer extends Reducer<BucketStripped, MapWritable, Bucket, AminoWritable> {
+public final class FrameworkReducer extends Reducer<SortedBucketKey, AminoRecordWritable, Bucket, AminoWritable> {
 
-    private List<AminoReducer> reducerList = new ArrayList<>();
+    /** The number of bytes of rows a streaming reducer's bucket value can hold in memory before spilling to disk */
+    public static final String AMINO_REDUCER_MEMORY_BYTES = "amino.reducer.memory.bytes";
+    public static final long DEFAULT_REDUCER_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameworkReducer.class);
+
+    /** The reducers of each job.  There is more than one job when jobs sharing a DataLoader have been fused */
+    private List<List<AminoReducer>> reducerLists = new ArrayList<>();
+    /** Where each fused job writes its results, or null if there is only the one job */
+    private MultipleOutputs<Bucket, AminoWritable> outputs;
     private Map<String, Text> sortFields;
     private Set<String> dedupDatasets = new HashSet<>();
     private long timestamp;
     private BucketCache bucketCache;
+    /** Whether any reducer is a StreamingAminoReducer, and whether any is not */
+    private boolean hasStreamingReducers = false;
+    private boolean hasLoadingReducers = false;
+    private RecordSchema schema;
+    private long memoryBudget;
+    private File spillDirectory;
+    private Output output;
+
+    /**
+     * Where the reducers' results go
+     */
+    interface Output {
+        /**
+         * @param job The position of the job whose reducer produced the result
+         */
+        void write(int job, Bucket key, AminoWritable result) throws IOException, InterruptedException;
+    }
 
     @Override
-    protected void setup(Context context) throws IOException, InterruptedException {
+    protected void setup(final Context context) throws IOException, InterruptedException {
         super.setup(context);
 
         timestamp = Calendar.getInstance().getTimeInMillis();
@@ -33,63 +63,125 @@ public final class FrameworkReducer extends Reducer<BucketStripped, MapWritable,
 
         bucketCache = new BucketCache(config);
 
-        String[] sortDatasetName = config.getStrings("amino.sort.name.datasource");
-        String[] sortDatasetField = config.getStrings("amino.sort.name.field");
+        List<AminoJob> aminoJobs;
+        try {
+            aminoJobs = AminoDriverUtils.getFusedAminoJobs(config);
+            if (aminoJobs.isEmpty()) {
+                aminoJobs = Collections.singletonList(AminoDriverUtils.getAminoJob(config));
+            } else {
+                outputs = new MultipleOutputs<>(context);
+            }
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        configure(config, aminoJobs);
+
+        output = new Output() {
+            @Override
+            public void write(int job, Bucket key, AminoWritable result) throws IOException, InterruptedException {
+                if (outputs == null) {
+                    context.write(key, result);
+                } else {
+                    outputs.write(AminoDriverUtils.getFusedOutputName(job), key, result);
+                }
+                context.progress();
+            }
+        };
+    }
+
+    /**
+     * Creates the reducers of each job
+     */
+    void configure(Configuration config, List<AminoJob> aminoJobs) throws IOException {
         for (String dedupDatasource : config.getStringCollection("amino.datasource.dedup")) {
             dedupDatasets.add(dedupDatasource);
         }
 
-        //to enable sorting, sort name and fields need to have the same number of values
-        sortFields = new HashMap<>();
-        if (sortDatasetName != null && sortDatasetField != null
-                && sortDatasetName.length > 0 && sortDatasetName.length == sortDatasetField.length) {
-            for (int i = 0; i < sortDatasetName.length; ++i) {
-                sortFields.put(sortDatasetName[i], new Text(sortDatasetField[i]));
+        // The rows of the sorted datasets arrive in order, sorted by the shuffle
+        sortFields = AminoDriverUtils.getSortFields(config);
+
+        for (AminoJob aminoJob : aminoJobs) {
+            List<AminoReducer> reducerList = new ArrayList<>();
+            for (Class<? extends AminoReducer> cls : aminoJob.getAminoReducerClasses()) {
+                try {
+                    AminoReducer ar = cls.newInstance();
+                    ar.setConfig(config);
+                    reducerList.add(ar);
+                    if (ar instanceof StreamingAminoReducer) {
+                        hasStreamingReducers = true;
+                    } else {
+                        hasLoadingReducers = true;
+                    }
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
             }
+            reducerLists.add(reducerList);
         }
 
-        AminoJob aminoJob;
-        try {
-            aminoJob = AminoDriverUtils.getAminoJob(config);
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
-
-        for (Class<? extends AminoReducer> cls : aminoJob.getAminoReducerClasses()) {
-            try {
-                AminoReducer ar = cls.newInstance();
-                ar.setConfig(config);
-                reducerList.add(ar);
-            } catch (Exception e) {
-                throw new IOException(e);
+        if (hasStreamingReducers) {
+            schema = RecordSchema.load(config);
+            memoryBudget = config.getLong(AMINO_REDUCER_MEMORY_BYTES, DEFAULT_REDUCER_MEMORY_BYTES);
+            spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+            if (!dedupDatasets.isEmpty()) {
+                logger.warn("Streaming reducers do not see the datasets " + dedupDatasets + " deduplicated");
             }
         }
     }
 
     @Override
     protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (outputs != null) {
+            outputs.close();
+        }
         super.cleanup(context);
     }
 
     @Override
-    public void reduce(BucketStripped strippedKey, Iterable<MapWritable> values, Context context) throws IOException, InterruptedException {
+    public void reduce(SortedBucketKey sortedKey, Iterable<AminoRecordWritable> values, Context context) throws IOException, InterruptedException {
         /**
          * TODO: we should run the data loader only once and serialize the
          * results somewhere.  When that happens, stop doing this deep copy.
          */
         // Convert the stripped bucket back into a full bucket
-        Bucket key = bucketCache.getBucket(strippedKey);
+        Bucket key = bucketCache.getBucket(sortedKey.getBucket());
         key.setTimestamp(timestamp);
+        reduce(key, values, output);
+    }
 
-        // Build our DatasetCollection.
-        // This reads all of the values into memory!
-        DatasetCollection datasets = new DatasetCollection(key, values, sortFields, dedupDatasets);
+    /**
+     * Runs every reducer over the values of a bucket
+     */
+    void reduce(Bucket key, Iterable<AminoRecordWritable> values, Output output) throws IOException, InterruptedException {
+        if (!hasStreamingReducers) {
+            // Build our DatasetCollection.
+            // This reads all of the values into memory!
+            runReducers(key, DatasetCollection.fromRecords(key, values, sortFields, dedupDatasets), null, output);
+            return;
+        }
 
-        // Execute each reducer using this dataset and write results to context
-        for (AminoReducer ar : reducerList) {
-            for (AminoWritable result : ar.reduce(datasets)) {
-                context.write(key, result);
-                context.progress();
+        // Buffer the values, spilling them to disk past the memory budget, so that each reducer can go through them
+        try (StreamingDatasetCollection rows = new StreamingDatasetCollection(key, schema, memoryBudget, spillDirectory)) {
+            for (AminoRecordWritable value : values) {
+                rows.add(value);
+            }
+
+            // Only the reducers that are not streaming need every row in memory
+            DatasetCollection datasets = hasLoadingReducers ? rows.toDatasetCollection(sortFields, dedupDatasets) : null;
+            runReducers(key, datasets, rows, output);
+        }
+    }
+
+    private void runReducers(Bucket key, DatasetCollection datasets, StreamingDatasetCollection rows, Output output)
+            throws IOException, InterruptedException {
+        // Execute each reducer using this dataset and write results to context, or to the job's own output if fused
+        for (int i = 0; i < reducerLists.size(); i++) {
+            for (AminoReducer ar : reducerLists.get(i)) {
+                final Iterable<AminoWritable> results = (ar instanceof StreamingAminoReducer)
+                        ? ((StreamingAminoReducer) ar).reduce(rows) : ar.reduce(datasets);
+                for (AminoWritable result : results) {
+                    output.write(i, key, result);
+                }
             }
         }
     }
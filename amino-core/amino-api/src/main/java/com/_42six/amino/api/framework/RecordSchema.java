@@ -0,0 +1,110 @@
+package com._42six.amino.api.framework;
+
+import com._42six.amino.data.DataLoader;
+import com._42six.amino.data.SchemaAwareDataLoader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DefaultStringifier;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The field dictionary of the records that a DataLoader produces.  Each known field gets an id, its position in the
+ * dictionary, which an {@link AminoRecordWritable} writes in place of the field name.  The dictionary is stored in the
+ * job configuration so that the mappers and reducers agree on it.
+ */
+public final class RecordSchema implements Writable {
+
+    private static final String SCHEMA_KEY = "amino.record.schema";
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<Text, Integer> ids = new HashMap<>();
+
+    /**
+     * Creates the schema with the dataset name, the buckets and, if the DataLoader knows them, the rest of its fields
+     */
+    public static RecordSchema fromDataLoader(DataLoader loader) {
+        final RecordSchema schema = new RecordSchema();
+        schema.add(DataLoader.DATASET_NAME);
+        for (Text bucket : loader.getBuckets()) {
+            schema.add(bucket);
+        }
+        if (loader instanceof SchemaAwareDataLoader) {
+            for (Text field : ((SchemaAwareDataLoader) loader).getFieldNames()) {
+                schema.add(field);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Loads the schema from the job configuration
+     *
+     * @return The schema, or an empty one if none was stored, in which case every field is written with its name
+     */
+    public static RecordSchema load(Configuration conf) throws IOException {
+        if (conf == null || conf.get(SCHEMA_KEY) == null) {
+            return new RecordSchema();
+        }
+        return DefaultStringifier.load(conf, SCHEMA_KEY, RecordSchema.class);
+    }
+
+    /**
+     * Stores the schema in the job configuration
+     */
+    public void store(Configuration conf) throws IOException {
+        DefaultStringifier.store(conf, this, SCHEMA_KEY);
+    }
+
+    /**
+     * Adds a field to the end of the dictionary, if it is not already there
+     */
+    public void add(Text name) {
+        if (!ids.containsKey(name)) {
+            ids.put(new Text(name), names.size());
+            names.add(name.toString());
+        }
+    }
+
+    /**
+     * @return The id of the field, or -1 if it is not in the dictionary
+     */
+    public int getId(Text name) {
+        final Integer id = ids.get(name);
+        return (id == null) ? -1 : id;
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, names.size());
+        for (String name : names) {
+            Text.writeString(out, name);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        names.clear();
+        ids.clear();
+        final int size = WritableUtils.readVInt(in);
+        for (int i = 0; i < size; i++) {
+            add(new Text(Text.readString(in)));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com._42six.amino.api.framework;
+
+import com._42six.amino.common.BucketStripped;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The map output key of the {@link FrameworkMapper}.  The records are partitioned and grouped by the bucket alone (see
+ * {@link BucketPartitioner} and {@link BucketGroupingComparator}), but sorted by the dataset and sort field too, so
+ * that the rows of the sorted datasets reach the {@link FrameworkReducer} in order.
+ *
+ * Within a bucket, the records of the unsorted datasets come first, then each sorted dataset in turn.  Rows without a
+ * value for the sort field come before the rest of their dataset.
+ */
+public class SortedBucketKey implements WritableComparable<SortedBucketKey> {
+
+    private static final byte UNSORTED = 0;
+    private static final byte SORTED_WITHOUT_VALUE = 1;
+    private static final byte SORTED = 2;
+
+    private BucketStripped bucket;
+    private byte type = UNSORTED;
+    private final Text dataset = new Text();
+    private final Text sortValue = new Text();
+
+    public SortedBucketKey() {
+        bucket = new BucketStripped();
+    }
+
+    /**
+     * Creates the key of a record that is not in a sorted dataset
+     */
+    public SortedBucketKey(BucketStripped bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * Creates the key of a record in a sorted dataset
+     *
+     * @param sortValue The record's value of the sort field, or null if it does not have one
+     */
+    public SortedBucketKey(BucketStripped bucket, String dataset, Text sortValue) {
+        this.bucket = bucket;
+        this.dataset.set(dataset);
+        if (sortValue == null) {
+            type = SORTED_WITHOUT_VALUE;
+        } else {
+            type = SORTED;
+            this.sortValue.set(sortValue);
+        }
+    }
+
+    public BucketStripped getBucket() {
+        return bucket;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        bucket.write(out);
+        out.writeByte(type);
+        if (type != UNSORTED) {
+            dataset.write(out);
+        }
+        if (type == SORTED) {
+            sortValue.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        bucket.readFields(in);
+        type = in.readByte();
+        dataset.clear();
+        sortValue.clear();
+        if (type != UNSORTED) {
+            dataset.readFields(in);
+        }
+        if (type == SORTED) {
+            sortValue.readFields(in);
+        }
+    }
+
+    @Override
+    public int compareTo(SortedBucketKey other) {
+        int result = bucket.compareTo(other.bucket);
+        if (result != 0) {
+            return result;
+        }
+        if ((type == UNSORTED) != (other.type == UNSORTED)) {
+            return (type == UNSORTED) ? -1 : 1;
+        }
+        result = dataset.compareTo(other.dataset);
+        if (result != 0) {
+            return result;
+        }
+        if (type != other.type) {
+            return (type < other.type) ? -1 : 1;
+        }
+        return sortValue.compareTo(other.sortValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return bucket.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SortedBucketKey)) {
+            return false;
+        }
+        return compareTo((SortedBucketKey) obj) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SortedBucketKey [bucket=" + bucket + ", dataset=" + dataset + ", sortValue=" + sortValue + "]";
+    }
+}
@@ -0,0 +1,167 @@
+package com._42six.amino.api.framework;
+
+import com.google.common.collect.AbstractIterator;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Serialized Writables, kept in memory until {@link #spill()} is called, after which they, and every Writable added
+ * later, are kept in a local file instead.  They can be read back any number of times, in the order they were added.
+ */
+public class SpillableWritableBuffer implements Closeable {
+
+    private final File spillDirectory;
+
+    private DataOutputBuffer memory = new DataOutputBuffer();
+    private int memoryCount = 0;
+
+    private File spillFile;
+    private DataOutputStream spillOut;
+    private int spillCount = 0;
+
+    /** The files opened by the iterators, closed with the buffer if they were not read to the end */
+    private final List<Closeable> openReaders = new ArrayList<>();
+
+    /**
+     * @param spillDirectory Where the file is created if the buffer spills
+     */
+    public SpillableWritableBuffer(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void add(Writable writable) throws IOException {
+        if (spillOut == null) {
+            writable.write(memory);
+            memoryCount++;
+        } else {
+            writable.write(spillOut);
+            spillCount++;
+        }
+    }
+
+    /**
+     * Adds a Writable that has already been serialized
+     */
+    public void add(byte[] bytes, int offset, int length) throws IOException {
+        if (spillOut == null) {
+            memory.write(bytes, offset, length);
+            memoryCount++;
+        } else {
+            spillOut.write(bytes, offset, length);
+            spillCount++;
+        }
+    }
+
+    /**
+     * @return The number of bytes held in memory
+     */
+    public int getMemorySize() {
+        return memory.getLength();
+    }
+
+    /**
+     * @return The size of the array backing the memory, which can be larger than {@link #getMemorySize()}
+     */
+    int getMemoryCapacity() {
+        return memory.getData().length;
+    }
+
+    public int size() {
+        return memoryCount + spillCount;
+    }
+
+    public boolean isSpilled() {
+        return spillOut != null;
+    }
+
+    /**
+     * Moves the Writables out of memory and into a local file
+     */
+    public void spill() throws IOException {
+        if (spillOut != null) {
+            return;
+        }
+        spillFile = File.createTempFile("amino-buffer", ".spill", spillDirectory);
+        spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+        spillOut.write(memory.getData(), 0, memory.getLength());
+        spillCount = memoryCount;
+        // reset() would keep the array, so let it go to free the heap
+        memory = new DataOutputBuffer();
+        memoryCount = 0;
+    }
+
+    /**
+     * Reads the Writables back.  Like the values of a reducer, each one is read into the same instance
+     *
+     * @param reuse The instance to read each Writable into
+     */
+    public <T extends Writable> Iterator<T> iterator(final T reuse) {
+        final DataInput in;
+        final int count;
+        try {
+            if (spillOut == null) {
+                final DataInputBuffer buffer = new DataInputBuffer();
+                buffer.reset(memory.getData(), memory.getLength());
+                in = buffer;
+                count = memoryCount;
+            } else {
+                spillOut.flush();
+                final DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+                openReaders.add(file);
+                in = file;
+                count = spillCount;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the spilled buffer", e);
+        }
+
+        return new AbstractIterator<T>() {
+            private int read = 0;
+
+            @Override
+            protected T computeNext() {
+                try {
+                    if (read == count) {
+                        if (openReaders.remove(in)) {
+                            ((Closeable) in).close();
+                        }
+                        return endOfData();
+                    }
+                    read++;
+                    reuse.readFields(in);
+                    return reuse;
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read the buffer", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the spilled Writables
+     */
+    @Override
+    public void close() throws IOException {
+        for (Closeable reader : openReaders) {
+            reader.close();
+        }
+        openReaders.clear();
+        if (spillOut != null) {
+            spillOut.close();
+            spillOut = null;
+        }
+        if (spillFile != null && !spillFile.delete()) {
+            spillFile.deleteOnExit();
+        }
+        spillFile = null;
+        memory = new DataOutputBuffer();
+        memoryCount = 0;
+        spillCount = 0;
+    }
+}
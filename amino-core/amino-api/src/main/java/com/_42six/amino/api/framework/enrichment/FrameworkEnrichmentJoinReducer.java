@@ -1,83 +1,125 @@
 package com._42six.amino.api.framework.enrichment;
 
 import com._42six.amino.api.framework.AminoDriverUtils;
+import com._42six.amino.api.framework.DistinctWritableBuffer;
+import com._42six.amino.api.framework.FrameworkReducer;
 import com._42six.amino.common.BucketStripped;
 import com._42six.amino.data.DataLoader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Reducer;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 
+/**
+ * Joins the enrichment records to the subject buckets that share their join key, writing each distinct enrichment
+ * record of the key once per subject bucket.  Two enrichment records are the same if they serialize to the same bytes,
+ * which for a MapWritable depends on the order of its entries, so records with the same entries that were put into
+ * their MapWritables differently may both be kept.  At most enrich.records.per.key.per.dataset.max.global records of
+ * each dataset are kept, the first ones in the order of their bytes.
+ */
 public class FrameworkEnrichmentJoinReducer extends Reducer<EnrichmentJoinKey, MapWritable, BucketStripped, MapWritable> {
+
+	/** The number of bytes of enrichment records a join key can hold in memory before spilling them to disk */
+	public static final String ENRICH_JOIN_MEMORY_BYTES = "amino.enrichment.join.memory.bytes";
 	
 	private BucketStripped currentBucket = null;
 	private static final Text datasetKey = new Text(DataLoader.DATASET_NAME);
 	private static final Text enrichBucketKey = new Text(AminoDriverUtils.AMINO_ENRICHMENT_BUCKET);
 	
 	private long maxPerDataset;
+	private long memoryBudget;
+	private File spillDirectory;
 	
 	protected void setup(Context context) throws IOException, InterruptedException {
 		super.setup(context);	
-		maxPerDataset = context.getConfiguration().getLong("enrich.records.per.key.per.dataset.max.global", Long.MAX_VALUE);
+		final Configuration conf = context.getConfiguration();
+		maxPerDataset = conf.getLong("enrich.records.per.key.per.dataset.max.global", Long.MAX_VALUE);
+		memoryBudget = conf.getLong(ENRICH_JOIN_MEMORY_BYTES,
+				conf.getLong(FrameworkReducer.AMINO_REDUCER_MEMORY_BYTES, FrameworkReducer.DEFAULT_REDUCER_MEMORY_BYTES));
+		spillDirectory = new File(System.getProperty("java.io.tmpdir"));
 	}
 
 	@Override
 	public void reduce(EnrichmentJoinKey key, Iterable<MapWritable> values, Context context) throws IOException, InterruptedException {
-		Map<Writable, HashSet<MapWritable>> enrichMap = new HashMap<>();
+		// The distinct enrich records of each dataset, serialized, and spilled to disk once they take up too much memory
+		Map<Writable, DistinctWritableBuffer> enrichMap = new HashMap<>();
+		DataOutputBuffer serialized = new DataOutputBuffer();
+		long memorySize = 0;
 		BucketStripped bucket;
 
-		for (MapWritable value : values) {
-			Writable enrichBucket = value.get(enrichBucketKey);
+		try {
+			for (MapWritable value : values) {
+				Writable enrichBucket = value.get(enrichBucketKey);
 
-			//We should get all these enrichment values first (due to the custom comparator classes), need to hold them in memory
-			if (enrichBucket == null) {
-				Writable dataset = value.get(datasetKey);
-				if (!enrichMap.containsKey(dataset)) {
-					HashSet<MapWritable> enrichSet = new HashSet<>();
-					enrichSet.add(new MapWritable(value));
-					enrichMap.put(dataset,  enrichSet);
-				}
-				//Keep adding to this dataset's enrich records until we hit the max per dataset
-				else if (enrichMap.get(dataset).size() < maxPerDataset) {
-					//Had to use this constructor - spent hours trying to find this bug
-					enrichMap.get(dataset).add(new MapWritable(value));
+				//We should get all these enrichment values first (due to the custom comparator classes), need to hold them until the buckets come
+				if (enrichBucket == null) {
+					Writable dataset = value.get(datasetKey);
+					DistinctWritableBuffer enrichSet = enrichMap.get(dataset);
+					if (enrichSet == null) {
+						enrichSet = new DistinctWritableBuffer(spillDirectory);
+						enrichMap.put(dataset, enrichSet);
+					}
+
+					// The duplicates and the records past the max per dataset are dropped when the records are read back
+					serialized.reset();
+					value.write(serialized);
+					final long before = enrichSet.getMemorySize();
+					if (enrichSet.add(serialized.getData(), 0, serialized.getLength())) {
+						memorySize += enrichSet.getMemorySize() - before;
+
+						while (memorySize > memoryBudget) {
+							memorySize -= spillLargest(enrichMap);
+						}
+					}
 				}
-			}
-			else {
-				bucket = (BucketStripped)enrichBucket;
-				//Fix - no need to write the subject out, just write the enrich values with the proper buckets, then, use the enrich DataLoader
-				//The follow on job will use both DataLoaders
-				//context.write(bucket, value);
+				else {
+					bucket = (BucketStripped)enrichBucket;
+					//Fix - no need to write the subject out, just write the enrich values with the proper buckets, then, use the enrich DataLoader
+					//The follow on job will use both DataLoaders
+					//context.write(bucket, value);
 
-				//Again, the custom comparator does a secondary sort on the bucket, so we should get these in order after all the enrich values
-				if (currentBucket == null || !currentBucket.equals(bucket)) {
-					for (HashSet<MapWritable> enrichSet : enrichMap.values()) {
-						for (MapWritable val : enrichSet) {
-							MapWritable newVal = new MapWritable(val);
-							context.write(bucket, newVal);
+					//Again, the custom comparator does a secondary sort on the bucket, so we should get these in order after all the enrich values
+					if (currentBucket == null || !currentBucket.equals(bucket)) {
+						// Stream the enrich records back for each bucket, they are written out as soon as they are read
+						MapWritable enrichValue = new MapWritable();
+						for (DistinctWritableBuffer enrichSet : enrichMap.values()) {
+							Iterator<MapWritable> enrichValues = enrichSet.iterator(enrichValue, maxPerDataset);
+							while (enrichValues.hasNext()) {
+								context.write(bucket, enrichValues.next());
+							}
 						}
 					}
+					currentBucket = bucket;
 				}
-				currentBucket = bucket;
+			}
+		} finally {
+			for (DistinctWritableBuffer enrichSet : enrichMap.values()) {
+				enrichSet.close();
 			}
 		}
+	}
 
-		//I don't need this...there was never a bug - the way it works is the enrichment values are written as soon as a new Bucket appears
-		//Write out the last set
-//		if (bucket != null)
-//		{
-//			for (HashSet<MapWritable> enrichSet : enrichMap.values()) {
-//				for (MapWritable val : enrichSet)
-//				{
-//					MapWritable newVal = new MapWritable(val);
-//					context.write(bucket, newVal);
-//				}
-//			}
-//		}
+	/**
+	 * Spills the dataset holding the most memory
+	 * @return The number of bytes freed
+	 */
+	private static long spillLargest(Map<Writable, DistinctWritableBuffer> enrichMap) throws IOException {
+		DistinctWritableBuffer largest = null;
+		for (DistinctWritableBuffer enrichSet : enrichMap.values()) {
+			if (largest == null || enrichSet.getMemorySize() > largest.getMemorySize()) {
+				largest = enrichSet;
+			}
+		}
+		final long freed = largest.getMemorySize();
+		largest.spill();
+		return freed;
 	}
 }
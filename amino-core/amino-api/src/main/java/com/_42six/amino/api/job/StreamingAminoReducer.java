@@ -0,0 +1,19 @@
+package com._42six.amino.api.job;
+
+import java.io.IOException;
+
+import com._42six.amino.api.model.StreamingDatasetCollection;
+import com._42six.amino.common.AminoWritable;
+
+/**
+ * An AminoReducer that works through the rows of a bucket value one at a time, so that bucket values with more rows
+ * than fit in memory can still be reduced.  The framework calls {@link #reduce(StreamingDatasetCollection)} instead of
+ * {@link #reduce(com._42six.amino.api.model.DatasetCollection)}.
+ *
+ * The rows of a dataset come in the order they were shuffled, which for the sorted datasets is the order of their sort
+ * field.  They are not deduplicated.
+ */
+public interface StreamingAminoReducer extends AminoReducer
+{
+	public Iterable<AminoWritable> reduce(StreamingDatasetCollection datasets) throws IOException;
+}
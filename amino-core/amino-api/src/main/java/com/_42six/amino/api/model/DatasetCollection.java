@@ -1,11 +1,14 @@
 package com._42six.amino.api.model;
 
+import com._42six.amino.api.framework.AminoRecordWritable;
 import com._42six.amino.common.Bucket;
 import com._42six.amino.data.DataLoader;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.Writable;
 
+import java.io.IOException;
 import java.util.*;
 
 public class DatasetCollection {
@@ -17,39 +20,77 @@ public class DatasetCollection {
 	private Map<String, Collection<Row>> unsortedDatasets;
 
 	public DatasetCollection(Bucket key, Iterable<MapWritable> values, Map<String, Text> sortFields, Set<String> dedupDatasources) {
+		this(key, sortFields, dedupDatasources, Iterables.transform(values, new Function<MapWritable, Row>() {
+			@Override
+			public Row apply(MapWritable mw) {
+				return new Row(mw);
+			}
+		}), false);
+	}
+
+	/**
+	 * Builds the DatasetCollection from the compact records passed from the FrameworkMapper.  The shuffle has already
+	 * put the rows of the sorted datasets in order
+	 */
+	public static DatasetCollection fromRecords(Bucket key, Iterable<AminoRecordWritable> values, Map<String, Text> sortFields,
+			Set<String> dedupDatasources) {
+		return new DatasetCollection(key, sortFields, dedupDatasources, Iterables.transform(values, new Function<AminoRecordWritable, Row>() {
+			@Override
+			public Row apply(AminoRecordWritable record) {
+				try {
+					return record.toRow();
+				} catch (IOException e) {
+					throw new IllegalStateException("Could not decode record", e);
+				}
+			}
+		}), true);
+	}
+
+	/**
+	 * @param presorted Whether the rows of the sorted datasets come in order, in which case they are kept in that order
+	 */
+	DatasetCollection(Bucket key, Map<String, Text> sortFields, Set<String> dedupDatasources, Iterable<Row> rows,
+			boolean presorted) {
 		bucketKey = key;
 		
 		unsortedDatasets = new HashMap<>();
 		sortedDatasets = new HashMap<>();
 		HashMap<String, Collection<RowComparable>> sortedDatasetsTemp = new HashMap<>();
+		final String datasetNameField = DataLoader.DATASET_NAME.toString();
 		
-		//add each mapwritable to its dataset, based on the dataset key
-		for (MapWritable mw : values) {
-			Writable datasetKeyWritable = mw.get(DataLoader.DATASET_NAME);
+		//add each row to its dataset, based on the dataset key
+		for (Row row : rows) {
+			String datasetKey = row.get(datasetNameField);
 			
 			// add to default dataset key value if no dataset key exists
-			String datasetKey;
-			if (datasetKeyWritable == null) {
+			if (datasetKey == null) {
 				datasetKey = DATASET_KEY_VALUE_DEFAULT;
 			}
-			else {
-				datasetKey = datasetKeyWritable.toString();
-			}
 			
+			// if the rows are already in order, add it to its sorted dataset as it is
+			if (presorted && sortFields.containsKey(datasetKey)) {
+				Collection<Row> dataset = sortedDatasets.get(datasetKey);
+				if (dataset == null) {
+					//if we dedup this dataset, use a LinkedHashSet to keep the order, otherwise use an ArrayList
+					dataset = dedupDatasources.contains(datasetKey) ? new LinkedHashSet<Row>() : new ArrayList<Row>();
+					sortedDatasets.put(datasetKey, dataset);
+				}
+				dataset.add(row);
+			}
 			// if dataset exists in sorted collection add it to that
-			if (sortedDatasetsTemp.containsKey(datasetKey)) {
-				sortedDatasetsTemp.get(datasetKey).add(new RowComparable(mw, sortFields.get(datasetKey)));
+			else if (sortedDatasetsTemp.containsKey(datasetKey)) {
+				sortedDatasetsTemp.get(datasetKey).add(new RowComparable(row, sortFields.get(datasetKey).toString()));
 			}
 			// if dataset exists in unsorted collection, add it to that
 			else if (unsortedDatasets.containsKey(datasetKey)) {
-				unsortedDatasets.get(datasetKey).add(new Row(mw));
+				unsortedDatasets.get(datasetKey).add(row);
 			}
 			// if sortKey and sortField was passed, and it corresponds to this row, put it in the sorted datasets
 			else if (sortFields.containsKey(datasetKey)) {
 				//if we dedup this dataset, use a HashSet, otherwise use an ArrayList
 				Collection<RowComparable> newCollection = 
 						dedupDatasources.contains(datasetKey) ? new HashSet<RowComparable>() : new ArrayList<RowComparable>();
-				newCollection.add(new RowComparable(mw, sortFields.get(datasetKey)));
+				newCollection.add(new RowComparable(row, sortFields.get(datasetKey).toString()));
 				sortedDatasetsTemp.put(datasetKey, newCollection);
 			}
 			// otherwise, this must be an unsorted row, so add it to the unsorted datasets
@@ -57,7 +98,7 @@ public class DatasetCollection {
 				//if we dedup this dataset, use a HashSet, otherwise use an ArrayList
 				Collection<Row> newCollection = 
 						dedupDatasources.contains(datasetKey) ? new HashSet<Row>() : new ArrayList<Row>();
-				newCollection.add(new Row(mw));
+				newCollection.add(row);
 				unsortedDatasets.put(datasetKey, newCollection);
 			}
 		}
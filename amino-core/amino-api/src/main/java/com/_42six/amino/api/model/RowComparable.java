@@ -23,6 +23,12 @@ public class RowComparable extends Row implements Comparable<RowComparable> {
 		}
 	}
 	
+	public RowComparable(Row row, String sortFieldKey) {
+		super();
+		putAll(row);
+		this.comparable = row.get(sortFieldKey);
+	}
+	
 	@Override
 	public int compareTo(RowComparable row) {
 		// This logic ensures that when sorting, null sort fields show up at the beginning
@@ -0,0 +1,38 @@
+package com._42six.amino.api.model;
+
+import com._42six.amino.api.framework.AminoRecordWritable;
+import com._42six.amino.api.framework.RecordSchema;
+import com._42six.amino.api.framework.SpillableWritableBuffer;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * The serialized records of one dataset, read back as rows.  See {@link SpillableWritableBuffer}
+ */
+class SpillableRowBuffer extends SpillableWritableBuffer implements Iterable<Row> {
+
+	private final RecordSchema schema;
+
+	SpillableRowBuffer(RecordSchema schema, File spillDirectory) {
+		super(spillDirectory);
+		this.schema = schema;
+	}
+
+	@Override
+	public Iterator<Row> iterator() {
+		return Iterators.transform(iterator(new AminoRecordWritable(schema)), new Function<AminoRecordWritable, Row>() {
+			@Override
+			public Row apply(AminoRecordWritable record) {
+				try {
+					return record.toRow();
+				} catch (IOException e) {
+					throw new IllegalStateException("Could not decode record", e);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,128 @@
+package com._42six.amino.api.model;
+
+import com._42six.amino.api.framework.AminoRecordWritable;
+import com._42six.amino.api.framework.RecordSchema;
+import com._42six.amino.common.Bucket;
+import com._42six.amino.data.DataLoader;
+import com.google.common.collect.Iterables;
+import org.apache.hadoop.io.Text;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The rows of a bucket value, for reducers that can work through them without holding them all in memory.  The rows
+ * are kept serialized, grouped by dataset, and once they take up more than the memory budget the largest datasets are
+ * spilled to local files.  The rows come back in the order the reducer received them, so the rows of the sorted datasets
+ * are in order, but unlike the {@link DatasetCollection} they are not deduplicated.
+ */
+public class StreamingDatasetCollection implements Closeable {
+
+	private final Bucket bucketKey;
+	private final RecordSchema schema;
+	private final long memoryBudget;
+	private final File spillDirectory;
+
+	private final Map<String, SpillableRowBuffer> datasets = new HashMap<>();
+	private long memorySize = 0;
+
+	/**
+	 * @param key The bucket value the rows are for
+	 * @param schema The schema the rows were shuffled with
+	 * @param memoryBudget The number of bytes of rows to hold in memory before spilling
+	 * @param spillDirectory Where the spilled rows are written
+	 */
+	public StreamingDatasetCollection(Bucket key, RecordSchema schema, long memoryBudget, File spillDirectory) {
+		this.bucketKey = key;
+		this.schema = schema;
+		this.memoryBudget = memoryBudget;
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Adds a record to its dataset.  The record can be reused once this returns
+	 */
+	public void add(AminoRecordWritable record) throws IOException {
+		String datasetKey = record.get(DataLoader.DATASET_NAME.toString());
+		if (datasetKey == null) {
+			datasetKey = DatasetCollection.DATASET_KEY_VALUE_DEFAULT;
+		}
+
+		SpillableRowBuffer dataset = datasets.get(datasetKey);
+		if (dataset == null) {
+			dataset = new SpillableRowBuffer(schema, spillDirectory);
+			datasets.put(datasetKey, dataset);
+		}
+
+		final int before = dataset.getMemorySize();
+		dataset.add(record);
+		memorySize += dataset.getMemorySize() - before;
+
+		while (memorySize > memoryBudget) {
+			spillLargest();
+		}
+	}
+
+	private void spillLargest() throws IOException {
+		SpillableRowBuffer largest = null;
+		for (SpillableRowBuffer dataset : datasets.values()) {
+			if (!dataset.isSpilled() && (largest == null || dataset.getMemorySize() > largest.getMemorySize())) {
+				largest = dataset;
+			}
+		}
+		memorySize -= largest.getMemorySize();
+		largest.spill();
+	}
+
+	/**
+	 * @return The number of bytes of rows held in memory, not counting the spilled ones
+	 */
+	public long getMemorySize() {
+		return memorySize;
+	}
+
+	public Set<String> getDatasetNames() {
+		return Collections.unmodifiableSet(datasets.keySet());
+	}
+
+	/**
+	 * @return The rows of the dataset, which can be iterated more than once, or null if there are none
+	 */
+	public Iterable<Row> getDataset(final String datasetName) {
+		return datasets.get(datasetName);
+	}
+
+	public Iterable<Row> getAllDatasets() {
+		return Iterables.concat(datasets.values());
+	}
+
+	public Bucket getBucketKey() {
+		return bucketKey;
+	}
+
+	/**
+	 * Loads every row into a {@link DatasetCollection}, for the reducers that need it
+	 */
+	public DatasetCollection toDatasetCollection(Map<String, Text> sortFields, Set<String> dedupDatasources) {
+		return new DatasetCollection(bucketKey, sortFields, dedupDatasources, getAllDatasets(), true);
+	}
+
+	/**
+	 * Deletes the spilled rows
+	 */
+	@Override
+	public void close() throws IOException {
+		for (SpillableRowBuffer dataset : datasets.values()) {
+			dataset.close();
+		}
+		datasets.clear();
+		memorySize = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "StreamingDatasetCollection [bucketKey=" + bucketKey + ", datasets=" + datasets.keySet() + "]";
+	}
+}
@@ -0,0 +1,20 @@
+package com._42six.amino.data;
+
+import java.util.List;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * A DataLoader that knows the names of the fields its records can have.  The framework gives each of them a small id
+ * so that the names are not shuffled with every record.  Records can still have fields that are not listed, they are
+ * just shuffled with their names.
+ */
+public interface SchemaAwareDataLoader extends DataLoader {
+
+	/**
+	 * Get the names of the fields in the records, other than the buckets which are always included
+     *
+	 * @return the field names
+	 */
+	public List<Text> getFieldNames();
+}
@@ -0,0 +1,136 @@
+package com._42six.amino.api.framework;
+
+import com._42six.amino.api.model.Row;
+import com._42six.amino.data.DataLoader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AminoRecordWritableTest {
+
+    private RecordSchema schema;
+
+    @Before
+    public void setUp() {
+        schema = new RecordSchema();
+        schema.add(DataLoader.DATASET_NAME);
+        schema.add(new Text("bucket"));
+    }
+
+    private static MapWritable record() {
+        final MapWritable record = new MapWritable();
+        record.put(DataLoader.DATASET_NAME, new Text("ds"));
+        record.put(new Text("bucket"), new Text("value"));
+        // Not in the schema
+        record.put(new Text("extra"), new Text("more"));
+        // Not Text
+        record.put(new Text("count"), new IntWritable(42));
+        return record;
+    }
+
+    private static Row expectedRow() {
+        final Row row = new Row();
+        row.put(DataLoader.DATASET_NAME.toString(), "ds");
+        row.put("bucket", "value");
+        row.put("extra", "more");
+        row.put("count", "42");
+        return row;
+    }
+
+    private static byte[] write(Writable writable) throws IOException {
+        final DataOutputBuffer out = new DataOutputBuffer();
+        writable.write(out);
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    private static AminoRecordWritable read(AminoRecordWritable record, byte[] bytes) throws IOException {
+        final DataInputBuffer in = new DataInputBuffer();
+        in.reset(bytes, bytes.length);
+        record.readFields(in);
+        assertEquals("Read every byte", bytes.length, in.getPosition());
+        return record;
+    }
+
+    @Test
+    public void setWriteReadToRow() throws IOException {
+        final AminoRecordWritable record = new AminoRecordWritable(schema);
+        record.set(record());
+        assertEquals(expectedRow(), record.toRow());
+        assertEquals("more", record.get("extra"));
+        assertEquals("42", record.get("count"));
+        assertNull(record.get("missing"));
+
+        assertEquals(expectedRow(), read(new AminoRecordWritable(schema), write(record)).toRow());
+    }
+
+    @Test
+    public void rereadRecordWritesTheSameBytes() throws IOException {
+        final AminoRecordWritable record = new AminoRecordWritable(schema);
+        record.set(record());
+        final byte[] encoded = write(record);
+
+        final AminoRecordWritable reread = read(new AminoRecordWritable(schema), encoded);
+        assertArrayEquals(encoded, write(reread));
+
+        // Reusing the instance for a smaller record leaves nothing of the bigger one behind
+        final MapWritable smaller = new MapWritable();
+        smaller.put(new Text("bucket"), new Text("other"));
+        final AminoRecordWritable small = new AminoRecordWritable(schema);
+        small.set(smaller);
+        read(reread, write(small));
+        assertEquals(1, reread.toRow().size());
+        assertEquals("other", reread.get("bucket"));
+        assertArrayEquals(write(small), write(reread));
+    }
+
+    @Test
+    public void fieldsInTheSchemaAreWrittenAsIds() throws IOException {
+        final AminoRecordWritable withSchema = new AminoRecordWritable(schema);
+        withSchema.set(record());
+        final AminoRecordWritable withoutSchema = new AminoRecordWritable(new RecordSchema());
+        withoutSchema.set(record());
+
+        // Each name is written as its length and its bytes
+        final int savedNames = (1 + DataLoader.DATASET_NAME.getLength()) + (1 + "bucket".length());
+        assertEquals(write(withoutSchema).length - savedNames, write(withSchema).length);
+        assertEquals(expectedRow(), read(new AminoRecordWritable(new RecordSchema()), write(withoutSchema)).toRow());
+    }
+
+    @Test
+    public void schemaComesFromTheConfiguration() throws IOException {
+        final Configuration conf = new Configuration(false);
+        conf.set("io.serializations", "org.apache.hadoop.io.serializer.WritableSerialization");
+        schema.store(conf);
+
+        final RecordSchema loaded = RecordSchema.load(conf);
+        assertEquals(schema.size(), loaded.size());
+        assertEquals(schema.getId(new Text("bucket")), loaded.getId(new Text("bucket")));
+        assertEquals(-1, loaded.getId(new Text("extra")));
+
+        final AminoRecordWritable record = new AminoRecordWritable(schema);
+        record.set(record());
+
+        // As Hadoop creates it
+        final AminoRecordWritable configured = new AminoRecordWritable();
+        configured.setConf(conf);
+        assertSame(conf, configured.getConf());
+        assertEquals(expectedRow(), read(configured, write(record)).toRow());
+    }
+
+    @Test
+    public void noStoredSchemaMeansAnEmptyOne() throws IOException {
+        assertEquals(0, RecordSchema.load(new Configuration(false)).size());
+        assertEquals(0, RecordSchema.load(null).size());
+    }
+}
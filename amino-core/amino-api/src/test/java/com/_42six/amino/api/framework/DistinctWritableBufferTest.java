@@ -0,0 +1,112 @@
+package com._42six.amino.api.framework;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DistinctWritableBufferTest {
+
+    @Rule
+    public TemporaryFolder spillDirectory = new TemporaryFolder();
+
+    private static boolean add(DistinctWritableBuffer buffer, String value) throws IOException {
+        final DataOutputBuffer serialized = new DataOutputBuffer();
+        new Text(value).write(serialized);
+        return buffer.add(serialized.getData(), 0, serialized.getLength());
+    }
+
+    private static List<String> read(DistinctWritableBuffer buffer, long limit) {
+        final List<String> values = new ArrayList<>();
+        final Iterator<Text> texts = buffer.iterator(new Text(), limit);
+        while (texts.hasNext()) {
+            values.add(texts.next().toString());
+        }
+        return values;
+    }
+
+    private int spillFiles() {
+        return spillDirectory.getRoot().list().length;
+    }
+
+    @Test
+    public void dropsDuplicatesInMemory() throws IOException {
+        try (DistinctWritableBuffer buffer = new DistinctWritableBuffer(spillDirectory.getRoot())) {
+            assertTrue(add(buffer, "b"));
+            assertTrue(add(buffer, "a"));
+            assertFalse(add(buffer, "b"));
+
+            // Each Text is its length and one byte
+            assertEquals(2 * (2 + DistinctWritableBuffer.MEMORY_OVERHEAD_BYTES), buffer.getMemorySize());
+            assertEquals(Arrays.asList("a", "b"), read(buffer, Long.MAX_VALUE));
+            assertEquals(0, spillFiles());
+        }
+    }
+
+    @Test
+    public void dropsDuplicatesAcrossRuns() throws IOException {
+        try (DistinctWritableBuffer buffer = new DistinctWritableBuffer(spillDirectory.getRoot())) {
+            add(buffer, "c");
+            add(buffer, "a");
+            buffer.spill();
+            assertEquals(0, buffer.getMemorySize());
+            assertEquals(1, buffer.getRunCount());
+
+            // Only spotted as duplicates when read back
+            assertTrue(add(buffer, "a"));
+            add(buffer, "b");
+            buffer.spill();
+            add(buffer, "c");
+            add(buffer, "d");
+            assertEquals(2, spillFiles());
+
+            assertEquals(Arrays.asList("a", "b", "c", "d"), read(buffer, Long.MAX_VALUE));
+            // Again, and with a limit
+            assertEquals(Arrays.asList("a", "b", "c", "d"), read(buffer, Long.MAX_VALUE));
+            assertEquals(Arrays.asList("a", "b"), read(buffer, 2));
+        }
+    }
+
+    @Test
+    public void mergesRunsPastTheMaximum() throws IOException {
+        final List<String> expected = new ArrayList<>();
+        try (DistinctWritableBuffer buffer = new DistinctWritableBuffer(spillDirectory.getRoot())) {
+            for (int i = 0; i < 3 * DistinctWritableBuffer.MAX_RUNS; i++) {
+                final String value = String.format("%03d", i);
+                add(buffer, value);
+                add(buffer, String.format("%03d", i / 2));
+                buffer.spill();
+                expected.add(value);
+            }
+            assertTrue(buffer.getRunCount() <= DistinctWritableBuffer.MAX_RUNS);
+            assertEquals(buffer.getRunCount(), spillFiles());
+            assertEquals(expected, read(buffer, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void closeDeletesTheRuns() throws IOException {
+        final DistinctWritableBuffer buffer = new DistinctWritableBuffer(spillDirectory.getRoot());
+        add(buffer, "a");
+        buffer.spill();
+        add(buffer, "b");
+        buffer.spill();
+
+        // A reader left part way through is closed too
+        buffer.iterator(new Text(), Long.MAX_VALUE).next();
+        buffer.close();
+        assertEquals(0, spillFiles());
+        assertTrue(buffer.isEmpty());
+        assertEquals(Collections.<String>emptyList(), read(buffer, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,93 @@
+package com._42six.amino.api.framework;
+
+import com._42six.amino.api.job.AminoEnrichmentJob;
+import com._42six.amino.api.job.AminoJob;
+import com._42six.amino.data.DataLoader;
+import com._42six.amino.data.EnrichWorker;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameworkDriverTest {
+
+    abstract static class LoaderA implements DataLoader {
+    }
+
+    abstract static class LoaderB implements DataLoader {
+    }
+
+    static class TestEnrichmentJob extends FrameworkReducerTest.TestJob implements AminoEnrichmentJob {
+        TestEnrichmentJob() {
+            super(LoaderA.class, 1, FrameworkReducerTest.RowCountReducer.class);
+        }
+
+        @Override
+        public Iterable<Class<? extends DataLoader>> getEnrichmentDataLoaders() {
+            return Collections.<Class<? extends DataLoader>>singletonList(LoaderB.class);
+        }
+
+        @Override
+        public Class<? extends EnrichWorker> getEnrichWorker() {
+            return null;
+        }
+    }
+
+    private static AminoJob job(Class<? extends DataLoader> dataLoaderClass, int domainId) {
+        return new FrameworkReducerTest.TestJob(dataLoaderClass, domainId, FrameworkReducerTest.RowCountReducer.class);
+    }
+
+    private Configuration conf;
+
+    @Before
+    public void setUp() {
+        conf = new Configuration(false);
+        conf.setBoolean(FrameworkDriver.AMINO_FUSE_JOBS, true);
+    }
+
+    @Test
+    public void everyJobIsAloneUnlessFusing() {
+        conf.setBoolean(FrameworkDriver.AMINO_FUSE_JOBS, false);
+        final AminoJob first = job(LoaderA.class, 1);
+        final AminoJob second = job(LoaderA.class, 1);
+
+        final List<List<AminoJob>> groups = FrameworkDriver.groupJobs(Arrays.asList(first, second), conf);
+        assertEquals(Arrays.asList(Collections.singletonList(first), Collections.singletonList(second)), groups);
+    }
+
+    @Test
+    public void jobsWithTheSameLoaderAndDomainAreFused() {
+        final AminoJob a1 = job(LoaderA.class, 1);
+        final AminoJob b1 = job(LoaderB.class, 1);
+        final AminoJob a1Again = job(LoaderA.class, 1);
+
+        // In the order that the first job of each group was loaded
+        final List<List<AminoJob>> groups = FrameworkDriver.groupJobs(Arrays.asList(a1, b1, a1Again), conf);
+        assertEquals(Arrays.asList(Arrays.asList(a1, a1Again), Collections.singletonList(b1)), groups);
+    }
+
+    @Test
+    public void jobsInDifferentDomainsAreNotFused() {
+        final AminoJob domain1 = job(LoaderA.class, 1);
+        final AminoJob domain2 = job(LoaderA.class, 2);
+
+        final List<List<AminoJob>> groups = FrameworkDriver.groupJobs(Arrays.asList(domain1, domain2), conf);
+        assertEquals(Arrays.asList(Collections.singletonList(domain1), Collections.singletonList(domain2)), groups);
+    }
+
+    @Test
+    public void enrichmentJobsAreNeverFused() {
+        final AminoJob job = job(LoaderA.class, 1);
+        final AminoJob enrichment = new TestEnrichmentJob();
+        final AminoJob otherEnrichment = new TestEnrichmentJob();
+
+        final List<List<AminoJob>> groups = FrameworkDriver.groupJobs(Arrays.asList(enrichment, job, otherEnrichment), conf);
+        assertEquals(Arrays.asList(Collections.singletonList(enrichment), Collections.singletonList(job),
+                Collections.singletonList(otherEnrichment)), groups);
+    }
+}
@@ -0,0 +1,197 @@
+package com._42six.amino.api.framework;
+
+import com._42six.amino.api.job.AminoJob;
+import com._42six.amino.api.job.AminoReducer;
+import com._42six.amino.api.job.JobOutputEstimate;
+import com._42six.amino.api.job.StreamingAminoReducer;
+import com._42six.amino.api.model.DatasetCollection;
+import com._42six.amino.api.model.Row;
+import com._42six.amino.api.model.StreamingDatasetCollection;
+import com._42six.amino.common.AminoWritable;
+import com._42six.amino.common.Bucket;
+import com._42six.amino.common.Feature;
+import com._42six.amino.common.NominalFeatureFact;
+import com._42six.amino.data.DataLoader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FrameworkReducerTest {
+
+    /** Emits the dataset and value of every row, in the order the rows come */
+    public static class RowEchoReducer implements StreamingAminoReducer {
+        @Override
+        public Iterable<AminoWritable> reduce(StreamingDatasetCollection datasets) throws IOException {
+            final List<AminoWritable> results = new ArrayList<>();
+            for (String dataset : new TreeSet<>(datasets.getDatasetNames())) {
+                for (Row row : datasets.getDataset(dataset)) {
+                    results.add(new AminoWritable(new Feature(dataset), new NominalFeatureFact(row.get("value"))));
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public Iterable<AminoWritable> reduce(DatasetCollection datasets) {
+            throw new UnsupportedOperationException("Streaming only");
+        }
+
+        @Override
+        public void setConfig(Configuration config) {
+        }
+    }
+
+    /** Emits the number of rows, from the rows loaded into memory */
+    public static class RowCountReducer implements AminoReducer {
+        @Override
+        public Iterable<AminoWritable> reduce(DatasetCollection datasets) {
+            return Collections.singletonList(new AminoWritable(new Feature("count"),
+                    new NominalFeatureFact(String.valueOf(datasets.getAllDatasets().size()))));
+        }
+
+        @Override
+        public void setConfig(Configuration config) {
+        }
+    }
+
+    /** A job made of the given reducers */
+    static class TestJob implements AminoJob {
+        private final Class<? extends DataLoader> dataLoaderClass;
+        private final int domainId;
+        private final List<Class<? extends AminoReducer>> reducers;
+
+        @SafeVarargs
+        TestJob(Class<? extends AminoReducer>... reducers) {
+            this(null, 1, reducers);
+        }
+
+        @SafeVarargs
+        TestJob(Class<? extends DataLoader> dataLoaderClass, int domainId, Class<? extends AminoReducer>... reducers) {
+            this.dataLoaderClass = dataLoaderClass;
+            this.domainId = domainId;
+            this.reducers = Arrays.asList(reducers);
+        }
+
+        @Override
+        public JobOutputEstimate getJobEstimate() {
+            return JobOutputEstimate.SMALL;
+        }
+
+        @Override
+        public String getJobName() {
+            return "test";
+        }
+
+        @Override
+        public Class<? extends DataLoader> getDataLoaderClass() {
+            return dataLoaderClass;
+        }
+
+        @Override
+        public Iterable<Class<? extends AminoReducer>> getAminoReducerClasses() {
+            return reducers;
+        }
+
+        @Override
+        public Integer getAminoDomainID() {
+            return domainId;
+        }
+
+        @Override
+        public String getAminoDomainName() {
+            return "test";
+        }
+
+        @Override
+        public String getAminoDomainDescription() {
+            return "test";
+        }
+
+        @Override
+        public void setConfig(Configuration config) {
+        }
+    }
+
+    /** Keeps each result as "job:feature=fact" */
+    static class RecordingOutput implements FrameworkReducer.Output {
+        final List<String> results = new ArrayList<>();
+
+        @Override
+        public void write(int job, Bucket key, AminoWritable result) {
+            results.add(job + ":" + result.getFeature().getName() + "=" + result.getFeatureFact().getFact());
+        }
+    }
+
+    private RecordSchema schema;
+    private Configuration config;
+    private Bucket bucket;
+
+    @Before
+    public void setUp() throws IOException {
+        schema = new RecordSchema();
+        schema.add(DataLoader.DATASET_NAME);
+        schema.add(new Text("value"));
+        config = new Configuration(false);
+        config.set("io.serializations", "org.apache.hadoop.io.serializer.WritableSerialization");
+        schema.store(config);
+        bucket = new Bucket("source", "name", "value", "display", "U", "U");
+    }
+
+    static List<AminoRecordWritable> records(RecordSchema schema, String dataset, int count) throws IOException {
+        final List<AminoRecordWritable> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final MapWritable fields = new MapWritable();
+            fields.put(DataLoader.DATASET_NAME, new Text(dataset));
+            fields.put(new Text("value"), new Text(String.format("%04d", i)));
+            final AminoRecordWritable record = new AminoRecordWritable(schema);
+            record.set(fields);
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void streamingReducerSeesEveryRowInOrderWithATinyBudget() throws Exception {
+        config.setLong(FrameworkReducer.AMINO_REDUCER_MEMORY_BYTES, 1);
+        final FrameworkReducer reducer = new FrameworkReducer();
+        reducer.configure(config, Collections.<AminoJob>singletonList(new TestJob(RowEchoReducer.class, RowCountReducer.class)));
+
+        final List<AminoRecordWritable> values = new ArrayList<>();
+        values.addAll(records(schema, "a", 300));
+        values.addAll(records(schema, "b", 200));
+        final RecordingOutput output = new RecordingOutput();
+        reducer.reduce(bucket, values, output);
+
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            expected.add(String.format("0:a=%04d", i));
+        }
+        for (int i = 0; i < 200; i++) {
+            expected.add(String.format("0:b=%04d", i));
+        }
+        expected.add("0:count=500");
+        assertEquals(expected, output.results);
+    }
+
+    @Test
+    public void fusedJobsWriteToTheirOwnOutputs() throws Exception {
+        final FrameworkReducer reducer = new FrameworkReducer();
+        reducer.configure(config, Arrays.<AminoJob>asList(new TestJob(RowCountReducer.class),
+                new TestJob(RowEchoReducer.class, RowCountReducer.class)));
+
+        final RecordingOutput output = new RecordingOutput();
+        reducer.reduce(bucket, records(schema, "a", 2), output);
+
+        // Each job's results carry its index, which picks its named output
+        assertEquals(Arrays.asList("0:count=2", "1:a=0000", "1:a=0001", "1:count=2"), output.results);
+        assertEquals("job0", AminoDriverUtils.getFusedOutputName(0));
+        assertEquals("job1", AminoDriverUtils.getFusedOutputName(1));
+    }
+}
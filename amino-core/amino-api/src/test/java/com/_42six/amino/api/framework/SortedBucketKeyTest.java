@@ -0,0 +1,123 @@
+package com._42six.amino.api.framework;
+
+import com._42six.amino.api.model.DatasetCollection;
+import com._42six.amino.common.BucketStripped;
+import com._42six.amino.data.DataLoader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SortedBucketKeyTest {
+
+    private static BucketStripped bucket(String value) {
+        return new BucketStripped(value.hashCode(), new IntWritable(1), new Text(value));
+    }
+
+    private static SortedBucketKey unsorted(String bucket) {
+        return new SortedBucketKey(bucket(bucket));
+    }
+
+    private static SortedBucketKey sorted(String bucket, String dataset, String sortValue) {
+        return new SortedBucketKey(bucket(bucket), dataset, (sortValue == null) ? null : new Text(sortValue));
+    }
+
+    @Test
+    public void sortsWithinABucket() {
+        // In the order the reducer should see them
+        final List<SortedBucketKey> expected = Arrays.asList(
+                unsorted("a"),
+                // Rows without a sort value come first in their dataset
+                sorted("a", "ds1", null),
+                sorted("a", "ds1", "1"),
+                sorted("a", "ds1", "2"),
+                // Each sorted dataset is kept together
+                sorted("a", "ds2", null),
+                sorted("a", "ds2", "0"),
+                sorted("a", "ds2", "3"),
+                unsorted("b"),
+                sorted("b", "ds1", "0"));
+
+        final List<SortedBucketKey> keys = new ArrayList<>(expected);
+        Collections.reverse(keys);
+        Collections.shuffle(keys.subList(0, 4));
+        Collections.sort(keys);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), 0, expected.get(i).compareTo(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void unsortedRecordsComeBeforeSortedOnes() {
+        // Whatever the dataset is called
+        assertTrue(unsorted("a").compareTo(sorted("a", "", null)) < 0);
+        assertTrue(sorted("a", "", null).compareTo(unsorted("a")) > 0);
+        assertEquals(0, unsorted("a").compareTo(unsorted("a")));
+        assertEquals(unsorted("a"), unsorted("a"));
+    }
+
+    @Test
+    public void sortedDatasetsAreKeptApart() {
+        // A row without a sort value in ds2 still comes after every row of ds1
+        assertTrue(sorted("a", "ds1", "z").compareTo(sorted("a", "ds2", null)) < 0);
+        assertTrue(sorted("a", "ds2", "a").compareTo(sorted("a", "ds1", "z")) > 0);
+        assertFalse(sorted("a", "ds1", "1").equals(sorted("a", "ds2", "1")));
+    }
+
+    @Test
+    public void missingSortValueComesFirst() {
+        // Even before an empty sort value
+        assertTrue(sorted("a", "ds1", null).compareTo(sorted("a", "ds1", "")) < 0);
+        assertTrue(sorted("a", "ds1", "").compareTo(sorted("a", "ds1", null)) > 0);
+    }
+
+    @Test
+    public void groupsAndPartitionsOnTheBucketAlone() {
+        final BucketGroupingComparator grouping = new BucketGroupingComparator();
+        final BucketPartitioner partitioner = new BucketPartitioner();
+        final List<SortedBucketKey> sameBucket = Arrays.asList(unsorted("a"), sorted("a", "ds1", null),
+                sorted("a", "ds1", "1"), sorted("a", "ds2", "9"));
+
+        for (SortedBucketKey key : sameBucket) {
+            assertEquals(0, grouping.compare(sameBucket.get(0), key));
+            assertEquals(sameBucket.get(0).hashCode(), key.hashCode());
+            for (int partitions = 1; partitions < 10; partitions++) {
+                assertEquals(partitioner.getPartition(sameBucket.get(0), null, partitions), partitioner.getPartition(key, null, partitions));
+            }
+        }
+        assertTrue(grouping.compare(sorted("a", "ds2", "9"), unsorted("b")) < 0);
+        assertTrue(grouping.compare(unsorted("b"), sorted("a", "ds1", null)) > 0);
+    }
+
+    @Test
+    public void partitionIsNeverNegative() {
+        final SortedBucketKey key = new SortedBucketKey(new BucketStripped(Integer.MIN_VALUE, new IntWritable(1), new Text("a")));
+        final int partition = new BucketPartitioner().getPartition(key, null, 7);
+        assertTrue(partition >= 0 && partition < 7);
+    }
+
+    @Test
+    public void recordsWithoutADatasetUseTheDefaultDatasetsSortField() {
+        final MapWritable record = new MapWritable();
+        record.put(new Text("time"), new Text("1"));
+        assertEquals(DatasetCollection.DATASET_KEY_VALUE_DEFAULT, FrameworkMapper.getDatasetName(record));
+
+        record.put(DataLoader.DATASET_NAME, new Text("ds1"));
+        assertEquals("ds1", FrameworkMapper.getDatasetName(record));
+
+        final Configuration conf = new Configuration(false);
+        conf.set(AminoDriverUtils.AMINO_SORT_DATASOURCE, DatasetCollection.DATASET_KEY_VALUE_DEFAULT);
+        conf.set(AminoDriverUtils.AMINO_SORT_FIELD, "time");
+        final Map<String, Text> sortFields = AminoDriverUtils.getSortFields(conf);
+        assertEquals(new Text("time"), sortFields.get(FrameworkMapper.getDatasetName(new MapWritable())));
+    }
+}
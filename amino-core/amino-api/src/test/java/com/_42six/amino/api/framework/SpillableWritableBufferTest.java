@@ -0,0 +1,115 @@
+package com._42six.amino.api.framework;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpillableWritableBufferTest {
+
+    @Rule
+    public TemporaryFolder spillDirectory = new TemporaryFolder();
+
+    private static List<String> read(SpillableWritableBuffer buffer) {
+        final List<String> values = new ArrayList<>();
+        final Iterator<Text> texts = buffer.iterator(new Text());
+        while (texts.hasNext()) {
+            values.add(texts.next().toString());
+        }
+        return values;
+    }
+
+    private int spillFiles() {
+        return spillDirectory.getRoot().list().length;
+    }
+
+    @Test
+    public void countsTheBytesInMemory() throws IOException {
+        try (SpillableWritableBuffer buffer = new SpillableWritableBuffer(spillDirectory.getRoot())) {
+            buffer.add(new Text("one"));
+            final DataOutputBuffer serialized = new DataOutputBuffer();
+            new Text("three").write(serialized);
+            buffer.add(serialized.getData(), 0, serialized.getLength());
+
+            assertEquals(4 + serialized.getLength(), buffer.getMemorySize());
+            assertEquals(2, buffer.size());
+            assertFalse(buffer.isSpilled());
+            assertEquals(Arrays.asList("one", "three"), read(buffer));
+        }
+    }
+
+    @Test
+    public void readsBackInOrderAfterSpilling() throws IOException {
+        try (SpillableWritableBuffer buffer = new SpillableWritableBuffer(spillDirectory.getRoot())) {
+            buffer.add(new Text("one"));
+            buffer.add(new Text("two"));
+            buffer.spill();
+            assertTrue(buffer.isSpilled());
+            assertEquals(0, buffer.getMemorySize());
+            assertEquals(1, spillFiles());
+
+            // Spilling again does nothing, and later Writables go straight to the file
+            buffer.spill();
+            buffer.add(new Text("three"));
+            assertEquals(0, buffer.getMemorySize());
+            assertEquals(1, spillFiles());
+
+            assertEquals(3, buffer.size());
+            assertEquals(Arrays.asList("one", "two", "three"), read(buffer));
+            assertEquals(Arrays.asList("one", "two", "three"), read(buffer));
+        }
+    }
+
+    @Test
+    public void spillingFreesTheMemory() throws IOException {
+        final int emptyCapacity = new DataOutputBuffer().getData().length;
+        try (SpillableWritableBuffer buffer = new SpillableWritableBuffer(spillDirectory.getRoot())) {
+            for (int i = 0; i < 1000; i++) {
+                buffer.add(new Text("value" + i));
+            }
+            assertTrue(buffer.getMemoryCapacity() >= buffer.getMemorySize());
+            buffer.spill();
+
+            // The array that held the spilled Writables is not kept
+            assertEquals(emptyCapacity, buffer.getMemoryCapacity());
+            buffer.add(new Text("more"));
+            assertEquals(emptyCapacity, buffer.getMemoryCapacity());
+            assertEquals(1001, read(buffer).size());
+        }
+    }
+
+    @Test
+    public void closeFreesTheMemory() throws IOException {
+        final SpillableWritableBuffer buffer = new SpillableWritableBuffer(spillDirectory.getRoot());
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(new Text("value" + i));
+        }
+        buffer.close();
+        assertEquals(new DataOutputBuffer().getData().length, buffer.getMemoryCapacity());
+        assertEquals(0, buffer.getMemorySize());
+    }
+
+    @Test
+    public void closeDeletesTheSpillFile() throws IOException {
+        final SpillableWritableBuffer buffer = new SpillableWritableBuffer(spillDirectory.getRoot());
+        buffer.add(new Text("one"));
+        buffer.add(new Text("two"));
+        buffer.spill();
+
+        // A reader left part way through is closed too
+        buffer.iterator(new Text()).next();
+        buffer.close();
+        assertEquals(0, spillFiles());
+        assertEquals(0, buffer.size());
+        assertFalse(buffer.isSpilled());
+    }
+}
@@ -0,0 +1,100 @@
+package com._42six.amino.api.model;
+
+import com._42six.amino.api.framework.RecordSchema;
+import com._42six.amino.data.DataLoader;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpillableRowBufferTest {
+
+	@Rule
+	public TemporaryFolder spillDirectory = new TemporaryFolder();
+
+	private RecordSchema schema;
+
+	@Before
+	public void setUp() {
+		schema = new RecordSchema();
+		schema.add(DataLoader.DATASET_NAME);
+		schema.add(new Text("value"));
+	}
+
+	private static List<Row> rows(Iterable<Row> buffer) {
+		final List<Row> rows = new ArrayList<>();
+		for (Row row : buffer) {
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static Row row(String value) {
+		final Row row = new Row();
+		row.put(DataLoader.DATASET_NAME.toString(), "ds");
+		row.put("value", value);
+		return row;
+	}
+
+	@Test
+	public void readsRowsBackBeforeAndAfterSpilling() throws IOException {
+		try (SpillableRowBuffer buffer = new SpillableRowBuffer(schema, spillDirectory.getRoot())) {
+			buffer.add(StreamingDatasetCollectionTest.record(schema, "ds", "one"));
+			buffer.add(StreamingDatasetCollectionTest.record(schema, "ds", "two"));
+			assertFalse(buffer.isSpilled());
+			assertTrue(buffer.getMemorySize() > 0);
+			assertEquals(2, rows(buffer).size());
+			assertEquals(row("one"), rows(buffer).get(0));
+
+			buffer.spill();
+			assertTrue(buffer.isSpilled());
+			assertEquals(0, buffer.getMemorySize());
+			buffer.add(StreamingDatasetCollectionTest.record(schema, "ds", "three"));
+
+			assertEquals(3, buffer.size());
+			final List<Row> rows = rows(buffer);
+			assertEquals(row("one"), rows.get(0));
+			assertEquals(row("two"), rows.get(1));
+			assertEquals(row("three"), rows.get(2));
+			// Each row is its own Row, and reading again gives the same rows
+			assertEquals(rows, rows(buffer));
+		}
+	}
+
+	@Test
+	public void iteratorsAreIndependent() throws IOException {
+		try (SpillableRowBuffer buffer = new SpillableRowBuffer(schema, spillDirectory.getRoot())) {
+			buffer.add(StreamingDatasetCollectionTest.record(schema, "ds", "one"));
+			buffer.add(StreamingDatasetCollectionTest.record(schema, "ds", "two"));
+			buffer.spill();
+
+			final Iterator<Row> first = buffer.iterator();
+			final Iterator<Row> second = buffer.iterator();
+			assertEquals(row("one"), first.next());
+			assertEquals(row("one"), second.next());
+			assertEquals(row("two"), first.next());
+			assertFalse(first.hasNext());
+			assertEquals(row("two"), second.next());
+		}
+	}
+
+	@Test
+	public void closeDeletesTheSpillFile() throws IOException {
+		final SpillableRowBuffer buffer = new SpillableRowBuffer(schema, spillDirectory.getRoot());
+		buffer.add(StreamingDatasetCollectionTest.record(schema, "ds", "one"));
+		buffer.spill();
+		assertEquals(1, spillDirectory.getRoot().list().length);
+
+		buffer.close();
+		assertEquals(0, spillDirectory.getRoot().list().length);
+		assertEquals(0, buffer.size());
+	}
+}
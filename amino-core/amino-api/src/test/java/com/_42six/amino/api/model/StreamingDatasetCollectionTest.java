@@ -0,0 +1,167 @@
+package com._42six.amino.api.model;
+
+import com._42six.amino.api.framework.AminoRecordWritable;
+import com._42six.amino.api.framework.RecordSchema;
+import com._42six.amino.common.Bucket;
+import com._42six.amino.data.DataLoader;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreamingDatasetCollectionTest {
+
+	@Rule
+	public TemporaryFolder spillDirectory = new TemporaryFolder();
+
+	private RecordSchema schema;
+	private Bucket bucket;
+
+	@Before
+	public void setUp() throws IOException {
+		schema = new RecordSchema();
+		schema.add(DataLoader.DATASET_NAME);
+		schema.add(new Text("value"));
+		bucket = new Bucket("source", "name", "value", "display", "U", "U");
+	}
+
+	static AminoRecordWritable record(RecordSchema schema, String dataset, String value) throws IOException {
+		final MapWritable fields = new MapWritable();
+		fields.put(DataLoader.DATASET_NAME, new Text(dataset));
+		fields.put(new Text("value"), new Text(value));
+		final AminoRecordWritable record = new AminoRecordWritable(schema);
+		record.set(fields);
+		return record;
+	}
+
+	private int encodedSize(String dataset, String value) throws IOException {
+		final DataOutputBuffer out = new DataOutputBuffer();
+		record(schema, dataset, value).write(out);
+		return out.getLength();
+	}
+
+	private StreamingDatasetCollection collection(long memoryBudget) {
+		return new StreamingDatasetCollection(bucket, schema, memoryBudget, spillDirectory.getRoot());
+	}
+
+	private static List<String> values(Iterable<Row> rows) {
+		final List<String> values = new ArrayList<>();
+		for (Row row : rows) {
+			values.add(row.get("value"));
+		}
+		return values;
+	}
+
+	private int spillFiles() {
+		return spillDirectory.getRoot().list().length;
+	}
+
+	@Test
+	public void countsTheSerializedBytes() throws IOException {
+		try (StreamingDatasetCollection rows = collection(Long.MAX_VALUE)) {
+			rows.add(record(schema, "a", "one"));
+			rows.add(record(schema, "b", "two"));
+			rows.add(record(schema, "a", "three"));
+
+			assertEquals(encodedSize("a", "one") + encodedSize("b", "two") + encodedSize("a", "three"), rows.getMemorySize());
+			assertEquals(0, spillFiles());
+			assertEquals(Collections.singletonList("two"), values(rows.getDataset("b")));
+		}
+	}
+
+	@Test
+	public void spillsTheLargestDataset() throws IOException {
+		// Every record is the same size
+		final int recordSize = encodedSize("big", "v0");
+		assertEquals(recordSize, encodedSize("sml", "v0"));
+
+		try (StreamingDatasetCollection rows = collection(5 * recordSize)) {
+			for (int i = 0; i < 4; i++) {
+				rows.add(record(schema, "big", "v" + i));
+			}
+			rows.add(record(schema, "sml", "v0"));
+			assertEquals(5 * recordSize, rows.getMemorySize());
+			assertEquals(0, spillFiles());
+
+			// Over budget, so the five records of "big" go to disk and only "sml" is left in memory
+			rows.add(record(schema, "big", "v4"));
+			assertEquals(recordSize, rows.getMemorySize());
+			assertEquals(1, spillFiles());
+
+			// Records added after the spill go to the file too
+			rows.add(record(schema, "big", "v5"));
+			assertEquals(recordSize, rows.getMemorySize());
+
+			assertEquals(Arrays.asList("v0", "v1", "v2", "v3", "v4", "v5"), values(rows.getDataset("big")));
+			assertEquals(Collections.singletonList("v0"), values(rows.getDataset("sml")));
+		}
+	}
+
+	@Test
+	public void tinyBudgetKeepsEveryRowInOrder() throws IOException {
+		final List<String> expectedA = new ArrayList<>();
+		final List<String> expectedB = new ArrayList<>();
+		try (StreamingDatasetCollection rows = collection(1)) {
+			for (int i = 0; i < 500; i++) {
+				final String value = String.format("%05d", i);
+				if (i % 3 == 0) {
+					rows.add(record(schema, "a", value));
+					expectedA.add(value);
+				} else {
+					rows.add(record(schema, "b", value));
+					expectedB.add(value);
+				}
+			}
+			assertEquals(0, rows.getMemorySize());
+			assertEquals(2, spillFiles());
+
+			// The rows can be read more than once
+			for (int pass = 0; pass < 2; pass++) {
+				assertEquals(expectedA, values(rows.getDataset("a")));
+				assertEquals(expectedB, values(rows.getDataset("b")));
+				assertEquals(500, values(rows.getAllDatasets()).size());
+			}
+
+			final DatasetCollection loaded = rows.toDatasetCollection(Collections.<String, Text>emptyMap(), Collections.<String>emptySet());
+			assertEquals(500, loaded.getAllDatasets().size());
+		}
+	}
+
+	@Test
+	public void closeDeletesTheSpillFiles() throws IOException {
+		final StreamingDatasetCollection rows = collection(1);
+		rows.add(record(schema, "a", "one"));
+		rows.add(record(schema, "b", "two"));
+		assertEquals(2, spillFiles());
+
+		// Even with a reader left open part way through
+		rows.getDataset("a").iterator().next();
+		rows.close();
+		assertEquals(0, spillFiles());
+		assertTrue(rows.getDatasetNames().isEmpty());
+	}
+
+	@Test
+	public void recordsWithoutADatasetGoToTheDefault() throws IOException {
+		final MapWritable fields = new MapWritable();
+		fields.put(new Text("value"), new Text("orphan"));
+		final AminoRecordWritable record = new AminoRecordWritable(schema);
+		record.set(fields);
+
+		try (StreamingDatasetCollection rows = collection(Long.MAX_VALUE)) {
+			rows.add(record);
+			assertEquals(Collections.singleton(DatasetCollection.DATASET_KEY_VALUE_DEFAULT), rows.getDatasetNames());
+		}
+	}
+}
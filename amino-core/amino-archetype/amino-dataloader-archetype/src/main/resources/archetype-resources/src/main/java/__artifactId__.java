@@ -18,10 +18,10 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
 import com._42six.amino.common.AminoConfiguration;
-import com._42six.amino.data.DataLoader;
+import com._42six.amino.data.SchemaAwareDataLoader;
 import com._42six.amino.data.kaggle.KaggleLoader;
 
-public class ${artifactId} implements DataLoader {
+public class ${artifactId} implements SchemaAwareDataLoader {
 	
 	@SuppressWarnings("rawtypes")
 	private RecordReader reader;
@@ -75,6 +75,12 @@ public class ${artifactId} implements DataLoader {
 		return bucketAndDisplayNames;
 	}
 
+	@Override
+	public List<Text> getFieldNames() {
+		// TODO: Return the names of any fields put in the MapWritable that are not buckets
+		return new LinkedList<Text>();
+	}
+
 	@Override
 	public String getDataSourceName() {
 		//TODO: Return the name of the datasource
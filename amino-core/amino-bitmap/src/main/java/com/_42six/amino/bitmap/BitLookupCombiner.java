@@ -4,15 +4,17 @@ import org.apache.hadoop.mapreduce.Reducer;
 
 import java.io.IOException;
 
-public class BitLookupCombiner extends Reducer<BitLookupKey, BitmapValue, BitLookupKey, BitmapValue> {
-    @Override
-    protected void reduce(BitLookupKey key, Iterable<BitmapValue> values, Context context) throws IOException, InterruptedException {
-        final BitmapValue combinedValue = new BitmapValue();
+public class BitLookupCombiner extends Reducer<BitLookupKey, BitmapRunValue, BitLookupKey, BitmapRunValue> {
+    private final BitmapRunValue.Merger merger = new BitmapRunValue.Merger();
+    private final BitmapRunValue combinedValue = new BitmapRunValue();
 
-        for (BitmapValue value : values) {
-            combinedValue.merge(value);
+    @Override
+    protected void reduce(BitLookupKey key, Iterable<BitmapRunValue> values, Context context) throws IOException, InterruptedException {
+        for (BitmapRunValue value : values) {
+            merger.add(value);
         }
 
+        merger.mergeInto(combinedValue);
         context.write(key, combinedValue);
     }
 }
@@ -2,23 +2,27 @@ package com._42six.amino.bitmap;
 
 import com._42six.amino.common.*;
 import com._42six.amino.common.index.BitmapIndex;
+import com._42six.amino.common.index.FeatureFactHasher;
 import com._42six.amino.common.service.datacache.BucketCache;
 import com._42six.amino.common.translator.FeatureFactTranslatorImpl;
 import org.apache.hadoop.mapreduce.Mapper;
 
 import java.io.IOException;
 
-public class BitLookupMapper extends Mapper<BucketStripped, AminoWritable, BitLookupKey, BitmapValue> {
+public class BitLookupMapper extends Mapper<BucketStripped, AminoWritable, BitLookupKey, BitmapRunValue> {
 
     private BucketCache bucketCache;
     private int numberOfHashes = 1;
     private final FeatureFactTranslatorImpl translator = new FeatureFactTranslatorImpl();
+    private final BitmapRunValue bitmapValue = new BitmapRunValue();
+    private FeatureFactHasher hasher;
     
     @Override
 	protected void setup(Context context) throws IOException, InterruptedException {
     	super.setup(context);
         numberOfHashes = context.getConfiguration().getInt(AminoConfiguration.NUM_HASHES, 1);
     	bucketCache = new BucketCache(context.getConfiguration());
+        hasher = new FeatureFactHasher(numberOfHashes);
     }
 
     @Override
@@ -28,12 +32,12 @@ public class BitLookupMapper extends Mapper<BucketStripped, AminoWritable, BitLo
         final FeatureFact featureFact = aw.getFeatureFact();
         final int featureIndex = BitmapIndex.getFeatureIndex(feature);
 
-        final BitmapValue bitmapValue = new BitmapValue();
         final BitLookupKey bitLookupKey = new BitLookupKey(featureIndex, featureFact.toText(translator).toString(), bucket.getBucketVisibility().toString());
+        final int[] featureFactIndexes = hasher.getFeatureFactIndexes(bucket, feature, featureFact);
 
         for (int i = 0; i < numberOfHashes; i++)
         {
-            bitmapValue.setIndex(BitmapIndex.getFeatureFactIndex(bucket, feature, featureFact, i));
+            bitmapValue.setIndex(featureFactIndexes[i]);
             bitLookupKey.setSalt(i);
 
             context.write(bitLookupKey, bitmapValue);
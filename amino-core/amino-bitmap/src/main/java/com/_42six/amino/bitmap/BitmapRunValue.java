@@ -0,0 +1,305 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.common.bitmap.AminoBitmapBuilder;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Map output value holding a sorted, de-duplicated run of bitmap indexes.  The indexes are kept in a primitive int[]
+ * and are written as a count followed by varint encoded deltas, so that a single index costs a couple of bytes on the
+ * wire instead of a boxed IntWritable.  Because the run is always sorted, the reducers can feed it straight into an
+ * AminoBitmap without sorting first.
+ *
+ * Bitmap indexes are never negative (see BitmapIndex), which keeps every delta positive.
+ */
+public final class BitmapRunValue implements Writable {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] indexes;
+    private int size;
+
+    public BitmapRunValue() {
+        indexes = EMPTY;
+        size = 0;
+    }
+
+    public BitmapRunValue(int index) {
+        indexes = new int[] { index };
+        size = 1;
+    }
+
+    /**
+     * @return The number of indexes in the run
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i position in the run
+     * @return The i'th smallest index
+     */
+    public int get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return indexes[i];
+    }
+
+    /**
+     * @return A copy of the indexes, in increasing order
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(indexes, size);
+    }
+
+    /**
+     * Sets every index of the run in the builder, without copying the run
+     */
+    public void addTo(AminoBitmapBuilder builder) {
+        builder.setSorted(indexes, size);
+    }
+
+    /**
+     * Replaces the contents of the run with a single index.  Used by the mappers so that one value can be reused for
+     * every salt.
+     */
+    public void setIndex(int index) {
+        ensureCapacity(1);
+        indexes[0] = index;
+        size = 1;
+    }
+
+    /**
+     * Adds an index, keeping the run sorted and free of duplicates
+     */
+    public void addIndex(int index) {
+        int pos = Arrays.binarySearch(indexes, 0, size, index);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -(pos + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(indexes, pos, indexes, pos + 1, size - pos);
+        indexes[pos] = index;
+        size++;
+    }
+
+    /**
+     * Merges the other run into this one with a single linear pass over both runs
+     */
+    public void merge(BitmapRunValue other) {
+        if (other.size == 0) {
+            return;
+        }
+        if (size == 0) {
+            set(other.indexes, other.size);
+            return;
+        }
+
+        final int[] merged = new int[size + other.size];
+        int i = 0, j = 0, n = 0;
+        while (i < size && j < other.size) {
+            final int a = indexes[i];
+            final int b = other.indexes[j];
+            if (a < b) {
+                merged[n++] = a;
+                i++;
+            } else if (b < a) {
+                merged[n++] = b;
+                j++;
+            } else {
+                merged[n++] = a;
+                i++;
+                j++;
+            }
+        }
+        while (i < size) {
+            merged[n++] = indexes[i++];
+        }
+        while (j < other.size) {
+            merged[n++] = other.indexes[j++];
+        }
+        indexes = merged;
+        size = n;
+    }
+
+    /**
+     * Replaces the contents of this run with a copy of the first length items of the sorted array
+     */
+    void set(int[] sorted, int length) {
+        ensureCapacity(length);
+        System.arraycopy(sorted, 0, indexes, 0, length);
+        size = length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (indexes.length < capacity) {
+            indexes = Arrays.copyOf(indexes, Math.max(capacity, indexes.length * 2));
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + indexes[i];
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) { return false; }
+        if (o == this) { return true; }
+        if (o.getClass() != getClass()) { return false; }
+
+        final BitmapRunValue other = (BitmapRunValue) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (indexes[i] != other.indexes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("indexes", Arrays.toString(toArray()))
+                .toString();
+    }
+
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            WritableUtils.writeVInt(dataOutput, indexes[i] - previous);
+            previous = indexes[i];
+        }
+    }
+
+    public void readFields(DataInput dataInput) throws IOException {
+        final int count = WritableUtils.readVInt(dataInput);
+        if (count < 0) {
+            throw new IOException("Invalid run length: " + count);
+        }
+        if (indexes.length < count) {
+            indexes = new int[count];
+        }
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += WritableUtils.readVInt(dataInput);
+            indexes[i] = previous;
+        }
+        size = count;
+    }
+
+    /**
+     * Accumulates many runs and merges them all at once with a k-way merge.  MapReduce reuses the value instance
+     * handed out by the values Iterable, so each run is copied into one growing buffer as it arrives.
+     */
+    public static final class Merger {
+        private int[] buffer = new int[64];
+        private int[] runStarts = new int[8];
+        private int length;
+        private int runs;
+
+        /**
+         * Copies the run into the merge buffer
+         */
+        public void add(BitmapRunValue value) {
+            if (value.size == 0) {
+                return;
+            }
+            if (runs == runStarts.length) {
+                runStarts = Arrays.copyOf(runStarts, runs * 2);
+            }
+            if (buffer.length < length + value.size) {
+                buffer = Arrays.copyOf(buffer, Math.max(length + value.size, buffer.length * 2));
+            }
+            runStarts[runs++] = length;
+            System.arraycopy(value.indexes, 0, buffer, length, value.size);
+            length += value.size;
+        }
+
+        /**
+         * Merges all of the added runs into the given value and resets the merger for the next key
+         */
+        public void mergeInto(BitmapRunValue out) {
+            if (runs <= 1) {
+                out.set(buffer, length);
+            } else {
+                final int[] merged = new int[length];
+                out.indexes = merged;
+                out.size = kWayMerge(merged);
+            }
+            length = 0;
+            runs = 0;
+        }
+
+        /**
+         * Merges the runs using a binary min-heap of run cursors, dropping duplicates
+         * @return The number of unique indexes written to merged
+         */
+        private int kWayMerge(int[] merged) {
+            final int[] heap = new int[runs];      // run number, ordered by the run's current head
+            final int[] cursor = new int[runs];
+            final int[] end = new int[runs];
+            for (int r = 0; r < runs; r++) {
+                cursor[r] = runStarts[r];
+                end[r] = (r + 1 < runs) ? runStarts[r + 1] : length;
+                heap[r] = r;
+            }
+            int heapSize = runs;
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(heap, heapSize, i, cursor);
+            }
+
+            int n = 0;
+            while (heapSize > 0) {
+                final int run = heap[0];
+                final int value = buffer[cursor[run]];
+                if (n == 0 || merged[n - 1] != value) {
+                    merged[n++] = value;
+                }
+                if (++cursor[run] == end[run]) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, 0, cursor);
+            }
+            return n;
+        }
+
+        private void siftDown(int[] heap, int heapSize, int i, int[] cursor) {
+            while (true) {
+                final int left = 2 * i + 1;
+                if (left >= heapSize) {
+                    return;
+                }
+                int smallest = left;
+                final int right = left + 1;
+                if (right < heapSize && buffer[cursor[heap[right]]] < buffer[cursor[heap[left]]]) {
+                    smallest = right;
+                }
+                if (buffer[cursor[heap[i]]] <= buffer[cursor[heap[smallest]]]) {
+                    return;
+                }
+                final int tmp = heap[i];
+                heap[i] = heap[smallest];
+                heap[smallest] = tmp;
+                i = smallest;
+            }
+        }
+    }
+}
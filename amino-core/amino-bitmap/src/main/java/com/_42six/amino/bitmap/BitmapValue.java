@@ -12,7 +12,10 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.*;
 
-
+/**
+ * @deprecated The bitmap jobs shuffle {@link BitmapRunValue} instead, which avoids boxing every index
+ */
+@Deprecated
 public final class BitmapValue implements Writable {
 
 	public static final class IntArrayWritable extends ArrayWritable {
@@ -0,0 +1,21 @@
+package com._42six.amino.bitmap.reverse;
+
+import com._42six.amino.bitmap.BitmapRunValue;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+
+public class ReverseBitmapCombiner extends Reducer<ReverseBitmapKey, BitmapRunValue, ReverseBitmapKey, BitmapRunValue> {
+    private final BitmapRunValue.Merger merger = new BitmapRunValue.Merger();
+    private final BitmapRunValue combinedValue = new BitmapRunValue();
+
+    @Override
+    protected void reduce(ReverseBitmapKey key, Iterable<BitmapRunValue> values, Context context) throws IOException, InterruptedException {
+        for (BitmapRunValue value : values) {
+            merger.add(value);
+        }
+
+        merger.mergeInto(combinedValue);
+        context.write(key, combinedValue);
+    }
+}
@@ -1,5 +1,6 @@
 package com._42six.amino.bitmap.reverse;
 
+import com._42six.amino.bitmap.BitmapRunValue;
 import com._42six.amino.common.AminoConfiguration;
 import com._42six.amino.common.AminoWritable;
 import com._42six.amino.common.Bucket;
@@ -11,13 +12,12 @@ import com._42six.amino.common.service.datacache.SortedIndexCacheFactory;
 import com._42six.amino.common.translator.FeatureFactTranslatorImpl;
 import com._42six.amino.common.translator.FeatureFactTranslatorInt;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.VIntWritable;
 import org.apache.hadoop.mapreduce.Mapper;
 
 import java.io.IOException;
 
-public class ReverseBitmapMapper extends Mapper<BucketStripped, AminoWritable, ReverseBitmapKey, IntWritable>
+public class ReverseBitmapMapper extends Mapper<BucketStripped, AminoWritable, ReverseBitmapKey, BitmapRunValue>
 {
 	private BucketCache bucketCache;
     private SortedIndexCache dataSourceCache;
@@ -30,6 +30,7 @@ public class ReverseBitmapMapper extends Mapper<BucketStripped, AminoWritable, R
     private int currentShard;
 
     private VIntWritable datasourceIndex;
+    private final BitmapRunValue bitmapValue = new BitmapRunValue();
 
     public void setFfTranslator(FeatureFactTranslatorInt ffTranslator) {
         this.ffTranslator = ffTranslator;
@@ -68,8 +69,8 @@ public class ReverseBitmapMapper extends Mapper<BucketStripped, AminoWritable, R
         for (int salt = 0; salt < numberOfHashes; salt++)
         {
             rbKey.setSalt(salt);
-            context.write(rbKey, new IntWritable(BitmapIndex.getValueIndex(bucket, salt)));
-            System.out.println("Outputting Key: " + rbKey + " | Value: " + BitmapIndex.getValueIndex(bucket, salt));
+            bitmapValue.setIndex(BitmapIndex.getValueIndex(bucket, salt));
+            context.write(rbKey, bitmapValue);
         }
 	}
 	
@@ -0,0 +1,102 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.AminoBitmapBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class AminoBitmapBuilderTest {
+
+    @Test
+    public void testSortedRunsInOrder() {
+        final AminoBitmapBuilder builder = new AminoBitmapBuilder();
+        builder.setSorted(new int[] { 1, 5, 9 }, 3);
+        builder.setSorted(new int[] { 9, 12, 100000 }, 3);
+
+        final List<Integer> expected = new ArrayList<>();
+        expected.add(1);
+        expected.add(5);
+        expected.add(9);
+        expected.add(12);
+        expected.add(100000);
+        assertEquals(expected, builder.build().getPositions());
+    }
+
+    @Test
+    public void testOverlappingRuns() {
+        final Random random = new Random(7);
+        final AminoBitmapBuilder builder = new AminoBitmapBuilder(4);
+
+        for (int trial = 0; trial < 10; trial++) {
+            final TreeSet<Integer> expected = new TreeSet<>();
+            for (int run = 0; run < 25; run++) {
+                final TreeSet<Integer> bits = new TreeSet<>();
+                for (int i = 0; i < 40; i++) {
+                    bits.add(random.nextInt(1 << 20));
+                }
+                final int[] sorted = new int[bits.size()];
+                int n = 0;
+                for (int bit : bits) {
+                    sorted[n++] = bit;
+                }
+                builder.setSorted(sorted, n);
+                expected.addAll(bits);
+            }
+
+            assertEquals(new ArrayList<>(expected), builder.build().getPositions());
+        }
+    }
+
+    @Test
+    public void testOrPartials() {
+        final AminoBitmapBuilder builder = new AminoBitmapBuilder();
+        builder.or(new AminoBitmap(70));
+        builder.set(3);
+        builder.or(new AminoBitmap(2));
+
+        final AminoBitmap bitmap = builder.build();
+        assertEquals(3, bitmap.cardinality());
+        assertEquals(0, builder.build().cardinality());
+    }
+
+    @Test
+    public void testManyRunsFoldInTiers() {
+        final AminoBitmapBuilder builder = new AminoBitmapBuilder(2);
+        final List<Integer> expected = new ArrayList<>();
+        // Every bit is below the previous one, so every bit is a run of its own
+        for (int bit = 1000; bit >= 0; bit--) {
+            builder.set(bit * 3);
+        }
+        for (int bit = 0; bit <= 1000; bit++) {
+            expected.add(bit * 3);
+        }
+        assertEquals(expected, builder.build().getPositions());
+    }
+
+    @Test
+    public void testBuildDoesNotReturnThePartial() {
+        final AminoBitmapBuilder builder = new AminoBitmapBuilder();
+        final AminoBitmap partial = new AminoBitmap(5);
+        builder.or(partial);
+
+        final AminoBitmap bitmap = builder.build();
+        partial.set(9);
+        assertEquals(Collections.singletonList(5), bitmap.getPositions());
+
+        builder.or(new AminoBitmap(7));
+        assertEquals(Collections.singletonList(7), builder.build().getPositions());
+        assertEquals(Collections.singletonList(5), bitmap.getPositions());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testNegativeIndex() {
+        new AminoBitmapBuilder().set(-1);
+    }
+}
@@ -0,0 +1,85 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.common.AminoConfiguration;
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapCodec;
+import com._42six.amino.common.bitmap.BitmapCodecs;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class BitmapCodecTest {
+
+    private static AminoBitmap randomBitmap(int bits, long seed) {
+        final Random random = new Random(seed);
+        final TreeSet<Integer> positions = new TreeSet<>();
+        while (positions.size() < bits) {
+            positions.add(random.nextInt(Integer.MAX_VALUE - 64));
+        }
+        final AminoBitmap bitmap = new AminoBitmap();
+        for (int position : positions) {
+            bitmap.set(position);
+        }
+        return bitmap;
+    }
+
+    private static byte[] serialize(BitmapCodec codec, AminoBitmap bitmap) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.serialize(bitmap, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static AminoBitmap deserialize(BitmapCodec codec, byte[] bytes) throws IOException {
+        final AminoBitmap bitmap = new AminoBitmap(5);
+        codec.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)), bitmap);
+        return bitmap;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (BitmapCodec codec : new BitmapCodec[] { BitmapCodecs.EWAH, BitmapCodecs.ROARING }) {
+            final AminoBitmap bitmap = randomBitmap(1000, 1);
+            assertEquals(bitmap.getPositions(), deserialize(codec, serialize(codec, bitmap)).getPositions());
+
+            final AminoBitmap empty = new AminoBitmap();
+            assertEquals(0, deserialize(codec, serialize(codec, empty)).cardinality());
+        }
+    }
+
+    @Test
+    public void testRoaringSmallerForHashedPositions() throws Exception {
+        final AminoBitmap bitmap = randomBitmap(10000, 2);
+        assertTrue(serialize(BitmapCodecs.ROARING, bitmap).length < serialize(BitmapCodecs.EWAH, bitmap).length);
+    }
+
+    @Test
+    public void testVersions() throws Exception {
+        assertSame(BitmapCodecs.EWAH, BitmapCodecs.forVersion(BitmapCodecs.EWAH.getVersion()));
+        assertSame(BitmapCodecs.ROARING, BitmapCodecs.forVersion(BitmapCodecs.ROARING.getVersion()));
+
+        // Legacy EWAH values start with the high byte of a non-negative int, which must never look like a version
+        final byte[] legacy = serialize(BitmapCodecs.EWAH, randomBitmap(100, 3));
+        assertNull(BitmapCodecs.forVersion(legacy[0]));
+        for (int b = 0; b < 128; b++) {
+            assertNull(BitmapCodecs.forVersion((byte) b));
+        }
+    }
+
+    @Test
+    public void testFromConfiguration() {
+        final Configuration conf = new Configuration(false);
+        assertSame(BitmapCodecs.DEFAULT, BitmapCodecs.fromConfiguration(conf));
+        conf.set(AminoConfiguration.BITMAP_CODEC, "Roaring");
+        assertSame(BitmapCodecs.ROARING, BitmapCodecs.fromConfiguration(conf));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        BitmapCodecs.forName("bzip");
+    }
+}
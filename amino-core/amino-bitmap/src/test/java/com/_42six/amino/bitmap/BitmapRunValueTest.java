@@ -0,0 +1,135 @@
+package com._42six.amino.bitmap;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BitmapRunValueTest {
+
+    private static BitmapRunValue roundTrip(BitmapRunValue value, BitmapRunValue into) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        value.write(new DataOutputStream(outputStream));
+        into.readFields(new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
+        return into;
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        final int[] array = new int[set.size()];
+        int i = 0;
+        for (int value : set) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        final BitmapRunValue value1 = new BitmapRunValue();
+        value1.addIndex(30);
+        value1.addIndex(10);
+        value1.addIndex(20);
+        value1.addIndex(10);
+
+        final BitmapRunValue value2 = roundTrip(value1, new BitmapRunValue());
+
+        assertEquals(value1, value2);
+        assertArrayEquals(new int[] { 10, 20, 30 }, value2.toArray());
+    }
+
+    @Test
+    public void testReadWriteExtremes() throws Exception {
+        final BitmapRunValue value1 = new BitmapRunValue();
+        value1.addIndex(Integer.MAX_VALUE - 64);
+        value1.addIndex(0);
+        value1.addIndex(1);
+
+        assertEquals(value1, roundTrip(value1, new BitmapRunValue()));
+        assertEquals(new BitmapRunValue(), roundTrip(new BitmapRunValue(), new BitmapRunValue()));
+    }
+
+    @Test
+    public void testReadFieldsReusesInstance() throws Exception {
+        final BitmapRunValue big = new BitmapRunValue();
+        for (int i = 0; i < 100; i++) {
+            big.addIndex(i * 7);
+        }
+        final BitmapRunValue reused = roundTrip(big, new BitmapRunValue());
+        roundTrip(new BitmapRunValue(5), reused);
+
+        assertEquals(1, reused.size());
+        assertEquals(new BitmapRunValue(5), reused);
+    }
+
+    @Test
+    public void testSmallerThanBitmapValue() throws Exception {
+        final BitmapValue oldValue = new BitmapValue();
+        final BitmapRunValue newValue = new BitmapRunValue();
+        for (int i = 0; i < 1000; i++) {
+            oldValue.addIndex(1000000 + i * 3);
+            newValue.addIndex(1000000 + i * 3);
+        }
+
+        final ByteArrayOutputStream oldBytes = new ByteArrayOutputStream();
+        oldValue.write(new DataOutputStream(oldBytes));
+        final ByteArrayOutputStream newBytes = new ByteArrayOutputStream();
+        newValue.write(new DataOutputStream(newBytes));
+
+        assertEquals(newValue.size(), oldValue.getIndexes().size());
+        assertTrue(newBytes.size() < oldBytes.size() / 2);
+    }
+
+    @Test
+    public void testMerge() {
+        final BitmapRunValue value1 = new BitmapRunValue();
+        value1.addIndex(1);
+        value1.addIndex(5);
+        value1.addIndex(9);
+        final BitmapRunValue value2 = new BitmapRunValue();
+        value2.addIndex(0);
+        value2.addIndex(5);
+        value2.addIndex(10);
+
+        value1.merge(value2);
+        assertArrayEquals(new int[] { 0, 1, 5, 9, 10 }, value1.toArray());
+
+        value1.merge(new BitmapRunValue());
+        assertArrayEquals(new int[] { 0, 1, 5, 9, 10 }, value1.toArray());
+    }
+
+    /**
+     * The merger must produce exactly the set the old HashSet based BitmapValue produced, even when the same value
+     * instance is handed out repeatedly the way MapReduce does.
+     */
+    @Test
+    public void testMergerMatchesBitmapValue() {
+        final Random random = new Random(42);
+        final BitmapRunValue.Merger merger = new BitmapRunValue.Merger();
+        final BitmapRunValue reused = new BitmapRunValue();
+        final BitmapRunValue merged = new BitmapRunValue();
+
+        for (int trial = 0; trial < 20; trial++) {
+            final BitmapValue expected = new BitmapValue();
+            final int runs = random.nextInt(50);
+            for (int r = 0; r < runs; r++) {
+                reused.setIndex(random.nextInt(1000));
+                final int extra = random.nextInt(20);
+                for (int i = 0; i < extra; i++) {
+                    reused.addIndex(random.nextInt(1000));
+                }
+                for (int i : reused.toArray()) {
+                    expected.addIndex(i);
+                }
+                merger.add(reused);
+            }
+            merger.mergeInto(merged);
+
+            assertArrayEquals(toArray(new TreeSet<>(expected.getIndexes())), merged.toArray());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapCodec;
+import com._42six.amino.common.bitmap.BitmapCodecs;
+import com._42six.amino.common.bitmap.EwahBufferView;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class EwahBufferViewTest {
+
+    private static AminoBitmap bitmap(TreeSet<Integer> positions) {
+        final AminoBitmap bitmap = new AminoBitmap();
+        for (int position : positions) {
+            bitmap.set(position);
+        }
+        return bitmap;
+    }
+
+    private static byte[] stored(BitmapCodec codec, AminoBitmap bitmap) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(codec.getVersion());
+        codec.serialize(bitmap, out);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] legacy(AminoBitmap bitmap) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.serialize(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testContainsMatchesBitmap() throws Exception {
+        final Random random = new Random(3);
+        for (int bound : new int[] { 200, 5000, Integer.MAX_VALUE - 64 }) {
+            final TreeSet<Integer> positions = new TreeSet<>();
+            while (positions.size() < 150) {
+                positions.add(random.nextInt(bound));
+            }
+            // Some long runs of set bits
+            for (int i = 1000; i < 1300; i++) {
+                positions.add(i);
+            }
+            final AminoBitmap bitmap = bitmap(positions);
+
+            for (byte[] value : new byte[][] { stored(BitmapCodecs.EWAH, bitmap), legacy(bitmap) }) {
+                final EwahBufferView view = new EwahBufferView();
+                assertTrue(view.wrap(value));
+                final int limit = Math.min(bound, 20000);
+                for (int position = 0; position < limit; position++) {
+                    assertEquals("Position " + position, positions.contains(position), view.contains(position));
+                }
+                view.rewind();
+                for (int position : positions) {
+                    assertTrue(view.contains(position));
+                }
+                assertFalse(view.contains(Integer.MAX_VALUE - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testSetOperations() throws Exception {
+        final TreeSet<Integer> positions = new TreeSet<>();
+        positions.add(3);
+        positions.add(64);
+        positions.add(100000);
+        final EwahBufferView view = new EwahBufferView();
+        assertTrue(view.wrap(stored(BitmapCodecs.EWAH, bitmap(positions))));
+
+        assertTrue(view.containsAll(new int[] { 3, 64, 100000 }));
+        assertFalse(view.containsAll(new int[] { 3, 65, 100000 }));
+        assertTrue(view.containsAny(new int[] { 4, 100000 }));
+        assertFalse(view.containsAny(new int[] { 4, 99999, 100001 }));
+        assertEquals(2, view.countPresent(new int[] { 0, 3, 64, 65 }));
+        assertTrue(view.containsAll(new int[0]));
+    }
+
+    @Test
+    public void testOtherCodecsAreNotWrapped() throws Exception {
+        final TreeSet<Integer> positions = new TreeSet<>();
+        positions.add(7);
+        assertFalse(new EwahBufferView().wrap(stored(BitmapCodecs.ROARING, bitmap(positions))));
+        assertFalse(new EwahBufferView().wrap(new byte[0]));
+    }
+}
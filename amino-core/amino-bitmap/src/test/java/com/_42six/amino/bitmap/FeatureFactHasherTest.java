@@ -0,0 +1,110 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.common.*;
+import com._42six.amino.common.index.BitmapIndex;
+import com._42six.amino.common.index.FeatureFactHasher;
+import org.apache.hadoop.io.Writable;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The indexes are persisted in the bitmap tables, so the hasher must produce exactly what BitmapIndex always has
+ */
+public class FeatureFactHasherTest {
+
+    private static void assertSameIndexes(FeatureFactHasher hasher, Bucket bucket, Feature feature, FeatureFact fact) {
+        final int[] indexes = hasher.getFeatureFactIndexes(bucket, feature, fact);
+        for (int salt = 0; salt < hasher.getNumberOfHashes(); salt++) {
+            assertEquals("salt " + salt, BitmapIndex.getFeatureFactIndex(bucket, feature, fact, salt), indexes[salt]);
+        }
+    }
+
+    @Test
+    public void testMatchesBitmapIndex() throws IOException {
+        final FeatureFactHasher hasher = new FeatureFactHasher(4);
+        final Bucket bucket = new Bucket("source", "name", "value", "display", "visibility", "HRVis");
+        final Feature feature = new Feature("feature");
+
+        assertSameIndexes(hasher, bucket, feature, new NominalFeatureFact("xyz"));
+        assertSameIndexes(hasher, bucket, feature, new RatioFeatureFact(3.5));
+        assertSameIndexes(hasher, bucket, feature, new IntervalFeatureFact(-12.25));
+        assertSameIndexes(hasher, bucket, feature, new DateFeatureFact(1400000000000L));
+        assertSameIndexes(hasher, bucket, feature, new PointFeatureFact(-77.0, 38.9));
+    }
+
+    private static void assertIndexes(int[] expected, Bucket bucket, Feature feature, FeatureFact fact) {
+        final int[] indexes = new FeatureFactHasher(expected.length).getFeatureFactIndexes(bucket, feature, fact);
+        assertArrayEquals(expected, indexes);
+        for (int salt = 0; salt < expected.length; salt++) {
+            assertEquals("salt " + salt, expected[salt], BitmapIndex.getFeatureFactIndex(bucket, feature, fact, salt));
+        }
+    }
+
+    @Test
+    public void testKnownIndexes() throws IOException {
+        // Indexes already written to the bitmap tables.  If these change, existing tables can no longer be queried.
+        final Bucket source = new Bucket("source", "name", "value", "display", "visibility", "HRVis");
+        final Bucket numbers = new Bucket("numbers", "number", "42", "display", "U", "U");
+        final Feature byHash = new Feature(123456);
+        final Feature byName = new Feature("feature");
+        assertEquals(606055838, byName.hashCode());
+
+        assertIndexes(new int[] { 1922089816, 720507449, 1724252515, 2146055043 },
+                source, byHash, new NominalFeatureFact("xyz"));
+        assertIndexes(new int[] { 1212059546, 1234925293, 1963517205, 1775217217 },
+                source, byName, new NominalFeatureFact("xyz"));
+        assertIndexes(new int[] { 1713902156, 714970888, 733363894, 704579568 },
+                numbers, byHash, new NominalFeatureFact(""));
+        assertIndexes(new int[] { 2088188213, 2105187903, 1348810529, 1492251812 },
+                numbers, byName, new NominalFeatureFact("2014-05-13"));
+    }
+
+    @Test
+    public void testCachesFollowChanges() throws IOException {
+        final Random random = new Random(11);
+        final FeatureFactHasher hasher = new FeatureFactHasher(2);
+        final String[] sources = { "numbers", "names" };
+        final String[] names = { "number", "first", "last" };
+        final Feature[] features = { new Feature("Is Even"), new Feature("Has Digit"), new Feature(123456) };
+
+        // Mix runs of the same bucket/feature with changes, the way mapper input arrives
+        for (int i = 0; i < 500; i++) {
+            final Bucket bucket = new Bucket(sources[random.nextInt(sources.length)], names[random.nextInt(names.length)],
+                    Integer.toString(random.nextInt(1000)), "display", "U", "U");
+            final Feature feature = features[random.nextInt(features.length)];
+            final int repeats = 1 + random.nextInt(3);
+            for (int r = 0; r < repeats; r++) {
+                assertSameIndexes(hasher, bucket, feature, new NominalFeatureFact(Integer.toString(random.nextInt())));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoHashes() {
+        new FeatureFactHasher(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnserializableFact() throws IOException {
+        final FeatureFact broken = new NominalFeatureFact("xyz");
+        broken.setFact(new Writable() {
+            @Override
+            public void write(DataOutput out) throws IOException {
+                throw new IOException("Cannot write");
+            }
+
+            @Override
+            public void readFields(DataInput in) {
+            }
+        });
+        new FeatureFactHasher(1).getFeatureFactIndexes(new Bucket("source", "name", "value", "display", "U", "U"),
+                new Feature(1), broken);
+    }
+}
@@ -28,6 +28,8 @@ public class AminoConfiguration extends Configuration {
     public static final String TABLE_CONTEXT = "amino.tableContext";
 
     public static final String NUM_HASHES = "amino.bitmap.num-hashes";
+    public static final String BITMAP_CODEC = "amino.bitmap.codec";
+    public static final String BITMAP_INDEXES = "amino.bitmap.indexes";
     public static final String NUM_SHARDS = "amino.bigtable.number.of.shards";
     public static final String NUM_SHARDS_HYPOTHESIS = "amino.bigtable.number.of.shards.hypothesis";
     public static final String NUM_REDUCERS = "amino.num.reducers";
@@ -57,6 +59,7 @@ public class AminoConfiguration extends Configuration {
     public static final String TABLE_RESULT = "amino.queryResultTable";
     public static final String TABLE_GROUP_MEMBERSHIP = "amino.groupMembershipTable";
     public static final String TABLE_GROUP_HYPOTHESIS_LOOKUP = "amino.groupHypothesisLUT";
+    public static final String TABLE_USER_HYPOTHESIS_INDEX = "amino.userHypothesisIndex";
     public static final String TABLE_GROUP_METADATA = "amino.groupMetadataTable";
     public static final String TABLE_METADATA = "amino.metadataTable";
 
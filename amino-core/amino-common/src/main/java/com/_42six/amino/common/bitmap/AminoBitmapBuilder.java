@@ -0,0 +1,143 @@
+package com._42six.amino.common.bitmap;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds an AminoBitmap from bits that arrive as a series of sorted runs, without first collecting every bit into a
+ * sorted collection.
+ *
+ * Bits that arrive in increasing order are appended straight to the bitmap being built.  When a bit arrives out of
+ * order (i.e. a new sorted run starts below the end of the previous one) the current bitmap is closed off as a
+ * partial and a new one is started.  Partials are OR'd together in tiers: once there are maxPartials partials of
+ * one tier they are OR'd into a single partial of the next tier.  The partials of a tier were built from the same
+ * number of runs, so each bit is OR'd once per tier instead of once every time the partials are folded, and at most
+ * maxPartials - 1 partials are held per tier.
+ * If the shuffle delivers the bits secondary sorted there is only ever one partial and no OR is done at all.
+ *
+ * A builder can be reused; {@link #build()} resets it and always returns a bitmap that the builder no longer
+ * references, even when only a single bitmap was passed to {@link #or(AminoBitmap)}.
+ */
+public class AminoBitmapBuilder {
+
+    public static final int DEFAULT_MAX_PARTIALS = 32;
+
+    private final int maxPartials;
+    private final List<EWAHCompressedBitmap> partials = new ArrayList<>();
+    private final List<Integer> tiers = new ArrayList<>(); // The tier of each partial, never increasing
+    private boolean lastPartialBorrowed = false; // The last partial was passed to or() and belongs to the caller
+    private EWAHCompressedBitmap current = new EWAHCompressedBitmap();
+    private int last = -1;
+
+    public AminoBitmapBuilder() {
+        this(DEFAULT_MAX_PARTIALS);
+    }
+
+    /**
+     * @param maxPartials The number of partial bitmaps of a tier to hold before OR'ing them together
+     */
+    public AminoBitmapBuilder(int maxPartials) {
+        if (maxPartials < 2) {
+            throw new IllegalArgumentException("maxPartials must be at least 2");
+        }
+        this.maxPartials = maxPartials;
+    }
+
+    /**
+     * Sets a bit.  Setting a bit that is lower than the previous one is allowed, but cheaper if it is rare.
+     * @param bit The bit position to set
+     * @return this builder
+     */
+    public AminoBitmapBuilder set(int bit) {
+        if (bit < 0) {
+            throw new IndexOutOfBoundsException("Bit positions can not be negative: " + bit);
+        }
+        if (bit < last) {
+            closeCurrent();
+        } else if (bit == last) {
+            return this;
+        }
+        current.set(bit);
+        last = bit;
+        return this;
+    }
+
+    /**
+     * Sets the first length bits of a run that is sorted in increasing order
+     * @param sortedBits The bit positions, in increasing order
+     * @param length The number of positions in sortedBits to use
+     * @return this builder
+     */
+    public AminoBitmapBuilder setSorted(int[] sortedBits, int length) {
+        for (int i = 0; i < length; i++) {
+            set(sortedBits[i]);
+        }
+        return this;
+    }
+
+    /**
+     * OR's an already built bitmap, such as a partial bitmap from a combiner, into the result
+     * @param partial The bitmap to add.  It is not modified, but must not be modified until {@link #build()} is called.
+     * @return this builder
+     */
+    public AminoBitmapBuilder or(AminoBitmap partial) {
+        addPartial(partial.getBitmap(), true);
+        return this;
+    }
+
+    /**
+     * Creates the bitmap from everything added so far and resets the builder
+     * @return The bitmap containing every bit that was set
+     */
+    public AminoBitmap build() {
+        closeCurrent();
+
+        final EWAHCompressedBitmap result;
+        if (partials.isEmpty()) {
+            result = new EWAHCompressedBitmap();
+        } else if (partials.size() == 1) {
+            // Don't hand out a bitmap that the caller of or() still holds
+            result = lastPartialBorrowed ? partials.get(0).clone() : partials.get(0);
+        } else {
+            result = EWAHCompressedBitmap.or(partials.toArray(new EWAHCompressedBitmap[partials.size()]));
+        }
+        partials.clear();
+        tiers.clear();
+        lastPartialBorrowed = false;
+
+        final AminoBitmap bitmap = new AminoBitmap();
+        bitmap.setBitmap(result);
+        return bitmap;
+    }
+
+    private void closeCurrent() {
+        if (last >= 0) {
+            addPartial(current, false);
+            current = new EWAHCompressedBitmap();
+            last = -1;
+        }
+    }
+
+    private void addPartial(EWAHCompressedBitmap partial, boolean borrowed) {
+        partials.add(partial);
+        tiers.add(0);
+        lastPartialBorrowed = borrowed;
+
+        // The tiers never increase, so the last maxPartials partials are all of one tier if the first of them is
+        int size = partials.size();
+        while (size >= maxPartials && tiers.get(size - maxPartials).equals(tiers.get(size - 1))) {
+            final List<EWAHCompressedBitmap> sameTier = partials.subList(size - maxPartials, size);
+            final EWAHCompressedBitmap folded =
+                    EWAHCompressedBitmap.or(sameTier.toArray(new EWAHCompressedBitmap[maxPartials]));
+            final int tier = tiers.get(size - 1) + 1;
+            sameTier.clear();
+            tiers.subList(size - maxPartials, size).clear();
+            partials.add(folded);
+            tiers.add(tier);
+            lastPartialBorrowed = false;
+            size = partials.size();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com._42six.amino.common.bitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes an AminoBitmap for storage.  Every codec has a unique version byte that is written in front of the encoded
+ * bitmap so that values written with different codecs can live side by side in the same table.  See
+ * {@link BitmapCodecs} for the available codecs.
+ */
+public interface BitmapCodec {
+
+    /**
+     * @return The byte written in front of every bitmap encoded with this codec.  The high bit must be set so that it
+     * can not be mistaken for the first byte of a legacy, un-versioned EWAH bitmap.
+     */
+    byte getVersion();
+
+    /**
+     * @return The name used to select this codec in the configuration
+     */
+    String getName();
+
+    /**
+     * Writes the bitmap, not including the version byte
+     */
+    void serialize(AminoBitmap bitmap, DataOutput out) throws IOException;
+
+    /**
+     * Reads a bitmap written by {@link #serialize(AminoBitmap, DataOutput)}, replacing the contents of bitmap
+     */
+    void deserialize(DataInput in, AminoBitmap bitmap) throws IOException;
+}
@@ -0,0 +1,58 @@
+package com._42six.amino.common.bitmap;
+
+import com._42six.amino.common.AminoConfiguration;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Lookup of the available {@link BitmapCodec}s by version byte and by configuration name
+ */
+public final class BitmapCodecs {
+
+    public static final BitmapCodec EWAH = new EwahBitmapCodec();
+    public static final BitmapCodec ROARING = new RoaringBitmapCodec();
+
+    /** The codec used when none is configured */
+    public static final BitmapCodec DEFAULT = EWAH;
+
+    private static final BitmapCodec[] CODECS = { EWAH, ROARING };
+
+    private BitmapCodecs() {
+        // Static methods only
+    }
+
+    /**
+     * @param version The version byte read from the front of a stored bitmap
+     * @return The codec for the version, or null if the byte is not a known version.  Legacy bitmaps were written
+     * without a version byte and always start with a byte that is not a known version.
+     */
+    public static BitmapCodec forVersion(byte version) {
+        for (BitmapCodec codec : CODECS) {
+            if (codec.getVersion() == version) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name The name of the codec, i.e. "ewah" or "roaring"
+     * @return The codec with the given name
+     * @throws IllegalArgumentException if there is no codec with that name
+     */
+    public static BitmapCodec forName(String name) {
+        for (BitmapCodec codec : CODECS) {
+            if (codec.getName().equalsIgnoreCase(name.trim())) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown bitmap codec: " + name);
+    }
+
+    /**
+     * @return The codec configured by {@link AminoConfiguration#BITMAP_CODEC}, or the default if it is not set
+     */
+    public static BitmapCodec fromConfiguration(Configuration conf) {
+        final String name = conf.get(AminoConfiguration.BITMAP_CODEC);
+        return (name == null) ? DEFAULT : forName(name);
+    }
+}
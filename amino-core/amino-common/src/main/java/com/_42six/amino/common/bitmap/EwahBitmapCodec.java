@@ -0,0 +1,35 @@
+package com._42six.amino.common.bitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Stores the bitmap in the native EWAH format.  This is the same layout that was written before bitmaps were
+ * versioned.
+ */
+public class EwahBitmapCodec implements BitmapCodec {
+
+    public static final byte VERSION = (byte) 0x81;
+    public static final String NAME = "ewah";
+
+    @Override
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(AminoBitmap bitmap, DataOutput out) throws IOException {
+        bitmap.serialize(out);
+    }
+
+    @Override
+    public void deserialize(DataInput in, AminoBitmap bitmap) throws IOException {
+        bitmap.deserialize(in);
+    }
+}
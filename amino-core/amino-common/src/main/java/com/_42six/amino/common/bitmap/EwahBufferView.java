@@ -0,0 +1,165 @@
+package com._42six.amino.common.bitmap;
+
+/**
+ * Read only view of a serialized EWAH bitmap, as written by {@link BitmapUtils} with the {@link EwahBitmapCodec} or
+ * by the legacy un-versioned format.  Bits are tested directly against the serialized words, so checking a handful of
+ * positions does not allocate or decode the bitmap.
+ *
+ * The serialized layout is sizeInBits(int), wordCount(int), the words (longs) and the position of the last running
+ * length word (int), all big endian.  Each marker word holds the running bit (bit 0), the number of words in the run
+ * (bits 1-32) and the number of literal words that follow it (bits 33-63).
+ *
+ * Positions must be tested in increasing order with {@link #contains(int)} after each {@link #wrap(byte[])} or
+ * {@link #rewind()}; the view walks the words once.  Not thread safe, meant to be reused for every value.
+ */
+public final class EwahBufferView {
+
+    private static final int HEADER_BYTES = 8;
+    private static final long RUNNING_LENGTH_MASK = (1L << 32) - 1;
+
+    private byte[] buffer;
+    private int wordsOffset;
+    private int wordCount;
+    private long sizeInBits;
+
+    // The marker word that the cursor is in
+    private int markerIndex;
+    private long markerStart;
+    private long runEnd;
+    private long markerEnd;
+    private boolean runningBit;
+
+    /**
+     * Points the view at a serialized bitmap
+     * @param value The stored bitmap
+     * @return true if the value is an EWAH bitmap, false if it was written by another codec and has to be decoded
+     */
+    public boolean wrap(byte[] value) {
+        if (value.length == 0) {
+            return false;
+        }
+        final int offset;
+        if (value[0] == EwahBitmapCodec.VERSION) {
+            offset = 1;
+        } else if (BitmapCodecs.forVersion(value[0]) != null) {
+            return false;
+        } else {
+            // Legacy value without a version byte
+            offset = 0;
+        }
+        if (value.length < offset + HEADER_BYTES) {
+            throw new IllegalArgumentException("Truncated EWAH bitmap");
+        }
+
+        final int words = readInt(value, offset + 4);
+        if (words < 0 || (long) offset + HEADER_BYTES + words * 8L > value.length) {
+            throw new IllegalArgumentException("Corrupt EWAH bitmap, bad word count: " + words);
+        }
+        this.buffer = value;
+        this.sizeInBits = readInt(value, offset) & 0xFFFFFFFFL;
+        this.wordsOffset = offset + HEADER_BYTES;
+        this.wordCount = words;
+        rewind();
+        return true;
+    }
+
+    /**
+     * Moves the cursor back to the first bit so that positions can be tested again from the start
+     */
+    public void rewind() {
+        markerIndex = 0;
+        markerStart = 0;
+        loadMarker();
+    }
+
+    /**
+     * Tests a bit.  Each call must pass a position that is greater than or equal to the position of the previous call
+     * since the last wrap or rewind.
+     * @param position The bit position
+     * @return true if the bit is set
+     */
+    public boolean contains(int position) {
+        if (position < 0 || position >= sizeInBits) {
+            return false;
+        }
+        while (position >= markerEnd) {
+            markerIndex += 1 + (int) ((markerEnd - runEnd) >>> 6);
+            markerStart = markerEnd;
+            loadMarker();
+        }
+        if (markerIndex >= wordCount) {
+            return false;
+        }
+        if (position < runEnd) {
+            return runningBit;
+        }
+        final long offset = position - runEnd;
+        final long word = readLong(buffer, wordsOffset + (markerIndex + 1 + (int) (offset >>> 6)) * 8);
+        return (word & (1L << (offset & 63))) != 0;
+    }
+
+    /**
+     * @param sortedPositions Positions in increasing order
+     * @return true if every position is set, stopping at the first one that is not
+     */
+    public boolean containsAll(int[] sortedPositions) {
+        rewind();
+        for (int position : sortedPositions) {
+            if (!contains(position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param sortedPositions Positions in increasing order
+     * @return true if any of the positions is set, stopping at the first one that is
+     */
+    public boolean containsAny(int[] sortedPositions) {
+        rewind();
+        for (int position : sortedPositions) {
+            if (contains(position)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param sortedPositions Positions in increasing order
+     * @return The number of the positions that are set
+     */
+    public int countPresent(int[] sortedPositions) {
+        rewind();
+        int count = 0;
+        for (int position : sortedPositions) {
+            if (contains(position)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void loadMarker() {
+        if (markerIndex >= wordCount) {
+            // Past the last word, nothing else is set
+            runningBit = false;
+            runEnd = markerStart;
+            markerEnd = Long.MAX_VALUE;
+            return;
+        }
+        final long marker = readLong(buffer, wordsOffset + markerIndex * 8);
+        runningBit = (marker & 1) != 0;
+        runEnd = markerStart + (((marker >>> 1) & RUNNING_LENGTH_MASK) << 6);
+        markerEnd = runEnd + ((marker >>> 33) << 6);
+    }
+
+    private static int readInt(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16) | ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] b, int offset) {
+        return ((long) readInt(b, offset) << 32) | (readInt(b, offset + 4) & 0xFFFFFFFFL);
+    }
+}
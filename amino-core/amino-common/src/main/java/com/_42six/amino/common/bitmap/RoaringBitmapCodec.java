@@ -0,0 +1,58 @@
+package com._42six.amino.common.bitmap;
+
+import com.googlecode.javaewah.EWAHCompressedBitmap;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Stores the bitmap as a RoaringBitmap.  The bit positions Amino uses are hashes spread over the whole int range,
+ * which is close to the worst case for EWAH: nearly every set bit costs a marker word plus a literal word.  Roaring
+ * stores sparse positions in 16 bit array containers instead, so these bitmaps are typically several times smaller on
+ * disk and on the wire.
+ *
+ * The in memory representation is still EWAH, so the bitmap is converted when it is read and written.
+ */
+public class RoaringBitmapCodec implements BitmapCodec {
+
+    public static final byte VERSION = (byte) 0x82;
+    public static final String NAME = "roaring";
+
+    @Override
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(AminoBitmap bitmap, DataOutput out) throws IOException {
+        final RoaringBitmap roaring = new RoaringBitmap();
+        final com.googlecode.javaewah.IntIterator positions = bitmap.getBitmap().intIterator();
+        while (positions.hasNext()) {
+            roaring.add(positions.next());
+        }
+        roaring.runOptimize();
+        roaring.serialize(out);
+    }
+
+    @Override
+    public void deserialize(DataInput in, AminoBitmap bitmap) throws IOException {
+        final RoaringBitmap roaring = new RoaringBitmap();
+        roaring.deserialize(in);
+
+        // Roaring iterates in increasing order, which is what EWAH requires
+        final EWAHCompressedBitmap ewah = new EWAHCompressedBitmap();
+        final IntIterator positions = roaring.getIntIterator();
+        while (positions.hasNext()) {
+            ewah.set(positions.next());
+        }
+        bitmap.setBitmap(ewah);
+    }
+}
@@ -0,0 +1,27 @@
+package com._42six.amino.common.entity;
+
+import com.google.gson.Gson;
+
+import java.util.List;
+
+/**
+ * A page of a user's QueryResults, as returned by
+ * {@link com._42six.amino.query.services.AminoQueryService#listResultsPage}.  The results only carry their summary
+ * fields; result_set and hypothesis_at_runtime are left null.
+ */
+public class QueryResultPage {
+	public String toJson() {
+		Gson gson = new Gson();
+		return gson.toJson(this);
+	}
+
+	public static QueryResultPage fromJson(String json) {
+		Gson gson = new Gson();
+		return gson.fromJson(json, QueryResultPage.class);
+	}
+
+	public List<QueryResult> results;
+
+	/** Opaque token to pass back to get the next page, or null if this is the last page */
+	public String cursor;
+}
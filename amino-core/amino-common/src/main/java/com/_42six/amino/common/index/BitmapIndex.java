@@ -15,13 +15,13 @@ public class BitmapIndex {
     private static final int HASH_TYPE = Hash.MURMUR_HASH;
     private static final int EWAH_DIFFERENCE = 64; // TODO - look at getting this from EWAH wordinbits
     private static final int MAX_EWAH = Integer.MAX_VALUE - EWAH_DIFFERENCE;
-    private static final Hash hasher = Hash.getInstance(HASH_TYPE);
+    static final Hash hasher = Hash.getInstance(HASH_TYPE);
 
     /**
      * Hack for EWAH since it can't handle set'ing a position greater than MAX_EWAH.  This will lead to some extra potential
      * collisions, but hey, at least it works.
      */
-    private static int getEwah(int position){
+    static int getEwah(int position){
         // The majority of time it should be the first case as it's already supposed to be Math.abs'd
         if(position >= 0 && position <= MAX_EWAH){
             return position;
@@ -66,6 +66,11 @@ public class BitmapIndex {
         return getFeatureFactIndex(bucket, feature, fact, -1);
     }
 
+    /**
+     * Computes the index of a feature fact for a single salt.  Mappers that need every salt for every record should use
+     * a {@link FeatureFactHasher} instead, which produces the same indexes without re-hashing the bucket or
+     * re-serializing the fact for each salt.
+     */
     public static int getFeatureFactIndex(Bucket bucket, Feature feature, FeatureFact fact, int seed) {
         int hashcode = BitmapIndex.getBucketNameIndex(bucket, seed);
         hashcode = hasher.hash(Integer.toString(getFeatureIndex(feature)).getBytes(), hashcode);
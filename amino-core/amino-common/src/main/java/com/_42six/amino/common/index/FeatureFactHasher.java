@@ -0,0 +1,106 @@
+package com._42six.amino.common.index;
+
+import com._42six.amino.common.Bucket;
+import com._42six.amino.common.Feature;
+import com._42six.amino.common.FeatureFact;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+
+import java.io.IOException;
+
+/**
+ * Computes the feature fact indexes of a record for every salt at once.  Produces exactly the same indexes as
+ * {@link BitmapIndex#getFeatureFactIndex(Bucket, Feature, FeatureFact, int)}, but
+ * <ul>
+ *     <li>the datasource/bucket name hash for each salt is only recomputed when the bucket name changes</li>
+ *     <li>the feature index bytes are only recomputed when the feature changes</li>
+ *     <li>the fact is serialized once per record, into a reused buffer</li>
+ * </ul>
+ *
+ * Instances keep per record state and are not thread safe.  Create one per mapper.
+ */
+public class FeatureFactHasher {
+
+    private final int numberOfHashes;
+    private final int[] bucketNameHashes;
+    private final int[] indexes;
+
+    private final Text cachedDataSource = new Text();
+    private final Text cachedBucketName = new Text();
+    private boolean bucketCached = false;
+
+    private int cachedFeatureIndex;
+    private byte[] featureIndexBytes = null;
+
+    private final DataOutputBuffer factBuffer = new DataOutputBuffer();
+
+    /**
+     * @param numberOfHashes The number of salts to compute indexes for
+     */
+    public FeatureFactHasher(int numberOfHashes) {
+        if (numberOfHashes < 1) {
+            throw new IllegalArgumentException("numberOfHashes must be positive");
+        }
+        this.numberOfHashes = numberOfHashes;
+        this.bucketNameHashes = new int[numberOfHashes];
+        this.indexes = new int[numberOfHashes];
+    }
+
+    public int getNumberOfHashes() {
+        return numberOfHashes;
+    }
+
+    /**
+     * Computes the feature fact index for each salt
+     * @return An array indexed by salt.  The array is reused by the next call, so copy anything that needs to be kept.
+     * @throws IllegalStateException if the fact cannot be serialized
+     */
+    public int[] getFeatureFactIndexes(Bucket bucket, Feature feature, FeatureFact fact) {
+        updateBucket(bucket);
+        updateFeature(feature);
+
+        factBuffer.reset();
+        try {
+            fact.getFact().write(factBuffer);
+        } catch (IOException e) {
+            // Only a fact that cannot serialize itself gets here, and hashing part of it would corrupt the index
+            throw new IllegalStateException("Could not serialize the feature fact " + fact, e);
+        }
+        final byte[] factBytes = factBuffer.getData();
+        final int factLength = factBuffer.getLength();
+
+        for (int salt = 0; salt < numberOfHashes; salt++) {
+            int hashcode = BitmapIndex.hasher.hash(featureIndexBytes, featureIndexBytes.length, bucketNameHashes[salt]);
+            hashcode = BitmapIndex.hasher.hash(factBytes, factLength, hashcode);
+            indexes[salt] = BitmapIndex.getEwah(hashcode);
+        }
+        return indexes;
+    }
+
+    private void updateBucket(Bucket bucket) {
+        final Text dataSource = bucket.getBucketDataSource();
+        final Text bucketName = bucket.getBucketName();
+        if (bucketCached && cachedDataSource.equals(dataSource) && cachedBucketName.equals(bucketName)) {
+            return;
+        }
+
+        cachedDataSource.set(dataSource);
+        cachedBucketName.set(bucketName);
+        final byte[] dataSourceBytes = dataSource.toString().getBytes();
+        final byte[] bucketNameBytes = bucketName.toString().getBytes();
+        for (int salt = 0; salt < numberOfHashes; salt++) {
+            int hashcode = BitmapIndex.hasher.hash(dataSourceBytes, dataSourceBytes.length, salt);
+            hashcode = BitmapIndex.hasher.hash(bucketNameBytes, bucketNameBytes.length, hashcode);
+            bucketNameHashes[salt] = BitmapIndex.getEwah(hashcode);
+        }
+        bucketCached = true;
+    }
+
+    private void updateFeature(Feature feature) {
+        final int featureIndex = BitmapIndex.getFeatureIndex(feature);
+        if (featureIndexBytes == null || featureIndex != cachedFeatureIndex) {
+            cachedFeatureIndex = featureIndex;
+            featureIndexBytes = Integer.toString(featureIndex).getBytes();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com._42six.amino.common.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cancellation state of a {@link FlaggableCallable}.  The call registers the resources it has open, such as its
+ * scanners, and cancelling closes them as well as clearing the keepWorking flag.  A call blocked inside a scanner then
+ * stops straight away, and the servers stop working for it, instead of carrying on until the next entry arrives and
+ * the flag is checked.
+ *
+ * The call can also report how far it got, so that a caller that gave up can say what had been done.
+ */
+public class Cancellation {
+
+	private final AtomicBoolean keepWorking;
+	private final Set<AutoCloseable> resources = Collections.newSetFromMap(new IdentityHashMap<AutoCloseable, Boolean>());
+	private final AtomicLong progress = new AtomicLong();
+	private volatile String progressUnits = "items";
+	private volatile boolean cancelled = false;
+
+	public Cancellation(AtomicBoolean keepWorking) {
+		this.keepWorking = keepWorking;
+	}
+
+	public AtomicBoolean getKeepWorking() {
+		return keepWorking;
+	}
+
+	/**
+	 * @return false once the call has been cancelled or has finished
+	 */
+	public boolean keepWorking() {
+		return keepWorking.get();
+	}
+
+	/**
+	 * @return true if the call was cancelled rather than finishing on its own
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Registers a resource to close if the call is cancelled.  If it already has been, the resource is closed straight
+	 * away.
+	 *
+	 * @return The resource, for passing to {@link #unregister(AutoCloseable)} once the call has closed it itself
+	 */
+	public <T extends AutoCloseable> T register(T resource) {
+		synchronized (resources) {
+			if (!cancelled) {
+				resources.add(resource);
+				return resource;
+			}
+		}
+		closeQuietly(resource);
+		return resource;
+	}
+
+	public void unregister(AutoCloseable resource) {
+		synchronized (resources) {
+			resources.remove(resource);
+		}
+	}
+
+	/**
+	 * Stops the call, closing all of its registered resources
+	 */
+	public void cancel() {
+		cancelled = true;
+		stop();
+	}
+
+	/**
+	 * Clears the keepWorking flag and closes anything the call left registered, without marking it cancelled
+	 */
+	void finish() {
+		stop();
+	}
+
+	private void stop() {
+		keepWorking.set(false);
+		final List<AutoCloseable> toClose;
+		synchronized (resources) {
+			toClose = new ArrayList<>(resources);
+			resources.clear();
+		}
+		for (AutoCloseable resource : toClose) {
+			closeQuietly(resource);
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable resource) {
+		try {
+			resource.close();
+		} catch (Exception e) {
+			// The call is being abandoned, there is nothing more to do with it
+		}
+	}
+
+	/**
+	 * Adds to how far the call has got
+	 */
+	public void addProgress(long amount) {
+		progress.addAndGet(amount);
+	}
+
+	public long getProgress() {
+		return progress.get();
+	}
+
+	/**
+	 * @param progressUnits What the progress counts, e.g. "results"
+	 */
+	public void setProgressUnits(String progressUnits) {
+		this.progressUnits = progressUnits;
+	}
+
+	/**
+	 * @return The progress for messages, e.g. "1500 results"
+	 */
+	public String describeProgress() {
+		return progress.get() + " " + progressUnits;
+	}
+}
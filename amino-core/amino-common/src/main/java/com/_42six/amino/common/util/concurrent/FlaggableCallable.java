@@ -5,12 +5,20 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Base class which handles the fact that we have to send a flag to the methods that we want to cancel because
- * Accumulo consumes the {@link InterruptedException} and thus has no way of gracefully signaling to stop.
+ * Accumulo consumes the {@link InterruptedException} and thus has no way of gracefully signaling to stop.  The
+ * call registers its scanners with its {@link Cancellation} so that {@link #cancel()} can close them.
  */
 public abstract class FlaggableCallable<T> implements Callable<T>{
 	protected AtomicBoolean keepWorking = new AtomicBoolean(true);
+	protected Cancellation cancellation = new Cancellation(keepWorking);
 	public AtomicBoolean getKeepWorking(){ return keepWorking; }
-	public void setKeepWorking(AtomicBoolean flag){keepWorking = flag;}
+	public void setKeepWorking(AtomicBoolean flag){keepWorking = flag; cancellation = new Cancellation(flag);}
+	public Cancellation getCancellation(){ return cancellation; }
+	
+	/**
+	 * Tells the call to stop, closing the resources it has registered.  Safe to call from any thread.
+	 */
+	public void cancel(){ cancellation.cancel(); }
 	
 	protected String threadName;
 	public String getThreadName() { return this.threadName; }
@@ -23,7 +31,8 @@ public abstract class FlaggableCallable<T> implements Callable<T>{
 	abstract protected T flaggableCall() throws Exception;
 	
 	/**
-	 * The call to execute.  If an exception is thrown, the keepWorking  flag will be set to false and the exception will bubble up
+	 * The call to execute.  If an exception is thrown, the keepWorking  flag will be set to false and the exception will bubble up.
+	 * Anything still registered with the cancellation is closed once the call returns.
 	 */
 	public T call() throws Exception{
 		T returnValues = null;
@@ -36,7 +45,7 @@ public abstract class FlaggableCallable<T> implements Callable<T>{
 		try{
 			returnValues = flaggableCall();
 		} finally {
-			keepWorking.set(false);
+			cancellation.finish();
 			Thread.currentThread().setName(originalThreadName);
 		} 
 		
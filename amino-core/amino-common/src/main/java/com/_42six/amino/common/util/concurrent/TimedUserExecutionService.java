@@ -1,20 +1,18 @@
 package com._42six.amino.common.util.concurrent;
 
 import com.google.common.base.Preconditions;
-import com.google.common.util.concurrent.*;
+import com.google.common.util.concurrent.ListenableFuture;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 //import org.apache.log4j.Logger;
 
 /**
  * ExecutionService that limits both the number of concurrently running tasks  
- * and the amount of tasks per user. 
+ * and the amount of tasks per user.  Tasks that can't start straight away wait
+ * in per user queues and are started fairly between the users by a
+ * {@link WeightedFairScheduler}.
  */
 @SuppressWarnings("UnusedDeclaration")
 public class TimedUserExecutionService {
@@ -25,8 +23,7 @@ public class TimedUserExecutionService {
 	
 	//private static final Logger log = Logger.getLogger(TimedUserExecutionService.class);
 	
-	protected ListeningExecutorService service;
-	protected final Map<String, AtomicInteger> currentUsageTable;
+	protected WeightedFairScheduler scheduler;
 	protected 	ThreadPoolExecutor executor;
 	
 	// Properties of the ThreadPoolExecutor
@@ -36,13 +33,17 @@ public class TimedUserExecutionService {
 	protected TimeUnit keepAliveUnits = TimeUnit.MINUTES;
 	protected BlockingQueue<Runnable> tpeQueue;
 	
+	// Virtual thread mode, used instead of the ThreadPoolExecutor when set and the JDK supports it
+	protected ExecutorService virtualExecutor;
+	protected int maxVirtualThreadTasks = 1000;
+	
 	// Timeout properties
 	private long defaultTimeout = 10;
 	private TimeUnit defaultTimeoutUnits = TimeUnit.MINUTES;
 	private long maxTimeout = 60;
 	private TimeUnit maxTimeoutUnits = TimeUnit.MINUTES; 
 
-	final private int maxTasksPerUser; // Final because we won't want to deal with the headaches of resizing currentUsageTable counts
+	final private int maxTasksPerUser;
 
 	// ************************************************************************
 	// Getters and Setters
@@ -89,9 +90,12 @@ public class TimedUserExecutionService {
 		return corePoolSize;
 	}
 	
+	/**
+	 * Kept for compatibility.  Threads are started up to the maximum pool size as the scheduler needs them and
+	 * time out after the keep alive when idle.
+	 */
 	public TimedUserExecutionService setCorePoolSize(int size){
 		corePoolSize = size;
-		if(executor != null) { executor.setCorePoolSize(size); } 
 		return this;
 	}
 	
@@ -101,7 +105,80 @@ public class TimedUserExecutionService {
 	
 	public TimedUserExecutionService setMaximumPoolSize(int size){
 		maxPoolSize = size;
-		if(executor != null) { executor.setMaximumPoolSize(size); } 
+		if(executor != null) {
+			if(size > executor.getMaximumPoolSize()){
+				executor.setMaximumPoolSize(size);
+				executor.setCorePoolSize(size);
+			} else {
+				executor.setCorePoolSize(size);
+				executor.setMaximumPoolSize(size);
+			}
+		}
+		if(virtualExecutor == null) { getScheduler().setMaxRunning(size); }
+		return this;
+	}
+	
+	public boolean isUsingVirtualThreads(){
+		return virtualExecutor != null;
+	}
+	
+	/**
+	 * Runs the tasks on virtual threads instead of the thread pool, if the JDK has them.  The calls spend most of
+	 * their time blocked on scanners, so many more can run at once without more platform threads.  The number running
+	 * is then limited by the max virtual thread tasks rather than the maximum pool size, and the per user limit still
+	 * applies.  On a JDK without virtual threads the thread pool keeps being used; see {@link #isUsingVirtualThreads()}.
+	 */
+	public TimedUserExecutionService setUseVirtualThreads(boolean useVirtualThreads){
+		if(useVirtualThreads && virtualExecutor == null){
+			virtualExecutor = VirtualThreads.newThreadPerTaskExecutor("amino-user-task-");
+			if(virtualExecutor != null){
+				getScheduler().setExecutor(virtualExecutor);
+				getScheduler().setMaxRunning(maxVirtualThreadTasks);
+			}
+		} else if(!useVirtualThreads && virtualExecutor != null){
+			getScheduler().setExecutor(getExecutor());
+			getScheduler().setMaxRunning(maxPoolSize);
+			virtualExecutor.shutdown();
+			virtualExecutor = null;
+		}
+		return this;
+	}
+	
+	public int getMaxVirtualThreadTasks(){
+		return maxVirtualThreadTasks;
+	}
+	
+	/**
+	 * Sets the most tasks that can run at once when running on virtual threads
+	 */
+	public TimedUserExecutionService setMaxVirtualThreadTasks(int max){
+		maxVirtualThreadTasks = max;
+		if(virtualExecutor != null) { getScheduler().setMaxRunning(max); }
+		return this;
+	}
+
+	/**
+	 * Sets the most tasks that can wait to start across all of the users.  Once it is reached, callers wait for
+	 * space until their timeout.
+	 */
+	public TimedUserExecutionService setMaxQueuedTasks(int size){
+		getScheduler().setMaxQueued(size);
+		return this;
+	}
+
+	/**
+	 * Sets the most tasks that can wait to start for any one user before they are rejected
+	 */
+	public TimedUserExecutionService setMaxQueuedTasksPerUser(int size){
+		getScheduler().setMaxQueuedPerUser(size);
+		return this;
+	}
+
+	/**
+	 * Sets the share of the threads the user gets when others are waiting too.  Users default to a weight of 1.
+	 */
+	public TimedUserExecutionService setUserWeight(String user, int weight){
+		getScheduler().setWeight(user, weight);
 		return this;
 	}
 	
@@ -132,10 +209,13 @@ public class TimedUserExecutionService {
 	public TimedUserExecutionService(int maxTasksPerUser, int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit units)
 	{
 		this.maxTasksPerUser = maxTasksPerUser;
-		this.tpeQueue = new SynchronousQueue<>();
-		this.executor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, units, this.tpeQueue );
-		this.service = MoreExecutors.listeningDecorator(this.executor);
-		this.currentUsageTable = Collections.synchronizedMap(new HashMap<String, AtomicInteger>());
+		this.corePoolSize = corePoolSize;
+		this.maxPoolSize = maxPoolSize;
+		this.keepAlive = keepAliveTime;
+		this.keepAliveUnits = units;
+		this.tpeQueue = new LinkedBlockingQueue<>();
+		this.executor = getExecutor();
+		this.scheduler = getScheduler();
 	}
 	
 	public TimedUserExecutionService(int maxTasksPerUser, int corePoolSize, int maxPoolSize, long keepAliveTime, TimeUnit units,
@@ -167,7 +247,7 @@ public class TimedUserExecutionService {
 	
 	/**
 	 * Executes the {@link Callable} for the user, timing out after the default amount of time.
-	 * If the user exceeds their quota, a {@link RejectedExecutionException} will be thrown 
+	 * If the user has too many tasks waiting, a {@link RejectedExecutionException} will be thrown 
 	 * @param task The {@link Callable} to execute
 	 * @param user The name of the  user queue to run against
 	 * @param mayInterruptIfRunning true if the task should be interrupted if there were any problems or the timeout is reached
@@ -175,7 +255,7 @@ public class TimedUserExecutionService {
 	 * @throws InterruptedException if the task was interrupted
 	 * @throws TimeoutException if task did not complete in time
 	 * @throws ExecutionException if the task fails executing
-	 * @throws RejectedExecutionException if the user exceeds their amount of concurrent task requests
+	 * @throws RejectedExecutionException if the user has too many tasks waiting or the task could not start in time
 	 */
 	public <T> T timedCall(Callable<T> task, String user, boolean mayInterruptIfRunning ) 
 			throws RejectedExecutionException, InterruptedException, TimeoutException, ExecutionException
@@ -185,7 +265,7 @@ public class TimedUserExecutionService {
 	
 	/**
 	 * Executes the {@link Callable} for the user, timing out after the specified amount of time.
-	 * If the user exceeds their quota, a {@link RejectedExecutionException} will be thrown 
+	 * If the user has too many tasks waiting, a {@link RejectedExecutionException} will be thrown 
 	 * @param task The {@link Callable} to execute
 	 * @param user The name of the  user queue to run against
 	 * @param timeout The amount of time in minutes to wait before giving up
@@ -194,7 +274,7 @@ public class TimedUserExecutionService {
 	 * @throws InterruptedException if the task was interrupted
 	 * @throws TimeoutException if task did not complete in time
 	 * @throws ExecutionException if the task fails executing
-	 * @throws RejectedExecutionException if the user exceeds their amount of concurrent task requests
+	 * @throws RejectedExecutionException if the user has too many tasks waiting or the task could not start in time
 	 */
 	public <T> T timedCall(Callable<T> task, String user, long timeout,  boolean mayInterruptIfRunning) 
 			throws RejectedExecutionException, InterruptedException, TimeoutException, ExecutionException
@@ -204,7 +284,7 @@ public class TimedUserExecutionService {
 	
 	/**
 	 * Executes the {@link Callable} for the user, timing out after the specified amount of time.
-	 * If the user exceeds their quota, a {@link RejectedExecutionException} will be thrown 
+	 * If the user has too many tasks waiting, a {@link RejectedExecutionException} will be thrown 
 	 * @param task The {@link Callable} to execute
 	 * @param user The name of the  user queue to run against
 	 * @param timeout The amount of time to wait before giving up
@@ -214,7 +294,7 @@ public class TimedUserExecutionService {
 	 * @throws InterruptedException if the task was interrupted
 	 * @throws TimeoutException if task did not complete in time
 	 * @throws ExecutionException if the task fails executing
-	 * @throws RejectedExecutionException if the user exceeds their amount of concurrent task requests
+	 * @throws RejectedExecutionException if the user has too many tasks waiting or the task could not start in time
 	 */
 	public <T> T timedCall(Callable<T> task, String user, long timeout, TimeUnit unit, boolean mayInterruptIfRunning) 
 			throws InterruptedException, TimeoutException, ExecutionException, RejectedExecutionException
@@ -222,58 +302,37 @@ public class TimedUserExecutionService {
 		Preconditions.checkNotNull(task, "Task was null");
 		Preconditions.checkNotNull(user, "Must provider user for queue");
 		
-		ListenableFuture<T> futureTask;
-		
-		// Attempt to add a task to the queue
-		synchronized (currentUsageTable) {
-			// If it's there, increment it
-			if(currentUsageTable.containsKey(user)){
-				if(currentUsageTable.get(user).incrementAndGet() > maxTasksPerUser){
-					currentUsageTable.get(user).decrementAndGet();
-					throw new RejectedExecutionException(String.format("User has already hit maximum number of concurrent tasks - %d", maxTasksPerUser));
-				}				
-			}
-			else {
-				// Need to create new counter
-				currentUsageTable.put(user, new AtomicInteger(1));
-			}
-		}
-				
-		// Schedule the call the run
-		try{
-			futureTask = getService().submit(task);
-		} catch(RejectedExecutionException  e){
-			decrementUserCount(user);
-			throw new RejectedExecutionException("Maximum number of concurrent queries reached", e);
+		// Make sure timeout value is valid
+		long time;
+		TimeUnit timeUnit;
+		if(timeout <= 0){
+			time = defaultTimeout;
+			timeUnit = defaultTimeoutUnits;
+		} else if(unit.toMillis(timeout) > maxTimeoutUnits.toMillis(maxTimeout)){
+			time = maxTimeout;
+			timeUnit = maxTimeoutUnits;
+		} else {
+			time = timeout;
+			timeUnit = unit;
 		}
 		
-		// Add a callback for cleaning up the user queues when the task is terminated
-		Futures.addCallback(futureTask, new UserFutureCallback<T>(user));
+		// The timeout covers the time spent waiting in the queue as well as running
+		final long deadline = System.nanoTime() + timeUnit.toNanos(time);
+		final ListenableFuture<T> futureTask = getScheduler().submit(user, task, deadline);
 
 		// Get the result
 		T result;
-		long time;
-		TimeUnit timeUnit;
 		try{
-			// Make sure timeout value is valid
-			if(timeout <= 0){
-				time = defaultTimeout;
-				timeUnit = defaultTimeoutUnits;
-			} else if(unit.toMillis(timeout) > maxTimeoutUnits.toMillis(maxTimeout)){
-				time = maxTimeout;
-				timeUnit = maxTimeoutUnits;
-			} else {
-				time = timeout;
-				timeUnit = unit;
-			}
-			
-			result = futureTask.get(time, timeUnit);
+			result = futureTask.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
 		} catch(InterruptedException | ExecutionException ex){
 			futureTask.cancel(mayInterruptIfRunning); 
+			cancelFlaggable(task);
 			throw ex;
 		} catch(TimeoutException ex){
 			futureTask.cancel(mayInterruptIfRunning); 
-			throw new TimeoutException("The Task could not be completed before the timeout of " + Long.toString(timeout) + " " + unit.toString());
+			final String progress = cancelFlaggable(task);
+			throw new TimeoutException("The Task could not be completed before the timeout of " + Long.toString(timeout) + " " + unit.toString()
+					+ ((progress == null) ? "" : ", it had got through " + progress));
 		}
 
 		return result;		
@@ -286,6 +345,8 @@ public class TimedUserExecutionService {
 	public String getStats(){
 		final StringBuilder sb = new StringBuilder();
 		final ThreadPoolExecutor tpe = getExecutor();
+		// One snapshot, so the counts agree with each other
+		final WeightedFairScheduler.Stats stats = getScheduler().getStats();
 		sb.append(String.format("Tasks run since start: %d | Completed TaskCount: %d | Active Count: %d | Pool Size: %d | Largest Pool Size: %d, Max Pool Size: %d\n", 
 				tpe.getTaskCount(),
 				tpe.getCompletedTaskCount(),
@@ -295,76 +356,63 @@ public class TimedUserExecutionService {
 				tpe.getMaximumPoolSize()
 				)
 		);
+		if(isUsingVirtualThreads()){
+			sb.append(String.format("Virtual Threads | Max Running: %d | Running: %d\n", maxVirtualThreadTasks, stats.running));
+		}
+		sb.append(String.format("Queue Depth: %d | Submitted: %d | Rejected: %d | Expired: %d | Average Wait (ms): %d | Max Wait (ms): %d\n",
+				stats.queueDepth,
+				stats.submittedCount,
+				stats.rejectedCount,
+				stats.expiredCount,
+				stats.getAverageWait(TimeUnit.MILLISECONDS),
+				stats.getMaxWait(TimeUnit.MILLISECONDS)
+				)
+		);
 		
-		for(Entry<String, AtomicInteger> e : currentUsageTable.entrySet()){
-			sb.append(String.format("User: %s | Max: %d | Active: %d\n", e.getKey(), maxTasksPerUser, e.getValue().get()));
+		for(Entry<String, Integer> e : stats.runningByUser.entrySet()){
+			sb.append(String.format("User: %s | Max: %d | Active: %d | Queued: %d\n", e.getKey(), maxTasksPerUser, e.getValue(), stats.queuedByUser.get(e.getKey())));
 		}
 		
 		return sb.toString();
 	}
 	
-	// ************************************************************************
-	// Protected and private methods
-	// ************************************************************************
-	
-	protected ThreadPoolExecutor getExecutor(){
-		if(executor == null){
-			executor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAlive, keepAliveUnits, tpeQueue);
-		}
-		return executor;
-	}
-	
-	protected ListeningExecutorService getService(){
-		if(service == null){
-			service = MoreExecutors.listeningDecorator(getExecutor());
-		}
-		return service;
-	}
-	
 	/**
-	 * Reduces the count of of the user queue by one, removing it from the map if there are no more
-	 * tasks being fun for the user
-	 * @param user The user queue to update
+	 * @return The scheduler, for its queue depth and wait time metrics
 	 */
-	protected void decrementUserCount(String user){
-		// Make sure everything is on the up and up
-		synchronized(currentUsageTable){
-			if(!currentUsageTable.containsKey(user)){
-				throw new RuntimeException("The user LUT doesn't have any records for user: " + user);
-			}
-			
-			// Decrement the count now that we are done. If we are back to 0,
-			// clean up the table so we don't have stuff lingering around taking up memory
-			if(currentUsageTable.get(user).decrementAndGet() == 0){
-				currentUsageTable.remove(user);
-			}
+	public WeightedFairScheduler getScheduler(){
+		if(scheduler == null){
+			scheduler = new WeightedFairScheduler(getExecutor(), maxPoolSize, maxTasksPerUser);
 		}
+		return scheduler;
 	}
 	
 	// ************************************************************************
-	// Inner classes
+	// Protected and private methods
 	// ************************************************************************
 	
 	/**
-	 * Simple class for keeping track of what user is associated with a task and cleans up the associated
-	 * user queue when the task is done
-	 * @param <T> The type of the result of the call
+	 * Cancels a {@link FlaggableCallable} so it closes its scanners rather than running on after the caller has given up
+	 * @return How far the task got, or null if it isn't a {@link FlaggableCallable}
 	 */
-	class UserFutureCallback<T> implements FutureCallback<T> {
-		private String user;
-		public UserFutureCallback(String user) {
-			this.user = user;
+	protected String cancelFlaggable(Callable<?> task){
+		if(task instanceof FlaggableCallable){
+			final Cancellation cancellation = ((FlaggableCallable<?>) task).getCancellation();
+			cancellation.cancel();
+			return cancellation.describeProgress();
 		}
-
-		@Override
-		public void onSuccess(T result) {
-			decrementUserCount(user);
+		return null;
+	}
+	
+	/**
+	 * The scheduler never starts more than maxPoolSize tasks at once, so every thread is a core thread and idle ones
+	 * time out
+	 */
+	protected ThreadPoolExecutor getExecutor(){
+		if(executor == null){
+			executor = new ThreadPoolExecutor(maxPoolSize, maxPoolSize, keepAlive, keepAliveUnits, tpeQueue);
+			executor.allowCoreThreadTimeOut(true);
 		}
-
-		@Override
-		public void onFailure(Throwable t) {
-			decrementUserCount(user);	
-		}		
+		return executor;
 	}
 	
 }
@@ -0,0 +1,68 @@
+package com._42six.amino.common.util.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of newer JDKs from code built for Java 7.  Everything is looked up by reflection, so
+ * on a JDK without them {@link #isSupported()} is false and {@link #newThreadPerTaskExecutor(String)} returns null.
+ */
+public final class VirtualThreads {
+
+	private static final Method ofVirtual;
+	private static final Method builderName;
+	private static final Method builderFactory;
+	private static final Method newThreadPerTaskExecutor;
+
+	static {
+		Method virtual = null;
+		Method name = null;
+		Method factory = null;
+		Method perTask = null;
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			virtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			perTask = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			virtual = null;
+		}
+		ofVirtual = virtual;
+		builderName = name;
+		builderFactory = factory;
+		newThreadPerTaskExecutor = perTask;
+	}
+
+	private VirtualThreads() {
+		// Static methods only
+	}
+
+	/**
+	 * @return true if the JDK has virtual threads
+	 */
+	public static boolean isSupported() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task
+	 *
+	 * @param namePrefix The threads are named namePrefix0, namePrefix1, ...
+	 * @return The executor, or null if the JDK does not have virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+		if (!isSupported()) {
+			return null;
+		}
+		try {
+			final Object builder = builderName.invoke(ofVirtual.invoke(null), namePrefix, 0L);
+			final ThreadFactory factory = (ThreadFactory) builderFactory.invoke(builder);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+		} catch (ReflectiveOperationException e) {
+			// Virtual threads can be disabled or restricted at runtime
+			return null;
+		}
+	}
+}
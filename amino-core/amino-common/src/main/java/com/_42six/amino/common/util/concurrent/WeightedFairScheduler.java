@@ -0,0 +1,491 @@
+package com._42six.amino.common.util.concurrent;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues tasks per user and hands them to an {@link Executor} no more than maxRunning at a time, choosing the next
+ * user by deficit round robin so that each user with waiting tasks gets a share of the threads proportional to their
+ * weight.  A user never has more than maxRunningPerUser tasks running.
+ *
+ * Every task has a deadline.  A task is not queued if the queue is already estimated to take longer than the deadline
+ * to get to it, and a task still queued at its deadline is cancelled instead of run.  When the queue is full, submit
+ * waits for space until the deadline.
+ */
+public class WeightedFairScheduler {
+
+	public static final int DEFAULT_MAX_QUEUED_TASKS = 200;
+	public static final int DEFAULT_MAX_QUEUED_TASKS_PER_USER = 50;
+
+	private final Object lock = new Object();
+
+	// Guarded by lock
+	private Executor executor;
+	private final Map<String, UserQueue> users = new HashMap<>();
+	private final ArrayDeque<UserQueue> active = new ArrayDeque<>(); // Users with queued tasks, in round robin order
+	private final Map<String, Integer> weights = new HashMap<>();
+	private int maxRunning;
+	private int maxRunningPerUser;
+	private int maxQueued = DEFAULT_MAX_QUEUED_TASKS;
+	private int maxQueuedPerUser = DEFAULT_MAX_QUEUED_TASKS_PER_USER;
+	private int queued = 0;
+	private int running = 0;
+
+	// Metrics, guarded by lock
+	private long submittedCount = 0;
+	private long rejectedCount = 0;
+	private long expiredCount = 0;
+	private long startedCount = 0;
+	private long totalWaitNanos = 0;
+	private long maxWaitNanos = 0;
+	private double averageRunNanos = 0; // Moving average, 0 until a task has finished
+
+	/**
+	 * @param executor Runs the dispatched tasks.  Must accept at least maxRunning tasks at once.
+	 * @param maxRunning The most tasks to run at once
+	 * @param maxRunningPerUser The most tasks to run at once for any one user
+	 */
+	public WeightedFairScheduler(Executor executor, int maxRunning, int maxRunningPerUser) {
+		Preconditions.checkArgument(maxRunning > 0, "maxRunning must be positive");
+		Preconditions.checkArgument(maxRunningPerUser > 0, "maxRunningPerUser must be positive");
+		this.executor = Preconditions.checkNotNull(executor);
+		this.maxRunning = maxRunning;
+		this.maxRunningPerUser = maxRunningPerUser;
+	}
+
+	// ************************************************************************
+	// Configuration
+	// ************************************************************************
+
+	/**
+	 * Changes where the tasks are run.  Tasks already started finish on the old executor.
+	 */
+	public void setExecutor(Executor executor) {
+		Preconditions.checkNotNull(executor);
+		synchronized (lock) {
+			this.executor = executor;
+		}
+	}
+
+	public void setMaxRunning(int maxRunning) {
+		Preconditions.checkArgument(maxRunning > 0, "maxRunning must be positive");
+		synchronized (lock) {
+			this.maxRunning = maxRunning;
+			dispatch();
+		}
+	}
+
+	public void setMaxQueued(int maxQueued) {
+		synchronized (lock) {
+			this.maxQueued = maxQueued;
+			lock.notifyAll();
+		}
+	}
+
+	public void setMaxQueuedPerUser(int maxQueuedPerUser) {
+		synchronized (lock) {
+			this.maxQueuedPerUser = maxQueuedPerUser;
+		}
+	}
+
+	/**
+	 * Sets the share of the threads a user gets relative to the other waiting users.  Users default to 1.
+	 */
+	public void setWeight(String user, int weight) {
+		Preconditions.checkArgument(weight > 0, "weight must be positive");
+		synchronized (lock) {
+			weights.put(user, weight);
+			final UserQueue q = users.get(user);
+			if (q != null) {
+				q.weight = weight;
+			}
+		}
+	}
+
+	// ************************************************************************
+	// Scheduling
+	// ************************************************************************
+
+	/**
+	 * Queues the task for the user, waiting for space in the queue if it is full
+	 *
+	 * @param user The user queue to run the task in
+	 * @param task The task
+	 * @param deadline The {@link System#nanoTime()} by which the task must have started
+	 * @return The future of the task
+	 * @throws RejectedExecutionException if the user has too many tasks queued, the queue stays full until the
+	 * deadline, or the task would not be started before the deadline
+	 * @throws InterruptedException if interrupted while waiting for space in the queue
+	 */
+	public <T> ListenableFuture<T> submit(String user, Callable<T> task, long deadline)
+			throws InterruptedException, RejectedExecutionException {
+		Preconditions.checkNotNull(user, "Must provider user for queue");
+		Preconditions.checkNotNull(task, "Task was null");
+
+		final ListenableFutureTask<T> future = ListenableFutureTask.create(task);
+		final QueuedTask queuedTask;
+		synchronized (lock) {
+			submittedCount++;
+			while (true) {
+				final UserQueue q = users.get(user);
+				if (q != null && q.tasks.size() >= maxQueuedPerUser) {
+					throw reject(String.format("User has already hit maximum number of queued tasks - %d", maxQueuedPerUser));
+				}
+				if (queued < maxQueued) {
+					break;
+				}
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw reject("Maximum number of queued queries reached");
+				}
+				TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+			}
+
+			UserQueue q = users.get(user);
+			if (q == null) {
+				final Integer weight = weights.get(user);
+				q = new UserQueue(user, (weight == null) ? 1 : weight);
+				users.put(user, q);
+			}
+			final long now = System.nanoTime();
+			if (estimatedWaitNanos(q) > deadline - now) {
+				removeIfIdle(q);
+				throw reject("The task would not be started before its timeout");
+			}
+
+			queuedTask = new QueuedTask(q, future, now, deadline);
+			q.tasks.add(queuedTask);
+			queued++;
+			if (!q.isActive) {
+				q.isActive = true;
+				active.add(q);
+			}
+			dispatch();
+		}
+
+		// Give back the queue space straight away if the caller gives up while the task is waiting
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (future.isCancelled()) {
+					dequeue(queuedTask);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	/**
+	 * Hands queued tasks to the executor while there are free threads.  Each visit to a user adds their weight to their
+	 * deficit, and they may start one task per unit of deficit before the next user is visited.
+	 */
+	private void dispatch() {
+		boolean dequeued = false;
+		int skipped = 0;
+		while (running < maxRunning && !active.isEmpty() && skipped < active.size()) {
+			final UserQueue q = active.peek();
+			if (q.running >= maxRunningPerUser) {
+				// The user has to wait for one of their tasks to finish
+				q.deficit = 0;
+				active.add(active.poll());
+				skipped++;
+				continue;
+			}
+			if (q.deficit < 1) {
+				q.deficit += q.weight;
+			}
+
+			final QueuedTask task = q.tasks.poll();
+			queued--;
+			dequeued = true;
+			skipped = 0;
+			if (task.future.isDone()) {
+				// Cancelled while queued, it doesn't cost the user anything
+			} else if (System.nanoTime() - task.deadline > 0) {
+				expiredCount++;
+				task.future.cancel(false);
+			} else {
+				q.deficit--;
+				start(task);
+			}
+
+			if (q.tasks.isEmpty()) {
+				active.poll();
+				q.isActive = false;
+				q.deficit = 0;
+				removeIfIdle(q);
+			} else if (q.deficit < 1) {
+				active.add(active.poll());
+			}
+		}
+		if (dequeued) {
+			lock.notifyAll();
+		}
+	}
+
+	private void start(final QueuedTask task) {
+		final long wait = System.nanoTime() - task.enqueued;
+		totalWaitNanos += wait;
+		maxWaitNanos = Math.max(maxWaitNanos, wait);
+		startedCount++;
+		running++;
+		task.queue.running++;
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					final long start = System.nanoTime();
+					try {
+						task.future.run();
+					} finally {
+						finished(task, System.nanoTime() - start);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			running--;
+			task.queue.running--;
+			task.future.cancel(false);
+		}
+	}
+
+	private void finished(QueuedTask task, long runNanos) {
+		synchronized (lock) {
+			running--;
+			task.queue.running--;
+			averageRunNanos = (averageRunNanos == 0) ? runNanos : 0.9 * averageRunNanos + 0.1 * runNanos;
+			removeIfIdle(task.queue);
+			dispatch();
+		}
+	}
+
+	private void dequeue(QueuedTask task) {
+		synchronized (lock) {
+			final UserQueue q = task.queue;
+			if (q.tasks.remove(task)) {
+				queued--;
+				if (q.tasks.isEmpty() && q.isActive) {
+					active.remove(q);
+					q.isActive = false;
+					q.deficit = 0;
+				}
+				removeIfIdle(q);
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Estimates how long a new task for the user would wait, assuming the threads are shared evenly between the users
+	 * with queued tasks.  0 if a thread is free or nothing has finished yet to estimate from.
+	 */
+	private long estimatedWaitNanos(UserQueue q) {
+		if (running < maxRunning || averageRunNanos == 0) {
+			return 0;
+		}
+		final int sharingUsers = active.size() + (q.isActive ? 0 : 1);
+		final long tasksAhead = Math.min(queued + 1, (long) (q.tasks.size() + 1) * sharingUsers);
+		return (long) (tasksAhead * averageRunNanos / maxRunning);
+	}
+
+	private void removeIfIdle(UserQueue q) {
+		if (q.running == 0 && q.tasks.isEmpty() && users.get(q.user) == q) {
+			users.remove(q.user);
+		}
+	}
+
+	private RejectedExecutionException reject(String message) {
+		rejectedCount++;
+		return new RejectedExecutionException(message);
+	}
+
+	// ************************************************************************
+	// Metrics
+	// ************************************************************************
+
+	/**
+	 * @return The number of tasks waiting to start
+	 */
+	public int getQueueDepth() {
+		synchronized (lock) {
+			return queued;
+		}
+	}
+
+	/**
+	 * @return The number of tasks waiting to start for each user with queued or running tasks
+	 */
+	public Map<String, Integer> getQueueDepthByUser() {
+		synchronized (lock) {
+			final Map<String, Integer> depths = new TreeMap<>();
+			for (UserQueue q : users.values()) {
+				depths.put(q.user, q.tasks.size());
+			}
+			return Collections.unmodifiableMap(depths);
+		}
+	}
+
+	/**
+	 * @return The number of tasks running for each user with queued or running tasks
+	 */
+	public Map<String, Integer> getRunningByUser() {
+		synchronized (lock) {
+			final Map<String, Integer> counts = new TreeMap<>();
+			for (UserQueue q : users.values()) {
+				counts.put(q.user, q.running);
+			}
+			return Collections.unmodifiableMap(counts);
+		}
+	}
+
+	/**
+	 * @return The metrics and the counts of every user, all read at the same moment
+	 */
+	public Stats getStats() {
+		synchronized (lock) {
+			final Map<String, Integer> queuedByUser = new TreeMap<>();
+			final Map<String, Integer> runningByUser = new TreeMap<>();
+			for (UserQueue q : users.values()) {
+				queuedByUser.put(q.user, q.tasks.size());
+				runningByUser.put(q.user, q.running);
+			}
+			return new Stats(queued, running, submittedCount, rejectedCount, expiredCount,
+					(startedCount == 0) ? 0 : totalWaitNanos / startedCount, maxWaitNanos,
+					Collections.unmodifiableMap(queuedByUser), Collections.unmodifiableMap(runningByUser));
+		}
+	}
+
+	public int getRunningCount() {
+		synchronized (lock) {
+			return running;
+		}
+	}
+
+	public long getSubmittedCount() {
+		synchronized (lock) {
+			return submittedCount;
+		}
+	}
+
+	public long getRejectedCount() {
+		synchronized (lock) {
+			return rejectedCount;
+		}
+	}
+
+	/**
+	 * @return The number of tasks cancelled because they were still queued at their deadline
+	 */
+	public long getExpiredCount() {
+		synchronized (lock) {
+			return expiredCount;
+		}
+	}
+
+	/**
+	 * @return The mean time the started tasks spent queued
+	 */
+	public long getAverageWait(TimeUnit unit) {
+		synchronized (lock) {
+			return (startedCount == 0) ? 0 : unit.convert(totalWaitNanos / startedCount, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * @return The longest time a started task spent queued
+	 */
+	public long getMaxWait(TimeUnit unit) {
+		synchronized (lock) {
+			return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	// ************************************************************************
+	// Inner classes
+	// ************************************************************************
+
+	/**
+	 * The state of the scheduler at one moment, from {@link #getStats()}
+	 */
+	public static class Stats {
+		public final int queueDepth;
+		public final int running;
+		public final long submittedCount;
+		public final long rejectedCount;
+		public final long expiredCount;
+		private final long averageWaitNanos;
+		private final long maxWaitNanos;
+		/** The queued tasks of each user with queued or running tasks */
+		public final Map<String, Integer> queuedByUser;
+		/** The running tasks of the same users */
+		public final Map<String, Integer> runningByUser;
+
+		Stats(int queueDepth, int running, long submittedCount, long rejectedCount, long expiredCount,
+				long averageWaitNanos, long maxWaitNanos, Map<String, Integer> queuedByUser,
+				Map<String, Integer> runningByUser) {
+			this.queueDepth = queueDepth;
+			this.running = running;
+			this.submittedCount = submittedCount;
+			this.rejectedCount = rejectedCount;
+			this.expiredCount = expiredCount;
+			this.averageWaitNanos = averageWaitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+			this.queuedByUser = queuedByUser;
+			this.runningByUser = runningByUser;
+		}
+
+		/**
+		 * @return The mean time the started tasks spent queued
+		 */
+		public long getAverageWait(TimeUnit unit) {
+			return unit.convert(averageWaitNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * @return The longest time a started task spent queued
+		 */
+		public long getMaxWait(TimeUnit unit) {
+			return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private static class UserQueue {
+		final String user;
+		final ArrayDeque<QueuedTask> tasks = new ArrayDeque<>();
+		int weight;
+		int deficit = 0;
+		int running = 0;
+		boolean isActive = false;
+
+		UserQueue(String user, int weight) {
+			this.user = user;
+			this.weight = weight;
+		}
+	}
+
+	private static class QueuedTask {
+		final UserQueue queue;
+		final ListenableFutureTask<?> future;
+		final long enqueued;
+		final long deadline;
+
+		QueuedTask(UserQueue queue, ListenableFutureTask<?> future, long enqueued, long deadline) {
+			this.queue = queue;
+			this.future = future;
+			this.enqueued = enqueued;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com._42six.amino.common.util.concurrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CancellationTest {
+
+	/** Counts how many times it was closed */
+	private static class Resource implements AutoCloseable {
+		final AtomicInteger closed = new AtomicInteger();
+
+		@Override
+		public void close() {
+			closed.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void cancelClosesRegisteredResources() {
+		final Cancellation cancellation = new Cancellation(new AtomicBoolean(true));
+		final Resource open = cancellation.register(new Resource());
+		final Resource closedByCall = cancellation.register(new Resource());
+		cancellation.unregister(closedByCall);
+
+		cancellation.cancel();
+		Assert.assertTrue(cancellation.isCancelled());
+		Assert.assertFalse(cancellation.keepWorking());
+		Assert.assertEquals(1, open.closed.get());
+		Assert.assertEquals(0, closedByCall.closed.get());
+
+		// Too late, closed straight away
+		final Resource late = cancellation.register(new Resource());
+		Assert.assertEquals(1, late.closed.get());
+	}
+
+	@Test
+	public void finishingIsNotCancelling() {
+		final Cancellation cancellation = new Cancellation(new AtomicBoolean(true));
+		final Resource leftOpen = cancellation.register(new Resource());
+
+		cancellation.finish();
+		Assert.assertFalse(cancellation.isCancelled());
+		Assert.assertFalse(cancellation.keepWorking());
+		Assert.assertEquals(1, leftOpen.closed.get());
+	}
+
+	@Test
+	public void timeoutCancelsTheCallAndReportsProgress() throws Exception {
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final Resource scanner = new Resource();
+		final FlaggableCallable<String> call = new FlaggableCallable<String>() {
+			@Override
+			protected String flaggableCall() throws Exception {
+				cancellation.setProgressUnits("results");
+				cancellation.register(scanner);
+				cancellation.addProgress(42);
+				// Stands in for a scanner blocked waiting for its next entry
+				blocked.await();
+				return "done";
+			}
+		};
+
+		final TimedUserExecutionService service = new TimedUserExecutionService(1);
+		try {
+			service.timedCall(call, "user", 50, TimeUnit.MILLISECONDS, false);
+			Assert.fail("Should have timed out");
+		} catch (TimeoutException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("42 results"));
+		} finally {
+			blocked.countDown();
+		}
+		Assert.assertTrue(call.getCancellation().isCancelled());
+		Assert.assertFalse(call.getKeepWorking().get());
+		Assert.assertEquals(1, scanner.closed.get());
+	}
+}
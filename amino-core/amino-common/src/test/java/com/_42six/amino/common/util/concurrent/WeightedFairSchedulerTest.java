@@ -0,0 +1,219 @@
+package com._42six.amino.common.util.concurrent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class WeightedFairSchedulerTest {
+
+	/** Holds the dispatched tasks until the test runs them */
+	private LinkedList<Runnable> dispatched;
+	private Executor executor;
+	private List<String> ran;
+
+	@Before
+	public void setup() {
+		dispatched = new LinkedList<>();
+		ran = new ArrayList<>();
+		executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				dispatched.add(command);
+			}
+		};
+	}
+
+	private Callable<String> task(final String name) {
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				ran.add(name);
+				return name;
+			}
+		};
+	}
+
+	private static long inOneMinute() {
+		return System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+	}
+
+	private void runAll() {
+		while (!dispatched.isEmpty()) {
+			dispatched.poll().run();
+		}
+	}
+
+	@Test
+	public void roundRobinBetweenUsers() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 1, 10);
+		scheduler.submit("a", task("a1"), inOneMinute());
+		scheduler.submit("a", task("a2"), inOneMinute());
+		scheduler.submit("a", task("a3"), inOneMinute());
+		scheduler.submit("b", task("b1"), inOneMinute());
+		scheduler.submit("b", task("b2"), inOneMinute());
+		Assert.assertEquals(4, scheduler.getQueueDepth());
+
+		runAll();
+		Assert.assertEquals("[a1, a2, b1, a3, b2]", ran.toString());
+		Assert.assertEquals(0, scheduler.getQueueDepth());
+		Assert.assertEquals(0, scheduler.getRunningCount());
+		Assert.assertTrue(scheduler.getQueueDepthByUser().isEmpty());
+	}
+
+	@Test
+	public void weightedUsersGetMoreTurns() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 1, 10);
+		scheduler.setWeight("a", 2);
+		scheduler.submit("z", task("z"), inOneMinute());
+		for (int i = 1; i <= 4; i++) {
+			scheduler.submit("a", task("a" + i), inOneMinute());
+		}
+		scheduler.submit("b", task("b1"), inOneMinute());
+		scheduler.submit("b", task("b2"), inOneMinute());
+
+		runAll();
+		Assert.assertEquals("[z, a1, a2, b1, a3, a4, b2]", ran.toString());
+	}
+
+	@Test
+	public void userLimitLeavesThreadsForOthers() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 2, 1);
+		scheduler.submit("a", task("a1"), inOneMinute());
+		scheduler.submit("a", task("a2"), inOneMinute());
+		scheduler.submit("b", task("b1"), inOneMinute());
+
+		Assert.assertEquals(2, scheduler.getRunningCount());
+		Assert.assertEquals(1, scheduler.getQueueDepth());
+		Assert.assertEquals(Integer.valueOf(1), scheduler.getQueueDepthByUser().get("a"));
+		runAll();
+		Assert.assertEquals("[a1, b1, a2]", ran.toString());
+	}
+
+	@Test
+	public void statsCoverEveryUserOnce() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 2, 1);
+		scheduler.submit("a", task("a1"), inOneMinute());
+		scheduler.submit("a", task("a2"), inOneMinute());
+		scheduler.submit("b", task("b1"), inOneMinute());
+
+		final WeightedFairScheduler.Stats stats = scheduler.getStats();
+		Assert.assertEquals(1, stats.queueDepth);
+		Assert.assertEquals(2, stats.running);
+		Assert.assertEquals(3, stats.submittedCount);
+		// A user that is only running still has a queued count
+		Assert.assertEquals(stats.runningByUser.keySet(), stats.queuedByUser.keySet());
+		Assert.assertEquals(Integer.valueOf(1), stats.queuedByUser.get("a"));
+		Assert.assertEquals(Integer.valueOf(0), stats.queuedByUser.get("b"));
+		Assert.assertEquals(Integer.valueOf(1), stats.runningByUser.get("b"));
+
+		runAll();
+		// The snapshot doesn't change as the scheduler does
+		Assert.assertEquals(1, stats.queueDepth);
+		Assert.assertTrue(scheduler.getStats().runningByUser.isEmpty());
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void tooManyQueuedForUser() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 1, 1);
+		scheduler.setMaxQueuedPerUser(1);
+		scheduler.submit("a", task("a1"), inOneMinute());
+		scheduler.submit("a", task("a2"), inOneMinute());
+		scheduler.submit("a", task("a3"), inOneMinute());
+	}
+
+	@Test
+	public void fullQueueWaitsUntilDeadline() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 1, 1);
+		scheduler.setMaxQueued(1);
+		scheduler.submit("a", task("a1"), inOneMinute());
+		scheduler.submit("a", task("a2"), inOneMinute());
+
+		final long start = System.nanoTime();
+		try {
+			scheduler.submit("b", task("b1"), start + TimeUnit.MILLISECONDS.toNanos(50));
+			Assert.fail("Queue was full");
+		} catch (RejectedExecutionException e) {
+			Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		}
+		Assert.assertEquals(1, scheduler.getRejectedCount());
+	}
+
+	@Test
+	public void expiredTasksAreNotRun() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 1, 1);
+		scheduler.submit("a", task("a1"), inOneMinute());
+		final ListenableFuture<String> late = scheduler.submit("b", task("b1"), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1));
+		Thread.sleep(10);
+
+		runAll();
+		Assert.assertEquals("[a1]", ran.toString());
+		Assert.assertTrue(late.isCancelled());
+		Assert.assertEquals(1, scheduler.getExpiredCount());
+	}
+
+	@Test
+	public void cancelledTasksLeaveTheQueue() throws Exception {
+		final WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 1, 1);
+		scheduler.submit("a", task("a1"), inOneMinute());
+		final ListenableFuture<String> queued = scheduler.submit("b", task("b1"), inOneMinute());
+		Assert.assertEquals(1, scheduler.getQueueDepth());
+
+		queued.cancel(false);
+		Assert.assertEquals(0, scheduler.getQueueDepth());
+		runAll();
+		Assert.assertEquals("[a1]", ran.toString());
+	}
+
+	@Test
+	public void userTasksWaitInsteadOfBeingRejected() throws Exception {
+		final TimedUserExecutionService service = new TimedUserExecutionService(1, 1, 2, 1, TimeUnit.MINUTES);
+		final ExecutorService callers = Executors.newFixedThreadPool(3);
+		try {
+			final List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				final int value = i;
+				results.add(callers.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						return service.timedCall(new Callable<Integer>() {
+							@Override
+							public Integer call() throws Exception {
+								Thread.sleep(20);
+								return value;
+							}
+						}, "user", 1, TimeUnit.MINUTES, false);
+					}
+				}));
+			}
+			for (int i = 0; i < 3; i++) {
+				Assert.assertEquals(Integer.valueOf(i), results.get(i).get());
+			}
+			Assert.assertEquals(0, service.getScheduler().getRejectedCount());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void virtualThreadsWhenSupported() throws Exception {
+		final TimedUserExecutionService service = new TimedUserExecutionService(1).setUseVirtualThreads(true);
+		Assert.assertEquals(VirtualThreads.isSupported(), service.isUsingVirtualThreads());
+
+		final String result = service.timedCall(new Callable<String>() {
+			@Override
+			public String call() {
+				return "done";
+			}
+		}, "user", 1, TimeUnit.MINUTES, false);
+		Assert.assertEquals("done", result);
+
+		service.setUseVirtualThreads(false);
+		Assert.assertFalse(service.isUsingVirtualThreads());
+	}
+}
@@ -24,6 +24,10 @@ public interface AminoGroupService {
 
     String setGroupHypothesisLUT(String lut);
 
+    String getUserHypothesisIndex();
+
+    String setUserHypothesisIndex(String index);
+
     String setGroupMembershipTable(String memberTable);
 
     String setHypothesisTable(String hypothesisTable);
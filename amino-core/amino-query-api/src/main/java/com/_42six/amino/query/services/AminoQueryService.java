@@ -2,6 +2,7 @@ package com._42six.amino.query.services;
 
 import com._42six.amino.common.entity.Hypothesis;
 import com._42six.amino.common.entity.QueryResult;
+import com._42six.amino.common.entity.QueryResultPage;
 import com._42six.amino.common.query.requests.bta.BtaByValuesRequest;
 import com._42six.amino.query.exception.BigTableException;
 
@@ -35,6 +36,18 @@ public interface AminoQueryService {
 	 */
 	public List<QueryResult> listResults(Long start, Long count, String userid, String[] visibility) throws IOException;
 
+	/**
+	 * Lists a page of existing AminoQueryResults for a given user, newest first.  Unlike listResults, getting a later
+	 * page costs the same as getting the first one.
+	 *
+	 * @param cursor     The cursor of the previous page, or null for the first page.
+	 * @param count      How many to return.
+	 * @param userid     The userid to search on.
+	 * @param visibility A list of string corresponding to allowed visibilities for the user.
+	 * @return The results and the cursor of the next page.
+	 */
+	public QueryResultPage listResultsPage(String cursor, int count, String userid, String[] visibility) throws IOException;
+
 	/**
 	 * Get an already existing result from the data store.
 	 *
@@ -59,6 +72,22 @@ public interface AminoQueryService {
 	 */
 	public QueryResult createResult(String owner, String hypothesisId, Integer maxResults, String justification, String userid, String[] visibility) throws InterruptedException, ExecutionException, TimeoutException;
 
+	/**
+	 * Executes a query, handing each QueryEntry to the listener as soon as it is found, and writes its results to the
+	 * data store as they arrive.  The returned QueryResult does not hold the result_set, as the listener has seen it.
+	 *
+	 * @param owner         The owner of the result
+	 * @param hypothesisId  The id of the hypothesis to use as the basis for the query
+	 * @param maxResults    The maximum number of results to hit before giving up
+	 * @param justification A justification for this query
+	 * @param userid        The name of the user executing the query.
+	 * @param visibility    A list of string corresponding to allowed visibilities for the user.
+	 * @param listener      Receives the QueryEntries as they are found, and can stop the query early
+	 * @return An AminoQueryResult describing the persisted result.
+	 */
+	public QueryResult createResult(String owner, String hypothesisId, Integer maxResults, String justification, String userid, String[] visibility,
+									QueryResultListener listener) throws InterruptedException, ExecutionException, TimeoutException;
+
 	/**
 	 * Deletes a QueryResult
 	 *
@@ -0,0 +1,17 @@
+package com._42six.amino.query.services;
+
+import com._42six.amino.common.entity.QueryEntry;
+
+/**
+ * Receives the QueryEntries of a query as they are found, rather than once the whole query has finished.  Called from
+ * the thread running the query.
+ */
+public interface QueryResultListener {
+	/**
+	 * Called for each QueryEntry, in the order they are found
+	 *
+	 * @param entry The QueryEntry
+	 * @return true to keep going, false to stop the query.  The entries found so far are still persisted.
+	 */
+	public boolean onEntry(QueryEntry entry);
+}
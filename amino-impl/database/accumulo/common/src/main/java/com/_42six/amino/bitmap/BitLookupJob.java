@@ -61,7 +61,7 @@ public class BitLookupJob extends BitmapJob {
 
         job.setMapperClass(BitLookupMapper.class);
         job.setMapOutputKeyClass(BitLookupKey.class);
-        job.setMapOutputValueClass(BitmapValue.class);
+        job.setMapOutputValueClass(BitmapRunValue.class);
         job.setCombinerClass(BitLookupCombiner.class);
         job.setReducerClass(BitLookupReducer.class);
         job.setOutputKeyClass(Key.class);
@@ -1,36 +1,42 @@
 package com._42six.amino.bitmap;
 
 import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.AminoBitmapBuilder;
+import com._42six.amino.common.bitmap.BitmapCodec;
+import com._42six.amino.common.bitmap.BitmapCodecs;
 import com._42six.amino.common.bitmap.BitmapUtils;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.apache.hadoop.mapreduce.Reducer;
 
 import java.io.IOException;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
-public class BitLookupReducer extends Reducer<BitLookupKey, BitmapValue, Key, Value>
+public class BitLookupReducer extends Reducer<BitLookupKey, BitmapRunValue, Key, Value>
 {
-    @Override
-    protected void reduce(BitLookupKey key, Iterable<BitmapValue> values, Context context) throws IOException, InterruptedException {
-        final AminoBitmap bitmap = new AminoBitmap();
-        final SortedSet<Integer> sortedBits = new TreeSet<>();
+    private final AminoBitmapBuilder bitmapBuilder = new AminoBitmapBuilder();
+    private BitmapCodec bitmapCodec;
 
-        // The bits must be sorted first before they can be added to the AminoBitmap.
-        for(BitmapValue value : values){
-            sortedBits.addAll(value.getIndexes());
-        }
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        bitmapCodec = BitmapCodecs.fromConfiguration(context.getConfiguration());
+    }
 
-        // Set the bits in the bitmap
-        for (int index : sortedBits)
-        {
-            bitmap.set(index);
+    @Override
+    protected void reduce(BitLookupKey key, Iterable<BitmapRunValue> values, Context context) throws IOException, InterruptedException {
+        // Each value is a sorted run, so the builder can stream them into the bitmap
+        for(BitmapRunValue value : values){
+            value.addTo(bitmapBuilder);
         }
+        final AminoBitmap bitmap = bitmapBuilder.build();
 
-        final Key outKey = new Key(Integer.toString(key.getFeatureIndex()), key.getFeatureFact(), Integer.toString(key.getSalt()), key.getVisibility());
-        final Value outValue = BitmapUtils.toValue(bitmap);
+        context.write(createKey(key), BitmapUtils.toValue(bitmap, bitmapCodec));
+    }
 
-        context.write(outKey, outValue);
+    /**
+     * Creates the bitmap index table Key for the map output key
+     */
+    static Key createKey(BitLookupKey key) {
+        return new Key(Integer.toString(key.getFeatureIndex()), key.getFeatureFact(), Integer.toString(key.getSalt()), key.getVisibility());
     }
 }
@@ -5,15 +5,17 @@ import org.apache.hadoop.mapreduce.Reducer;
 
 import java.io.IOException;
 
-public class ByBucketCombiner extends Reducer<ByBucketKey, BitmapValue, ByBucketKey, BitmapValue> {
-    @Override
-    protected void reduce(ByBucketKey key, Iterable<BitmapValue> values, Context context) throws IOException, InterruptedException {
-        final BitmapValue combinedValue = new BitmapValue();
+public class ByBucketCombiner extends Reducer<ByBucketKey, BitmapRunValue, ByBucketKey, BitmapRunValue> {
+    private final BitmapRunValue.Merger merger = new BitmapRunValue.Merger();
+    private final BitmapRunValue combinedValue = new BitmapRunValue();
 
-        for (BitmapValue value : values) {
-            combinedValue.merge(value);
+    @Override
+    protected void reduce(ByBucketKey key, Iterable<BitmapRunValue> values, Context context) throws IOException, InterruptedException {
+        for (BitmapRunValue value : values) {
+            merger.add(value);
         }
 
+        merger.mergeInto(combinedValue);
         context.write(key, combinedValue);
     }
 }
\ No newline at end of file
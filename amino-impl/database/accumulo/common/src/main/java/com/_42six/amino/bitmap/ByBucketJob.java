@@ -53,7 +53,7 @@ public class ByBucketJob extends BitmapJob {
 
         job.setMapperClass(ByBucketMapper.class);
         job.setMapOutputKeyClass(ByBucketKey.class);
-        job.setMapOutputValueClass(BitmapValue.class);
+        job.setMapOutputValueClass(BitmapRunValue.class);
         job.setCombinerClass(ByBucketCombiner.class);
         job.setReducerClass(ByBucketReducer.class);
         job.setOutputKeyClass(Key.class);
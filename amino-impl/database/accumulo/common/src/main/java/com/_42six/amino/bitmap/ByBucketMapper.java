@@ -2,6 +2,7 @@ package com._42six.amino.bitmap;
 
 import com._42six.amino.common.*;
 import com._42six.amino.common.index.BitmapIndex;
+import com._42six.amino.common.index.FeatureFactHasher;
 import com._42six.amino.common.service.datacache.BucketCache;
 import com._42six.amino.common.service.datacache.SortedIndexCache;
 import com._42six.amino.common.service.datacache.SortedIndexCacheFactory;
@@ -12,7 +13,7 @@ import org.apache.hadoop.mapreduce.Mapper;
 
 import java.io.IOException;
 
-public class ByBucketMapper extends Mapper<BucketStripped, AminoWritable, ByBucketKey, BitmapValue> {
+public class ByBucketMapper extends Mapper<BucketStripped, AminoWritable, ByBucketKey, BitmapRunValue> {
 
     private BucketCache bucketCache;
     private SortedIndexCache dataSourceCache;
@@ -22,6 +23,8 @@ public class ByBucketMapper extends Mapper<BucketStripped, AminoWritable, ByBuck
     private BucketStripped lastBS = new BucketStripped();
     private Bucket bucket;
     private ByBucketKey byBucketKey;
+    private FeatureFactHasher hasher;
+    private final BitmapRunValue bitmapValue = new BitmapRunValue();
 
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
@@ -31,6 +34,7 @@ public class ByBucketMapper extends Mapper<BucketStripped, AminoWritable, ByBuck
         dataSourceCache = SortedIndexCacheFactory.getCache(SortedIndexCacheFactory.CacheTypes.Datasource, conf);
         numberOfHashes = conf.getInt(AminoConfiguration.NUM_HASHES, 1);
         numberOfShards = conf.getInt(AminoConfiguration.NUM_SHARDS, 10);
+        hasher = new FeatureFactHasher(numberOfHashes);
     }
 
     @Override
@@ -53,14 +57,12 @@ public class ByBucketMapper extends Mapper<BucketStripped, AminoWritable, ByBuck
         final Feature feature = aw.getFeature();
         final FeatureFact featureFact = aw.getFeatureFact();
 
-        final BitmapValue bitmapValue = new BitmapValue();
-        final Text saltText = new Text();
+        final int[] featureFactIndexes = hasher.getFeatureFactIndexes(bucket, feature, featureFact);
 
         for (int salt = 0; salt < numberOfHashes; salt++)
         {
-            saltText.set(Integer.toString(salt));
             byBucketKey.setSalt(salt);
-            bitmapValue.setIndex(BitmapIndex.getFeatureFactIndex(bucket, feature, featureFact, salt));
+            bitmapValue.setIndex(featureFactIndexes[salt]);
             context.write(byBucketKey, bitmapValue);
         }
     }
@@ -2,6 +2,9 @@ package com._42six.amino.bitmap;
 
 import com._42six.amino.common.ByBucketKey;
 import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.AminoBitmapBuilder;
+import com._42six.amino.common.bitmap.BitmapCodec;
+import com._42six.amino.common.bitmap.BitmapCodecs;
 import com._42six.amino.common.bitmap.BitmapUtils;
 import com._42six.amino.common.service.datacache.SortedIndexCache;
 import com._42six.amino.common.service.datacache.SortedIndexCacheFactory;
@@ -12,44 +15,45 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 
 import java.io.IOException;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
-public class ByBucketReducer extends Reducer<ByBucketKey, BitmapValue, Key, Value>
+public class ByBucketReducer extends Reducer<ByBucketKey, BitmapRunValue, Key, Value>
 {
     private SortedIndexCache dataSourceCache;
+    private final AminoBitmapBuilder bitmapBuilder = new AminoBitmapBuilder();
+    private BitmapCodec bitmapCodec;
 
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
         super.setup(context);
         final Configuration conf = context.getConfiguration();
         dataSourceCache = SortedIndexCacheFactory.getCache(SortedIndexCacheFactory.CacheTypes.Datasource, conf);
+        bitmapCodec = BitmapCodecs.fromConfiguration(conf);
     }
 
     @Override
-    protected void reduce(ByBucketKey key, Iterable<BitmapValue> values, Context context) throws IOException, InterruptedException
+    protected void reduce(ByBucketKey key, Iterable<BitmapRunValue> values, Context context) throws IOException, InterruptedException
     {
-        final SortedSet<Integer> sortedBits = new TreeSet<>();
-
-        // The bits must be sorted first before they can be added to the AminoBitmap.
-        for(BitmapValue value : values){
-            sortedBits.addAll(value.getIndexes());
+        // Each value is a sorted run, so the builder can stream them into the bitmap
+        for(BitmapRunValue value : values){
+            value.addTo(bitmapBuilder);
         }
+        final AminoBitmap bitmap = bitmapBuilder.build();
 
-        final AminoBitmap bitmap = new AminoBitmap();
-        for (int index : sortedBits)
-        {
-            bitmap.set(index);
-        }
+        final String dataSource = dataSourceCache.getItem(key.getDatasourceNameIndex());
+        context.write(createKey(key, dataSource), BitmapUtils.toValue(bitmap, bitmapCodec));
+    }
 
+    /**
+     * Creates the bucket table Key for the map output key
+     * @param key The map output key
+     * @param dataSource The name of the datasource that the key's datasource index refers to
+     */
+    static Key createKey(ByBucketKey key, String dataSource) {
         final int binNumber = key.getBinNumber();
-        final String dataSource = dataSourceCache.getItem(key.getDatasourceNameIndex());
         final String bucketValue = key.getBucketValue().toString();
         final Text vis = key.getVisibility();
 
-        final Key outKey = new Key(String.format("%d:%s:%s", binNumber, dataSource, key.getBucketName()), bucketValue,
+        return new Key(String.format("%d:%s:%s", binNumber, dataSource, key.getBucketName()), bucketValue,
                 Integer.toString(key.getSalt()), vis.toString());
-
-        context.write(outKey, BitmapUtils.toValue(bitmap));
     }
 }
@@ -2,6 +2,7 @@ package com._42six.amino.bitmap;
 
 import com._42six.amino.common.*;
 import com._42six.amino.common.index.BitmapIndex;
+import com._42six.amino.common.index.FeatureFactHasher;
 import com._42six.amino.common.service.datacache.BucketCache;
 import com._42six.amino.common.translator.FeatureFactTranslatorImpl;
 import org.apache.accumulo.core.data.Key;
@@ -15,11 +16,15 @@ public class HypothesisMapper extends Mapper<BucketStripped, AminoWritable, Text
 {
 
     private BucketCache bucketCache;
+    private int numberOfHashes;
+    private FeatureFactHasher hasher;
 
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
         super.setup(context);
         bucketCache = new BucketCache(context.getConfiguration());
+        numberOfHashes = context.getConfiguration().getInt(AminoConfiguration.NUM_HASHES, 1);
+        hasher = new FeatureFactHasher(numberOfHashes);
     }
 
     @Override
@@ -27,8 +32,6 @@ public class HypothesisMapper extends Mapper<BucketStripped, AminoWritable, Text
     {
         final Bucket bucket = bucketCache.getBucket(bucketStripped);
 
-        final int numberOfHashes = context.getConfiguration().getInt(AminoConfiguration.NUM_HASHES, 1);
-
         final Feature feature = aw.getFeature();
         final FeatureFact featureFact = aw.getFeatureFact();
         final int featureIndex = BitmapIndex.getFeatureIndex(feature);
@@ -37,10 +40,11 @@ public class HypothesisMapper extends Mapper<BucketStripped, AminoWritable, Text
         final Text bucketVis  = bucket.getBucketVisibility();
         final Text row = new Text();
         final Text cf = new Text();
+        final int[] featureFactIndexes = hasher.getFeatureFactIndexes(bucket, feature, featureFact);
 
         for (int salt = 0; salt < numberOfHashes; salt++)
         {
-            int featureFactIndex = BitmapIndex.getFeatureFactIndex(bucket, feature, featureFact, salt);
+            int featureFactIndex = featureFactIndexes[salt];
             row.set(Integer.toString(featureFactIndex));
             cf.set(Integer.toString(salt) + "#" + bucketName);
 
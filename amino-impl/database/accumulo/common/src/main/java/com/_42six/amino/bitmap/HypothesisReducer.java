@@ -18,13 +18,18 @@ public class HypothesisReducer extends Reducer<Text, StatsKey, Key, Value>
 
         for (StatsKey key : values)
         {
-            final Key cbKey = new Key(Integer.toString(key.bitmapIndex),
-                    Integer.toString(key.salt) + "#" + key.bucketName,
-                    key.getRow(),
-                    key.getVis());
             cbVal.set(key.getVal().getBytes());
-
-            context.write(cbKey, cbVal);
+            context.write(createKey(key), cbVal);
         }
     }
+
+    /**
+     * Creates the feature lookup table Key for one of the values of the map output
+     */
+    static Key createKey(StatsKey key) {
+        return new Key(Integer.toString(key.bitmapIndex),
+                Integer.toString(key.salt) + "#" + key.bucketName,
+                key.getRow(),
+                key.getVis());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com._42six.amino.bitmap;
+
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+
+/**
+ * Merges the bitmap runs of the bitmap indexes the same way their stand alone combiners do.  The values of the other
+ * indexes are passed through untouched.
+ */
+public class IndexCombiner extends Reducer<IndexKey, IndexValue, IndexKey, IndexValue> {
+    private final BitmapRunValue.Merger merger = new BitmapRunValue.Merger();
+    private final BitmapRunValue combinedValue = new BitmapRunValue();
+    private final IndexValue combinedIndexValue = new IndexValue(combinedValue);
+
+    @Override
+    protected void reduce(IndexKey key, Iterable<IndexValue> values, Context context) throws IOException, InterruptedException {
+        switch (key.getType()) {
+            case BY_BUCKET:
+            case BIT_LOOKUP:
+            case REVERSE_BITMAP:
+                for (IndexValue value : values) {
+                    merger.add((BitmapRunValue) value.get());
+                }
+                merger.mergeInto(combinedValue);
+                context.write(key, combinedIndexValue);
+                break;
+            default:
+                for (IndexValue value : values) {
+                    context.write(key, value);
+                }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.common.AminoConfiguration;
+import com._42six.amino.common.JobUtilities;
+import com._42six.amino.common.accumulo.IteratorUtils;
+import com._42six.amino.common.util.PathUtils;
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+import org.apache.accumulo.core.client.ClientConfiguration;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.mapreduce.AccumuloFileOutputFormat;
+import org.apache.accumulo.core.client.mapreduce.AccumuloOutputFormat;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.commons.cli.Option;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.util.EnumSet;
+
+/**
+ * Builds the bucket, bitmap index, stats, hypothesis (feature lookup), reverse bitmap and reverse feature lookup
+ * tables with a single pass over the framework output.  Running the stand alone jobs reads the input and computes the
+ * bitmap indexes once per table; this job does both once and shuffles the map output of all of the tables together,
+ * keyed by an {@link IndexKey}.
+ *
+ * The tables to build are picked with the indexes option or the amino.bitmap.indexes config value, which take a comma
+ * separated list of {@link IndexType} names.  All of them are built by default.
+ */
+public class IndexJob extends BitmapJob {
+
+    public int run(String[] args) throws Exception {
+
+        // Create the command line options to be parsed
+        final Option o1 = new Option("o", "outputDir", true, "The output directory");
+        final Option o2 = new Option("w", "workingDir", true, "The working directory");
+        final Option o3 = new Option("i", "indexes", true, "Comma separated list of the indexes to build");
+
+        initializeConfigAndOptions(args, Optional.of(Sets.newHashSet(o1, o2, o3)));
+        final Configuration conf = getConf();
+        loadConfigValues(conf);
+        System.out.println("\n=======================" + conf.get("mapreduce.job.name","Index Job") +"======================\n");
+
+        final String indexNames = fromOptionOrConfig(Optional.of("i"), Optional.of(AminoConfiguration.BITMAP_INDEXES), "");
+        final EnumSet<IndexType> indexTypes = indexNames.isEmpty() ? EnumSet.allOf(IndexType.class) : IndexType.parse(indexNames);
+        if (indexTypes.isEmpty()) {
+            System.out.println("No indexes selected, nothing to do.");
+            return 0;
+        }
+        conf.set(AminoConfiguration.BITMAP_INDEXES, indexNamesOf(indexTypes));
+        System.out.println("Building indexes: " + conf.get(AminoConfiguration.BITMAP_INDEXES));
+
+        final String inputDir = fromOptionOrConfig(Optional.of("o"), Optional.of(AminoConfiguration.OUTPUT_DIR));
+        PathUtils.pathsExists(inputDir, conf);
+
+        if (!createTables(conf, indexTypes)) {
+            return 1;
+        }
+
+        final Job job = new Job(conf, conf.get("mapreduce.job.name","Amino index job"));
+        job.setJarByClass(IndexJob.class);
+        initializeJob(job);
+
+        job.setMapperClass(IndexMapper.class);
+        job.setMapOutputKeyClass(IndexKey.class);
+        job.setMapOutputValueClass(IndexValue.class);
+        job.setSortComparatorClass(IndexKeyComparator.class);
+        job.setCombinerClass(IndexCombiner.class);
+        job.setPartitionerClass(IndexPartitioner.class);
+        job.setReducerClass(IndexReducer.class);
+        job.setOutputKeyClass(Key.class);
+        job.setOutputValueClass(Value.class);
+        job.setNumReduceTasks(conf.getInt(AminoConfiguration.NUM_REDUCERS, AminoConfiguration.DEFAULT_NUM_REDUCERS));
+
+        final String workingDirectory = fromOptionOrConfig(Optional.of("w"), Optional.of(AminoConfiguration.WORKING_DIR)) + "/IndexJob";
+
+        // Everything goes through MultipleOutputs, so only create the default output if something is written to it
+        LazyOutputFormat.setOutputFormatClass(job, AccumuloFileOutputFormat.class);
+        AccumuloFileOutputFormat.setOutputPath(job, new Path(workingDirectory + "/files"));
+        for (IndexType type : indexTypes) {
+            if (type.isBulkImported()) {
+                MultipleOutputs.addNamedOutput(job, type.getName(), AccumuloFileOutputFormat.class, Key.class, Value.class);
+            }
+        }
+        if (indexTypes.contains(IndexType.STATS) || indexTypes.contains(IndexType.REVERSE_BITMAP)) {
+            MultipleOutputs.addNamedOutput(job, IndexReducer.MUTATIONS, AccumuloOutputFormat.class, Text.class, Mutation.class);
+            AccumuloOutputFormat.setZooKeeperInstance(job, new ClientConfiguration().withInstance(instanceName).withZkHosts(zooKeepers));
+            AccumuloOutputFormat.setConnectorInfo(job, user, new PasswordToken(password.getBytes("UTF-8")));
+            AccumuloOutputFormat.setCreateTables(job, true);
+        }
+
+        if (!job.waitForCompletion(true)) {
+            System.out.println("IndexJob MapReduce job failed. Job results will not be imported into Accumulo.");
+            return -1;
+        }
+
+        return importFiles(conf, indexTypes, workingDirectory);
+    }
+
+    /**
+     * @return The MultipleOutputs base output path of the index, relative to the job's output directory
+     */
+    public static String getOutputPath(IndexType type) {
+        return type.getName() + "/part";
+    }
+
+    /**
+     * @return The name of the table that the index is written to, without the temp suffix
+     */
+    public static String getTableName(Configuration conf, IndexType type) {
+        switch (type) {
+            case BY_BUCKET:
+                return conf.get(AminoConfiguration.TABLE_BUCKET);
+            case BIT_LOOKUP:
+            case STATS:
+                return conf.get(AminoConfiguration.TABLE_INDEX);
+            case HYPOTHESIS:
+                return conf.get(AminoConfiguration.TABLE_FEATURE_LOOKUP);
+            case REVERSE_BITMAP:
+                return conf.get(AminoConfiguration.TABLE_BUCKET).replace("amino_", "amino_reverse_");
+            case REVERSE_FEATURE_LOOKUP:
+                return conf.get(AminoConfiguration.TABLE_FEATURE_LOOKUP).replace("amino_", "amino_reverse_");
+            default:
+                throw new IllegalArgumentException("Unknown index: " + type);
+        }
+    }
+
+    private boolean createTables(Configuration conf, EnumSet<IndexType> indexTypes) throws Exception {
+        final int numShards = conf.getInt(AminoConfiguration.NUM_SHARDS, 10);
+        for (IndexType type : indexTypes) {
+            final boolean success;
+            switch (type) {
+                case BIT_LOOKUP:
+                case HYPOTHESIS:
+                    success = recreateTable(getTableName(conf, type));
+                    break;
+                case STATS:
+                    // Shares the bitmap index table, and is only written to with Mutations like the StatsJob does
+                    success = true;
+                    break;
+                default:
+                    success = recreateTable(getTableName(conf, type), numShards);
+            }
+            if (!success) {
+                System.out.println("Could not create the table for " + type.getName());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int importFiles(Configuration conf, EnumSet<IndexType> indexTypes, String workingDir) throws Exception {
+        final FileSystem fs = FileSystem.get(conf);
+        final Connector connector = IteratorUtils.connect(instanceName, zooKeepers, user, password);
+
+        for (IndexType type : indexTypes) {
+            if (type.isBulkImported()) {
+                fs.mkdirs(new Path(workingDir + "/failures/" + type.getName()));
+            }
+        }
+        JobUtilities.setupAccumuloBulkImport(conf, workingDir);
+
+        int result = 0;
+        for (IndexType type : indexTypes) {
+            if (!type.isBulkImported()) {
+                continue;
+            }
+            final String filesPath = workingDir + "/files/" + type.getName();
+            final String failuresPath = workingDir + "/failures/" + type.getName();
+            if (!fs.exists(new Path(filesPath))) {
+                System.out.println("No files were written for " + type.getName());
+                continue;
+            }
+
+            final String tableName = getTableName(conf, type);
+            final String tb = (!blastIndex) ? tableName : tableName + AminoConfiguration.TEMP_SUFFIX;
+            System.out.println("Importing the files in '" + filesPath + "' to the table: " + tb);
+            try
+            {
+                connector.tableOperations().importDirectory(tb, filesPath, failuresPath, false);
+                result |= JobUtilities.failureDirHasFiles(conf, failuresPath);
+            }
+            catch (Exception e)
+            {
+                result = 1;
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    private static String indexNamesOf(EnumSet<IndexType> indexTypes) {
+        final StringBuilder names = new StringBuilder();
+        for (IndexType type : indexTypes) {
+            if (names.length() > 0) {
+                names.append(',');
+            }
+            names.append(type.getName());
+        }
+        return names.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new IndexJob(), args));
+    }
+}
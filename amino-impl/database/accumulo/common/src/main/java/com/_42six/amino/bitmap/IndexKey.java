@@ -0,0 +1,99 @@
+package com._42six.amino.bitmap;
+
+import org.apache.hadoop.io.WritableComparable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Map output key of the {@link IndexJob}.  Wraps the key that the stand alone job for the index would have used,
+ * tagged with the {@link IndexType} so that all of the indexes can share one shuffle.  Keys sort by index type
+ * first and then in the order the stand alone job sorted them.  The shuffle sorts them with the
+ * {@link IndexKeyComparator}.
+ */
+public class IndexKey implements WritableComparable<IndexKey> {
+
+    private IndexType type;
+    private WritableComparable key;
+
+    // One key instance per type that readFields can reuse
+    private final WritableComparable[] readKeys = new WritableComparable[IndexType.values().length];
+
+    public IndexKey() {
+        // Empty for Hadoop serialization
+    }
+
+    public IndexKey(IndexType type, WritableComparable key) {
+        set(type, key);
+    }
+
+    public void set(IndexType type, WritableComparable key) {
+        if (!type.getKeyClass().isInstance(key)) {
+            throw new IllegalArgumentException(type + " keys must be a " + type.getKeyClass().getName());
+        }
+        this.type = type;
+        this.key = key;
+    }
+
+    public IndexType getType() {
+        return type;
+    }
+
+    public WritableComparable getKey() {
+        return key;
+    }
+
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        dataOutput.writeByte(type.getTag());
+        key.write(dataOutput);
+    }
+
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        type = IndexType.fromTag(dataInput.readByte());
+        key = readKeys[type.ordinal()];
+        if (key == null) {
+            try {
+                key = type.getKeyClass().newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IOException("Could not create key for " + type, e);
+            }
+            readKeys[type.ordinal()] = key;
+        }
+        key.readFields(dataInput);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public int compareTo(IndexKey other) {
+        final int comparison = type.compareTo(other.type);
+        if (comparison != 0) {
+            return comparison;
+        }
+        if (type == IndexType.HYPOTHESIS) {
+            // Same ordering as the HypothesisKeyComparator
+            return key.toString().compareTo(other.key.toString());
+        }
+        return key.compareTo(other.key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) { return false; }
+        if (o == this) { return true; }
+        if (o.getClass() != getClass()) { return false; }
+        return compareTo((IndexKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.ordinal() + key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return type.getName() + ":" + key;
+    }
+}
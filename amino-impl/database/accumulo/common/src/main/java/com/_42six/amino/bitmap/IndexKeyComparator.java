@@ -0,0 +1,43 @@
+package com._42six.amino.bitmap;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.io.IOException;
+
+/**
+ * Sorts serialized {@link IndexKey}s in the same order as {@link IndexKey#compareTo(IndexKey)}.  The leading tag is
+ * compared without reading the key, and keys with the same bytes are equal without being read, which covers the many
+ * keys that the mapper repeats for every feature of a bucket.  The rest are read into two keys owned by the
+ * comparator, so comparing does not create objects.
+ */
+public class IndexKeyComparator extends WritableComparator {
+
+    private final IndexKey left = new IndexKey();
+    private final IndexKey right = new IndexKey();
+    private final DataInputBuffer buffer = new DataInputBuffer();
+
+    public IndexKeyComparator() {
+        super(IndexKey.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+        // The tag is the ordinal of the index type, so the tags sort like the types
+        if (b1[s1] != b2[s2]) {
+            return (b1[s1] < b2[s2]) ? -1 : 1;
+        }
+        if (l1 == l2 && compareBytes(b1, s1, l1, b2, s2, l2) == 0) {
+            return 0;
+        }
+        try {
+            buffer.reset(b1, s1, l1);
+            left.readFields(buffer);
+            buffer.reset(b2, s2, l2);
+            right.readFields(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the index keys", e);
+        }
+        return left.compareTo(right);
+    }
+}
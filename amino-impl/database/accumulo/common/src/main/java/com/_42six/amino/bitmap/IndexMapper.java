@@ -0,0 +1,214 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.bitmap.reverse.ReverseBitmapKey;
+import com._42six.amino.common.*;
+import com._42six.amino.common.index.BitmapIndex;
+import com._42six.amino.common.index.FeatureFactHasher;
+import com._42six.amino.common.service.datacache.BucketCache;
+import com._42six.amino.common.service.datacache.SortedIndexCache;
+import com._42six.amino.common.service.datacache.SortedIndexCacheFactory;
+import com._42six.amino.common.translator.FeatureFactTranslatorImpl;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * Emits the map output of every selected index for each record.  Emits the same keys and values as the mappers of
+ * the stand alone jobs, but the bucket lookups and bitmap index hashes are only computed once and shared between the
+ * indexes.
+ */
+public class IndexMapper extends Mapper<BucketStripped, AminoWritable, IndexKey, IndexValue> {
+
+    /**
+     * Where the map output goes.  The key and value are reused, so they must be written before the next call.
+     */
+    interface Output {
+        void write(IndexKey key, IndexValue value) throws IOException, InterruptedException;
+    }
+
+    private EnumSet<IndexType> indexTypes;
+    private BucketCache bucketCache;
+    private SortedIndexCache dataSourceCache;
+    private final FeatureFactTranslatorImpl translator = new FeatureFactTranslatorImpl();
+    private FeatureFactHasher hasher;
+    private int numberOfHashes;
+    private int numberOfShards;
+
+    // State for the current bucket.  The input has long runs of the same bucket
+    private BucketStripped lastBS = null;
+    private Bucket bucket;
+    private VIntWritable datasourceIndex;
+    private int[] valueIndexes;
+    private final ByBucketKey byBucketKey = new ByBucketKey();
+
+    // The map output is serialized as soon as it is written, so the same instances are used for every record
+    private final IndexKey indexKey = new IndexKey();
+    private final IndexValue indexValue = new IndexValue();
+    private final BitmapRunValue bitmapValue = new BitmapRunValue();
+    private final BitLookupKey bitLookupKey = new BitLookupKey();
+    private final StatsKey statsKey = new StatsKey();
+    private final StatsKey featureKey = new StatsKey();
+    private final Text hypothesisKey = new Text();
+    private final ReverseBitmapKey reverseBitmapKey = new ReverseBitmapKey();
+    private final Value emptyValue = new Value(new byte[0]);
+
+    private Output output;
+
+    @Override
+    protected void setup(final Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        final Configuration conf = context.getConfiguration();
+        configure(IndexType.fromConfiguration(conf), new BucketCache(conf),
+                SortedIndexCacheFactory.getCache(SortedIndexCacheFactory.CacheTypes.Datasource, conf),
+                conf.getInt(AminoConfiguration.NUM_HASHES, 1), conf.getInt(AminoConfiguration.NUM_SHARDS, 10));
+        output = new Output() {
+            @Override
+            public void write(IndexKey key, IndexValue value) throws IOException, InterruptedException {
+                context.write(key, value);
+            }
+        };
+    }
+
+    /**
+     * Sets everything that setup reads from the configuration and the caches
+     */
+    void configure(EnumSet<IndexType> indexTypes, BucketCache bucketCache, SortedIndexCache dataSourceCache,
+                   int numberOfHashes, int numberOfShards) {
+        this.indexTypes = indexTypes;
+        this.bucketCache = bucketCache;
+        this.dataSourceCache = dataSourceCache;
+        this.numberOfHashes = numberOfHashes;
+        this.numberOfShards = numberOfShards;
+        hasher = new FeatureFactHasher(numberOfHashes);
+        valueIndexes = new int[numberOfHashes];
+        lastBS = null;
+    }
+
+    @Override
+    protected void map(BucketStripped bucketStripped, AminoWritable aw, Context context) throws IOException, InterruptedException {
+        map(bucketStripped, aw, output);
+    }
+
+    void map(BucketStripped bucketStripped, AminoWritable aw, Output output) throws IOException, InterruptedException {
+        if (lastBS == null || lastBS.compareTo(bucketStripped) != 0) {
+            lastBS = new BucketStripped(bucketStripped);
+            newBucket(bucketStripped, output);
+        }
+
+        final Feature feature = aw.getFeature();
+        final FeatureFact featureFact = aw.getFeatureFact();
+        final int featureIndex = BitmapIndex.getFeatureIndex(feature);
+        final String factText = featureFact.toText(translator).toString();
+        final String visibility = bucket.getBucketVisibility().toString();
+        final int[] featureFactIndexes = hasher.getFeatureFactIndexes(bucket, feature, featureFact);
+
+        if (indexTypes.contains(IndexType.BY_BUCKET)) {
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                byBucketKey.setSalt(salt);
+                bitmapValue.setIndex(featureFactIndexes[salt]);
+                write(output, IndexType.BY_BUCKET, byBucketKey, bitmapValue);
+            }
+        }
+
+        if (indexTypes.contains(IndexType.BIT_LOOKUP)) {
+            bitLookupKey.setFeatureIndex(featureIndex);
+            bitLookupKey.setFeatureFact(factText);
+            bitLookupKey.setVisibility(visibility);
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                bitLookupKey.setSalt(salt);
+                bitmapValue.setIndex(featureFactIndexes[salt]);
+                write(output, IndexType.BIT_LOOKUP, bitLookupKey, bitmapValue);
+            }
+        }
+
+        if (indexTypes.contains(IndexType.STATS)) {
+            setStatsKey(statsKey, featureIndex, factText, visibility, 0, 0);
+            write(output, IndexType.STATS, statsKey, bucket.getBucketValue());
+        }
+
+        if (indexTypes.contains(IndexType.HYPOTHESIS)) {
+            final Text bucketName = bucket.getBucketName();
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                final int featureFactIndex = featureFactIndexes[salt];
+                setStatsKey(featureKey, featureIndex, factText, visibility, salt, featureFactIndex);
+                final Key cbKey = new Key(new Text(Integer.toString(featureFactIndex)),
+                        new Text(Integer.toString(salt) + "#" + bucketName),
+                        new Text(Integer.toString(featureIndex)), bucket.getBucketVisibility());
+                hypothesisKey.set(cbKey.toStringNoTime());
+                write(output, IndexType.HYPOTHESIS, hypothesisKey, featureKey);
+            }
+        }
+
+        if (indexTypes.contains(IndexType.REVERSE_BITMAP)) {
+            // Base the shard on the first index.  This way all salted values end up in the same shard.
+            reverseBitmapKey.setShard(valueIndexes[0] % numberOfShards);
+            reverseBitmapKey.setDatasource(datasourceIndex);
+            reverseBitmapKey.setBucketName(bucket.getBucketName());
+            reverseBitmapKey.setFeatureId(featureIndex);
+            reverseBitmapKey.setFeatureValue(factText);
+            reverseBitmapKey.setVisibility(bucket.getBucketVisibility());
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                reverseBitmapKey.setSalt(salt);
+                bitmapValue.setIndex(valueIndexes[salt]);
+                write(output, IndexType.REVERSE_BITMAP, reverseBitmapKey, bitmapValue);
+            }
+        }
+    }
+
+    /**
+     * Computes everything that only depends on the bucket, and emits the reverse feature lookup entries which are
+     * only written once per bucket
+     */
+    private void newBucket(BucketStripped bucketStripped, Output output) throws IOException, InterruptedException {
+        bucket = bucketCache.getBucket(bucketStripped);
+        datasourceIndex = dataSourceCache.getIndexForValue(bucket.getBucketDataSource());
+        if (datasourceIndex == null) {
+            throw new IOException("Could not find index in cache for datasource: " + bucket.getBucketDataSource());
+        }
+        for (int salt = 0; salt < numberOfHashes; salt++) {
+            valueIndexes[salt] = BitmapIndex.getValueIndex(bucket, salt);
+        }
+
+        if (indexTypes.contains(IndexType.BY_BUCKET)) {
+            final int binNumber = BitmapIndex.getBucketValueIndex(bucketStripped) % numberOfShards;
+            byBucketKey.setBucketValue(bucket.getBucketValue());
+            byBucketKey.setBinNumber(binNumber);
+            byBucketKey.setBucketName(bucket.getBucketName());
+            byBucketKey.setDatasourceNameIndex(datasourceIndex);
+            byBucketKey.setVisibility(bucket.getBucketVisibility());
+        }
+
+        if (indexTypes.contains(IndexType.REVERSE_FEATURE_LOOKUP)) {
+            // Make sure that we have the same shard for all of the salts
+            final Text shard = new Text(Integer.toString(valueIndexes[0] % numberOfShards));
+            for (int salt = 0; salt < numberOfHashes; salt++) {
+                final Key cbKey = new Key(shard, new Text(Integer.toString(valueIndexes[salt]) + "#" + bucket.getBucketDataSource()
+                        + "#" + bucket.getBucketName() + "#" + salt), bucket.getBucketValue(), bucket.getBucketVisibility());
+                write(output, IndexType.REVERSE_FEATURE_LOOKUP, cbKey, emptyValue);
+            }
+        }
+    }
+
+    private void setStatsKey(StatsKey key, int featureIndex, String factText, String visibility, int salt, int bitmapIndex) {
+        key.row = Integer.toString(featureIndex);
+        key.val = factText;
+        key.bucketName = bucket.getBucketName().toString();
+        key.vis = visibility;
+        key.salt = salt;
+        key.bitmapIndex = bitmapIndex;
+    }
+
+    private void write(Output output, IndexType type, WritableComparable key, Writable value) throws IOException, InterruptedException {
+        indexKey.set(type, key);
+        indexValue.set(value);
+        output.write(indexKey, indexValue);
+    }
+}
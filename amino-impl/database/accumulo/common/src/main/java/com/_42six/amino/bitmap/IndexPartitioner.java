@@ -0,0 +1,19 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.common.ByBucketKey;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Partitions the bucket index by bin number, like the {@link ByBucketPartitioner}, and hashes the keys of every other
+ * index
+ */
+public class IndexPartitioner extends Partitioner<IndexKey, IndexValue> {
+
+    @Override
+    public int getPartition(IndexKey indexKey, IndexValue value, int numPartitions) {
+        if (indexKey.getType() == IndexType.BY_BUCKET) {
+            return ((ByBucketKey) indexKey.getKey()).getBinNumber() % numPartitions;
+        }
+        return (indexKey.getKey().hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+}
@@ -0,0 +1,154 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.bitmap.reverse.ReverseBitmapKey;
+import com._42six.amino.bitmap.reverse.ReverseBitmapReducer;
+import com._42six.amino.common.AminoConfiguration;
+import com._42six.amino.common.ByBucketKey;
+import com._42six.amino.common.bitmap.AminoBitmapBuilder;
+import com._42six.amino.common.bitmap.BitmapCodec;
+import com._42six.amino.common.bitmap.BitmapCodecs;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import com._42six.amino.common.service.datacache.SortedIndexCache;
+import com._42six.amino.common.service.datacache.SortedIndexCacheFactory;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+
+import java.io.IOException;
+
+/**
+ * Writes every index built by the {@link IndexJob}.  The bulk imported indexes are written as RFiles under a
+ * directory named after the index, and the rest are written as Mutations through the {@link #MUTATIONS} output.
+ */
+public class IndexReducer extends Reducer<IndexKey, IndexValue, Key, Value> {
+
+    /** The MultipleOutputs name of the Mutation output */
+    public static final String MUTATIONS = "mutations";
+
+    /**
+     * Where the indexes are written
+     */
+    interface Output {
+        void writeFile(IndexType type, Key key, Value value) throws IOException, InterruptedException;
+
+        void writeMutation(Text table, Mutation mutation) throws IOException, InterruptedException;
+    }
+
+    private MultipleOutputs<Key, Value> outputs;
+    private Output output;
+    private SortedIndexCache dataSourceCache;
+    private final AminoBitmapBuilder bitmapBuilder = new AminoBitmapBuilder();
+    private BitmapCodec bitmapCodec;
+    private Text statsTable;
+    private Text reverseBitmapTable;
+    private final Value hypothesisValue = new Value();
+
+    private static final Function<IndexValue, Text> TO_TEXT = new Function<IndexValue, Text>() {
+        @Override
+        public Text apply(IndexValue value) {
+            return (Text) value.get();
+        }
+    };
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        final Configuration conf = context.getConfiguration();
+        outputs = new MultipleOutputs<>(context);
+        output = new Output() {
+            @Override
+            public void writeFile(IndexType type, Key key, Value value) throws IOException, InterruptedException {
+                outputs.write(type.getName(), key, value, IndexJob.getOutputPath(type));
+            }
+
+            @Override
+            public void writeMutation(Text table, Mutation mutation) throws IOException, InterruptedException {
+                outputs.write(MUTATIONS, table, mutation);
+            }
+        };
+
+        String table = conf.get(AminoConfiguration.TABLE_INDEX);
+        if (conf.getBoolean(AminoConfiguration.FIRST_RUN, true)) {
+            table += AminoConfiguration.TEMP_SUFFIX;
+        }
+        configure(SortedIndexCacheFactory.getCache(SortedIndexCacheFactory.CacheTypes.Datasource, conf),
+                BitmapCodecs.fromConfiguration(conf), new Text(table),
+                IndexType.fromConfiguration(conf).contains(IndexType.REVERSE_BITMAP) ? ReverseBitmapReducer.getTableName(conf) : null);
+    }
+
+    /**
+     * Sets everything that setup reads from the configuration and the caches
+     */
+    void configure(SortedIndexCache dataSourceCache, BitmapCodec bitmapCodec, Text statsTable, Text reverseBitmapTable) {
+        this.dataSourceCache = dataSourceCache;
+        this.bitmapCodec = bitmapCodec;
+        this.statsTable = statsTable;
+        this.reverseBitmapTable = reverseBitmapTable;
+    }
+
+    @Override
+    protected void reduce(IndexKey key, Iterable<IndexValue> values, Context context) throws IOException, InterruptedException {
+        reduce(key, values, output);
+    }
+
+    void reduce(IndexKey key, Iterable<IndexValue> values, Output output) throws IOException, InterruptedException {
+        switch (key.getType()) {
+            case BY_BUCKET: {
+                final ByBucketKey byBucketKey = (ByBucketKey) key.getKey();
+                final String dataSource = dataSourceCache.getItem(byBucketKey.getDatasourceNameIndex());
+                output.writeFile(IndexType.BY_BUCKET, ByBucketReducer.createKey(byBucketKey, dataSource), buildBitmap(values));
+                break;
+            }
+            case BIT_LOOKUP:
+                output.writeFile(IndexType.BIT_LOOKUP, BitLookupReducer.createKey((BitLookupKey) key.getKey()), buildBitmap(values));
+                break;
+            case STATS:
+                output.writeMutation(statsTable,
+                        StatsReducer.createMutation((StatsKey) key.getKey(), Iterables.transform(values, TO_TEXT)));
+                break;
+            case HYPOTHESIS:
+                for (IndexValue value : values) {
+                    final StatsKey statsKey = (StatsKey) value.get();
+                    hypothesisValue.set(statsKey.getVal().getBytes());
+                    output.writeFile(IndexType.HYPOTHESIS, HypothesisReducer.createKey(statsKey), hypothesisValue);
+                }
+                break;
+            case REVERSE_BITMAP: {
+                final ReverseBitmapKey rbk = (ReverseBitmapKey) key.getKey();
+                final String dataSource = dataSourceCache.getItem(rbk.getDatasource());
+                output.writeMutation(reverseBitmapTable,
+                        ReverseBitmapReducer.createMutation(rbk, dataSource, buildBitmap(values)));
+                break;
+            }
+            case REVERSE_FEATURE_LOOKUP:
+                // The value is always empty, and the same key may have come from several mappers
+                output.writeFile(IndexType.REVERSE_FEATURE_LOOKUP, (Key) key.getKey(), (Value) values.iterator().next().get());
+                break;
+            default:
+                throw new IOException("Unsupported index: " + key.getType());
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        outputs.close();
+        super.cleanup(context);
+    }
+
+    /**
+     * @return The serialized bitmap of all of the runs in the values
+     */
+    private Value buildBitmap(Iterable<IndexValue> values) {
+        // Each value is a sorted run, so the builder can stream them into the bitmap
+        for (IndexValue value : values) {
+            ((BitmapRunValue) value.get()).addTo(bitmapBuilder);
+        }
+        return BitmapUtils.toValue(bitmapBuilder.build(), bitmapCodec);
+    }
+}
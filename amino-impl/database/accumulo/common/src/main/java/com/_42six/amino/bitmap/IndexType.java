@@ -0,0 +1,99 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.bitmap.reverse.ReverseBitmapKey;
+import com._42six.amino.common.AminoConfiguration;
+import com._42six.amino.common.ByBucketKey;
+import org.apache.accumulo.core.data.Key;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+
+import java.util.EnumSet;
+
+/**
+ * The index tables that {@link IndexJob} can build from a single pass over the framework output.  The name of each
+ * type is what goes in the amino.bitmap.indexes config value, and is also used as the MultipleOutputs name.
+ */
+public enum IndexType {
+    BY_BUCKET("byBucket", ByBucketKey.class, true),
+    BIT_LOOKUP("bitLookup", BitLookupKey.class, true),
+    STATS("stats", StatsKey.class, false),
+    HYPOTHESIS("hypothesis", Text.class, true),
+    REVERSE_BITMAP("reverseBitmap", ReverseBitmapKey.class, false),
+    REVERSE_FEATURE_LOOKUP("reverseFeatureLookup", Key.class, true);
+
+    private final String name;
+    private final Class<? extends WritableComparable> keyClass;
+    private final boolean bulkImported;
+
+    IndexType(String name, Class<? extends WritableComparable> keyClass, boolean bulkImported) {
+        this.name = name;
+        this.keyClass = keyClass;
+        this.bulkImported = bulkImported;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The class of the map output key that the index is built from
+     */
+    public Class<? extends WritableComparable> getKeyClass() {
+        return keyClass;
+    }
+
+    /**
+     * @return true if the index is written to RFiles and bulk imported, false if it is written as Mutations
+     */
+    public boolean isBulkImported() {
+        return bulkImported;
+    }
+
+    /**
+     * @return The tag written in front of the keys of this type
+     */
+    public byte getTag() {
+        return (byte) ordinal();
+    }
+
+    public static IndexType fromTag(byte tag) {
+        final IndexType[] types = values();
+        if (tag < 0 || tag >= types.length) {
+            throw new IllegalArgumentException("Unknown index tag: " + tag);
+        }
+        return types[tag];
+    }
+
+    public static IndexType fromName(String name) {
+        for (IndexType type : values()) {
+            if (type.name.equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown index: " + name);
+    }
+
+    /**
+     * Parses a comma separated list of index names
+     * @param names The names, such as "byBucket,stats"
+     * @return The selected index types
+     */
+    public static EnumSet<IndexType> parse(String names) {
+        final EnumSet<IndexType> types = EnumSet.noneOf(IndexType.class);
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                types.add(fromName(name));
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Reads the indexes to build from the amino.bitmap.indexes config value.  All of them are built if it is not set.
+     */
+    public static EnumSet<IndexType> fromConfiguration(Configuration conf) {
+        final String names = conf.get(AminoConfiguration.BITMAP_INDEXES);
+        return (names == null) ? EnumSet.allOf(IndexType.class) : parse(names);
+    }
+}
@@ -0,0 +1,33 @@
+package com._42six.amino.bitmap;
+
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.GenericWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Map output value of the {@link IndexJob}.  Holds whichever value the stand alone job for the index would have used.
+ */
+public class IndexValue extends GenericWritable {
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Writable>[] TYPES = new Class[] {
+            BitmapRunValue.class,
+            StatsKey.class,
+            Text.class,
+            Value.class
+    };
+
+    public IndexValue() {
+        // Empty for Hadoop serialization
+    }
+
+    public IndexValue(Writable value) {
+        set(value);
+    }
+
+    @Override
+    protected Class<? extends Writable>[] getTypes() {
+        return TYPES;
+    }
+}
@@ -26,6 +26,14 @@ public class StatsReducer extends Reducer<StatsKey, Text, Text, Mutation>
             table += AminoConfiguration.TEMP_SUFFIX;
         }
 
+        context.write(new Text(table), createMutation(key, values));
+	}
+
+	/**
+	 * Creates the Mutation holding the count, first and last bucket values for the key
+	 */
+	static Mutation createMutation(StatsKey key, Iterable<Text> values)
+	{
 		String first = "~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~";
 	    String last =  "                                  ";
 		int count = 0;
@@ -49,7 +57,6 @@ public class StatsReducer extends Reducer<StatsKey, Text, Text, Mutation>
 		m.put(key.getVal(),	String.format("%s:COUNT", key.bucketName), cv, Integer.toString(count));
 		m.put(key.getVal(),	String.format("%s:FIRST", key.bucketName), cv, first);
 		m.put(key.getVal(),	String.format("%s:LAST",  key.bucketName), cv, last);
-
-        context.write(new Text(table), m);
+		return m;
 	}
 }
@@ -1,6 +1,7 @@
 package com._42six.amino.bitmap.reverse;
 
 import com._42six.amino.bitmap.BitmapJob;
+import com._42six.amino.bitmap.BitmapRunValue;
 import com._42six.amino.common.AminoConfiguration;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -10,7 +11,6 @@ import org.apache.accumulo.core.client.mapreduce.AccumuloOutputFormat;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
 import org.apache.commons.cli.Option;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.util.ToolRunner;
 
@@ -40,7 +40,8 @@ public class ReverseBitmapJob extends BitmapJob
 
         job.setMapperClass(ReverseBitmapMapper.class);
         job.setMapOutputKeyClass(ReverseBitmapKey.class);
-        job.setMapOutputValueClass(IntWritable.class);
+        job.setMapOutputValueClass(BitmapRunValue.class);
+        job.setCombinerClass(ReverseBitmapCombiner.class);
         job.setReducerClass(ReverseBitmapReducer.class);
         job.setNumReduceTasks(conf.getInt(AminoConfiguration.NUM_REDUCERS, AminoConfiguration.DEFAULT_NUM_REDUCERS));
 
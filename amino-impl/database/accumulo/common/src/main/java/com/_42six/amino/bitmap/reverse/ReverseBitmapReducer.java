@@ -1,65 +1,82 @@
 package com._42six.amino.bitmap.reverse;
 
+import com._42six.amino.bitmap.BitmapRunValue;
 import com._42six.amino.common.AminoConfiguration;
 import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.AminoBitmapBuilder;
+import com._42six.amino.common.bitmap.BitmapCodec;
+import com._42six.amino.common.bitmap.BitmapCodecs;
 import com._42six.amino.common.bitmap.BitmapUtils;
 import com._42six.amino.common.service.datacache.SortedIndexCache;
 import com._42six.amino.common.service.datacache.SortedIndexCacheFactory;
 import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 
 import java.io.IOException;
-import java.util.TreeSet;
 
-public class ReverseBitmapReducer extends Reducer<ReverseBitmapKey, IntWritable, Text, Mutation>
+public class ReverseBitmapReducer extends Reducer<ReverseBitmapKey, BitmapRunValue, Text, Mutation>
 {
     private Text RB_BUCKET_TABLE;
 
     private SortedIndexCache dataSourceCache;
+    private final AminoBitmapBuilder bitmapBuilder = new AminoBitmapBuilder();
+    private BitmapCodec bitmapCodec;
 
     @Override
     protected void setup(Context context) throws IOException, InterruptedException
     {
         final Configuration configuration = context.getConfiguration();
-        String tableName = configuration.get(AminoConfiguration.TABLE_BUCKET);
-        tableName = tableName.replace("amino_", "amino_reverse_") + AminoConfiguration.TEMP_SUFFIX;
-        RB_BUCKET_TABLE = new Text(tableName);
+        RB_BUCKET_TABLE = getTableName(configuration);
         dataSourceCache = SortedIndexCacheFactory.getCache(SortedIndexCacheFactory.CacheTypes.Datasource, configuration);
+        bitmapCodec = BitmapCodecs.fromConfiguration(configuration);
         super.setup(context);
     }
 
     @Override
-    protected void reduce(ReverseBitmapKey rbk, Iterable<IntWritable> indexes, Context context) throws IOException, InterruptedException
+    protected void reduce(ReverseBitmapKey rbk, Iterable<BitmapRunValue> indexes, Context context) throws IOException, InterruptedException
     {
         final String datasource = dataSourceCache.getItem(rbk.getDatasource());
+
+        // Each value is a sorted run, so the builder can stream them into the bitmap
+        for(BitmapRunValue i : indexes){
+            i.addTo(bitmapBuilder);
+        }
+        final AminoBitmap bitmap = bitmapBuilder.build();
+
+        // Write the row out to the database
+        context.write(RB_BUCKET_TABLE, createMutation(rbk, datasource, BitmapUtils.toValue(bitmap, bitmapCodec)));
+    }
+
+    /**
+     * @return The name of the table that the Mutations are written to
+     */
+    public static Text getTableName(Configuration configuration)
+    {
+        final String tableName = configuration.get(AminoConfiguration.TABLE_BUCKET);
+        return new Text(tableName.replace("amino_", "amino_reverse_") + AminoConfiguration.TEMP_SUFFIX);
+    }
+
+    /**
+     * Creates the Mutation for the map output key
+     * @param rbk The map output key
+     * @param datasource The name of the datasource that the key's datasource index refers to
+     * @param bitmapValue The serialized bitmap of the bucket value indexes
+     */
+    public static Mutation createMutation(ReverseBitmapKey rbk, String datasource, Value bitmapValue)
+    {
         final Text bucketName = rbk.getBucketName();
 
-        final AminoBitmap bitmap = new AminoBitmap();
         final Mutation mutation = new Mutation(rbk.getShard() + ":" + rbk.getSalt());
         final ColumnVisibility colVis = new ColumnVisibility(rbk.getVisibility());
 
         final Text colFamily = new Text(datasource + "#" + bucketName + "#" + Integer.toString(rbk.getFeatureId()));
         final Text colQualifier = new Text(rbk.getFeatureValue());
 
-        // Sort out all of the indexes since we can only add them to the bitmap in sorted order
-        final TreeSet<Integer> sortedIndexes = new TreeSet<>();
-
-        // Gotta pull out the indexes because MR reuses the indexes
-        for(IntWritable i : indexes){
-            sortedIndexes.add(i.get());
-        }
-
-        // Add the bits to the bitmap
-        for(Integer index : sortedIndexes){
-            bitmap.set(index);
-        }
-
-        // Write the row out to the database
-        mutation.put(colFamily, colQualifier, colVis, BitmapUtils.toValue(bitmap));
-        context.write(RB_BUCKET_TABLE, mutation);
+        mutation.put(colFamily, colQualifier, colVis, bitmapValue);
+        return mutation;
     }
 }
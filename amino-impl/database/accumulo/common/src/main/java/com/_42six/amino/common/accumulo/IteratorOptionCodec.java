@@ -0,0 +1,155 @@
+package com._42six.amino.common.accumulo;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+import java.io.*;
+
+/**
+ * Binary encoding for iterator options that carry bitmaps or large collections.  Iterator options are Strings that are
+ * sent to, and parsed by, every tablet server that the scan touches, so encoding bitmaps as JSON word arrays makes the
+ * options both large and slow to parse.
+ *
+ * A binary option is {@link #BINARY_PREFIX} followed by the Base64 of a version byte and the values written with a
+ * {@link Writer}.  Options without the prefix were written as JSON by older clients, which the iterators still read.
+ */
+public final class IteratorOptionCodec {
+
+    /** Marks an option as binary.  Can never be the start of a JSON document */
+    public static final String BINARY_PREFIX = "b64:";
+
+    /** The version of the binary format */
+    public static final byte VERSION = 1;
+
+    private IteratorOptionCodec() {
+        // Utility class
+    }
+
+    /**
+     * @return true if the option was written by a {@link Writer}, false if it is a JSON option
+     */
+    public static boolean isBinary(String option) {
+        return option != null && option.startsWith(BINARY_PREFIX);
+    }
+
+    public static Writer writer() {
+        return new Writer();
+    }
+
+    /**
+     * Creates a Reader for a binary option
+     * @param option The option value
+     * @throws IllegalArgumentException if the option is not binary or has an unknown version
+     */
+    public static Reader reader(String option) {
+        if (!isBinary(option)) {
+            throw new IllegalArgumentException("Not a binary iterator option");
+        }
+        final byte[] bytes = BaseEncoding.base64().decode(option.substring(BINARY_PREFIX.length()));
+        if (bytes.length == 0 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Unknown iterator option version: " + ((bytes.length == 0) ? "none" : bytes[0]));
+        }
+        return new Reader(new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)));
+    }
+
+    /**
+     * Writes the values of a binary option.  The values must be read back in the same order with a {@link Reader}.
+     */
+    public static final class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private Writer() {
+            try {
+                out.writeByte(VERSION);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public Writer writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        public Writer writeString(String value) {
+            return writeBytes(value.getBytes(Charsets.UTF_8));
+        }
+
+        /**
+         * Writes the bitmap the way it is stored in the tables, so it keeps its codec version byte
+         */
+        public Writer writeBitmap(AminoBitmap bitmap) {
+            return writeBytes(BitmapUtils.toValue(bitmap).get());
+        }
+
+        private Writer writeBytes(byte[] value) {
+            try {
+                out.writeInt(value.length);
+                out.write(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        /**
+         * @return The option value
+         */
+        public String toOption() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return BINARY_PREFIX + BaseEncoding.base64().encode(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Reads the values of a binary option.  Truncated or corrupt options throw an IllegalArgumentException.
+     */
+    public static final class Reader {
+        private final DataInputStream in;
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        public int readInt() {
+            try {
+                return in.readInt();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Corrupt iterator option", e);
+            }
+        }
+
+        public String readString() {
+            return new String(readBytes(), Charsets.UTF_8);
+        }
+
+        public AminoBitmap readBitmap() {
+            return BitmapUtils.fromValue(readBytes());
+        }
+
+        private byte[] readBytes() {
+            try {
+                final int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    throw new IllegalArgumentException("Corrupt iterator option, bad length: " + length);
+                }
+                final byte[] value = new byte[length];
+                in.readFully(value);
+                return value;
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Corrupt iterator option", e);
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com._42six.amino.common.bigtable.impl;
 
-import com._42six.amino.data.DataLoader;
+import com._42six.amino.data.SchemaAwareDataLoader;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.ClientConfiguration;
 import org.apache.accumulo.core.client.IteratorSetting;
@@ -28,7 +28,7 @@ import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 
-public abstract class AccumuloDataLoader implements DataLoader {
+public abstract class AccumuloDataLoader implements SchemaAwareDataLoader {
 
     private static final Logger logger = LoggerFactory.getLogger(AccumuloDataLoader.class);
 
@@ -170,6 +170,14 @@ public abstract class AccumuloDataLoader implements DataLoader {
         return bucketsAndDisplayNames;
     }
 
+    /**
+     * The records only hold bucketed values.  Subclasses whose processWholeRow adds other fields should list them here.
+     */
+    @Override
+    public List<Text> getFieldNames() {
+        return new ArrayList<>();
+    }
+
     @Override
     public void setConfig(Configuration config) {
         this.config = config;
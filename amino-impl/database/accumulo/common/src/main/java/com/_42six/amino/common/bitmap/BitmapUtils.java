@@ -4,44 +4,55 @@ import org.apache.accumulo.core.data.Value;
 
 import java.io.*;
 
+/**
+ * Converts AminoBitmaps to and from Accumulo Values.  Values start with the version byte of the {@link BitmapCodec}
+ * that wrote them.  Values written before bitmaps were versioned have no version byte and are read as EWAH.
+ */
 public class BitmapUtils {
   
   public static AminoBitmap fromValue(Value value){
-    
-    AminoBitmap outBitmap = new AminoBitmap();
-    ByteArrayInputStream byteStream = new ByteArrayInputStream(value.get());
-    DataInputStream in = new DataInputStream(byteStream);
-    try {
-      outBitmap.deserialize(in);
-      in.close();
-    } catch (IOException e) {
-      throw new RuntimeException("Bitmap de-serialization error!\n"+ e.toString());
-    }
-    return outBitmap;
+    return fromValue(value.get());
   }
 
 
   public static AminoBitmap fromValue(byte [] value){
-    
     AminoBitmap outBitmap = new AminoBitmap();
-    ByteArrayInputStream byteStream = new ByteArrayInputStream(value);
-    DataInputStream in = new DataInputStream(byteStream);
+    fromValue(value, outBitmap);
+    return outBitmap;
+  }
+
+  /**
+   * Reads the bitmap stored in value into an existing AminoBitmap, replacing its contents
+   */
+  public static void fromValue(byte [] value, AminoBitmap outBitmap){
+    final BitmapCodec codec = (value.length > 0) ? BitmapCodecs.forVersion(value[0]) : null;
+    final int offset = (codec == null) ? 0 : 1;
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(value, offset, value.length - offset));
     try {
-      outBitmap.deserialize(in);
+      if (codec == null) {
+        // Legacy value without a version byte
+        outBitmap.deserialize(in);
+      } else {
+        codec.deserialize(in, outBitmap);
+      }
       in.close();
     } catch (IOException e) {
       throw new RuntimeException("Bitmap de-serialization error!\n"+ e.toString());
     }
-    return outBitmap;
   }
 
   
   
   public static Value toValue(AminoBitmap bitmap){
+    return toValue(bitmap, BitmapCodecs.DEFAULT);
+  }
+
+  public static Value toValue(AminoBitmap bitmap, BitmapCodec codec){
     ByteArrayOutputStream bytes = new ByteArrayOutputStream();
     DataOutputStream out = new DataOutputStream( bytes );
     try {
-      bitmap.serialize(out);
+      out.writeByte(codec.getVersion());
+      codec.serialize(bitmap, out);
       out.close();
     } catch (IOException e) {
       throw new RuntimeException("Bitmap serialization error!\n"+ bitmap.toString() + "\n" + e.toString());
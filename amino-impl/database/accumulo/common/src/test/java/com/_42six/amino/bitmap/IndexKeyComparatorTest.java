@@ -0,0 +1,67 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.bitmap.reverse.ReverseBitmapKey;
+import com._42six.amino.common.ByBucketKey;
+import org.apache.accumulo.core.data.Key;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndexKeyComparatorTest {
+
+    private static byte[] write(IndexKey key) throws IOException {
+        final DataOutputBuffer out = new DataOutputBuffer();
+        key.write(out);
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    @Test
+    public void sortsLikeCompareTo() throws IOException {
+        final List<IndexKey> keys = Arrays.asList(
+                new IndexKey(IndexType.BY_BUCKET, new ByBucketKey(new Text("a"), 1, new Text("name"),
+                        IndexMapperTest.DATASOURCE_INDEX, new Text("U"), 0)),
+                new IndexKey(IndexType.BY_BUCKET, new ByBucketKey(new Text("a"), 1, new Text("name"),
+                        IndexMapperTest.DATASOURCE_INDEX, new Text("U"), 1)),
+                // Bin numbers sort as text, so 10 comes before 2
+                new IndexKey(IndexType.BY_BUCKET, new ByBucketKey(new Text("a"), 10, new Text("name"),
+                        IndexMapperTest.DATASOURCE_INDEX, new Text("U"), 0)),
+                new IndexKey(IndexType.BY_BUCKET, new ByBucketKey(new Text("a"), 2, new Text("name"),
+                        IndexMapperTest.DATASOURCE_INDEX, new Text("U"), 0)),
+                new IndexKey(IndexType.BIT_LOOKUP, new BitLookupKey(7, "fact", "U", 0)),
+                new IndexKey(IndexType.STATS, new StatsKey("7", "fact", "name", "U")),
+                new IndexKey(IndexType.HYPOTHESIS, new Text("a")),
+                new IndexKey(IndexType.HYPOTHESIS, new Text("b")),
+                new IndexKey(IndexType.REVERSE_BITMAP, new ReverseBitmapKey(1, 0, IndexMapperTest.DATASOURCE_INDEX,
+                        new Text("name"), 7, "fact", new Text("U"))),
+                new IndexKey(IndexType.REVERSE_FEATURE_LOOKUP, new Key("1", "cf", "cq", "U")));
+
+        final IndexKeyComparator comparator = new IndexKeyComparator();
+        for (IndexKey left : keys) {
+            final byte[] leftBytes = write(left);
+            for (IndexKey right : keys) {
+                final byte[] rightBytes = write(right);
+                final int expected = Integer.signum(left.compareTo(right));
+                assertEquals(left + " vs " + right, expected,
+                        Integer.signum(comparator.compare(leftBytes, 0, leftBytes.length, rightBytes, 0, rightBytes.length)));
+            }
+        }
+    }
+
+    @Test
+    public void comparesWithinLargerBuffers() throws IOException {
+        final byte[] key = write(new IndexKey(IndexType.HYPOTHESIS, new Text("b")));
+        final byte[] padded = new byte[key.length + 3];
+        System.arraycopy(key, 0, padded, 2, key.length);
+        final byte[] smaller = write(new IndexKey(IndexType.HYPOTHESIS, new Text("a")));
+
+        final IndexKeyComparator comparator = new IndexKeyComparator();
+        assertEquals(0, comparator.compare(padded, 2, key.length, key, 0, key.length));
+        assertTrue(comparator.compare(padded, 2, key.length, smaller, 0, smaller.length) > 0);
+    }
+}
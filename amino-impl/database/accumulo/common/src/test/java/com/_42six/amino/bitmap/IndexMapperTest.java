@@ -0,0 +1,198 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.bitmap.reverse.ReverseBitmapKey;
+import com._42six.amino.common.*;
+import com._42six.amino.common.index.BitmapIndex;
+import com._42six.amino.common.service.datacache.BucketCache;
+import com._42six.amino.common.service.datacache.SortedIndexCache;
+import com._42six.amino.common.translator.FeatureFactTranslatorImpl;
+import com.google.common.collect.ImmutableMap;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.Writable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IndexMapperTest {
+
+    static final VIntWritable DATASOURCE_INDEX = new VIntWritable(3);
+    private static final int HASHES = 2;
+    private static final int SHARDS = 10;
+
+    /** Copies of everything written, by index */
+    static class RecordingOutput implements IndexMapper.Output {
+        final Map<IndexType, List<IndexKey>> keys = new EnumMap<>(IndexType.class);
+        final Map<IndexType, List<Writable>> values = new EnumMap<>(IndexType.class);
+
+        @Override
+        public void write(IndexKey key, IndexValue value) throws IOException {
+            // The mapper reuses both, so keep copies
+            final IndexKey keyCopy = copy(key, new IndexKey());
+            final IndexValue valueCopy = copy(value, new IndexValue());
+            if (!keys.containsKey(key.getType())) {
+                keys.put(key.getType(), new ArrayList<IndexKey>());
+                values.put(key.getType(), new ArrayList<Writable>());
+            }
+            keys.get(key.getType()).add(keyCopy);
+            values.get(key.getType()).add(valueCopy.get());
+        }
+
+        List<IndexKey> keys(IndexType type) {
+            return keys.containsKey(type) ? keys.get(type) : Collections.<IndexKey>emptyList();
+        }
+
+        List<Writable> values(IndexType type) {
+            return values.containsKey(type) ? values.get(type) : Collections.<Writable>emptyList();
+        }
+    }
+
+    static <T extends Writable> T copy(Writable from, T to) throws IOException {
+        final DataOutputBuffer out = new DataOutputBuffer();
+        from.write(out);
+        final DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        to.readFields(in);
+        return to;
+    }
+
+    static SortedIndexCache dataSourceCache() {
+        return new SortedIndexCache("datasource", new Configuration(false)) {{
+            dataMap = ImmutableMap.of(DATASOURCE_INDEX, "source");
+        }};
+    }
+
+    private final FeatureFactTranslatorImpl translator = new FeatureFactTranslatorImpl();
+    private final Feature feature = new Feature("feature");
+    private Bucket first;
+    private Bucket second;
+    private IndexMapper mapper;
+    private RecordingOutput output;
+
+    @Before
+    public void setUp() throws IOException {
+        first = new Bucket("source", "name", "first", "display", "U", "U");
+        second = new Bucket("source", "name", "second", "display", "U", "U");
+        final BucketCache bucketCache = new BucketCache();
+        // Buckets with the same datasource and name share their cache entry
+        bucketCache.addBucket(first);
+
+        mapper = new IndexMapper();
+        mapper.configure(EnumSet.allOf(IndexType.class), bucketCache, dataSourceCache(), HASHES, SHARDS);
+        output = new RecordingOutput();
+    }
+
+    private void map(Bucket bucket, String fact) throws IOException, InterruptedException {
+        mapper.map(BucketStripped.fromBucket(bucket), new AminoWritable(feature, new NominalFeatureFact(fact)), output);
+    }
+
+    private String factText(String fact) {
+        return new NominalFeatureFact(fact).toText(translator).toString();
+    }
+
+    @Test
+    public void writesEveryIndexOfEveryRecord() throws Exception {
+        map(first, "a");
+        map(first, "b");
+        map(second, "a");
+
+        final int featureIndex = BitmapIndex.getFeatureIndex(feature);
+        final List<IndexKey> byBucket = new ArrayList<>();
+        final List<IndexKey> bitLookup = new ArrayList<>();
+        final List<IndexKey> reverseBitmap = new ArrayList<>();
+        final List<Writable> featureFactIndexes = new ArrayList<>();
+        final List<Writable> valueIndexes = new ArrayList<>();
+        final List<IndexKey> stats = new ArrayList<>();
+        final List<Writable> statsValues = new ArrayList<>();
+        final List<Writable> hypothesisValues = new ArrayList<>();
+        for (Object[] record : new Object[][] { { first, "a" }, { first, "b" }, { second, "a" } }) {
+            final Bucket bucket = (Bucket) record[0];
+            final NominalFeatureFact fact = new NominalFeatureFact((String) record[1]);
+            final String factText = factText((String) record[1]);
+            final int binNumber = BitmapIndex.getBucketValueIndex(BucketStripped.fromBucket(bucket)) % SHARDS;
+            final int shard = BitmapIndex.getValueIndex(bucket, 0) % SHARDS;
+            for (int salt = 0; salt < HASHES; salt++) {
+                final int featureFactIndex = BitmapIndex.getFeatureFactIndex(bucket, feature, fact, salt);
+                byBucket.add(new IndexKey(IndexType.BY_BUCKET, new ByBucketKey(bucket.getBucketValue(), binNumber,
+                        bucket.getBucketName(), DATASOURCE_INDEX, bucket.getBucketVisibility(), salt)));
+                bitLookup.add(new IndexKey(IndexType.BIT_LOOKUP, new BitLookupKey(featureIndex, factText, "U", salt)));
+                reverseBitmap.add(new IndexKey(IndexType.REVERSE_BITMAP, new ReverseBitmapKey(shard, salt,
+                        DATASOURCE_INDEX, bucket.getBucketName(), featureIndex, factText, bucket.getBucketVisibility())));
+                featureFactIndexes.add(new BitmapRunValue(featureFactIndex));
+                valueIndexes.add(new BitmapRunValue(BitmapIndex.getValueIndex(bucket, salt)));
+                hypothesisValues.add(new StatsKey(Integer.toString(featureIndex), factText, "name", "U", salt, featureFactIndex));
+            }
+            stats.add(new IndexKey(IndexType.STATS, new StatsKey(Integer.toString(featureIndex), factText, "name", "U")));
+            statsValues.add(bucket.getBucketValue());
+        }
+
+        assertEquals(byBucket, output.keys(IndexType.BY_BUCKET));
+        assertEquals(featureFactIndexes, output.values(IndexType.BY_BUCKET));
+        assertEquals(bitLookup, output.keys(IndexType.BIT_LOOKUP));
+        assertEquals(featureFactIndexes, output.values(IndexType.BIT_LOOKUP));
+        assertEquals(stats, output.keys(IndexType.STATS));
+        assertEquals(statsValues, output.values(IndexType.STATS));
+        assertEquals(hypothesisValues, output.values(IndexType.HYPOTHESIS));
+        assertEquals(reverseBitmap, output.keys(IndexType.REVERSE_BITMAP));
+        assertEquals(valueIndexes, output.values(IndexType.REVERSE_BITMAP));
+
+        // Each hypothesis key is the printed Key of its value
+        for (int i = 0; i < hypothesisValues.size(); i++) {
+            final StatsKey featureKey = (StatsKey) hypothesisValues.get(i);
+            final Key cbKey = new Key(new Text(Integer.toString(featureKey.bitmapIndex)),
+                    new Text(featureKey.salt + "#name"), new Text(featureKey.row), new Text("U"));
+            assertEquals(new Text(cbKey.toStringNoTime()), output.keys(IndexType.HYPOTHESIS).get(i).getKey());
+        }
+    }
+
+    @Test
+    public void writesTheReverseFeatureLookupOncePerBucket() throws Exception {
+        map(first, "a");
+        map(first, "b");
+        map(second, "a");
+
+        final List<IndexKey> expected = new ArrayList<>();
+        for (Bucket bucket : Arrays.asList(first, second)) {
+            final Text shard = new Text(Integer.toString(BitmapIndex.getValueIndex(bucket, 0) % SHARDS));
+            for (int salt = 0; salt < HASHES; salt++) {
+                expected.add(new IndexKey(IndexType.REVERSE_FEATURE_LOOKUP, new Key(shard,
+                        new Text(BitmapIndex.getValueIndex(bucket, salt) + "#source#name#" + salt),
+                        bucket.getBucketValue(), bucket.getBucketVisibility())));
+            }
+        }
+        assertEquals(expected, output.keys(IndexType.REVERSE_FEATURE_LOOKUP));
+        for (Writable value : output.values(IndexType.REVERSE_FEATURE_LOOKUP)) {
+            assertEquals(0, ((Value) value).getSize());
+        }
+    }
+
+    @Test
+    public void onlyWritesTheSelectedIndexes() throws Exception {
+        final BucketCache bucketCache = new BucketCache();
+        bucketCache.addBucket(first);
+        mapper.configure(EnumSet.of(IndexType.STATS, IndexType.BIT_LOOKUP), bucketCache, dataSourceCache(), HASHES, SHARDS);
+        map(first, "a");
+
+        assertEquals(EnumSet.of(IndexType.STATS, IndexType.BIT_LOOKUP), EnumSet.copyOf(output.keys.keySet()));
+        assertEquals(1, output.keys(IndexType.STATS).size());
+        assertEquals(HASHES, output.keys(IndexType.BIT_LOOKUP).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownDatasourceFails() throws Exception {
+        final BucketCache bucketCache = new BucketCache();
+        final Bucket other = new Bucket("other", "name", "first", "display", "U", "U");
+        bucketCache.addBucket(other);
+        mapper.configure(EnumSet.allOf(IndexType.class), bucketCache, dataSourceCache(), HASHES, SHARDS);
+        map(other, "a");
+    }
+}
@@ -0,0 +1,135 @@
+package com._42six.amino.bitmap;
+
+import com._42six.amino.bitmap.reverse.ReverseBitmapKey;
+import com._42six.amino.common.ByBucketKey;
+import com._42six.amino.common.bitmap.BitmapCodecs;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndexReducerTest {
+
+    private static final Text STATS_TABLE = new Text("amino_bitmap_index_temp");
+    private static final Text REVERSE_BITMAP_TABLE = new Text("amino_reverse_bucket_temp");
+
+    /** Everything written, with copies of the values the reducer reuses */
+    static class RecordingOutput implements IndexReducer.Output {
+        final List<IndexType> fileTypes = new ArrayList<>();
+        final List<Key> fileKeys = new ArrayList<>();
+        final List<Value> fileValues = new ArrayList<>();
+        final List<Text> tables = new ArrayList<>();
+        final List<Mutation> mutations = new ArrayList<>();
+
+        @Override
+        public void writeFile(IndexType type, Key key, Value value) {
+            fileTypes.add(type);
+            fileKeys.add(key);
+            fileValues.add(new Value(value.get(), 0, value.getSize()));
+        }
+
+        @Override
+        public void writeMutation(Text table, Mutation mutation) {
+            tables.add(table);
+            mutations.add(mutation);
+        }
+    }
+
+    private IndexReducer reducer;
+    private RecordingOutput output;
+
+    @Before
+    public void setUp() {
+        reducer = new IndexReducer();
+        reducer.configure(IndexMapperTest.dataSourceCache(), BitmapCodecs.DEFAULT, STATS_TABLE, REVERSE_BITMAP_TABLE);
+        output = new RecordingOutput();
+    }
+
+    private static BitmapRunValue run(int... indexes) {
+        final BitmapRunValue run = new BitmapRunValue();
+        for (int index : indexes) {
+            run.addIndex(index);
+        }
+        return run;
+    }
+
+    private static List<IndexValue> values(Object... values) {
+        final List<IndexValue> indexValues = new ArrayList<>();
+        for (Object value : values) {
+            indexValues.add(new IndexValue((Writable) value));
+        }
+        return indexValues;
+    }
+
+    private static List<Integer> bits(Value value) {
+        return BitmapUtils.fromValue(value).getPositions();
+    }
+
+    @Test
+    public void mergesTheRunsOfEachBitmap() throws Exception {
+        final ByBucketKey first = new ByBucketKey(new Text("first"), 4, new Text("name"), IndexMapperTest.DATASOURCE_INDEX,
+                new Text("U"), 0);
+        final ByBucketKey second = new ByBucketKey(new Text("second"), 4, new Text("name"), IndexMapperTest.DATASOURCE_INDEX,
+                new Text("U"), 0);
+        reducer.reduce(new IndexKey(IndexType.BY_BUCKET, first), values(run(1, 5), run(3, 5), run(9)), output);
+        reducer.reduce(new IndexKey(IndexType.BY_BUCKET, second), values(run(2)), output);
+        final BitLookupKey lookup = new BitLookupKey(7, "fact", "U", 1);
+        reducer.reduce(new IndexKey(IndexType.BIT_LOOKUP, lookup), values(run(8), run(6)), output);
+
+        assertEquals(Arrays.asList(IndexType.BY_BUCKET, IndexType.BY_BUCKET, IndexType.BIT_LOOKUP), output.fileTypes);
+        assertEquals(Arrays.asList(ByBucketReducer.createKey(first, "source"), ByBucketReducer.createKey(second, "source"),
+                BitLookupReducer.createKey(lookup)), output.fileKeys);
+        assertEquals(Arrays.asList(1, 3, 5, 9), bits(output.fileValues.get(0)));
+        // Nothing of the previous key is left in the bitmap
+        assertEquals(Arrays.asList(2), bits(output.fileValues.get(1)));
+        assertEquals(Arrays.asList(6, 8), bits(output.fileValues.get(2)));
+        assertTrue(output.mutations.isEmpty());
+    }
+
+    @Test
+    public void writesStatsAndReverseBitmapsAsMutations() throws Exception {
+        final StatsKey stats = new StatsKey("7", "fact", "name", "U");
+        reducer.reduce(new IndexKey(IndexType.STATS, stats), values(new Text("b"), new Text("a"), new Text("c")), output);
+        final ReverseBitmapKey reverse = new ReverseBitmapKey(2, 1, IndexMapperTest.DATASOURCE_INDEX, new Text("name"), 7,
+                "fact", new Text("U"));
+        reducer.reduce(new IndexKey(IndexType.REVERSE_BITMAP, reverse), values(run(4), run(1, 4)), output);
+
+        assertEquals(Arrays.asList(STATS_TABLE, REVERSE_BITMAP_TABLE), output.tables);
+        assertEquals(StatsReducer.createMutation(stats, Arrays.asList(new Text("a"), new Text("b"), new Text("c"))),
+                output.mutations.get(0));
+        final Mutation reverseMutation = output.mutations.get(1);
+        assertArrayEquals("2:1".getBytes(), reverseMutation.getRow());
+        assertEquals(1, reverseMutation.getUpdates().size());
+        assertArrayEquals("source#name#7".getBytes(), reverseMutation.getUpdates().get(0).getColumnFamily());
+        assertEquals(Arrays.asList(1, 4), BitmapUtils.fromValue(reverseMutation.getUpdates().get(0).getValue()).getPositions());
+        assertTrue(output.fileKeys.isEmpty());
+    }
+
+    @Test
+    public void writesEveryHypothesisAndOneReverseFeatureLookup() throws Exception {
+        final StatsKey salt0 = new StatsKey("7", "fact", "name", "U", 0, 11);
+        final StatsKey salt1 = new StatsKey("7", "fact", "name", "U", 1, 12);
+        reducer.reduce(new IndexKey(IndexType.HYPOTHESIS, new Text("key")), values(salt0, salt1), output);
+        final Key lookup = new Key("3", "11#source#name#0", "first", "U");
+        reducer.reduce(new IndexKey(IndexType.REVERSE_FEATURE_LOOKUP, lookup),
+                values(new Value(new byte[0]), new Value(new byte[0])), output);
+
+        assertEquals(Arrays.asList(IndexType.HYPOTHESIS, IndexType.HYPOTHESIS, IndexType.REVERSE_FEATURE_LOOKUP),
+                output.fileTypes);
+        assertEquals(Arrays.asList(HypothesisReducer.createKey(salt0), HypothesisReducer.createKey(salt1), lookup),
+                output.fileKeys);
+        assertEquals(new Value("fact".getBytes()), output.fileValues.get(0));
+        assertEquals(new Value("fact".getBytes()), output.fileValues.get(1));
+        assertEquals(0, output.fileValues.get(2).getSize());
+    }
+}
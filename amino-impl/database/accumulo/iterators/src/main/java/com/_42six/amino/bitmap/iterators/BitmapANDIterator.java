@@ -1,7 +1,9 @@
 package com._42six.amino.bitmap.iterators;
 
+import com._42six.amino.common.accumulo.IteratorOptionCodec;
 import com._42six.amino.common.bitmap.AminoBitmap;
 import com._42six.amino.common.bitmap.BitmapUtils;
+import com._42six.amino.common.bitmap.EwahBufferView;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import org.apache.accumulo.core.data.*;
@@ -28,8 +30,26 @@ public class BitmapANDIterator extends WrappingIterator implements OptionDescrib
   public static final Logger log = Logger.getLogger(BitmapANDIterator.class);
   
   public static final String OPTION_BITS = "bits";
-  
+
+  /** How to test the values, either {@link #MATCH_MODE_VIEW} (the default) or {@link #MATCH_MODE_DECODE} */
+  public static final String OPTION_MATCH_MODE = "match_mode";
+
+  /** Test the bits directly against the stored EWAH words, without decoding the bitmap */
+  public static final String MATCH_MODE_VIEW = "view";
+
+  /** Decode each value into a reused bitmap and AND it with the CompareBits */
+  public static final String MATCH_MODE_DECODE = "decode";
+
   private ArrayList<CompareBits> bitsPerHash = null;
+
+  // The positions of the CompareBits, per hash, for testing against the EwahBufferView
+  private int[][] nonRangePositions = null;
+  private int[][][] rangePositions = null;
+  private boolean useView = true;
+
+  // Reused for every value, so that the tablet server isn't allocating per cell
+  private final EwahBufferView view = new EwahBufferView();
+  private final AminoBitmap scratch = new AminoBitmap();
   
   private Key topKey = null;
   final Value topValue = new Value(new byte[0]);
@@ -73,19 +93,85 @@ public class BitmapANDIterator extends WrappingIterator implements OptionDescrib
   /**
    *  Setup the iterator based on the user options
    * @param options map of user given options which should just be 
-   *                OPTION_BITS (a list of lists) and 
-   *                the OPTION_TARGET (number of bits to match)
+   *                OPTION_BITS (the CompareBits per hash, see {@link #encodeBits(List)}) and optionally
+   *                OPTION_MATCH_MODE
    * 
    */
   private void init(Map<String, String> options) {
       if(this.validateOptions(options) ){
-		  String bits = options.get(OPTION_BITS);
-          bitsPerHash = new Gson().fromJson(bits, new TypeToken<ArrayList<CompareBits>>(){}.getType());
+          bitsPerHash = decodeBits(options.get(OPTION_BITS));
+          useView = !MATCH_MODE_DECODE.equals(options.get(OPTION_MATCH_MODE));
+
+          nonRangePositions = new int[bitsPerHash.size()][];
+          rangePositions = new int[bitsPerHash.size()][][];
+          for(int i = 0; i < bitsPerHash.size(); i++) {
+              final CompareBits bits = bitsPerHash.get(i);
+              nonRangePositions[i] = positionsOf(bits.getNonRangeBitmap());
+              rangePositions[i] = new int[bits.getRangeBitmaps().size()][];
+              for(int r = 0; r < bits.getRangeBitmaps().size(); r++) {
+                  rangePositions[i][r] = positionsOf(bits.getRangeBitmaps().get(r));
+              }
+          }
     } else {
     	throw new IllegalArgumentException("All iterator options not set!\n" + this.describeOptions());
     }
   }
   
+  /**
+   * Creates the value of the {@link #OPTION_BITS} option
+   * @param bitsPerHash The CompareBits, indexed by salt
+   * @return The binary encoded option
+   */
+  public static String encodeBits(List<CompareBits> bitsPerHash) {
+      final IteratorOptionCodec.Writer writer = IteratorOptionCodec.writer();
+      writeBits(writer, bitsPerHash);
+      return writer.toOption();
+  }
+
+  /**
+   * Reads the value of the {@link #OPTION_BITS} option, which is either binary or the JSON written by older clients
+   */
+  public static ArrayList<CompareBits> decodeBits(String option) {
+      if(!IteratorOptionCodec.isBinary(option)) {
+          return new Gson().fromJson(option, new TypeToken<ArrayList<CompareBits>>(){}.getType());
+      }
+      return readBits(IteratorOptionCodec.reader(option));
+  }
+
+  /**
+   * Writes a list of CompareBits as part of a binary option
+   */
+  public static void writeBits(IteratorOptionCodec.Writer writer, List<CompareBits> bitsPerHash) {
+      writer.writeInt(bitsPerHash.size());
+      for(CompareBits bits : bitsPerHash) {
+          writer.writeBitmap(bits.getNonRangeBitmap());
+          writer.writeInt(bits.getNonRangeCardinality());
+          writer.writeInt(bits.getRangeBitmaps().size());
+          for(AminoBitmap rangeBitmap : bits.getRangeBitmaps()) {
+              writer.writeBitmap(rangeBitmap);
+          }
+      }
+  }
+
+  /**
+   * Reads a list of CompareBits written by {@link #writeBits(IteratorOptionCodec.Writer, List)}
+   */
+  public static ArrayList<CompareBits> readBits(IteratorOptionCodec.Reader reader) {
+      final int hashCount = reader.readInt();
+      final ArrayList<CompareBits> bitsPerHash = new ArrayList<>(hashCount);
+      for(int i = 0; i < hashCount; i++) {
+          final AminoBitmap nonRangeBitmap = reader.readBitmap();
+          final int nonRangeCardinality = reader.readInt();
+          final int rangeCount = reader.readInt();
+          final List<AminoBitmap> rangeBitmaps = new ArrayList<>(rangeCount);
+          for(int r = 0; r < rangeCount; r++) {
+              rangeBitmaps.add(reader.readBitmap());
+          }
+          bitsPerHash.add(new CompareBits(nonRangeBitmap, nonRangeCardinality, rangeBitmaps));
+      }
+      return bitsPerHash;
+  }
+
   /**
    * Check to see if has the appropriate number of bits for a bitmap
    * @param golden the master bitmap to check against
@@ -93,8 +179,54 @@ public class BitmapANDIterator extends WrappingIterator implements OptionDescrib
    * @return false if the bits don't match the golden, true otherwise
    */
   public boolean filter(CompareBits golden, Value testValue) {
-      AminoBitmap testBitmap = BitmapUtils.fromValue(testValue.get());
+      BitmapUtils.fromValue(testValue.get(), scratch);
+      return matches(golden, scratch);
+  }
+
+  /**
+   * Check to see if the value of a hash has the appropriate number of bits, testing the stored bytes directly when
+   * the value is EWAH and the iterator is in view mode
+   * @param hashSeed the hash seed of the value, which must have CompareBits
+   * @param testValue the value from the database to check against
+   * @return false if the bits don't match the CompareBits of the hash, true otherwise
+   */
+  boolean filter(int hashSeed, Value testValue) {
+      if(!useView || !view.wrap(testValue.get())) {
+          return filter(bitsPerHash.get(hashSeed), testValue);
+      }
+
+      // The value needs exactly nonRangeCardinality of the non-Range bits.  Usually that is all of them, in which case
+      // we can stop at the first one that is missing.
+      final int[] positions = nonRangePositions[hashSeed];
+      final int cardinality = bitsPerHash.get(hashSeed).getNonRangeCardinality();
+      if(positions.length == cardinality) {
+          if(!view.containsAll(positions)) {
+              return false;
+          }
+      } else if(positions.length < cardinality || view.countPresent(positions) != cardinality) {
+          return false;
+      }
 
+      // For each of the range features, make sure that at least one of them was set
+      for(int[] range : rangePositions[hashSeed]) {
+          if(!view.containsAny(range)) {
+              return false;
+          }
+      }
+      return true;
+  }
+
+  private static int[] positionsOf(AminoBitmap bitmap) {
+      return bitmap.getBitmap().toArray();
+  }
+
+  /**
+   * Check to see if a decoded bitmap has the appropriate number of bits
+   * @param golden the master bitmap to check against
+   * @param testBitmap the bitmap from the database to check against
+   * @return false if the bits don't match the golden, true otherwise
+   */
+  public static boolean matches(CompareBits golden, AminoBitmap testBitmap) {
       // Check all of the non-Range features and make sure they are all present
       if(testBitmap.andCardiniality(golden.getNonRangeBitmap()) != golden.getNonRangeCardinality()){
           return false;
@@ -122,6 +254,7 @@ public class BitmapANDIterator extends WrappingIterator implements OptionDescrib
     String iterDesc = "Generates a bitmap with the bits defined in the option set. It filters bitmap values that do not have all the bits set.";
     Map<String,String> optionMap = new HashMap<>();
     optionMap.put(OPTION_BITS, "List of ConfigBits per hash to check against");
+    optionMap.put(OPTION_MATCH_MODE, "'view' to test the stored bitmaps without decoding them (default) or 'decode'");
     return new IteratorOptions(iterName, iterDesc, optionMap, null);
   }
 
@@ -190,7 +323,7 @@ public class BitmapANDIterator extends WrappingIterator implements OptionDescrib
 		  while(sourceIter.hasTop() && sameRowAndColumnFamily(sourceIter.getTopKey(), compareRow, compareColumnFamily)) {
 			  int hashSeed = Integer.parseInt(sourceIter.getTopKey().getColumnQualifier().toString());
 			  // if our hash seed is greater then our masterBitmap break the loop or this value does not match then break the loop
-			  if(hashSeed >= bitsPerHash.size() || !filter(bitsPerHash.get(hashSeed), sourceIter.getTopValue())) {
+			  if(hashSeed >= bitsPerHash.size() || !filter(hashSeed, sourceIter.getTopValue())) {
 				  log.debug("Failed to match using key: " + sourceIter.getTopKey().toStringNoTime());
 				  numberOfMatchingHashSeeds = -1;
 				  break;
@@ -0,0 +1,244 @@
+package com._42six.amino.bitmap.iterators;
+
+import com._42six.amino.common.accumulo.IteratorOptionCodec;
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import org.apache.accumulo.core.data.*;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.OptionDescriber;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.WrappingIterator;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Matches the bucket values in the Bitmap_byBucket table against many hypotheses at once.  The entries in that table
+ * should look like:
+ *  Row ID                                          Column Family  Column Qualifier     Value
+ *  Shard_Number:Data Source:Bucket Name            Bucket Value   Hash Salt            Amino Bitmap (Feature Facet Value Index)
+ *
+ * Where the {@link BitmapANDIterator} checks every bucket value against a single hypothesis, this iterator is given the
+ * {@link BitmapANDIterator.CompareBits} of every hypothesis, decodes the bitmaps of each bucket value once and checks
+ * them against all of the hypotheses.  For every match it returns a key of:
+ *  Row ID                                          Column Family  Column Qualifier     Value
+ *  Shard_Number:Data Source:Bucket Name            Bucket Value   Hypothesis ID        (empty)
+ *
+ * A hypothesis with no CompareBits matches every bucket value in the range.
+ */
+public class HypothesisMatchIterator extends WrappingIterator implements OptionDescriber {
+
+  public static final Logger log = Logger.getLogger(HypothesisMatchIterator.class);
+
+  public static final String OPTION_HYPOTHESES = "hypotheses";
+
+  /** The hypothesis ids, sorted so that the keys of a bucket value are returned in order */
+  private Text[] hypothesisIds = null;
+
+  /** The CompareBits of each hypothesis, indexed by salt */
+  private BitmapANDIterator.CompareBits[][] bitsPerHypothesis = null;
+
+  /** The number of salts of the hypothesis with the most salts */
+  private int maxSalts = 0;
+
+  /** The range that we were seeked to, used to skip the matches that were returned before a re-seek */
+  private Range seekRange = null;
+
+  private final List<Key> matches = new ArrayList<>();
+  private int matchPosition = 0;
+  final Value topValue = new Value(new byte[0]);
+
+  /**
+   * Creates the value of the {@link #OPTION_HYPOTHESES} option
+   * @param bitsPerHypothesis The CompareBits, indexed by salt, of each hypothesis id
+   * @return The binary encoded option
+   */
+  public static String encodeHypotheses(Map<String, ? extends List<BitmapANDIterator.CompareBits>> bitsPerHypothesis) {
+    final IteratorOptionCodec.Writer writer = IteratorOptionCodec.writer();
+    writer.writeInt(bitsPerHypothesis.size());
+    for(Map.Entry<String, ? extends List<BitmapANDIterator.CompareBits>> entry : bitsPerHypothesis.entrySet()) {
+      writer.writeString(entry.getKey());
+      BitmapANDIterator.writeBits(writer, entry.getValue());
+    }
+    return writer.toOption();
+  }
+
+  /**
+   * Reads the value of the {@link #OPTION_HYPOTHESES} option, which is either binary or JSON
+   * @return The CompareBits of each hypothesis id, sorted by id
+   */
+  public static TreeMap<String, List<BitmapANDIterator.CompareBits>> decodeHypotheses(String option) {
+    if(!IteratorOptionCodec.isBinary(option)) {
+      return new Gson().fromJson(option, new TypeToken<TreeMap<String, ArrayList<BitmapANDIterator.CompareBits>>>(){}.getType());
+    }
+
+    final IteratorOptionCodec.Reader reader = IteratorOptionCodec.reader(option);
+    final TreeMap<String, List<BitmapANDIterator.CompareBits>> hypotheses = new TreeMap<>();
+    final int hypothesisCount = reader.readInt();
+    for(int i = 0; i < hypothesisCount; i++) {
+      final String id = reader.readString();
+      hypotheses.put(id, BitmapANDIterator.readBits(reader));
+    }
+    return hypotheses;
+  }
+
+  @Override
+  public Key getTopKey() {
+    return matches.get(matchPosition);
+  }
+
+  @Override
+  public Value getTopValue() {
+    // We do not really care about the value
+    return topValue;
+  }
+
+  @Override
+  public boolean hasTop() {
+    return matchPosition < matches.size();
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key, Value> source, Map<String, String> options, IteratorEnvironment env) throws IOException {
+    this.setSource(source);
+    this.init(options);
+  }
+
+  private void init(Map<String, String> options) {
+    if(!this.validateOptions(options)) {
+      throw new IllegalArgumentException("All iterator options not set!\n" + this.describeOptions());
+    }
+
+    final Map<String, List<BitmapANDIterator.CompareBits>> hypotheses = decodeHypotheses(options.get(OPTION_HYPOTHESES));
+
+    hypothesisIds = new Text[hypotheses.size()];
+    bitsPerHypothesis = new BitmapANDIterator.CompareBits[hypotheses.size()][];
+    int i = 0;
+    for(Map.Entry<String, List<BitmapANDIterator.CompareBits>> entry : hypotheses.entrySet()) {
+      hypothesisIds[i] = new Text(entry.getKey());
+      bitsPerHypothesis[i] = entry.getValue().toArray(new BitmapANDIterator.CompareBits[entry.getValue().size()]);
+      maxSalts = Math.max(maxSalts, bitsPerHypothesis[i].length);
+      i++;
+    }
+  }
+
+  @Override
+  public IteratorOptions describeOptions() {
+    String iterName = "Amino Hypothesis Match Iterator";
+    String iterDesc = "Returns a key for every bucket value and hypothesis pair where the bucket value bitmaps have all of the bits of the hypothesis set.";
+    Map<String,String> optionMap = new HashMap<>();
+    optionMap.put(OPTION_HYPOTHESES, "Map of hypothesis id to the list of CompareBits per hash to check against");
+    return new IteratorOptions(iterName, iterDesc, optionMap, null);
+  }
+
+  @Override
+  public boolean validateOptions(Map<String, String> options) {
+    return options.containsKey(OPTION_HYPOTHESES);
+  }
+
+  /**
+   * We will not allow the user to deep copy the iterator
+   */
+  @Override
+  public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env) {
+    throw new UnsupportedOperationException("Deep Copy is not allowed with this iterator");
+  }
+
+  @Override
+  public void next() throws IOException {
+    matchPosition++;
+    if(matchPosition >= matches.size()) {
+      findMatches();
+    }
+  }
+
+  /**
+   * Seeks to the start of the bucket value that the range starts in.  Our keys don't exist in the source, so a range
+   * starting after one of them (i.e. when a scan is resumed) has to read all of the salts of that bucket value again.
+   */
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
+    seekRange = range;
+    matches.clear();
+    matchPosition = 0;
+
+    Range sourceRange = range;
+    final Key startKey = range.getStartKey();
+    if(startKey != null && startKey.getColumnFamilyData().length() > 0) {
+      final Key bucketValueStart = new Key(startKey.getRow(), startKey.getColumnFamily());
+      sourceRange = new Range(bucketValueStart, true, range.getEndKey(), range.isEndKeyInclusive());
+    }
+    super.seek(sourceRange, columnFamilies, inclusive);
+    findMatches();
+  }
+
+  /**
+   * Reads the bucket values from the source until one of them matches at least one hypothesis
+   */
+  private void findMatches() throws IOException {
+    matches.clear();
+    matchPosition = 0;
+
+    final SortedKeyValueIterator<Key, Value> sourceIter = getSource();
+    final AminoBitmap[] bitmaps = new AminoBitmap[maxSalts];
+    while(matches.isEmpty() && sourceIter.hasTop()) {
+      final Key groupKey = new Key(sourceIter.getTopKey());
+      final Text row = groupKey.getRow();
+      final Text columnFamily = groupKey.getColumnFamily();
+
+      // Decode the bitmap of every salt of the bucket value once
+      Arrays.fill(bitmaps, null);
+      int numberOfSalts = 0;
+      int highestSalt = -1;
+      while(sourceIter.hasTop() && sameRowAndColumnFamily(sourceIter.getTopKey(), row, columnFamily)) {
+        final int hashSeed = Integer.parseInt(sourceIter.getTopKey().getColumnQualifier().toString());
+        if(hashSeed < maxSalts) {
+          bitmaps[hashSeed] = BitmapUtils.fromValue(sourceIter.getTopValue().get());
+        }
+        highestSalt = Math.max(highestSalt, hashSeed);
+        numberOfSalts++;
+        sourceIter.next();
+      }
+
+      for(int h = 0; h < bitsPerHypothesis.length; h++) {
+        if(matches(bitsPerHypothesis[h], bitmaps, numberOfSalts, highestSalt)) {
+          final Key match = new Key(row, columnFamily, hypothesisIds[h], groupKey.getColumnVisibility(), groupKey.getTimestamp());
+          if(seekRange == null || !seekRange.beforeStartKey(match)) {
+            matches.add(match);
+          }
+        }
+      }
+
+      if(log.isDebugEnabled()) {
+        log.debug(groupKey.toStringNoTime() + " matched " + matches.size() + " out of " + bitsPerHypothesis.length + " hypotheses");
+      }
+    }
+  }
+
+  /**
+   * Checks the bitmaps of a bucket value against the CompareBits of a hypothesis.  Like the BitmapANDIterator, the
+   * bucket value needs a bitmap for exactly the salts that the hypothesis has.
+   */
+  private static boolean matches(BitmapANDIterator.CompareBits[] bitsPerHash, AminoBitmap[] bitmaps, int numberOfSalts, int highestSalt) {
+    if(bitsPerHash.length == 0) {
+      return true;
+    }
+    if(numberOfSalts != bitsPerHash.length || highestSalt >= bitsPerHash.length) {
+      return false;
+    }
+    for(int salt = 0; salt < bitsPerHash.length; salt++) {
+      if(bitmaps[salt] == null || !BitmapANDIterator.matches(bitsPerHash[salt], bitmaps[salt])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean sameRowAndColumnFamily(Key testKey, Text expectedRow, Text expectedColumnFamily) {
+    return testKey.getRow().equals(expectedRow) && testKey.getColumnFamily().equals(expectedColumnFamily);
+  }
+}
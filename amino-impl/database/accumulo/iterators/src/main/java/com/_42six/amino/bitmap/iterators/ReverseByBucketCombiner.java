@@ -1,5 +1,6 @@
 package com._42six.amino.bitmap.iterators;
 
+import com._42six.amino.common.accumulo.IteratorOptionCodec;
 import com._42six.amino.common.bitmap.AminoBitmap;
 import com._42six.amino.common.bitmap.BitmapUtils;
 import com.google.gson.Gson;
@@ -109,10 +110,10 @@ public class ReverseByBucketCombiner extends WrappingIterator implements OptionD
     /**
     * Setup the iterator based on the user options
     * @param options map of user given options which consists of:
-    *                OPTION_AND_IDS - JSON String array of AbstractMap.SimpleImmutableEntry<String, String> cf/cq's
-    *                whose values should be AND'ed together
-    *                OPTION_OR_IDS  - JSON String array of AbstractMap.SimpleImmutableEntry<String, String> cf/cq's
-    *                whose values first need to be OR'd before being AND'd together with other features
+    *                OPTION_AND_IDS - The AbstractMap.SimpleImmutableEntry<String, String> cf/cq's whose values should be
+    *                AND'ed together, see {@link #encodeAndIds(Set)}
+    *                OPTION_OR_IDS  - The cf's whose values first need to be OR'd before being AND'd together with other
+    *                features, see {@link #encodeOrIds(Set)}
     *                OPTION_NUM_RANGES - The number of Ranges being iterated over
     *                OPTION_BITMAP_MEM_THRESHOLD - Amount of memory that is acceptible to use before having to "page" our bitmaps
     */
@@ -124,12 +125,10 @@ public class ReverseByBucketCombiner extends WrappingIterator implements OptionD
         final String ranges = options.get(OPTION_NUM_RANGES);
         numberOfRanges = Integer.parseInt(ranges);
 
-        final Gson gson = new Gson();
-
         // Keep track of what types of feature IDs need to be AND'd
         final String ands = options.get(OPTION_AND_IDS);
         if(ands != null){
-            andIDs = gson.fromJson(ands,new TypeToken<Set<AbstractMap.SimpleImmutableEntry<String, String>>>(){static final long serialVersionUID = 426L;}.getType());
+            andIDs = decodeAndIds(ands);
 
             for(AbstractMap.SimpleImmutableEntry<String, String> entry : andIDs){
                 andFeatureIds.put(entry, false);
@@ -139,7 +138,7 @@ public class ReverseByBucketCombiner extends WrappingIterator implements OptionD
         // Keep track of what types of feature IDs need to be OR'd
         final String ors = options.get(OPTION_OR_IDS);
         if(ors != null){
-            orIds = gson.fromJson(ors,new TypeToken<Set<String>>(){static final long serialVersionUID = 426L;}.getType());
+            orIds = decodeOrIds(ors);
 
             // To make sure we see at least one
             for(String id: orIds){
@@ -157,6 +156,70 @@ public class ReverseByBucketCombiner extends WrappingIterator implements OptionD
         }
     }
 
+    /**
+     * Creates the value of the {@link #OPTION_AND_IDS} option
+     * @param andIds The cf/cq pairs of the features to AND
+     * @return The binary encoded option
+     */
+    public static String encodeAndIds(Set<AbstractMap.SimpleImmutableEntry<String, String>> andIds) {
+        final IteratorOptionCodec.Writer writer = IteratorOptionCodec.writer();
+        writer.writeInt(andIds.size());
+        for(AbstractMap.SimpleImmutableEntry<String, String> entry : andIds){
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+        }
+        return writer.toOption();
+    }
+
+    /**
+     * Reads the value of the {@link #OPTION_AND_IDS} option, which is either binary or the JSON written by older clients
+     */
+    public static Set<AbstractMap.SimpleImmutableEntry<String, String>> decodeAndIds(String option) {
+        if(!IteratorOptionCodec.isBinary(option)){
+            return new Gson().fromJson(option,new TypeToken<Set<AbstractMap.SimpleImmutableEntry<String, String>>>(){static final long serialVersionUID = 426L;}.getType());
+        }
+
+        final IteratorOptionCodec.Reader reader = IteratorOptionCodec.reader(option);
+        final int count = reader.readInt();
+        final Set<AbstractMap.SimpleImmutableEntry<String, String>> andIds = new HashSet<>(count * 2);
+        for(int i = 0; i < count; i++){
+            final String cf = reader.readString();
+            andIds.add(new AbstractMap.SimpleImmutableEntry<>(cf, reader.readString()));
+        }
+        return andIds;
+    }
+
+    /**
+     * Creates the value of the {@link #OPTION_OR_IDS} option
+     * @param orIds The cf's of the features to OR
+     * @return The binary encoded option
+     */
+    public static String encodeOrIds(Set<String> orIds) {
+        final IteratorOptionCodec.Writer writer = IteratorOptionCodec.writer();
+        writer.writeInt(orIds.size());
+        for(String id : orIds){
+            writer.writeString(id);
+        }
+        return writer.toOption();
+    }
+
+    /**
+     * Reads the value of the {@link #OPTION_OR_IDS} option, which is either binary or the JSON written by older clients
+     */
+    public static Set<String> decodeOrIds(String option) {
+        if(!IteratorOptionCodec.isBinary(option)){
+            return new Gson().fromJson(option,new TypeToken<Set<String>>(){static final long serialVersionUID = 426L;}.getType());
+        }
+
+        final IteratorOptionCodec.Reader reader = IteratorOptionCodec.reader(option);
+        final int count = reader.readInt();
+        final Set<String> orIds = new HashSet<>(count * 2);
+        for(int i = 0; i < count; i++){
+            orIds.add(reader.readString());
+        }
+        return orIds;
+    }
+
     /**
     * Describe the options that the user can define for the iterator.  Very useful from the accumulo shell
     *
@@ -0,0 +1,89 @@
+package com._42six.amino.bitmap.iterators;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com._42six.amino.common.bitmap.BitmapUtils;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class HypothesisMatchIteratorTest {
+
+	private static final String ROW = "0:1:number";
+
+	private static AminoBitmap bitmap(int... bits) {
+		final AminoBitmap bitmap = new AminoBitmap();
+		for (int bit : bits) {
+			bitmap.set(bit);
+		}
+		return bitmap;
+	}
+
+	private static BitmapANDIterator.CompareBits bits(int... bits) {
+		return new BitmapANDIterator.CompareBits(bitmap(bits), bits.length, new ArrayList<AminoBitmap>());
+	}
+
+	private static TreeMap<Key, Value> byBucket() {
+		final TreeMap<Key, Value> data = new TreeMap<>();
+		// Bucket value "a" has the bits 1,2 for salt 0 and 5,6 for salt 1
+		data.put(new Key(ROW, "a", "0"), BitmapUtils.toValue(bitmap(1, 2)));
+		data.put(new Key(ROW, "a", "1"), BitmapUtils.toValue(bitmap(5, 6)));
+		// Bucket value "b" has the bits 1 for salt 0 and 5 for salt 1
+		data.put(new Key(ROW, "b", "0"), BitmapUtils.toValue(bitmap(1)));
+		data.put(new Key(ROW, "b", "1"), BitmapUtils.toValue(bitmap(5)));
+		// Bucket value "c" only has salt 0
+		data.put(new Key(ROW, "c", "0"), BitmapUtils.toValue(bitmap(1, 2)));
+		return data;
+	}
+
+	private static List<String> scan(Map<String, List<BitmapANDIterator.CompareBits>> hypotheses, Range range) throws Exception {
+		final HypothesisMatchIterator iterator = new HypothesisMatchIterator();
+		final Map<String, String> options = new HashMap<>();
+		options.put(HypothesisMatchIterator.OPTION_HYPOTHESES, HypothesisMatchIterator.encodeHypotheses(hypotheses));
+		iterator.init(new SortedMapIterator(byBucket()), options, null);
+		iterator.seek(range, Collections.<ByteSequence>emptySet(), false);
+
+		final List<String> results = new ArrayList<>();
+		while (iterator.hasTop()) {
+			final Key key = iterator.getTopKey();
+			results.add(key.getColumnFamily() + "=" + key.getColumnQualifier());
+			iterator.next();
+		}
+		return results;
+	}
+
+	private static Map<String, List<BitmapANDIterator.CompareBits>> hypotheses() {
+		final Map<String, List<BitmapANDIterator.CompareBits>> hypotheses = new HashMap<>();
+		hypotheses.put("h1", Arrays.asList(bits(1), bits(5)));
+		hypotheses.put("h2", Arrays.asList(bits(1, 2), bits(5, 6)));
+		hypotheses.put("h3", Arrays.asList(bits(3), bits(5)));
+		hypotheses.put("h4", new ArrayList<BitmapANDIterator.CompareBits>());
+		return hypotheses;
+	}
+
+	@Test
+	public void testMatchesAllHypotheses() throws Exception {
+		Assert.assertEquals(Arrays.asList("a=h1", "a=h2", "a=h4", "b=h1", "b=h4", "c=h4"),
+				scan(hypotheses(), new Range()));
+	}
+
+	@Test
+	public void testResumesAfterMatch() throws Exception {
+		// A scan that is resumed after a match starts right after the key of that match
+		final Key lastKey = new Key(ROW, "a", "h2");
+		Assert.assertEquals(Arrays.asList("a=h4", "b=h1", "b=h4", "c=h4"),
+				scan(hypotheses(), new Range(lastKey, false, null, false)));
+	}
+
+	@Test
+	public void testRangeRestrictsBucketValues() throws Exception {
+		final Range range = new Range(new Key(ROW, "b"), true, new Key(ROW, "b").followingKey(PartialKey.ROW_COLFAM), false);
+		Assert.assertEquals(Arrays.asList("b=h1", "b=h4"), scan(hypotheses(), range));
+	}
+}
@@ -0,0 +1,68 @@
+package com._42six.amino.bitmap.iterators;
+
+import com._42six.amino.common.accumulo.IteratorOptionCodec;
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class IteratorOptionEncodingTest {
+
+	private static AminoBitmap bitmap(int... bits) {
+		final AminoBitmap bitmap = new AminoBitmap();
+		for (int bit : bits) {
+			bitmap.set(bit);
+		}
+		return bitmap;
+	}
+
+	private static List<BitmapANDIterator.CompareBits> compareBits() {
+		return Arrays.asList(
+				new BitmapANDIterator.CompareBits(bitmap(1, 2, 3), 3, Arrays.asList(bitmap(7), bitmap(8, 9))),
+				new BitmapANDIterator.CompareBits(bitmap(Integer.MAX_VALUE - 64), 1, new ArrayList<AminoBitmap>()));
+	}
+
+	private static void assertSameBits(List<BitmapANDIterator.CompareBits> expected, List<BitmapANDIterator.CompareBits> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getNonRangeBitmap().getBitmap(), actual.get(i).getNonRangeBitmap().getBitmap());
+			Assert.assertEquals(expected.get(i).getNonRangeCardinality(), actual.get(i).getNonRangeCardinality());
+			Assert.assertEquals(expected.get(i).getRangeBitmaps().size(), actual.get(i).getRangeBitmaps().size());
+			for (int r = 0; r < expected.get(i).getRangeBitmaps().size(); r++) {
+				Assert.assertEquals(expected.get(i).getRangeBitmaps().get(r).getBitmap(), actual.get(i).getRangeBitmaps().get(r).getBitmap());
+			}
+		}
+	}
+
+	@Test
+	public void testCompareBits() {
+		final String option = BitmapANDIterator.encodeBits(compareBits());
+		Assert.assertTrue(IteratorOptionCodec.isBinary(option));
+		assertSameBits(compareBits(), BitmapANDIterator.decodeBits(option));
+	}
+
+	@Test
+	public void testCompareBitsJsonFallback() {
+		assertSameBits(compareBits(), BitmapANDIterator.decodeBits(new Gson().toJson(compareBits())));
+	}
+
+	@Test
+	public void testReverseByBucketIds() {
+		final Set<AbstractMap.SimpleImmutableEntry<String, String>> andIds = new HashSet<>();
+		andIds.add(new AbstractMap.SimpleImmutableEntry<>("1#number#feature", "vålue"));
+		andIds.add(new AbstractMap.SimpleImmutableEntry<>("1#number#other", ""));
+		final Set<String> orIds = new HashSet<>(Arrays.asList("1#number#ratio", "1#number#date"));
+
+		Assert.assertEquals(andIds, ReverseByBucketCombiner.decodeAndIds(ReverseByBucketCombiner.encodeAndIds(andIds)));
+		Assert.assertEquals(andIds, ReverseByBucketCombiner.decodeAndIds(new Gson().toJson(andIds)));
+		Assert.assertEquals(orIds, ReverseByBucketCombiner.decodeOrIds(ReverseByBucketCombiner.encodeOrIds(orIds)));
+		Assert.assertEquals(orIds, ReverseByBucketCombiner.decodeOrIds(new Gson().toJson(orIds)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownVersion() {
+		IteratorOptionCodec.reader(IteratorOptionCodec.BINARY_PREFIX + "Ag==");
+	}
+}
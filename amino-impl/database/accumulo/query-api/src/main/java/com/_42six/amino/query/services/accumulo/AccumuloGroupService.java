@@ -9,6 +9,10 @@ import com._42six.amino.common.query.requests.AddUsersRequest;
 import com._42six.amino.common.query.requests.CreateGroupRequest;
 import com._42six.amino.query.services.AminoGroupService;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.Scanner;
@@ -20,6 +24,7 @@ import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for handling everything having to do with groups
@@ -40,6 +45,31 @@ public class AccumuloGroupService implements AminoGroupService {
     /** The table all of the Hypotheses are stored in */
 	private String hypothesisTable;
 
+    /**
+     * The table of the Hypotheses each user can see.  The row is the user (or the public group), the column family is
+     * {@link #INDEX_OWNED} or {@link #INDEX_SHARED} and the column qualifier is the owner and Hypothesis id.  The value
+     * is the whole Hypothesis, features and all, so that listing them is a single scan.
+     *
+     * The index is only used once the table exists.  On a database that already has Hypotheses, create the table and
+     * then call {@link #rebuildUserHypothesisIndex(Authorizations)}.
+     */
+    private String userHypothesisIndex = "amino_user_hypothesis_index";
+
+    /** Index column family for the Hypotheses a user owns */
+    public static final String INDEX_OWNED = "owned";
+
+    /** Index column family for the Hypotheses shared with a user through their groups */
+    public static final String INDEX_SHARED = "shared";
+
+    /** Separates the owner from the Hypothesis id in the index column qualifier */
+    private static final String INDEX_SEPARATOR = "\u0000";
+
+    /** How long to trust the answer to whether the index table exists before asking Accumulo again */
+    private static final long INDEX_CHECK_SECONDS = 60;
+
+    /** Whether the index table exists, checked at most every {@link #INDEX_CHECK_SECONDS} */
+    private volatile Supplier<Boolean> userHypothesisIndexed = createIndexCheck();
+
     /** Service for persisting (and fetching) things from Accumulo */
 	private AccumuloPersistenceService persistenceService;
 
@@ -52,7 +82,9 @@ public class AccumuloGroupService implements AminoGroupService {
 	}
 
     public AccumuloPersistenceService setPersistenceService(AccumuloPersistenceService service) {
-		return this.persistenceService = service;
+        this.persistenceService = service;
+        refreshUserHypothesisIndexed();
+		return service;
 	}
 
     /**
@@ -65,6 +97,8 @@ public class AccumuloGroupService implements AminoGroupService {
         groupMembershipTable = groupMetadataTable + suffix;
         groupMetadataTable = groupMetadataTable + suffix;
         hypothesisTable = hypothesisTable + suffix;
+        userHypothesisIndex = userHypothesisIndex + suffix;
+        refreshUserHypothesisIndexed();
     }
 
     @Override
@@ -92,6 +126,45 @@ public class AccumuloGroupService implements AminoGroupService {
 		return this.hypothesisTable = hypothesisTable;
 	}
 
+    @Override
+    public String getUserHypothesisIndex() {
+        return this.userHypothesisIndex;
+    }
+
+    @Override
+    public String setUserHypothesisIndex(String index) {
+        this.userHypothesisIndex = index;
+        refreshUserHypothesisIndexed();
+        return index;
+    }
+
+    /**
+     * The index is only kept up to date, and read, once its table has been created.  Whether it exists is cached for
+     * {@link #INDEX_CHECK_SECONDS}, so call {@link #refreshUserHypothesisIndexed()} after creating or deleting the
+     * table to start or stop using it straight away.
+     *
+     * @return true if the user Hypothesis index table exists
+     */
+    public boolean isUserHypothesisIndexed() {
+        return userHypothesisIndexed.get();
+    }
+
+    /**
+     * Forgets whether the user Hypothesis index table exists, so that the next use checks again
+     */
+    public void refreshUserHypothesisIndexed() {
+        userHypothesisIndexed = createIndexCheck();
+    }
+
+    private Supplier<Boolean> createIndexCheck() {
+        return Suppliers.memoizeWithExpiration(new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return persistenceService != null && persistenceService.tableExists(userHypothesisIndex);
+            }
+        }, INDEX_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
     /**
      * Verify that the group exists in the group_metadata table
      * @param group The group name to search for
@@ -184,6 +257,13 @@ public class AccumuloGroupService implements AminoGroupService {
         }
         persistenceService.insertRows(memberEntries, groupMembershipTable);
 		persistenceService.insertRows(metaEntries, groupMetadataTable);
+
+        // The new members can now see the group's Hypotheses
+        final Set<String> memberNames = new HashSet<>(members.size());
+        for(GroupMember member : members){
+            memberNames.add(member.getName().startsWith(TableConstants.USER_PREFIX) ? member.getName() : TableConstants.USER_PREFIX + member.getName());
+        }
+        indexGroupHypotheses(Collections.singleton(groupName), memberNames, auths);
 	}
 
 	/**
@@ -208,6 +288,7 @@ public class AccumuloGroupService implements AminoGroupService {
         boolean adminProvided = false;
         final ArrayList<Mutation> metadataRows = new ArrayList<>();
         final ArrayList<Mutation> membershipRows = new ArrayList<>();
+        final Set<String> memberNames = new HashSet<>();
 
         // Check to see if the group already exists
         final Scanner groupScanner = persistenceService.createScanner(groupMetadataTable, auths);
@@ -224,6 +305,7 @@ public class AccumuloGroupService implements AminoGroupService {
                         memberName, "", ""));
 
                 membershipRows.add(persistenceService.createInsertMutation(memberName, groupName, "", "", ""));
+                memberNames.add(memberName);
 
                 // Note that an admin was provided for the group
                 if (role.equals(Group.GroupRole.ADMIN)){
@@ -238,6 +320,9 @@ public class AccumuloGroupService implements AminoGroupService {
         persistenceService.insertRow(groupName, "created_date", String.valueOf(createdDate), "", "", groupMetadataTable);
         persistenceService.insertRows(metadataRows, groupMetadataTable);
         persistenceService.insertRows(membershipRows, groupMembershipTable);
+
+        // Hypotheses may already have been shared with the group before it was created
+        indexGroupHypotheses(Collections.singleton(groupName), memberNames, auths);
         log.info("Created group " + groupName);
     }
 
@@ -343,6 +428,8 @@ public class AccumuloGroupService implements AminoGroupService {
             }
         }
         persistenceService.insertRows(metaEntries, groupMetadataTable);
+
+        unindexGroupHypotheses(Collections.singleton(group), internalMembers, auths);
     }
 
     /**
@@ -413,6 +500,8 @@ public class AccumuloGroupService implements AminoGroupService {
         // Do the deletions
         persistenceService.insertRows(groupMembershipMutations, groupMembershipTable);
         persistenceService.insertRows(groupMetadataMutations, groupMetadataTable);
+
+        unindexGroupHypotheses(internalGroups, Collections.singleton(userId), auths);
     }
 
     /**
@@ -619,79 +708,400 @@ public class AccumuloGroupService implements AminoGroupService {
 		Preconditions.checkNotNull(visibilities);
 
 		final Authorizations auths = new Authorizations(visibilities.toArray(new String[visibilities.size()]));
-		final List<Range> hypothesesToFind = new ArrayList<>();
-
-		// Fetch which groups the userId belongs to
-		final Set<String> groups = getGroupsForUser(userId, auths);
-		final List<Range> ranges = new ArrayList<>(groups.size());
-
-		// Find which Hypotheses are visible for each group
-		if (groups.size() > 0) {
-			BatchScanner groupsLutScanner = null;
-			try {
-				groupsLutScanner = persistenceService.createBatchScanner(groupHypothesisLUT, auths);
-				for(String group : groups){
-					ranges.add(new Range(group));
-				}
-				groupsLutScanner.setRanges(ranges);
-
-				for(Map.Entry<Key, Value> entry : groupsLutScanner){
-					Key startKey = new Key(entry.getKey().getColumnFamily().toString(), entry.getKey().getColumnQualifier().toString());
-					Key endKey = startKey.followingKey(PartialKey.ROW_COLFAM);
-					hypothesesToFind.add(new Range(startKey, true, endKey, false));
-				}
-			} catch (TableNotFoundException ex){
-                log.error("Table '" + groupHypothesisLUT + "' was not found");
-                throw new IOException(ex);
-            }
-            finally {
-				if (groupsLutScanner != null) {
-					groupsLutScanner.close();
-				}
-			}
+
+		// If the index is being kept then everything the user can see is in it
+		if (isUserHypothesisIndexed()) {
+			return getIndexedHypothesesForUser(userId, auths, userOwned);
 		}
 
+		// Find which Hypotheses are visible for each of the groups the userId belongs to
+		final List<Range> hypothesesToFind = findGroupHypotheses(getGroupsForUser(userId, auths), auths);
+
 		// To avoid two separate calls, add the user's Hypotheses if requested
 		if (userOwned) {
 			hypothesesToFind.add(new Range(userId));
 		}
 
-		final List<Hypothesis> foundHypotheses = new ArrayList<>(hypothesesToFind.size());
-		if (hypothesesToFind.size() > 0) {
-			// Now that we know which Hypothesis that we need, go fetch them
-			BatchScanner hypothesesScanner = null;
-			Hypothesis activeEntity = null;
-			try {
-				hypothesesScanner = persistenceService.createBatchScanner(hypothesisTable, auths);
-				hypothesesScanner.setRanges(hypothesesToFind);
-				final ArrayList<String> fieldsToPopulate = new ArrayList<>(Arrays.asList("name", "created", "updated", "executed", "queries"));
-				for(Map.Entry<Key, Value> entry : hypothesesScanner){
-					final String id = entry.getKey().getColumnFamily().toString();
-
-					// Hypothesis are made up of multiple rows.  Since the results are sorted, if we
-					// come across a new row, then need to create a new Hypothesis
-					if (activeEntity == null || id.compareTo(activeEntity.id) != 0) {
-						//activeEntity = new Hypothesis([id:id, hypothesisFeatures:new ArrayList<HypothesisFeature>()])
-						activeEntity = new Hypothesis();
-						activeEntity.id = id;
-						activeEntity.owner = entry.getKey().getRow().toString();
-						foundHypotheses.add(activeEntity);
-					}
-
-					AccumuloMetadataService.addHypothesisComponent(activeEntity, entry, fieldsToPopulate);
-				}
-			} catch (TableNotFoundException ex){
-                log.error("Table '" + groupHypothesisLUT + "' was not found");
+		return fetchHypotheses(hypothesesToFind, auths, new ArrayList<>(Arrays.asList("name", "created", "updated", "executed", "queries")));
+	}
+
+    /**
+     * Returns the Hypotheses that the userId can see, features and all, from the user Hypothesis index.  This is a
+     * single scan of the user's row and the public group's row.
+     *
+     * @param userId    The userId to fetch the Hypotheses for
+     * @param auths     Accumulo authorizations
+     * @param userOwned Set to true to return the Hypotheses owned by the user in addition to the group Hypotheses
+     * @return The Hypotheses, each one once even if it is visible more than one way
+     */
+    public List<Hypothesis> getIndexedHypothesesForUser(String userId, Authorizations auths, boolean userOwned) throws IOException {
+        MorePreconditions.checkNotNullOrEmpty(userId);
+        Preconditions.checkNotNull(auths);
+
+        return scanIndex(Arrays.asList(new Range(indexRow(userId)), new Range(TableConstants.PUBLIC_GROUP)),
+                userOwned ? null : INDEX_SHARED, auths);
+    }
+
+    /**
+     * Returns the Hypotheses that the userId owns, features and all, from the user Hypothesis index.  This is the same
+     * set as the user's row of the Hypothesis table.
+     *
+     * @param userId The owner of the Hypotheses
+     * @param auths  Accumulo authorizations
+     * @return The Hypotheses
+     */
+    public List<Hypothesis> getIndexedHypothesesOwnedBy(String userId, Authorizations auths) throws IOException {
+        MorePreconditions.checkNotNullOrEmpty(userId);
+        Preconditions.checkNotNull(auths);
+
+        return scanIndex(Collections.singletonList(new Range(indexRow(userId))), INDEX_OWNED, auths);
+    }
+
+    /**
+     * Reads the Hypotheses out of the index
+     *
+     * @param rows   The index rows to scan
+     * @param family The column family to restrict the scan to, or null for both
+     * @param auths  Accumulo authorizations
+     * @return The Hypotheses, each one once even if it is in more than one row or column family
+     */
+    private List<Hypothesis> scanIndex(Collection<Range> rows, String family, Authorizations auths) throws IOException {
+        final Map<String, Hypothesis> foundHypotheses = new TreeMap<>();
+        BatchScanner indexScanner = null;
+        try {
+            indexScanner = persistenceService.createBatchScanner(userHypothesisIndex, auths);
+            indexScanner.setRanges(rows);
+            if (family != null) {
+                indexScanner.fetchColumnFamily(new Text(family));
+            }
+
+            for(Map.Entry<Key, Value> entry : indexScanner){
+                // The same Hypothesis can be both owned and shared, or shared with the public group as well
+                final String ownerAndId = entry.getKey().getColumnQualifier().toString();
+                if (!foundHypotheses.containsKey(ownerAndId)) {
+                    foundHypotheses.put(ownerAndId, Hypothesis.fromJson(entry.getValue().toString()));
+                }
+            }
+        } catch (TableNotFoundException ex){
+            log.error("Table '" + userHypothesisIndex + "' was not found");
+            throw new IOException(ex);
+        } finally {
+            if (indexScanner != null) {
+                indexScanner.close();
+            }
+        }
+
+        return new ArrayList<>(foundHypotheses.values());
+    }
+
+    private static String indexRow(String userId) {
+        return userId.startsWith(TableConstants.USER_PREFIX) ? userId : TableConstants.USER_PREFIX + userId;
+    }
+
+    /**
+     * Adds the Hypothesis to the index rows of its owner and everyone it is shared with.  Does nothing if the index is
+     * not being kept.
+     *
+     * @param hypothesis The Hypothesis as it was persisted
+     * @param auths      Accumulo authorizations, for looking up the group members
+     */
+    public void indexHypothesis(Hypothesis hypothesis, Authorizations auths) throws IOException {
+        Preconditions.checkNotNull(hypothesis);
+        Preconditions.checkNotNull(auths);
+        if (!isUserHypothesisIndexed()) {
+            return;
+        }
+
+        final String ownerAndId = indexQualifier(hypothesis.owner, hypothesis.id);
+        final String value = hypothesis.toJson();
+        final List<Mutation> mutations = new ArrayList<>();
+        for(Map.Entry<String, String> reader : getIndexReaders(hypothesis.owner, hypothesis.canView, auths).entries()){
+            mutations.add(persistenceService.createInsertMutation(reader.getKey(), reader.getValue(), ownerAndId,
+                    hypothesis.btVisibility, value));
+        }
+        writeIndex(mutations);
+    }
+
+    /**
+     * Removes the Hypothesis from the index rows of its owner and everyone it is shared with.  Does nothing if the
+     * index is not being kept.
+     *
+     * @param owner        The owner of the Hypothesis
+     * @param id           The Hypothesis ID
+     * @param canView      The groups that the Hypothesis was shared with
+     * @param btVisibility The visibility the Hypothesis was stored with
+     * @param auths        Accumulo authorizations, for looking up the group members
+     */
+    public void unindexHypothesis(String owner, String id, Collection<String> canView, String btVisibility, Authorizations auths) throws IOException {
+        MorePreconditions.checkNotNullOrEmpty(owner);
+        MorePreconditions.checkNotNullOrEmpty(id);
+        Preconditions.checkNotNull(auths);
+        if (!isUserHypothesisIndexed()) {
+            return;
+        }
+
+        final String ownerAndId = indexQualifier(owner, id);
+        final List<Mutation> mutations = new ArrayList<>();
+        for(Map.Entry<String, String> reader : getIndexReaders(owner, canView, auths).entries()){
+            mutations.add(persistenceService.createDeleteMutation(reader.getKey(), reader.getValue(), ownerAndId, btVisibility));
+        }
+        writeIndex(mutations);
+    }
+
+    /**
+     * Indexes every Hypothesis in the Hypothesis table, for populating the index of a database that was in use before
+     * the index table was created
+     *
+     * @param auths Accumulo authorizations, which must be able to see all of the Hypotheses
+     * @return The number of Hypotheses indexed
+     */
+    public int rebuildUserHypothesisIndex(Authorizations auths) throws IOException {
+        Preconditions.checkNotNull(auths);
+        // The table has usually only just been created
+        refreshUserHypothesisIndexed();
+        Preconditions.checkState(isUserHypothesisIndexed(), "Table '%s' does not exist", userHypothesisIndex);
+
+        final List<Hypothesis> hypotheses = fetchHypotheses(Collections.singletonList(new Range()), auths, null);
+        for(Hypothesis hypothesis : hypotheses){
+            indexHypothesis(hypothesis, auths);
+        }
+        log.info("Indexed " + hypotheses.size() + " Hypotheses in " + userHypothesisIndex);
+        return hypotheses.size();
+    }
+
+    /**
+     * Adds the Hypotheses shared with the groups to the index rows of the new members
+     *
+     * @param groups  The groups the members were added to
+     * @param members The new members
+     * @param auths   Accumulo authorizations
+     */
+    private void indexGroupHypotheses(Collection<String> groups, Set<String> members, Authorizations auths) throws IOException {
+        if (members.isEmpty() || !isUserHypothesisIndexed()) {
+            return;
+        }
+
+        final List<Mutation> mutations = new ArrayList<>();
+        for(Hypothesis hypothesis : fetchGroupHypotheses(groups, auths)){
+            final String ownerAndId = indexQualifier(hypothesis.owner, hypothesis.id);
+            final String value = hypothesis.toJson();
+            for(String member : members){
+                mutations.add(persistenceService.createInsertMutation(member, INDEX_SHARED, ownerAndId, hypothesis.btVisibility, value));
+            }
+        }
+        writeIndex(mutations);
+    }
+
+    /**
+     * Removes the Hypotheses shared with the groups from the index rows of members that have left them, unless the
+     * members can still see them through another group
+     *
+     * @param groups  The groups the members were removed from
+     * @param members The members that were removed
+     * @param auths   Accumulo authorizations
+     */
+    private void unindexGroupHypotheses(Collection<String> groups, Set<String> members, Authorizations auths) throws IOException {
+        if (members.isEmpty() || !isUserHypothesisIndexed()) {
+            return;
+        }
+
+        final List<Hypothesis> hypotheses = fetchGroupHypotheses(groups, auths);
+        final List<Mutation> mutations = new ArrayList<>();
+        for(String member : members){
+            final Set<String> remainingGroups = getGroupsForUser(member, auths);
+            for(Hypothesis hypothesis : hypotheses){
+                if (hypothesis.canView == null || Collections.disjoint(remainingGroups, hypothesis.canView)) {
+                    mutations.add(persistenceService.createDeleteMutation(member, INDEX_SHARED,
+                            indexQualifier(hypothesis.owner, hypothesis.id), hypothesis.btVisibility));
+                }
+            }
+        }
+        writeIndex(mutations);
+    }
+
+    /**
+     * Works out which index rows a Hypothesis belongs in
+     *
+     * @param owner   The owner of the Hypothesis
+     * @param canView The groups the Hypothesis is shared with
+     * @param auths   Accumulo authorizations
+     * @return The index rows, mapped to the column family for each
+     */
+    private Multimap<String, String> getIndexReaders(String owner, Collection<String> canView, Authorizations auths) throws IOException {
+        final Multimap<String, String> readers = HashMultimap.create();
+        readers.put(indexRow(owner), INDEX_OWNED);
+
+        final Set<String> groups = new HashSet<>();
+        if (canView != null) {
+            for(String group : canView){
+                final String groupName = group.startsWith(TableConstants.GROUP_PREFIX) ? group : TableConstants.GROUP_PREFIX + group;
+                if (groupName.equals(TableConstants.PUBLIC_GROUP)) {
+                    // Everybody is part of the public group, so its Hypotheses get a row of their own
+                    readers.put(TableConstants.PUBLIC_GROUP, INDEX_SHARED);
+                } else {
+                    groups.add(groupName);
+                }
+            }
+        }
+
+        for(String member : getGroupMembers(groups, auths)){
+            readers.put(member, INDEX_SHARED);
+        }
+        return readers;
+    }
+
+    /**
+     * Fetches the members of the groups from the group_metadata table
+     *
+     * @param groups The groups, with the group prefix
+     * @param auths  Accumulo authorizations
+     * @return The members of any of the groups, with the user prefix
+     */
+    private Set<String> getGroupMembers(Collection<String> groups, Authorizations auths) throws IOException {
+        final Set<String> members = new HashSet<>();
+        if (groups.isEmpty()) {
+            return members;
+        }
+
+        final List<Range> ranges = new ArrayList<>(groups.size());
+        for(String group : groups){
+            ranges.add(new Range(group));
+        }
+
+        BatchScanner metaScanner = null;
+        try {
+            metaScanner = persistenceService.createBatchScanner(groupMetadataTable, auths);
+            metaScanner.setRanges(ranges);
+            for(Map.Entry<Key, Value> entry : metaScanner){
+                final String role = entry.getKey().getColumnFamily().toString();
+                if (!role.equals("created_by") && !role.equals("created_date")) {
+                    members.add(entry.getKey().getColumnQualifier().toString());
+                }
+            }
+        } catch (TableNotFoundException ex){
+            log.error("Table '" + groupMetadataTable + "' was not found");
+            throw new IOException(ex);
+        } finally {
+            if (metaScanner != null) {
+                metaScanner.close();
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Fetches the whole Hypotheses shared with the groups, other than the public group which is indexed on its own
+     *
+     * @param groups The groups, with or without the group prefix
+     * @param auths  Accumulo authorizations
+     */
+    private List<Hypothesis> fetchGroupHypotheses(Collection<String> groups, Authorizations auths) throws IOException {
+        final Set<String> lutGroups = new HashSet<>(groups.size());
+        for(String group : groups){
+            final String groupName = group.startsWith(TableConstants.GROUP_PREFIX) ? group.substring(TableConstants.GROUP_PREFIX.length()) : group;
+            if (!(TableConstants.GROUP_PREFIX + groupName).equals(TableConstants.PUBLIC_GROUP)) {
+                lutGroups.add(groupName);
+            }
+        }
+        return fetchHypotheses(findGroupHypotheses(lutGroups, auths), auths, null);
+    }
+
+    /**
+     * Looks up the Hypotheses shared with the groups in the group Hypothesis LUT
+     *
+     * @param groups The groups, without the group prefix
+     * @param auths  Accumulo authorizations
+     * @return The ranges of the Hypotheses in the Hypothesis table
+     */
+    private List<Range> findGroupHypotheses(Collection<String> groups, Authorizations auths) throws IOException {
+        final List<Range> hypothesesToFind = new ArrayList<>();
+        if (groups.isEmpty()) {
+            return hypothesesToFind;
+        }
+
+        final List<Range> ranges = new ArrayList<>(groups.size());
+        BatchScanner groupsLutScanner = null;
+        try {
+            groupsLutScanner = persistenceService.createBatchScanner(groupHypothesisLUT, auths);
+            for(String group : groups){
+                ranges.add(new Range(group));
+            }
+            groupsLutScanner.setRanges(ranges);
+
+            for(Map.Entry<Key, Value> entry : groupsLutScanner){
+                Key startKey = new Key(entry.getKey().getColumnFamily().toString(), entry.getKey().getColumnQualifier().toString());
+                Key endKey = startKey.followingKey(PartialKey.ROW_COLFAM);
+                hypothesesToFind.add(new Range(startKey, true, endKey, false));
+            }
+        } catch (TableNotFoundException ex){
+            log.error("Table '" + groupHypothesisLUT + "' was not found");
+            throw new IOException(ex);
+        } finally {
+            if (groupsLutScanner != null) {
+                groupsLutScanner.close();
+            }
+        }
+        return hypothesesToFind;
+    }
+
+    /**
+     * Fetches Hypotheses from the Hypothesis table
+     *
+     * @param hypothesesToFind The ranges of the Hypotheses
+     * @param auths            Accumulo authorizations
+     * @param fieldsToPopulate The fields to fill in, or null for all of them
+     */
+    private List<Hypothesis> fetchHypotheses(Collection<Range> hypothesesToFind, Authorizations auths, List<String> fieldsToPopulate) throws IOException {
+        final List<Hypothesis> foundHypotheses = new ArrayList<>(hypothesesToFind.size());
+        if (hypothesesToFind.size() > 0) {
+            // Now that we know which Hypothesis that we need, go fetch them
+            BatchScanner hypothesesScanner = null;
+            Hypothesis activeEntity = null;
+            try {
+                hypothesesScanner = persistenceService.createBatchScanner(hypothesisTable, auths);
+                hypothesesScanner.setRanges(hypothesesToFind);
+                for(Map.Entry<Key, Value> entry : hypothesesScanner){
+                    final String id = entry.getKey().getColumnFamily().toString();
+
+                    // Hypothesis are made up of multiple rows.  Since the results are sorted, if we
+                    // come across a new row, then need to create a new Hypothesis
+                    if (activeEntity == null || id.compareTo(activeEntity.id) != 0) {
+                        activeEntity = new Hypothesis();
+                        activeEntity.id = id;
+                        activeEntity.owner = entry.getKey().getRow().toString();
+                        activeEntity.btVisibility = entry.getKey().getColumnVisibility().toString();
+                        foundHypotheses.add(activeEntity);
+                    }
+
+                    AccumuloMetadataService.addHypothesisComponent(activeEntity, entry, fieldsToPopulate);
+                }
+            } catch (TableNotFoundException ex){
+                log.error("Table '" + hypothesisTable + "' was not found");
                 throw new IOException(ex);
             } finally {
-				if (hypothesesScanner != null) {
-					hypothesesScanner.close();
-				}
-			}
-		}
+                if (hypothesesScanner != null) {
+                    hypothesesScanner.close();
+                }
+            }
+        }
+        return foundHypotheses;
+    }
 
-		return foundHypotheses;
-	}
+    private static String indexQualifier(String owner, String id) {
+        return owner + INDEX_SEPARATOR + id;
+    }
+
+    private void writeIndex(Collection<Mutation> mutations) throws IOException {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        try {
+            persistenceService.insertRows(mutations, userHypothesisIndex);
+        } catch (Exception ex) {
+            log.error("Could not update '" + userHypothesisIndex + "'");
+            throw new IOException(ex);
+        }
+    }
 
 	/**
 	 * Returns the Hypotheses for the groups that the userId belongs to
@@ -10,7 +10,9 @@ import com._42six.amino.common.entity.HypothesisFeature;
 import com._42six.amino.query.exception.BigTableException;
 import com._42six.amino.query.exception.EntityNotFoundException;
 import com._42six.amino.query.services.AminoMetadataService;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import org.apache.accumulo.core.client.*;
@@ -38,8 +40,19 @@ public class AccumuloMetadataService implements AminoMetadataService {
 	public AccumuloPersistenceService persistenceService;
 	public AccumuloGroupService groupService;
 
-	private Integer hashCount = null;
-	private Integer shardCount = null;
+	private volatile Integer hashCount = null;
+	private volatile Integer shardCount = null;
+
+	// Caches the JSON of the features, buckets and datasources.  Created on first use so that the settings can be changed
+	private MetadataCache metadataCache = null;
+	private long metadataCacheMaximumSize = MetadataCache.DEFAULT_MAXIMUM_SIZE;
+	private long metadataCacheExpireSeconds = MetadataCache.DEFAULT_EXPIRE_SECONDS;
+	private long metadataCacheRefreshSeconds = MetadataCache.DEFAULT_REFRESH_SECONDS;
+
+	// The FeatureMetadataJob replaces the metadata table with a new one, which gets a new table id
+	private long tableSwapCheckMillis = 30 * 1000;
+	private volatile long lastTableSwapCheck = 0;
+	private volatile String metadataTableId = null;
 
 	public String hypothesisTable = "amino_hypothesis";
 	public String metadataTable = "amino_metadata";
@@ -65,6 +78,7 @@ public class AccumuloMetadataService implements AminoMetadataService {
     public void addTableSuffix(String suffix){
         metadataTable = metadataTable + suffix;
         hypothesisTable = hypothesisTable + suffix;
+        invalidateMetadataCache();
     }
 
 	public void setGroupService(AccumuloGroupService groupService){
@@ -81,6 +95,57 @@ public class AccumuloMetadataService implements AminoMetadataService {
 
 	public void setMetadataTable(String metadataTable) {
 		this.metadataTable = metadataTable;
+		invalidateMetadataCache();
+	}
+
+	/**
+	 * @param maximumSize The maximum number of features, buckets and datasources to cache.  0 disables the cache
+	 */
+	public synchronized void setMetadataCacheMaximumSize(long maximumSize) {
+		this.metadataCacheMaximumSize = maximumSize;
+		resetMetadataCache();
+	}
+
+	/**
+	 * @param expireSeconds How long a cached entity is kept before it has to be read again
+	 */
+	public synchronized void setMetadataCacheExpireSeconds(long expireSeconds) {
+		this.metadataCacheExpireSeconds = expireSeconds;
+		resetMetadataCache();
+	}
+
+	/**
+	 * @param refreshSeconds How old a cached entity can get before it is reloaded in the background.  0 to only expire
+	 */
+	public synchronized void setMetadataCacheRefreshSeconds(long refreshSeconds) {
+		this.metadataCacheRefreshSeconds = refreshSeconds;
+		resetMetadataCache();
+	}
+
+	/**
+	 * @param checkSeconds How often to check whether the metadata table has been swapped for a new one.  0 to check
+	 *                     on every lookup
+	 */
+	public void setTableSwapCheckSeconds(long checkSeconds) {
+		this.tableSwapCheckMillis = checkSeconds * 1000;
+	}
+
+	/**
+	 * Drops all of the cached metadata, including the shard and hash counts
+	 */
+	public synchronized void invalidateMetadataCache() {
+		if (metadataCache != null) {
+			metadataCache.invalidateAll();
+		}
+		shardCount = null;
+		hashCount = null;
+	}
+
+	/**
+	 * @return The hit, miss and load statistics of the metadata cache, or empty statistics if nothing was cached yet
+	 */
+	public synchronized CacheStats getMetadataCacheStats() {
+		return (metadataCache != null) ? metadataCache.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
 	}
 
 	public List<DatasourceMetadata> listDataSources(String[] visibility) throws IOException {
@@ -230,7 +295,7 @@ public class AccumuloMetadataService implements AminoMetadataService {
 	}
 
 	protected FeatureMetadata getFeature(String id, Authorizations auths) throws IOException {
-            String json = getEntityString(id, TableConstants.FEATURE_PREFIX, auths);
+            String json = getCachedEntityString(id, TableConstants.FEATURE_PREFIX, auths);
             return FeatureMetadata.fromJson(json);
 	}
 
@@ -367,7 +432,7 @@ public class AccumuloMetadataService implements AminoMetadataService {
 	public Hypothesis createHypothesis(Hypothesis hypothesis, String userId, String[] visibility) throws Exception {
 		hypothesis.created = System.currentTimeMillis();
         hypothesis.updated = hypothesis.created;
-		return persistHypothesis(hypothesis, userId);
+		return persistHypothesis(hypothesis, userId, new Authorizations(visibility));
 	}
 
 	public Hypothesis updateHypothesis(Hypothesis hypothesis, String requester, String[] visibility) throws Exception {
@@ -417,7 +482,7 @@ public class AccumuloMetadataService implements AminoMetadataService {
 			throw new RuntimeException(e); // TODO change the exception
 		}
 		hypothesis.updated = System.currentTimeMillis();
-		return persistHypothesis(hypothesis, requester);
+		return persistHypothesis(hypothesis, requester, auths);
 	}
 
 
@@ -451,6 +516,8 @@ public class AccumuloMetadataService implements AminoMetadataService {
 			scanner.setRange(new Range(owner));
 			scanner.fetchColumn(new Text(id), new Text("canView"));
 			final List<Range> groupRanges = new ArrayList<>();
+			final List<String> canView = new ArrayList<>();
+			String btVisibility = "";
 			for(Map.Entry<Key, Value> entry : scanner) {
                 @SuppressWarnings("serial")
 				ArrayList<String> groups = gson.fromJson(entry.getValue().toString(),
@@ -458,8 +525,13 @@ public class AccumuloMetadataService implements AminoMetadataService {
 				for(String group : groups) {
 					groupRanges.add(new Range(group));
 				}
+				canView.addAll(groups);
+				btVisibility = entry.getKey().getColumnVisibility().toString();
 			}
 
+			// Take it out of the index while we still know whom it was shared with
+			groupService.unindexHypothesis(owner, id, canView, btVisibility, auths);
+
 			// Remove the hypothesis from the hypothesis table
 			deleter = persistenceService.createBatchDeleter(hypothesisTable, auths);
 			deleter.setRanges(new ArrayList<>(Arrays.asList(new Range(owner))));
@@ -484,7 +556,9 @@ public class AccumuloMetadataService implements AminoMetadataService {
 	}
 
 	public Integer getShardCount(boolean useCachedValue) throws BigTableException {
-		if (!useCachedValue || this.shardCount == null) {
+		checkForTableSwap();
+		Integer count = this.shardCount;
+		if (!useCachedValue || count == null) {
             final Scanner scan;
             try {
                 final Set<String> auths = persistenceService.getLoggedInUserAuthorizations();
@@ -496,13 +570,14 @@ public class AccumuloMetadataService implements AminoMetadataService {
 
 			Iterator<Map.Entry<Key, Value>> itr = scan.iterator();
 			if (itr.hasNext()) {
-				this.shardCount = Integer.parseInt(itr.next().getValue().toString());
+				count = Integer.parseInt(itr.next().getValue().toString());
+				this.shardCount = count;
 			} else {
 				throw new EntityNotFoundException("No shard count was found in the Amino metadata table");
 			}
 		}
 
-		return this.shardCount;
+		return count;
 	}
 
 	public Integer getShardCount() throws BigTableException {
@@ -510,7 +585,9 @@ public class AccumuloMetadataService implements AminoMetadataService {
 	}
 
 	public Integer getHashCount(boolean useCachedValue) throws BigTableException {
-		if (!useCachedValue || this.hashCount == null) {
+		checkForTableSwap();
+		Integer count = this.hashCount;
+		if (!useCachedValue || count == null) {
             final Scanner scan;
             try {
                 final Set<String> auths = persistenceService.getLoggedInUserAuthorizations();
@@ -522,13 +599,14 @@ public class AccumuloMetadataService implements AminoMetadataService {
 
 			Iterator<Map.Entry<Key, Value>> itr = scan.iterator();
 			if (itr.hasNext()) {
-				this.hashCount =  Integer.parseInt(itr.next().getValue().toString());
+				count = Integer.parseInt(itr.next().getValue().toString());
+				this.hashCount = count;
 			} else {
 				throw new EntityNotFoundException("No hash count was found in the Amino metadata table");
 			}
 		}
 
-		return this.hashCount;
+		return count;
 	}
 
 	public Integer getHashCount() throws BigTableException {
@@ -539,7 +617,7 @@ public class AccumuloMetadataService implements AminoMetadataService {
 	// Private methods
 	////////////////////////////////////
 
-	private Hypothesis persistHypothesis(final Hypothesis hypothesis, String requester) throws Exception {
+	private Hypothesis persistHypothesis(final Hypothesis hypothesis, String requester, Authorizations auths) throws Exception {
 		// Validate parameters
 		Preconditions.checkNotNull(hypothesis);
 		Preconditions.checkNotNull(hypothesis.canEdit);
@@ -607,6 +685,9 @@ public class AccumuloMetadataService implements AminoMetadataService {
 			}
 			persistenceService.insertRows(lutList, groupService.getGroupHypothesisLUT()); // TODO Move this to the groupService
 		}
+
+		// And to the index of the Hypotheses each user can see
+		groupService.indexHypothesis(hypothesis, auths);
 		return hypothesis;
 	}
 
@@ -708,8 +789,61 @@ public class AccumuloMetadataService implements AminoMetadataService {
 
 	private Object getEntity(String id, String entityPrefix, Class conversionClass, Authorizations auths) throws IOException {
         final Gson gson = new Gson();
-        String json = getEntityString(id, entityPrefix, auths);
+        String json = getCachedEntityString(id, entityPrefix, auths);
         return gson.fromJson(json, conversionClass);
     }
 
+    /**
+     * Gets the Entity as a JSON string, from the metadata cache if it is enabled
+     */
+    private String getCachedEntityString(String id, String entityPrefix, Authorizations auths) throws IOException {
+        checkForTableSwap();
+        final MetadataCache cache = getMetadataCache();
+        return (cache == null) ? getEntityString(id, entityPrefix, auths) : cache.get(entityPrefix + id, auths);
+    }
+
+    private synchronized MetadataCache getMetadataCache() {
+        if (metadataCache == null && metadataCacheMaximumSize > 0) {
+            metadataCache = new MetadataCache(new MetadataCache.Loader() {
+                @Override
+                public Optional<String> load(String row, Authorizations auths) throws IOException {
+                    return Optional.fromNullable(getEntityString(row, "", auths));
+                }
+            }, metadataCacheMaximumSize, metadataCacheExpireSeconds, metadataCacheRefreshSeconds);
+        }
+        return metadataCache;
+    }
+
+    private synchronized void resetMetadataCache() {
+        if (metadataCache != null) {
+            metadataCache.shutdown();
+            metadataCache = null;
+        }
+    }
+
+    /**
+     * Drops the cached metadata if the metadata table was replaced since the last check.  Checks at most once every
+     * tableSwapCheckMillis.
+     */
+    private void checkForTableSwap() {
+        final long now = System.currentTimeMillis();
+        if (now - lastTableSwapCheck < tableSwapCheckMillis) {
+            return;
+        }
+        lastTableSwapCheck = now;
+
+        final String tableId;
+        try {
+            tableId = persistenceService.getConnector().tableOperations().tableIdMap().get(metadataTable);
+        } catch (RuntimeException ex) {
+            log.warn("Could not look up the id of the table '" + metadataTable + "'", ex);
+            return;
+        }
+        if (metadataTableId != null && !metadataTableId.equals(tableId)) {
+            log.info("Table '" + metadataTable + "' was replaced, dropping the cached metadata");
+            invalidateMetadataCache();
+        }
+        metadataTableId = tableId;
+    }
+
 }
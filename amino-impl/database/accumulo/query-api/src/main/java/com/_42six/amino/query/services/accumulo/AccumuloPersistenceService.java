@@ -126,10 +126,11 @@ public class AccumuloPersistenceService implements AminoPersistenceService {
 	 * with the following keys:
 	 * rowid,columnFamily,columnQualifier,visibility,value
 	 *
-	 * @param rows The rows to insert
+	 * @param rows The rows to insert.  They are handed to the BatchWriter as they are iterated, so a lazy Iterable
+	 *             only needs to hold the mutations that have not been flushed yet.
 	 * @param tableName The table to insert the row into
 	 */
-	public void insertRows(Collection<Mutation> rows, String tableName) throws Exception {
+	public void insertRows(Iterable<Mutation> rows, String tableName) throws Exception {
 		writeCellMutations(rows, tableName);
 	}
 
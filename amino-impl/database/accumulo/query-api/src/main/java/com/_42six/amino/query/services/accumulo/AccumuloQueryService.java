@@ -1,6 +1,7 @@
 package com._42six.amino.query.services.accumulo;
 
 import com._42six.amino.bitmap.iterators.BitmapANDIterator;
+import com._42six.amino.bitmap.iterators.HypothesisMatchIterator;
 import com._42six.amino.bitmap.iterators.ReverseByBucketCombiner;
 import com._42six.amino.bitmap.iterators.ReverseFeatureCombiner;
 import com._42six.amino.common.*;
@@ -12,24 +13,33 @@ import com._42six.amino.common.entity.Hypothesis;
 import com._42six.amino.common.entity.HypothesisFeature;
 import com._42six.amino.common.entity.QueryEntry;
 import com._42six.amino.common.entity.QueryResult;
+import com._42six.amino.common.entity.QueryResultPage;
 import com._42six.amino.common.query.requests.auditing.AminoAuditRequest;
 import com._42six.amino.common.query.requests.bta.BtaByValuesRequest;
 import com._42six.amino.common.translator.FeatureFactTranslatorImpl;
 import com._42six.amino.common.translator.FeatureFactTranslatorInt;
+import com._42six.amino.common.util.concurrent.Cancellation;
 import com._42six.amino.common.util.concurrent.FlaggableCallable;
 import com._42six.amino.common.util.concurrent.TimedUserExecutionService;
 import com._42six.amino.query.exception.BigTableException;
 import com._42six.amino.query.exception.EntityNotFoundException;
 import com._42six.amino.query.services.AminoQueryService;
+import com._42six.amino.query.services.QueryResultListener;
 import com._42six.amino.query.services.audit.AuditorServiceInt;
 import com._42six.amino.query.services.auth.DefaultVisibilityTranslator;
 import com._42six.amino.query.services.auth.VisibilityTranslatorInt;
 import com._42six.amino.query.stats.QueryStatisticsMap;
 import com._42six.amino.query.util.FirstLastTracker;
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import org.apache.accumulo.core.client.*;
 import org.apache.accumulo.core.client.Scanner;
@@ -44,9 +54,11 @@ import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Used to query Accumulo for the results of a hypothesis.
@@ -77,6 +89,11 @@ public class AccumuloQueryService implements AminoQueryService {
     public String reverseFeatureLookupTable = "amino_reverse_feature_lookup";
 
 	private boolean logQueryStats = false;
+	private int resultChunkSize = ResultSetChunks.DEFAULT_CHUNK_SIZE;
+	private int reverseShardConcurrency = 8;
+	private int reverseShardThreads = 16;
+	private QueryPlanner queryPlanner = new QueryPlanner();
+	private ExecutorService reverseShardExecutor;
 
 	public String auditSystemTo = "";
 	public String auditVisibility = "";
@@ -182,6 +199,35 @@ public class AccumuloQueryService implements AminoQueryService {
         this.resultsTable = resultsTable;
     }
 
+    public void setQueryPlanner(QueryPlanner queryPlanner) {
+        this.queryPlanner = queryPlanner;
+    }
+
+    /**
+     * @param reverseShardConcurrency The most shards of a reverse byBucket query that are scanned at the same time
+     */
+    public void setReverseShardConcurrency(int reverseShardConcurrency) {
+        Preconditions.checkArgument(reverseShardConcurrency > 0, "reverseShardConcurrency must be positive");
+        this.reverseShardConcurrency = reverseShardConcurrency;
+    }
+
+    /**
+     * @param reverseShardThreads The most threads shared by all of the reverse byBucket queries for scanning shards.
+     *                            Takes effect for the pool created by the first reverse byBucket query.
+     */
+    public synchronized void setReverseShardThreads(int reverseShardThreads) {
+        Preconditions.checkArgument(reverseShardThreads > 0, "reverseShardThreads must be positive");
+        this.reverseShardThreads = reverseShardThreads;
+    }
+
+    /**
+     * @param resultChunkSize The number of QueryEntries stored per cell when persisting a result set
+     */
+    public void setResultChunkSize(int resultChunkSize) {
+        Preconditions.checkArgument(resultChunkSize > 0, "resultChunkSize must be positive");
+        this.resultChunkSize = resultChunkSize;
+    }
+
     public void setReverseByBucketTable(String table){
         this.reverseByBucketTable = table;
     }
@@ -214,10 +260,10 @@ public class AccumuloQueryService implements AminoQueryService {
     }
 
     /**
-     * Gets a batch of results for a given user. NOTE: All of the results are fetched by the server and this just iterates
-     * until it gets to the start. Thus, this is only useful if there are too many results to return at once.
+     * Gets a batch of results for a given user.  NOTE: The results before start are still read by the server and
+     * skipped, so later pages get slower.  Use {@link #listResultsPage} to page through the results instead.
      *
-     * @param start  The number of the result to
+     * @param start  The number of results to skip
      * @param count     How many to return.
      * @param userid     The userid to search on.
      * @param visibility A list of string corresponding to allowed visibilities for the user.
@@ -226,54 +272,110 @@ public class AccumuloQueryService implements AminoQueryService {
      */
     public List<QueryResult> listResults(Long start, Long count, String userid, String[] visibility) throws IOException {
         checkState();
-        Scanner scan;
+        // Grab only the Rows that start with userid|
+        final Scanner scan = createResultListScanner(new Range(userid), visibility);
+        final PeekingIterator<Map.Entry<Key, Value>> itr = Iterators.peekingIterator(scan.iterator());
+
+        // Iterate to where we need to start
+        for (long skipped = 0; skipped < start && itr.hasNext(); skipped++) {
+            final Text resultId = itr.next().getKey().getColumnFamily();
+            while (itr.hasNext() && itr.peek().getKey().getColumnFamily().equals(resultId)) {
+                itr.next();
+            }
+        }
+
+        final List<QueryResult> entities = new ArrayList<QueryResult>();
+        while (itr.hasNext() && entities.size() < count) {
+            entities.add(readResultSummary(itr));
+        }
+        return entities;
+    }
+
+    /**
+     * Gets a page of results for a given user.  The cursor holds the id of the last result of the previous page, so the
+     * scan starts directly after it no matter how many pages came before.
+     *
+     * @param cursor The cursor of the previous page, or null for the first page
+     * @param count How many to return
+     * @param userid The userid to search on
+     * @param visibility A list of string corresponding to allowed visibilities for the user
+     * @return results for the userid and the cursor of the next page
+     * @throws IllegalArgumentException if the cursor was not returned by this method
+     */
+    public QueryResultPage listResultsPage(String cursor, int count, String userid, String[] visibility) throws IOException {
+        checkState();
+        Preconditions.checkArgument(count > 0, "count must be positive");
+        MorePreconditions.checkNotNullOrEmpty(userid);
+
+        final Range range;
+        if (cursor == null || cursor.isEmpty()) {
+            range = new Range(userid);
+        } else {
+            final Key lastResult = new Key(new Text(userid), new Text(decodeResultCursor(cursor)));
+            range = new Range(lastResult.followingKey(PartialKey.ROW_COLFAM), true,
+                    new Key(new Text(userid)).followingKey(PartialKey.ROW), false);
+        }
+        final Scanner scan = createResultListScanner(range, visibility);
+        final PeekingIterator<Map.Entry<Key, Value>> itr = Iterators.peekingIterator(scan.iterator());
+
+        final QueryResultPage page = new QueryResultPage();
+        page.results = new ArrayList<QueryResult>(count);
+        while (itr.hasNext() && page.results.size() < count) {
+            page.results.add(readResultSummary(itr));
+        }
+        if (itr.hasNext()) {
+            page.cursor = encodeResultCursor(page.results.get(page.results.size() - 1).id);
+        }
+        return page;
+    }
+
+    static String encodeResultCursor(String resultId) {
+        return BaseEncoding.base64Url().omitPadding().encode(resultId.getBytes(Charsets.UTF_8));
+    }
+
+    static String decodeResultCursor(String cursor) {
+        // decode throws an IllegalArgumentException for anything that is not base64
+        return new String(BaseEncoding.base64Url().omitPadding().decode(cursor), Charsets.UTF_8);
+    }
+
+    /**
+     * Creates a Scanner over the results table that leaves the result_set and hypothesis_at_runtime columns on the
+     * tablet servers, as listing results only needs the summary columns.
+     */
+    private Scanner createResultListScanner(Range range, String[] visibility) throws IOException {
+        final Scanner scan;
         try {
             scan = persistenceService.createScanner(resultsTable, new Authorizations(visibility));
         } catch (TableNotFoundException e) {
             throw new IOException(e);
         }
-        // Grab only the Rows that start with userid|
-        scan.setRange(new Range(userid));
+        scan.setRange(range);
+        final IteratorSetting iteratorSetting = new IteratorSetting(30, "resultSummaryFilter", RegExFilter.class.getCanonicalName());
+        RegExFilter.setRegexs(iteratorSetting, null, null, "result_set.*|hypothesis_at_runtime", null, false);
+        RegExFilter.setNegate(iteratorSetting, true);
+        scan.addScanIterator(iteratorSetting);
+        return scan;
+    }
 
-		Long currentPosition = 0L;
-		List<QueryResult> entities = new ArrayList<QueryResult>();
-		QueryResult activeEntity = null;
-		Iterator<Map.Entry<Key,Value>> itr = scan.iterator();
-		
-		// Iterate to where we need to start
-		// TODO We might be doing this for paging on the UI, but this would be very inefficient as we get to later pages.
-		while(itr.hasNext() && currentPosition < start){
-			itr.next();
-			currentPosition++;
-		}
-		
-		while (itr.hasNext() && (entities.size() < count) ) {
-			Map.Entry<Key,Value> entry = itr.next();
-			Key key = entry.getKey();
-			
-			// TODO Investigate the bizarre case where even though itr.hasNext() is true, but itr.next() returns an Entry that has a null key
-			if(key == null)
-				break;
-			
-			String owner = key.getRow().toString();
-			String resultId = key.getColumnFamily().toString();
-			String cq = key.getColumnQualifier().toString();
-			if ((activeEntity == null) || resultId.compareTo(activeEntity.id) != 0) {
-                final QueryResult qr = new QueryResult();
-                qr.owner = owner;
-                qr.id = resultId;
-                qr.timestamp = Long.MAX_VALUE - Long.parseLong(resultId);
-                activeEntity = qr;
-				entities.add(activeEntity);
-			}
-			
-			// We don't want to return the result_set or hypothesis_at_runtime
-			if(cq.compareTo("result_set") != 0 && cq.compareTo("hypothesis_at_runtime") != 0) {
-				addResultComponent(activeEntity, cq,  entry.getValue().toString());
-			}
-			currentPosition++;
-		}
-		return entities;
+    /**
+     * Reads the columns of the next result
+     * @param itr Positioned at the first column of a result.  Left at the first column of the following result.
+     */
+    private static QueryResult readResultSummary(PeekingIterator<Map.Entry<Key, Value>> itr) {
+        Map.Entry<Key, Value> entry = itr.next();
+        final Text resultId = entry.getKey().getColumnFamily();
+
+        final QueryResult qr = new QueryResult();
+        qr.owner = entry.getKey().getRow().toString();
+        qr.id = resultId.toString();
+        qr.timestamp = Long.MAX_VALUE - Long.parseLong(qr.id);
+        addResultComponent(qr, entry.getKey().getColumnQualifier().toString(), entry.getValue().toString());
+
+        while (itr.hasNext() && itr.peek().getKey().getColumnFamily().equals(resultId)) {
+            entry = itr.next();
+            addResultComponent(qr, entry.getKey().getColumnQualifier().toString(), entry.getValue().toString());
+        }
+        return qr;
     }
 
 	/**
@@ -308,9 +410,14 @@ public class AccumuloQueryService implements AminoQueryService {
 		result.owner = resultOwner;
 		result.timestamp = Long.MAX_VALUE - Long.parseLong(queryId);
 		
+		// Everything but the result set, which is read a chunk at a time below
 		Scanner scan = persistenceService.createScanner(resultsTable, auths);
 		scan.setRange(new Range(resultOwner));
 		scan.fetchColumnFamily(new Text(queryId));
+		final IteratorSetting iteratorSetting = new IteratorSetting(30, "resultSetFilter", RegExFilter.class.getCanonicalName());
+		RegExFilter.setRegexs(iteratorSetting, null, null, "result_set.*", null, false);
+		RegExFilter.setNegate(iteratorSetting, true);
+		scan.addScanIterator(iteratorSetting);
 		
         Iterator<Map.Entry<Key, Value>> itr = scan.iterator();
         if (!itr.hasNext()) {
@@ -327,35 +434,138 @@ public class AccumuloQueryService implements AminoQueryService {
 		
 		//  Make sure that the requester can see this result
 		if(groups != null){
-			BatchScanner lutScanner = null;
-			try{
-				// See what groups can see this particular hypothesis
-				lutScanner = persistenceService.createBatchScanner(groupHypothesisLUT, auths);
-                final ArrayList<Range> groupRanges = new ArrayList<Range>(groups.size());
-                for(String group : groups){
-                    groupRanges.add(new Range(group));
-                }
-                lutScanner.setRanges(groupRanges);
-                lutScanner.fetchColumn(new Text(resultOwner), new Text(result.hypothesisid));
-				
-				// If there were no results than none of requester's groups can see the hypothesis
-				if(!scan.iterator().hasNext())
-				{
-					throw new EntityNotFoundException("user <"+requester+"> is not allowed to view this result");
-				}				
-			}  catch (Exception ex){
-				log.error(ex);
-				throw ex;
-			} finally {
-                if(lutScanner != null){
-				    lutScanner.close();
-                }
-			}
+			checkGroupsCanViewResult(requester, resultOwner, result.hypothesisid, groups, auths);
 		}
-		
+
+		result.result_set = Lists.newArrayList(readResultEntries(resultOwner, queryId, 0L, auths));
         return result;
     }
 
+    /**
+     * Streams the result set of an existing result.  Only one chunk of the result set is held in memory at a time.
+     *
+     * @param requester The ID of the person making the request
+     * @param resultOwner The owner of the QueryResult
+     * @param queryId The ID of the QueryResult
+     * @param visibility The authorization Strings
+     * @return The QueryEntries of the result, in the order they were persisted
+     */
+    public Iterator<QueryEntry> getResultEntries(String requester, String resultOwner, String queryId, String[] visibility) throws Exception {
+        return getResultEntries(requester, resultOwner, queryId, 0L, Integer.MAX_VALUE, visibility);
+    }
+
+    /**
+     * Reads a page of the result set of an existing result.  The scan seeks to the chunk holding offset rather than
+     * reading the chunks before it.
+     *
+     * @param requester The ID of the person making the request
+     * @param resultOwner The owner of the QueryResult
+     * @param queryId The ID of the QueryResult
+     * @param offset The number of entries to skip
+     * @param count The maximum number of entries to return
+     * @param visibility The authorization Strings
+     * @return The QueryEntries of the page, in the order they were persisted
+     */
+    public Iterator<QueryEntry> getResultEntries(String requester, String resultOwner, String queryId, long offset, int count,
+                                                 String[] visibility) throws Exception {
+        checkState();
+        MorePreconditions.checkNotNullOrEmpty(requester);
+        MorePreconditions.checkNotNullOrEmpty(resultOwner);
+        MorePreconditions.checkNotNullOrEmpty(queryId);
+        Preconditions.checkNotNull(visibility);
+        Preconditions.checkArgument(offset >= 0, "offset must not be negative");
+        Preconditions.checkArgument(count >= 0, "count must not be negative");
+
+        final Authorizations auths = new Authorizations(visibility);
+        final Map<String, String> columns = readResultColumns(resultOwner, queryId, auths, "id", ResultSetChunks.CHUNK_SIZE);
+        if (!columns.containsKey("id")) {
+            throw new EntityNotFoundException("No results were found for the query <"+queryId+"> with owner <"+resultOwner+">");
+        }
+
+        // If the requester isn't the owner, make sure they can see the hypothesis via groups
+        if (requester.compareTo(resultOwner) != 0) {
+            final Set<String> groups = groupService.getGroupsForUser(requester, auths);
+            if (groups == null || groups.size() <= 0) {
+                throw new EntityNotFoundException("user <" + requester + "> is not allowed to view this result");
+            }
+            checkGroupsCanViewResult(requester, resultOwner, columns.get("id"), groups, auths);
+        }
+
+        final Iterator<QueryEntry> entries;
+        final String chunkSize = columns.get(ResultSetChunks.CHUNK_SIZE);
+        if (chunkSize == null) {
+            // Persisted before chunking, all in one cell
+            entries = readResultEntries(resultOwner, queryId, 0L, auths);
+            Iterators.advance(entries, (int) Math.min(offset, Integer.MAX_VALUE));
+        } else {
+            final long size = Long.parseLong(chunkSize);
+            entries = readResultEntries(resultOwner, queryId, offset / size, auths);
+            Iterators.advance(entries, (int) (offset % size));
+        }
+        return Iterators.limit(entries, count);
+    }
+
+    /**
+     * Reads single cells of a result
+     * @return The values of the qualifiers that were found
+     */
+    private Map<String, String> readResultColumns(String resultOwner, String queryId, Authorizations auths, String... qualifiers) throws TableNotFoundException {
+        final Scanner scan = persistenceService.createScanner(resultsTable, auths);
+        scan.setRange(new Range(resultOwner));
+        for (String qualifier : qualifiers) {
+            scan.fetchColumn(new Text(queryId), new Text(qualifier));
+        }
+        final Map<String, String> columns = new HashMap<String, String>();
+        for (Map.Entry<Key, Value> entry : scan) {
+            columns.put(entry.getKey().getColumnQualifier().toString(), entry.getValue().toString());
+        }
+        return columns;
+    }
+
+    /**
+     * Lazily reads the result set of a result, starting at a chunk.  Results persisted before chunking are read from
+     * their result_set cell, which is treated as chunk 0.
+     */
+    private Iterator<QueryEntry> readResultEntries(String resultOwner, String queryId, long firstChunk, Authorizations auths) throws TableNotFoundException {
+        final Scanner scan = persistenceService.createScanner(resultsTable, auths);
+        final String startQualifier = (firstChunk == 0) ? ResultSetChunks.LEGACY_RESULT_SET : ResultSetChunks.qualifier((int) firstChunk);
+        scan.setRange(new Range(new Key(new Text(resultOwner), new Text(queryId), new Text(startQualifier)), true,
+                new Key(new Text(resultOwner), new Text(queryId)).followingKey(PartialKey.ROW_COLFAM), false));
+        return ResultSetChunks.entries(scan.iterator());
+    }
+
+    /**
+     * Makes sure that one of the requester's groups can see the hypothesis of a result
+     * @throws EntityNotFoundException if none of the groups can
+     */
+    private void checkGroupsCanViewResult(String requester, String resultOwner, String hypothesisId, Set<String> groups,
+                                          Authorizations auths) throws Exception {
+        BatchScanner lutScanner = null;
+        try{
+            // See what groups can see this particular hypothesis
+            lutScanner = persistenceService.createBatchScanner(groupHypothesisLUT, auths);
+            final ArrayList<Range> groupRanges = new ArrayList<Range>(groups.size());
+            for(String group : groups){
+                groupRanges.add(new Range(group));
+            }
+            lutScanner.setRanges(groupRanges);
+            lutScanner.fetchColumn(new Text(resultOwner), new Text(hypothesisId));
+
+            // If there were no results than none of requester's groups can see the hypothesis
+            if(!lutScanner.iterator().hasNext())
+            {
+                throw new EntityNotFoundException("user <"+requester+"> is not allowed to view this result");
+            }
+        }  catch (Exception ex){
+            log.error(ex);
+            throw ex;
+        } finally {
+            if(lutScanner != null){
+                lutScanner.close();
+            }
+        }
+    }
+
     /**
      * "Execute" a hypothesis.  Does not timeout.
      *
@@ -404,8 +614,45 @@ public class AccumuloQueryService implements AminoQueryService {
      */
     public QueryResult createResult(String owner, String hypothesisId, Integer maxResults, String justification, String userId, String[] visibility,
 		long timeout, TimeUnit units) throws InterruptedException, ExecutionException, TimeoutException {
+        return createResult(owner, hypothesisId, maxResults, justification, userId, visibility, null, timeout, units);
+    }
+
+    /**
+     * "Execute" a hypothesis, handing each QueryEntry to the listener as soon as it is found.  Does not timeout.
+     *
+     * @param owner         The ownerId of the result
+     * @param hypothesisId  The ID of the hypothesis to "run"
+     * @param maxResults    The maximum number of results to generate before stopping
+     * @param justification The justification string for why the query was being made
+     * @param userId        The ID of the person running the result
+     * @param visibility    The Accumulo visibility strings
+     * @param listener      Receives the QueryEntries as they are found
+     * @return A QueryResult describing the persisted result, without the result_set
+     */
+    public QueryResult createResult(String owner, String hypothesisId, Integer maxResults, String justification, String userId, String[] visibility,
+                                    QueryResultListener listener) throws InterruptedException, ExecutionException, TimeoutException {
+        return createResult(owner, hypothesisId, maxResults, justification, userId, visibility, listener, 0, TimeUnit.MINUTES);
+    }
+
+    /**
+     * "Execute" a hypothesis, handing each QueryEntry to the listener as soon as it is found.  The entries are written
+     * to the results table as they arrive rather than once the query has finished.
+     *
+     * @param owner         The ownerId of the result
+     * @param hypothesisId  The ID of the hypothesis to "run"
+     * @param maxResults    The maximum number of results to generate before stopping
+     * @param justification The justification string for why the query was being made
+     * @param userId        The ID of the person running the result
+     * @param visibility    The Accumulo visibility strings
+     * @param listener      Receives the QueryEntries as they are found, or null to return them in the result_set
+     * @param timeout       The amount of time to run before giving up
+     * @param units         The unit of time for the timeout parameter
+     * @return A QueryResult describing the persisted result.  Only holds the result_set if there was no listener.
+     */
+    public QueryResult createResult(String owner, String hypothesisId, Integer maxResults, String justification, String userId, String[] visibility,
+                                    QueryResultListener listener, long timeout, TimeUnit units) throws InterruptedException, ExecutionException, TimeoutException {
         checkState();
-		Callable<QueryResult> call = new CreateQueryResultCall(owner, hypothesisId, maxResults, justification, userId, visibility);
+		Callable<QueryResult> call = new CreateQueryResultCall(owner, hypothesisId, maxResults, justification, userId, visibility, listener);
 		return timedUserExecutionService.timedCall(call, owner, timeout, units, false);
     }
 
@@ -507,10 +754,10 @@ public class AccumuloQueryService implements AminoQueryService {
 	/**
 	 * Finds all visible hypotheses that intersect with the bucketValues.  
 	 * @param req The parameters
-	 * @param keepWorking Flag to tell us to stop working if the method is taking too long (Needed because of stupid Accumulo Bug)
+	 * @param cancellation Tells us to stop working if the method is taking too long and closes the scanners we register (Needed because of stupid Accumulo Bug)
 	 * @return Hypotheses that match the bucketValues
 	 */
-	private List<Hypothesis> findHypothesesByBucketValues(BtaByValuesRequest req, AtomicBoolean keepWorking) throws Exception {
+	private List<Hypothesis> findHypothesesByBucketValues(BtaByValuesRequest req, Cancellation cancellation) throws Exception {
 		// Verify the parameters
         req.verify();
 		final String datasourceId = MorePreconditions.checkNotNullOrEmpty(req.getDatasourceId(), "Must provide datasourceId");
@@ -551,73 +798,128 @@ public class AccumuloQueryService implements AminoQueryService {
 		if(req.getHypotheses() != null){
 			hypothesesToSearch = req.getHypotheses();
 		} else {
-			// Create potential Hypotheses if none were passed in
-			hypothesesToSearch = new ArrayList<Hypothesis>();
+			hypothesesToSearch = findOwnedHypotheses(auditInfo.getDn(), auths, cancellation);
+			if(hypothesesToSearch == null) { return null; }
+		}
 			
-			// Find the hypotheses that the user can see.  Restrict to features as that's all we care about
-			final Scanner hypothesisFeaturesScanner = persistenceService.createScanner(metadataService.hypothesisTable, auths);
-			hypothesisFeaturesScanner.setRange(new Range(auditInfo.getDn()));
-            final IteratorSetting iteratorSetting = new IteratorSetting(30, "cqFilter", RegExFilter.class.getCanonicalName());
-            RegExFilter.setRegexs(iteratorSetting, null, null, "features", null, false);
-            hypothesisFeaturesScanner.addScanIterator(iteratorSetting);
-
-			// Get all of the HypothesisFeatures of the Hypotheses we can see
-            for(Map.Entry<Key, Value> hypothesisFeatureRow : hypothesisFeaturesScanner){
-				// Check to see if we were interrupted and if so. give up.
-				if(!keepWorking.get()) { return null; }
+		// Gather the CompareBits of every hypothesis so that they can all be matched in a single scan
+		final Map<String, List<BitmapANDIterator.CompareBits>> bitsPerHypothesis = new HashMap<String, List<BitmapANDIterator.CompareBits>>();
+		String first = null;
+		String last = null;
+		boolean featurelessHypotheses = false;
+		for(Hypothesis hypothesis : hypothesesToSearch){
+			// Check to see if we were interrupted and if so. give up.
+			if(!cancellation.keepWorking()) { return null; }
+
+			// Special case - we want to know if certain values are in the the byBucket table but we don't need to
+			// combine any of the features
+			if(hypothesis.hypothesisFeatures == null || hypothesis.hypothesisFeatures.size() == 0){
+				bitsPerHypothesis.put(hypothesis.id, new ArrayList<BitmapANDIterator.CompareBits>());
+				featurelessHypotheses = true;
+				continue;
+			}
 
-                HashSet<HypothesisFeature> features = new Gson().fromJson(hypothesisFeatureRow.getValue().toString(),
-                        new TypeToken<HashSet<HypothesisFeature>>(){}.getType());
-//				ArrayList<HypothesisFeature> features = new ArrayList<HypothesisFeature>();
-//				// def serializedFeatureArray = new JsonSlurper().parseText(hypothesisFeatureRow.getValue().toString());
-//				serializedFeatureArray.each{
-//					features.add(new HypothesisFeature(it));
-//				}
-                final Hypothesis h = new Hypothesis();
-                h.id = hypothesisFeatureRow.getKey().getColumnFamily().toString();
-                h.hypothesisFeatures = features;
-                h.queries = null;
-				hypothesesToSearch.add(h);
+			final BitMaskScanConfig bitmaskScanInformation = getBitmaskScanInformationForQuery(hypothesis.hypothesisFeatures, bucket.name, auths);
+			if (isByBucketScanNecessaryForQuery(bitmaskScanInformation)){
+				bitsPerHypothesis.put(hypothesis.id, bitmaskScanInformation.maskArray);
+				// The scan has to cover the bucket values of every hypothesis
+				if(first == null || first.compareTo(bitmaskScanInformation.first) > 0){
+					first = bitmaskScanInformation.first;
+				}
+				if(last == null || last.compareTo(bitmaskScanInformation.last) < 0){
+					last = bitmaskScanInformation.last;
+				}
 			}
 		}
-			
+
+		if(bitsPerHypothesis.isEmpty()){
+			log.debug("ByBucketScan is not necessary for any of the hypotheses");
+			return matchedValues;
+		}
+
+		cancellation.setProgressUnits("matching bucket values");
 		BatchScanner bucketValuesScanner = null;
+		AutoCloseable bucketValuesCloser = null;
 		try{	
 			bucketValuesScanner = persistenceService.createBatchScanner(byBucketTable, auths);
-			
-			// For each hypothesis, check it's features against the bucket values we are looking for
-            for(Hypothesis hypothesis : hypothesesToSearch){
+			bucketValuesCloser = cancellation.register(closer(bucketValuesScanner));
+			configureHypothesisMatchScanner(bucketValuesScanner, datasourceId + ":" + bucket.name, bitsPerHypothesis,
+					featurelessHypotheses ? null : first, featurelessHypotheses ? null : last,
+					shardCount, bucketValues);
+
+			for(Map.Entry<Key,Value> bvRow : bucketValuesScanner){
 				// Check to see if we were interrupted and if so. give up.
-				if(!keepWorking.get()) { return null; }
-
-				boolean scanValues = configureByValueScanner(bucketValuesScanner, bucket.name, hypothesis.hypothesisFeatures, // ADDED <===========================
-                        datasourceId + ":" + bucket.name, shardCount, auths, bucketValues);
-
-				if(scanValues){
-                    for(Map.Entry<Key,Value> bvRow : bucketValuesScanner){
-                        final Hypothesis h = new Hypothesis();
-                        h.id = hypothesis.id;
-                        h.bucketValue = bvRow.getKey().getColumnFamily().toString();
-                        h.hypothesisFeatures = null;
-                        h.queries = null;
-						matchedValues.add(h);
-					}
-				}
-			} 
+				if(!cancellation.keepWorking()) { return null; }
+
+				final Hypothesis h = new Hypothesis();
+				h.id = bvRow.getKey().getColumnQualifier().toString();
+				h.bucketValue = bvRow.getKey().getColumnFamily().toString();
+				h.hypothesisFeatures = null;
+				h.queries = null;
+				matchedValues.add(h);
+				cancellation.addProgress(1);
+			}
 		} catch(Exception ex) {
 			log.error(ex);
 			throw ex;
 		} finally {
             if(bucketValuesScanner != null){
+			    cancellation.unregister(bucketValuesCloser);
 			    bucketValuesScanner.close();
             }
 		}
 		return matchedValues;
 	}
 
+	/**
+	 * Finds the hypotheses, with their features, that the user owns.  These are what findHypothesesByBucketValues
+	 * matches when it is not given any, read from the user hypothesis index if it is being kept
+	 * @param dn The user
+	 * @param auths Accumulo authorizations
+	 * @param cancellation Tells us to stop working if the method is taking too long
+	 * @return The hypotheses, or null if the call was cancelled
+	 */
+	List<Hypothesis> findOwnedHypotheses(String dn, Authorizations auths, Cancellation cancellation) throws Exception {
+		if(groupService != null && groupService.isUserHypothesisIndexed()){
+			// The user's hypotheses, with their features, are a single scan of the index
+			final List<Hypothesis> hypotheses = groupService.getIndexedHypothesesOwnedBy(dn, auths);
+			return cancellation.keepWorking() ? hypotheses : null;
+		}
+
+		// Create potential Hypotheses if none were passed in
+		final List<Hypothesis> hypothesesToSearch = new ArrayList<Hypothesis>();
+		
+		// Find the hypotheses that the user owns.  Restrict to features as that's all we care about
+		final Scanner hypothesisFeaturesScanner = persistenceService.createScanner(metadataService.hypothesisTable, auths);
+		hypothesisFeaturesScanner.setRange(new Range(dn));
+        final IteratorSetting iteratorSetting = new IteratorSetting(30, "cqFilter", RegExFilter.class.getCanonicalName());
+        RegExFilter.setRegexs(iteratorSetting, null, null, "features", null, false);
+        hypothesisFeaturesScanner.addScanIterator(iteratorSetting);
+
+		// Get all of the HypothesisFeatures of the Hypotheses we can see
+        for(Map.Entry<Key, Value> hypothesisFeatureRow : hypothesisFeaturesScanner){
+			// Check to see if we were interrupted and if so. give up.
+			if(!cancellation.keepWorking()) { return null; }
+
+            HashSet<HypothesisFeature> features = new Gson().fromJson(hypothesisFeatureRow.getValue().toString(),
+                    new TypeToken<HashSet<HypothesisFeature>>(){}.getType());
+//				ArrayList<HypothesisFeature> features = new ArrayList<HypothesisFeature>();
+//				// def serializedFeatureArray = new JsonSlurper().parseText(hypothesisFeatureRow.getValue().toString());
+//				serializedFeatureArray.each{
+//					features.add(new HypothesisFeature(it));
+//				}
+            final Hypothesis h = new Hypothesis();
+            h.id = hypothesisFeatureRow.getKey().getColumnFamily().toString();
+            h.hypothesisFeatures = features;
+            h.queries = null;
+			hypothesesToSearch.add(h);
+		}
+		return hypothesesToSearch;
+	}
+
 	private Collection<Hypothesis> createNonPersistedHypotheses(
 		String datasourceid, String bucketid, Collection<String> bucketValues, String[] visibility, String userid, String justification, 
-		AtomicBoolean keepRunning, List<String> featureIds) throws Exception {
+		Cancellation cancellation, List<String> featureIds) throws Exception {
 		
 		// Verify the parameters
 		MorePreconditions.checkNotNullOrEmpty(datasourceid);
@@ -659,17 +961,26 @@ public class AccumuloQueryService implements AminoQueryService {
 		auditReq.setJustification(justification);
 		auditQuery(bucket.name, auditReq, auths, Collections.EMPTY_LIST, bucketValues);
 				
+		// Give every bucket value an id so that the lookups below can be done with primitives
+		final List<String> bucketValueList = new ArrayList<String>(hypothesisMap.keySet());
+		final Map<String, Integer> bucketValueIds = new HashMap<String, Integer>(bucketValueList.size());
+		for(int i = 0; i < bucketValueList.size(); i++){
+			bucketValueIds.put(bucketValueList.get(i), i);
+		}
+
 		// Create the BatchScanners for looking up all of the values that we will need
+		cancellation.setProgressUnits("entries scanned");
 		BatchScanner byBucketBatchScanner = null;
+		AutoCloseable byBucketCloser = null;
 		QueryStatisticsMap bucketStats = null;
-		Set<Range> featureRanges = new HashSet<Range>();
-		HashMap<Key, HashSet<String>>  featureFactToBucketValueMap;
+		final FeatureFactLookup featureFactLookup = new FeatureFactLookup();
 		try{
 			 byBucketBatchScanner =  persistenceService.createBatchScanner(byBucketTable, auths);
+			 byBucketCloser = cancellation.register(closer(byBucketBatchScanner));
 			
 			// For each of the bucketValues that we are looking for, create a Range that will correspond to this bucketValue for lookup
 			ArrayList<Range> bucketRanges = new ArrayList<Range>();
-            for(String bv : bucketValues){
+            for(String bv : bucketValueList){
                 bucketRanges.addAll(
                     persistenceService.generateRanges(
                         new AccumuloScanConfig().
@@ -689,44 +1000,29 @@ public class AccumuloQueryService implements AminoQueryService {
 			
 			bucketStats = new QueryStatisticsMap();
 			
-			// Scan through all of the bucket results and figure out which features we are interested in 
-			featureFactToBucketValueMap = new HashMap<Key, HashSet<String>>();
-
+			// Scan through all of the bucket results and note which [featureFact index, salt]s each bucketValue is interested in
             for(Map.Entry<Key, Value> it : byBucketBatchScanner){
+				// Abort if we were interrupted
+				if(!cancellation.keepWorking()){
+					return null;
+				}
+
 				bucketStats.increment();
-				final AminoBitmap featureFactValueIndexes = BitmapUtils.fromValue(it.getValue());
-				final Iterator<Integer> bitmapIterator = featureFactValueIndexes.iterator();
-				final String bucketValue = it.getKey().getColumnFamily().toString();
-				final String salt = it.getKey().getColumnQualifier().toString();
-				
-				// Find all of the [featureID/salt/buckets] that we are interested in and make note of which bucketValues are interested in them
-				while(bitmapIterator.hasNext()) {
-					// Abort if we were interrupted
-					if(!keepRunning.get()){
-						return null;
-					}
-					
-					final String featureValueIndex = bitmapIterator.next().toString();
-					final Key featureLookupKey = new Key(featureValueIndex, salt + "#" + bucket.name);
-					featureRanges.add(new Range(featureLookupKey, featureLookupKey.followingKey(PartialKey.ROW_COLFAM)));
-	
-					// If there's not already an entry, add a new HashSet with this featureId
-					if(!featureFactToBucketValueMap.containsKey(featureLookupKey)){
-						HashSet<String> hs = new HashSet<String>();
-						hs.add(bucketValue);
-						featureFactToBucketValueMap.put(featureLookupKey, hs);
-					}
-					else {
-						// Note that this bucket value is interested in this feature Fact
-						featureFactToBucketValueMap.get(featureLookupKey).add(bucketValue);
-					}
-				}	
+				cancellation.addProgress(1);
+				final Integer bucketValueId = bucketValueIds.get(it.getKey().getColumnFamily().toString());
+				if(bucketValueId == null){
+					continue;
+				}
+				final int salt = Integer.parseInt(it.getKey().getColumnQualifier().toString());
+				featureFactLookup.add(bucketValueId, salt, BitmapUtils.fromValue(it.getValue()));
 			}
+			featureFactLookup.build();
 		} catch (Exception ex){
 			log.error(ex);
 			throw ex;
 		} finally {
             if(byBucketBatchScanner != null){
+			    cancellation.unregister(byBucketCloser);
 			    byBucketBatchScanner.close();
             }
             if(bucketStats != null){
@@ -734,38 +1030,66 @@ public class AccumuloQueryService implements AminoQueryService {
             }
 		}
 		
-		if(featureRanges.size() == 0) {
+		if(featureFactLookup.isEmpty()) {
 			// There were no features to add, so no need to go any further
 			return hypothesisMap.values();
 		}
 
-
-        final Map<String, Map<HypothesisFeature, Integer>> bucketValuesFeatureCounts = new HashMap<String, Map<HypothesisFeature, Integer>>();
+        // Counts how many salts each [bucketValue, HypothesisFeature] was found for (needed for filtering hash collisions)
+        final PairCounter bucketValueFeatureCounts = new PairCounter(featureFactLookup.size());
+        final Map<HypothesisFeature, Integer> hypoFeatureIds = new HashMap<HypothesisFeature, Integer>();
+        final List<HypothesisFeature> hypoFeatures = new ArrayList<HypothesisFeature>();
+        final Text rowText = new Text();
+        final Text colFamText = new Text();
         final Text featureIdText = new Text();
 		final Map<String, HypothesisFeature> hypoFeatureCache = new HashMap<String, HypothesisFeature>();
 		BatchScanner featureBatchScanner = null;
+		AutoCloseable featureCloser = null;
 		QueryStatisticsMap featureStats = null;
 		try{
-            // Set the ranges for the feature scanner to efficiently look up the features we are interested in
+            // Set the ranges for the feature scanner to efficiently look up the features we are interested in.  The
+            // Ranges are per row, so only fetch the salts of this bucket
             featureBatchScanner = persistenceService.createBatchScanner(featureLookupTable, auths);
-            featureBatchScanner.setRanges(featureRanges);
+            featureCloser = cancellation.register(closer(featureBatchScanner));
+            featureBatchScanner.setRanges(featureFactLookup.getRanges());
+            for(int salt = 0; salt < hashCount; salt++){
+                featureBatchScanner.fetchColumnFamily(new Text(salt + "#" + bucket.name));
+            }
 
             // Now that we know what feature facts we are interested in, go scan them and create our hypothesis features
             featureStats = new QueryStatisticsMap();
             for(Map.Entry<Key, Value> scanEntry : featureBatchScanner){
                 // Abort if we were interrupted
-                if(!keepRunning.get()){
+                if(!cancellation.keepWorking()){
                     return null;
                 }
 
                 featureStats.increment();
-                scanEntry.getKey().getColumnQualifier(featureIdText);
+
+                // Ranges can cover a few rows that nobody asked for, so make sure a bucketValue wants this one
+                final Key scanKey = scanEntry.getKey();
+                scanKey.getRow(rowText);
+                scanKey.getColumnFamily(colFamText);
+                final int featureFactIndex;
+                final int salt;
+                try {
+                    featureFactIndex = Integer.parseInt(rowText.toString());
+                    final String colFam = colFamText.toString();
+                    salt = Integer.parseInt(colFam.substring(0, colFam.indexOf('#')));
+                } catch (NumberFormatException | StringIndexOutOfBoundsException ex) {
+                    continue;
+                }
+                final int position = featureFactLookup.indexOf(featureFactIndex, salt);
+                if(position < 0){
+                    continue;
+                }
+
+                scanKey.getColumnQualifier(featureIdText);
                 final String featureId = featureIdText.toString();
                 final String featureValue = scanEntry.getValue().toString();
 
                 // Check to see if we are filtering featureIds or if we are accepting them all (null)
                 if(featureIds == null || (featureIds.contains(featureId))){
-                    // TODO: We might be able to speed this part up
                     // Cache the FeatureMetadata as we are only changing its value
                     if(!hypoFeatureCache.containsKey(featureId)){
                         final FeatureMetadata metadataFeature = metadataService.getFeature(featureId, visibility);
@@ -805,41 +1129,28 @@ public class AccumuloQueryService implements AminoQueryService {
                         throw new RuntimeException("Don't know how to convert feature type ${hypoFeature.type}");
                     }
 
-                    Key scanKey = scanEntry.getKey();
-                    Key indexKey = new Key(scanKey.getRow(), scanKey.getColumnFamily());
-
-                    // For every bucketValue that was interested in this featureFact, add the potential HypothesisFeature
-                    // to the counting Map for that bucketValue (needed for filtering hash colosions)
-                    for(String it : featureFactToBucketValueMap.get(indexKey)){
-                        Map<HypothesisFeature, Integer> map = bucketValuesFeatureCounts.get(it);
-                        if(map == null){
-                            map = new HashMap<HypothesisFeature, Integer>();
-                            bucketValuesFeatureCounts.put(it, map);
-                        }
-
-                        // TODO Make this more efficient
-                        if(map.containsKey(hypoFeature)){
-                            Integer i = map.get(hypoFeature);
-                            map.put(hypoFeature, i + 1);
-                        } else {
-                            map.put(hypoFeature, 1);
-                        }
+                    // Equal HypothesisFeatures share an id so that they are counted together
+                    Integer hypoFeatureId = hypoFeatureIds.get(hypoFeature);
+                    if(hypoFeatureId == null){
+                        hypoFeatureId = hypoFeatures.size();
+                        hypoFeatures.add(hypoFeature);
+                        hypoFeatureIds.put(hypoFeature, hypoFeatureId);
+                    }
 
-                        //hypothesisMap.get(it).hypothesisFeatures.add(hypoFeature)
+                    // For every bucketValue that was interested in this featureFact, count the potential HypothesisFeature
+                    for(int p = position; featureFactLookup.matches(p, featureFactIndex, salt); p++){
+                        bucketValueFeatureCounts.increment(featureFactLookup.bucketValueAt(p), hypoFeatureId);
                     }
                 }
             }
 
             // Now that we have all of potential HypothesisFeatures, go through and add them to the hypothesis, making
             // sure to eliminate any that might have been false positives
-            for (Map.Entry<String, Map<HypothesisFeature, Integer>> entry : bucketValuesFeatureCounts.entrySet()) {
-                String bucketValue = entry.getKey();
-                Map<HypothesisFeature, Integer> featureCountMap = entry.getValue();
-                for(Map.Entry<HypothesisFeature, Integer> featureCount : featureCountMap.entrySet()){
-                    // If the count isn't exactly the same as the number of hashes then it's a false positive
-                    if(featureCount.getValue().compareTo(hashCount) == 0){
-                        hypothesisMap.get(bucketValue).hypothesisFeatures.add(featureCount.getKey());
-                    }
+            for(int slot = 0; slot < bucketValueFeatureCounts.capacity(); slot++){
+                // If the count isn't exactly the same as the number of hashes then it's a false positive
+                if(bucketValueFeatureCounts.countAt(slot) == hashCount){
+                    final String bucketValue = bucketValueList.get(bucketValueFeatureCounts.bucketValueAt(slot));
+                    hypothesisMap.get(bucketValue).hypothesisFeatures.add(hypoFeatures.get(bucketValueFeatureCounts.featureAt(slot)));
                 }
             }
 		} catch (Exception ex){
@@ -847,6 +1158,7 @@ public class AccumuloQueryService implements AminoQueryService {
 			throw ex;
 		} finally {
             if(featureBatchScanner != null){
+                cancellation.unregister(featureCloser);
                 featureBatchScanner.close();
             }
             if(featureStats != null){
@@ -858,7 +1170,7 @@ public class AccumuloQueryService implements AminoQueryService {
 		// TODO make this into some kind of class for doing this - It is nearly dup'd in the RestfulHypothesisController
         for(Hypothesis hypothesis : hypothesisMap.values()){
 			// Abort if we were interrupted
-			if(!keepRunning.get()){
+			if(!cancellation.keepWorking()){
 				return null;
 			}
 			
@@ -1111,6 +1423,7 @@ public class AccumuloQueryService implements AminoQueryService {
 	public BitMaskScanConfig getBitmaskScanInformationForQuery(Collection<HypothesisFeature> hypothesisFeatures, String bucketName,
                                                  Authorizations auths) throws Exception {
 		final FirstLastTracker tracker = new FirstLastTracker();
+		final Map<String, Long> counts = new HashMap<String, Long>();
 		final Integer hashCount = metadataService.getHashCount();
         final ArrayList<HashMap<String, AminoBitmap>> rangeBitmaps = new ArrayList<HashMap<String, AminoBitmap>>(hashCount);
         final List<BitmapANDIterator.CompareBits> bits = new ArrayList<BitmapANDIterator.CompareBits>(hashCount);
@@ -1177,6 +1490,11 @@ public class AccumuloQueryService implements AminoQueryService {
 				final String cqType = splitCQ[1];
 				if (cqType.compareTo("FIRST") == 0 || cqType.compareTo("LAST") == 0){
 	                tracker.updateStore(it.getKey().getRow().toString(), new Text(value.toString()), FirstLastTracker.StoreGoal.valueOf(cqType));
+				} else if (cqType.compareTo("COUNT") == 0){
+					// Keep the number of bucket values for the query planner
+					final String featureId = it.getKey().getRow().toString();
+					final Long count = counts.get(featureId);
+					counts.put(featureId, ((count == null) ? 0L : count) + Long.parseLong(value.toString()));
 				}
 	        }
 		}  catch (Exception ex){
@@ -1195,7 +1513,25 @@ public class AccumuloQueryService implements AminoQueryService {
             compareBits.setRangeBitmaps(new ArrayList<AminoBitmap>(rangeBitmap.values()));
         }
 
-        return new BitMaskScanConfig(bits, tracker.getLatestFirst(), tracker.getEarliestLast());
+        return new BitMaskScanConfig(bits, rangeBitmaps, tracker.getLatestFirst(), tracker.getEarliestLast(), counts);
+    }
+
+    /**
+     * @param bitmaps The bitmaps of the Range features of a salt, by featureMetadataId
+     * @param featureIds The featureMetadataIds in the order the bitmaps should be tested
+     * @return The bitmaps in the order of featureIds, followed by any bitmaps of features that are not in featureIds
+     */
+    static ArrayList<AminoBitmap> rangeBitmapsInOrder(Map<String, AminoBitmap> bitmaps, List<String> featureIds) {
+        final ArrayList<AminoBitmap> ordered = new ArrayList<AminoBitmap>(bitmaps.size());
+        final Map<String, AminoBitmap> remaining = new HashMap<String, AminoBitmap>(bitmaps);
+        for(String featureId : featureIds){
+            final AminoBitmap bitmap = remaining.remove(featureId);
+            if(bitmap != null){
+                ordered.add(bitmap);
+            }
+        }
+        ordered.addAll(remaining.values());
+        return ordered;
     }
 
 
@@ -1251,54 +1587,31 @@ public class AccumuloQueryService implements AminoQueryService {
 	}
 
     /**
-     * Creates the appropriate QueryEntry's by inspecting the amino_bitmap_byBucket table.
-     * @return QueryResult with results for the Hypothesis
+     * Finds the appropriate QueryEntry's by inspecting the amino_bitmap_byBucket table.
+     * @param results Takes the QueryEntry's as they are found
      */
-    private ArrayList<QueryEntry> resultsViaByBucket(String datasourceid, String bucketName, Authorizations auths,
-                                                     Set<HypothesisFeature> restrictions, Set<HypothesisFeature> featuresSansRestrictions,
-                                                     QueryStatisticsMap resultStats, AtomicBoolean keepWorking, long maxResults,
-                                                     AtomicBoolean hitCap) throws Exception {
-        ArrayList<QueryEntry> results = new ArrayList<QueryEntry>();
-
+    private void resultsViaByBucket(String datasourceid, String bucketName, Authorizations auths,
+                                    Set<HypothesisFeature> restrictions, Set<HypothesisFeature> featuresSansRestrictions,
+                                    BitMaskScanConfig scanInformation, QueryStatisticsMap resultStats,
+                                    ResultCollector results) throws Exception {
         BatchScanner resultScan = null;
+        AutoCloseable resultScanCloser = null;
         try{
             final String resultScanRowId = datasourceid + ":" + bucketName;
             final Integer shardCount = metadataService.getShardCount();
 
             resultScan = persistenceService.createBatchScanner(byBucketTable, auths);
+            resultScanCloser = results.cancellation.register(closer(resultScan));
 
-            // TODO this might be a bad conversion
-            final HashSet<String> restrictionValues = new HashSet<String>(restrictions.size());
-            for(HypothesisFeature hf : restrictions){
-                // TODO - FIXME HACK AGGGHHH The GUI is sending the values in as ["a,b,c"] instead of ["a", "b", "c"]
-                String hackValue = hf.value;
-                hackValue = hackValue.replaceAll("\\[\"","");
-                hackValue = hackValue.replaceAll("\"]","");
-                for(String v : hackValue.split(",")){
-                    restrictionValues.add(v.trim());
-                }
-            }
             boolean resultsToScan = configureByValueScanner(resultScan, bucketName, featuresSansRestrictions, resultScanRowId, shardCount, auths,
-                    restrictionValues);
+                    restrictionValues(restrictions), scanInformation);
 
             if(resultsToScan){
-                long resultsCount = 0;
-
                 for(Map.Entry<Key, Value> entry : resultScan){
-                    if(!keepWorking.get()){
-                        log.warn("createQueryResult told to stop working");
-                        return null;
-                    }
-
                     resultStats.increment();
-
-                    if (resultsCount == maxResults) {
-                        hitCap.set(true);
+                    if(!results.add(new QueryEntry(entry.getKey().getColumnFamily().toString()))){
                         break;
                     }
-                    final QueryEntry qe = new QueryEntry(entry.getKey().getColumnFamily().toString());
-                    results.add(qe);
-                    resultsCount++;
                 }
             }
         } catch (Exception ex) {
@@ -1306,42 +1619,58 @@ public class AccumuloQueryService implements AminoQueryService {
             throw ex;
         } finally {
             if(resultScan != null){
+                results.cancellation.unregister(resultScanCloser);
                 resultScan.close();
             }
             if(resultStats != null){
                 resultStats.endTime();
             }
         }
-
-        return results;
     }
 
     /**
-     * Creates the appropriate QueryEntry's by inspecting the amino_reverse_bitmap_byBucket and
-     * amino_reverse_feature_lookup tables.
-     * @return QueryResult with results for the Hypothesis
+     * @return The bucket values of the RESTRICTION features
      */
-    private ArrayList<QueryEntry> resultsViaReverseByBucket(String datasource, String bucketName, Set<HypothesisFeature> features,
-                                                            Authorizations auths, long maxResults, AtomicBoolean hitCap) throws Exception {
-        ArrayList<QueryEntry> results = new ArrayList<QueryEntry>();
+    private static Set<String> restrictionValues(Set<HypothesisFeature> restrictions) {
+        // TODO this might be a bad conversion
+        final HashSet<String> restrictionValues = new HashSet<String>(restrictions.size());
+        for(HypothesisFeature hf : restrictions){
+            // TODO - FIXME HACK AGGGHHH The GUI is sending the values in as ["a,b,c"] instead of ["a", "b", "c"]
+            String hackValue = hf.value;
+            hackValue = hackValue.replaceAll("\\[\"","");
+            hackValue = hackValue.replaceAll("\"]","");
+            for(String v : hackValue.split(",")){
+                restrictionValues.add(v.trim());
+            }
+        }
+        return restrictionValues;
+    }
 
+    /**
+     * Finds the appropriate QueryEntry's by inspecting the amino_reverse_bitmap_byBucket and
+     * amino_reverse_feature_lookup tables.  Each shard is looked up on its own, so the lookup of a shard starts as soon
+     * as its bitmaps have been combined rather than once every shard has been.  Up to reverseShardConcurrency shards
+     * are in flight at once.
+     * @param results Takes the QueryEntry's as they are found
+     */
+    private void resultsViaReverseByBucket(String datasource, String bucketName, Set<HypothesisFeature> features,
+                                           Authorizations auths, long maxResults, ResultCollector results) throws Exception {
         final String DS_BN = datasource + "#" + bucketName + "#";
         final String revByBucketItr = "reverseByBucketIterator";
         final String revLookupItr = "reverseFeatureLookupIterator";
+        final int shardCount = metadataService.getShardCount();
+        final int hashCount = metadataService.getHashCount();
 
         // We need to tell the iterator which features should be OR'd when looking up values (RATIOS, etc) and which
         // ones simply needed to be AND'd (pretty much everything else)
         final Set<AbstractMap.SimpleImmutableEntry<String, String>> andIds = new HashSet<AbstractMap.SimpleImmutableEntry<String, String>>();
         final Set<String> orIds = new HashSet<String>();
 
-        final BatchScanner revByBucketScanner = persistenceService.createBatchScanner(reverseByBucketTable, auths);
-
-        final List<Range> ranges = new ArrayList<Range>(features.size()); // The Ranges to look for in the reverseByBucketTable
-        final Set<Range> lookupRanges = new HashSet<Range>(); // The Ranges to use when looking up the reverseFeatureLookupTable
-
-        // For each shard:salt pair, create the Ranges needed to fetch the feature values and configure the iterator options
-        for(int salt = 0; salt < metadataService.getHashCount(); salt++){
-            for(int shard = 0; shard < metadataService.getShardCount(); shard++){
+        // For each shard, the Ranges to look for in the reverseByBucketTable, covering every salt of the shard
+        final List<List<Range>> shardRanges = new ArrayList<List<Range>>(shardCount);
+        for(int shard = 0; shard < shardCount; shard++){
+            final List<Range> ranges = new ArrayList<Range>(hashCount * features.size());
+            for(int salt = 0; salt < hashCount; salt++){
                 String rowid = shard + ":" + salt;
 
                 for(HypothesisFeature feature : features){
@@ -1361,76 +1690,254 @@ public class AccumuloQueryService implements AminoQueryService {
                     }
                 }
             }
+            shardRanges.add(ranges);
         }
 
         // Configure the options on the iterator for the BatchScanner on the reverseByBucketTable
-        IteratorSetting iteratorSetting = new IteratorSetting(30, revByBucketItr, ReverseByBucketCombiner.class.getCanonicalName());
+        final IteratorSetting iteratorSetting = new IteratorSetting(30, revByBucketItr, ReverseByBucketCombiner.class.getCanonicalName());
         iteratorSetting.addOption(ReverseByBucketCombiner.OPTION_NUM_RANGES, String.valueOf(features.size()));
 
         if(andIds.size() > 0){
-            iteratorSetting.addOption(ReverseByBucketCombiner.OPTION_AND_IDS, new Gson().toJson(andIds));
+            iteratorSetting.addOption(ReverseByBucketCombiner.OPTION_AND_IDS, ReverseByBucketCombiner.encodeAndIds(andIds));
         }
         if(orIds.size() > 0){
-            iteratorSetting.addOption(ReverseByBucketCombiner.OPTION_OR_IDS, new Gson().toJson(orIds));
+            iteratorSetting.addOption(ReverseByBucketCombiner.OPTION_OR_IDS, ReverseByBucketCombiner.encodeOrIds(orIds));
         }
         iteratorSetting.addOption(ReverseByBucketCombiner.OPTION_BITMAP_MEM_THRESHOLD, reverseItrMemThreshold);
-        revByBucketScanner.addScanIterator(iteratorSetting);
 
-        // Set up the ranges and get ready to scan the amino_reverse_bitmap_byBucket table
-        revByBucketScanner.setRanges(ranges);
+        // The iterator to de-conflict hash collisions when looking up the amino_reverse_feature_lookup table
+        final IteratorSetting lookupSetting = new IteratorSetting(30, revLookupItr, ReverseFeatureCombiner.class.getCanonicalName());
+        lookupSetting.addOption(ReverseFeatureCombiner.OPTION_SALTS, String.valueOf(hashCount));
+        lookupSetting.addOption(ReverseFeatureCombiner.OPTION_MAX_RESULTS, String.valueOf(maxResults));
 
-        try{
+        new ReverseShardPipeline(getReverseShardExecutor(), reverseShardConcurrency, ReverseShardPipeline.DEFAULT_QUEUE_SIZE)
+                .run(shardCount, new ReverseShardLookup(shardRanges, DS_BN, iteratorSetting, lookupSetting, auths, results.cancellation), results);
+    }
+
+    /**
+     * Lets a Cancellation close a BatchScanner, which doesn't implement AutoCloseable in this version of Accumulo
+     */
+    private static AutoCloseable closer(final BatchScanner scanner) {
+        return new AutoCloseable() {
+            @Override
+            public void close() {
+                scanner.close();
+            }
+        };
+    }
+
+    /**
+     * @return The pool shared by the reverse byBucket queries, holding at most reverseShardThreads threads.  Shards
+     * beyond that wait for a thread.
+     */
+    private synchronized ExecutorService getReverseShardExecutor() {
+        if(reverseShardExecutor == null){
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(reverseShardThreads, reverseShardThreads,
+                    REVERSE_SHARD_IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("amino-reverse-shard-%d").build());
+            pool.allowCoreThreadTimeOut(true);
+            reverseShardExecutor = pool;
+        }
+        return reverseShardExecutor;
+    }
+
+    private static final long REVERSE_SHARD_IDLE_SECONDS = 60;
+
+    /**
+     * Combines the reverse bitmaps of a shard and then looks up the bucket values of the bits that matched, handing
+     * them to the query thread
+     */
+    private class ReverseShardLookup implements ReverseShardPipeline.ShardLookup {
+        final List<List<Range>> shardRanges;
+        final String DS_BN;
+        final IteratorSetting byBucketSetting;
+        final IteratorSetting lookupSetting;
+        final Authorizations auths;
+        final Cancellation cancellation;
+
+        ReverseShardLookup(List<List<Range>> shardRanges, String DS_BN, IteratorSetting byBucketSetting,
+                           IteratorSetting lookupSetting, Authorizations auths, Cancellation cancellation) {
+            this.shardRanges = shardRanges;
+            this.DS_BN = DS_BN;
+            this.byBucketSetting = byBucketSetting;
+            this.lookupSetting = lookupSetting;
+            this.auths = auths;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public void lookup(int shard, ReverseShardPipeline pipeline) throws Exception {
             // Scan the table.  If there were any hits, create a Range for each bit to look up in the amino_reverse_feature_lookup table
-            for(Map.Entry<Key, Value> e : revByBucketScanner){
-                if(ReverseByBucketCombiner.INVALID_KEY.compareTo(e.getKey()) != 0){
-                    String shard = e.getKey().getRow().toString().split(":")[0];
-                    String salt = e.getKey().getRow().toString().split(":")[1];
-                    AminoBitmap b = BitmapUtils.fromValue(e.getValue());
-
-                    for(Integer i : b){
-                        Range r = IteratorUtils.exactRow(shard, i + "#" + DS_BN + salt);
-                        lookupRanges.add(r);
+            final Set<Range> lookupRanges = new HashSet<Range>();
+            final BatchScanner revByBucketScanner = persistenceService.createBatchScanner(reverseByBucketTable, auths);
+            final AutoCloseable revByBucketCloser = cancellation.register(closer(revByBucketScanner));
+            try {
+                revByBucketScanner.addScanIterator(byBucketSetting);
+                revByBucketScanner.setRanges(shardRanges.get(shard));
+                for(Map.Entry<Key, Value> e : revByBucketScanner){
+                    if(pipeline.isStopped()){
+                        return;
+                    }
+                    if(ReverseByBucketCombiner.INVALID_KEY.compareTo(e.getKey()) != 0){
+                        String salt = e.getKey().getRow().toString().split(":")[1];
+                        AminoBitmap b = BitmapUtils.fromValue(e.getValue());
+
+                        for(Integer i : b){
+                            lookupRanges.add(IteratorUtils.exactRow(String.valueOf(shard), i + "#" + DS_BN + salt));
+                        }
                     }
                 }
+            } finally {
+                cancellation.unregister(revByBucketCloser);
+                revByBucketScanner.close();
+            }
+
+            // Check to see if there is anything to lookup
+            if(lookupRanges.isEmpty()){
+                return;
+            }
+
+            final BatchScanner lookupScanner = persistenceService.createBatchScanner(reverseFeatureLookupTable, auths);
+            final AutoCloseable lookupCloser = cancellation.register(closer(lookupScanner));
+            try {
+                lookupScanner.setRanges(lookupRanges);
+                lookupScanner.addScanIterator(lookupSetting);
+                for(Map.Entry<Key, Value> entry : lookupScanner){
+                    if(!pipeline.handOver(new QueryEntry(entry.getValue().toString()))){
+                        return;
+                    }
+                }
+            } finally {
+                cancellation.unregister(lookupCloser);
+                lookupScanner.close();
             }
-        } finally {
-            revByBucketScanner.close();
         }
+    }
+
+    /**
+     * Explains how createResult would run a hypothesis, without running it.  Reads the feature statistics but no bucket
+     * values.
+     *
+     * @param owner         The ownerId of the hypothesis
+     * @param hypothesisId  The ID of the hypothesis
+     * @param userId        The ID of the person asking
+     * @param visibility    The Accumulo visibility strings
+     * @return The access path that would be used and the estimates it was chosen from
+     */
+    public QueryPlan explainResult(String owner, String hypothesisId, String userId, String[] visibility) throws Exception {
+        checkState();
+        MorePreconditions.checkNotNullOrEmpty(owner);
+        MorePreconditions.checkNotNullOrEmpty(hypothesisId);
+        Preconditions.checkNotNull(visibility);
 
-        // Check to see if there is anything to lookup
-        if(lookupRanges.size() ==0){
-            return results;
+        final Authorizations auths = new Authorizations(visibility);
+        final Hypothesis hypothesis = metadataService.getHypothesis(userId, owner, hypothesisId, auths);
+        Preconditions.checkNotNull(hypothesis, "No hypothesis with owner '%s' and id '%s' could be found", owner, hypothesisId);
+        final BucketMetadata bucket = metadataService.getBucket(hypothesis.bucketid, auths);
+        Preconditions.checkNotNull(bucket, "No bucket with owner '%s', hypothesis id '%s' and id '%s' could be found",
+                owner, hypothesis.id, hypothesis.bucketid);
+        return planQuery(hypothesis, bucket.name, auths).plan;
+    }
+
+    /**
+     * The plan of a hypothesis and what is needed to run it
+     */
+    private static class PlannedQuery {
+        final QueryPlan plan;
+        final Set<HypothesisFeature> restrictions;
+        final Set<HypothesisFeature> features; // The non RESTRICTION features
+        final BitMaskScanConfig scanInformation; // null if there are no features
+
+        PlannedQuery(QueryPlan plan, Set<HypothesisFeature> restrictions, Set<HypothesisFeature> features, BitMaskScanConfig scanInformation) {
+            this.plan = plan;
+            this.restrictions = restrictions;
+            this.features = features;
+            this.scanInformation = scanInformation;
         }
+    }
 
-        // Create the Scanner and set the iterator to de-conflict hash collisions
-        final BatchScanner lookupScanner = persistenceService.createBatchScanner(reverseFeatureLookupTable, auths);
-        lookupScanner.setRanges(lookupRanges);
-        final IteratorSetting itr = new IteratorSetting(30, revLookupItr, ReverseFeatureCombiner.class.getCanonicalName());
-        itr.addOption(ReverseFeatureCombiner.OPTION_SALTS, metadataService.getHashCount().toString());
-        itr.addOption(ReverseFeatureCombiner.OPTION_MAX_RESULTS, String.valueOf(maxResults));
-        lookupScanner.addScanIterator(itr);
+    /**
+     * Chooses the access path of a hypothesis from the bucketName:COUNT, FIRST and LAST statistics of its features
+     * and the bucketValueCount of the FeatureMetadata
+     */
+    private PlannedQuery planQuery(Hypothesis hypothesis, String bucketName, Authorizations auths) throws Exception {
+        // Separate the regular features and the RESTRICTION features
+        final Set<HypothesisFeature> restrictions = new HashSet<HypothesisFeature>();
+        final Set<HypothesisFeature> featuresSansRestrictions = Sets.newHashSet(hypothesis.hypothesisFeatures);
+        for(Iterator<HypothesisFeature> itr = featuresSansRestrictions.iterator(); itr.hasNext();){
+            HypothesisFeature feature = itr.next();
+            if(feature.type.compareTo("RESTRICTION") == 0){
+                restrictions.add(feature);
+                itr.remove();
+            }
+        }
 
-        // Fetch the results
-        try {
-            int resultCount = 0;
-            for(Map.Entry<Key, Value> entry : lookupScanner){
-                resultCount++;
-                results.add(new QueryEntry(entry.getValue().toString()));
-                if(resultCount > maxResults){
-                    hitCap.set(true);
-                    return results;
-                }
+        final BitMaskScanConfig scanInformation = featuresSansRestrictions.isEmpty() ? null
+                : getBitmaskScanInformationForQuery(featuresSansRestrictions, bucketName, auths);
+
+        final List<QueryPlan.FeatureEstimate> estimates = new ArrayList<QueryPlan.FeatureEstimate>(featuresSansRestrictions.size());
+        long bucketValueCount = 0;
+        boolean statisticsAvailable = true;
+        for(HypothesisFeature feature : featuresSansRestrictions){
+            final Long count = scanInformation.counts.get(feature.featureMetadataId);
+            statisticsAvailable &= (count != null);
+            estimates.add(new QueryPlan.FeatureEstimate(feature.featureMetadataId, feature.type, (count == null) ? 0 : count));
+
+            // The bucket holds at least as many bucket values as any of its features
+            final FeatureMetadata metadata = metadataService.getFeature(feature.featureMetadataId, auths);
+            if(metadata != null && metadata.bucketValueCount != null && metadata.bucketValueCount.get(bucketName) != null){
+                bucketValueCount = Math.max(bucketValueCount, metadata.bucketValueCount.get(bucketName));
+            } else {
+                statisticsAvailable = false;
             }
-        } finally {
-            lookupScanner.close();
         }
+        if(scanInformation != null && (scanInformation.first == null || scanInformation.last == null)){
+            statisticsAvailable = false;
+        }
+
+        final QueryPlan plan = queryPlanner.plan(estimates, bucketValueCount, metadataService.getShardCount(),
+                metadataService.getHashCount(), restrictionValues(restrictions).size(), statisticsAvailable,
+                scanInformation == null || !isQueryKnownEmpty(scanInformation));
 
-        return results;
+        // The BitmapANDIterator tests the Range bitmaps one at a time and stops at the first that misses, so test them
+        // most selective first.  The other features are OR'd into one bitmap per salt and tested together.
+        if(scanInformation != null){
+            final List<String> featureIds = new ArrayList<String>(plan.features.size());
+            for(QueryPlan.FeatureEstimate estimate : plan.features){
+                featureIds.add(estimate.featureMetadataId);
+            }
+            for(int i = 0; i < scanInformation.maskArray.size(); i++){
+                scanInformation.maskArray.get(i).setRangeBitmaps(rangeBitmapsInOrder(scanInformation.rangeBitmaps.get(i), featureIds));
+            }
+        }
+        return new PlannedQuery(plan, restrictions, featuresSansRestrictions, scanInformation);
     }
 
+    /**
+     * @return true if the statistics show that no bucket value can match, either because the FIRST/LAST ranges of the
+     * features do not overlap or because a salt has nothing to match against.  Missing FIRST/LAST statistics say
+     * nothing either way.
+     */
+    private static boolean isQueryKnownEmpty(BitMaskScanConfig bitmaskScanInformation) {
+        if(bitmaskScanInformation.first != null && bitmaskScanInformation.last != null
+                && bitmaskScanInformation.first.compareTo(bitmaskScanInformation.last) > 0){
+            return true;
+        }
+        for(BitmapANDIterator.CompareBits compareBits : bitmaskScanInformation.maskArray){
+            if(compareBits.getNonRangeCardinality() == 0 && compareBits.getRangeBitmaps().size() == 0){
+                return true;
+            }
+        }
+        return false;
+    }
 
+    /**
+     * @param listener Receives the QueryEntry's as they are found, or null to return them in the result_set
+     * @throws Exception If the scan fails.  The entries found before the failure are kept, and the result records the
+     *                   failure as its error.
+     */
     private QueryResult createQueryResult(String owner, String id, long maxResults, String justification, String userId,
-                                          Authorizations auths, AtomicBoolean keepWorking) throws Exception {
+                                          Authorizations auths, Cancellation cancellation, QueryResultListener listener) throws Exception {
         long startTime = System.currentTimeMillis();
 
         // Parameter verification
@@ -1438,25 +1945,11 @@ public class AccumuloQueryService implements AminoQueryService {
         MorePreconditions.checkNotNullOrEmpty(owner);
         MorePreconditions.checkNotNullOrEmpty(id);
 
-        QueryResult returnQR;
-        final ArrayList<QueryEntry> results;
-
         // Fetch the Hypothesis to run
         final Hypothesis hypothesis = metadataService.getHypothesis(userId, owner, id, auths);
         Preconditions.checkNotNull(hypothesis, "No hypothesis with owner '%s' and id '%s' could be found", owner, id);
         Preconditions.checkArgument(0 != hypothesis.hypothesisFeatures.size(), "There were no features for the Hypothesis");
 
-        // Separate the regular features and the RESTRICTION features
-        final Set<HypothesisFeature> restrictions = new HashSet<HypothesisFeature>();
-        final Set<HypothesisFeature> featuresSansRestrictions = Sets.newHashSet(hypothesis.hypothesisFeatures);
-        for(Iterator<HypothesisFeature> itr = featuresSansRestrictions.iterator(); itr.hasNext();){
-            HypothesisFeature feature = itr.next();
-            if(feature.type.compareTo("RESTRICTION") == 0){
-                restrictions.add(feature);
-                itr.remove();
-            }
-        }
-
         // Audit the query
         Preconditions.checkNotNull("Some how metadataService become null", metadataService);
         Preconditions.checkNotNull("Some how hypothesis is null", hypothesis);
@@ -1469,86 +1962,112 @@ public class AccumuloQueryService implements AminoQueryService {
         auditReq.setJustification(justification);
         auditQuery(bucketName, auditReq, auths, hypothesis.hypothesisFeatures, null);
 
-        // Can't just just a regular boolean to pass into the functions. That'd be too easy.  Stupid Java.
-        AtomicBoolean hitCap = new AtomicBoolean(false);
+        final PlannedQuery planned = planQuery(hypothesis, bucketName, auths);
+        if (logQueryStats) {
+            log.info("createQueryResult() plan=[" + planned.plan + "]");
+        }
+
         QueryStatisticsMap resultStats = new QueryStatisticsMap();
 
-        if(restrictions.size() > 0){
-            // Use the old way
-            results = resultsViaByBucket(hypothesis.datasourceid, bucketName, auths, restrictions, featuresSansRestrictions,
-                    resultStats, keepWorking, maxResults, hitCap);
-        } else {
-            // Use the new way
-            results = resultsViaReverseByBucket(hypothesis.datasourceid, bucketName, featuresSansRestrictions, auths, maxResults, hitCap);
-        }
+        // The result set is written as the entries are found, so the id of the result is picked up front
+        final Long reverseTimestamp = Long.MAX_VALUE - new Date().getTime();
+        final String cf = reverseTimestamp.toString();
+        final List<QueryEntry> results = (listener == null) ? new ArrayList<QueryEntry>() : null;
+        final ResultCollector collector;
+
+        Exception failure = null;
+        final BatchWriter writer = persistenceService.createBatchWriter(resultsTable);
+        try {
+            collector = new ResultCollector(new ResultSetChunks.Writer(writer, userId, cf, hypothesis.btVisibility, resultChunkSize),
+                    listener, results, cancellation, maxResults);
+
+            try {
+                switch(planned.plan.accessPath){
+                    case BY_BUCKET:
+                        resultsViaByBucket(hypothesis.datasourceid, bucketName, auths, planned.restrictions, planned.features,
+                                planned.scanInformation, resultStats, collector);
+                        break;
+                    case REVERSE_BY_BUCKET:
+                        resultsViaReverseByBucket(hypothesis.datasourceid, bucketName, planned.features, auths, maxResults, collector);
+                        break;
+                    default:
+                        // Nothing can match
+                        break;
+                }
+            } catch (Exception ex) {
+                // Cancelling closes the scanners out from under the scan.  Keep what was found so far.
+                if(!cancellation.isCancelled()){
+                    collector.failed(ex);
+                    failure = ex;
+                }
+            }
+
+            // The chunks already written need their summary, even if the scan failed
+            collector.finish();
 
-        final String errorString = (hitCap.get()) ? "Query exceeded " + maxResults + " results." : null;
+            writer.addMutations(resultSummaryMutations(userId, cf, hypothesis, collector.getCount(), collector.getError()));
+        } finally {
+            writer.close();
+        }
+        if(failure != null){
+            throw failure;
+        }
 
         if (logQueryStats) {
             log.info ("createQueryResult() elapsed=[" +
                     Math.round((System.currentTimeMillis() - startTime)/1000) +
-                    "], resultCount=[" + String.valueOf(results.size()) +
+                    "], resultCount=[" + String.valueOf(collector.getCount()) +
                     "], resultScanner=[" + resultStats +
                     "].");
         }
 
+        final QueryResult result = new QueryResult();
+        result.id = cf;
+        result.owner = userId;
+        result.timestamp = Long.MAX_VALUE - reverseTimestamp;
+        result.result_count = collector.getCount();
+        result.result_set = results;
+        result.hypothesisid = hypothesis.id;
+        result.hypothesisname = hypothesis.name;
+        result.hypothesis_at_runtime = hypothesis;
+        result.error = collector.getError();
+
         // Update the Hypothesis to reflect the new timestamps
         hypothesis.executed = System.currentTimeMillis();
-        returnQR =	persistQueryResults(userId, hypothesis, results, errorString);
-        hypothesis.queries.add(returnQR.id);
+        hypothesis.queries.add(result.id);
         metadataService.updateHypothesis(hypothesis, userId, auths);
-        return returnQR;
+        return result;
     }
 
+    /**
+     * @return true if there is something to scan.  The byBucket scan is bounded by the FIRST/LAST statistics, so without
+     * them there is nothing to scan either.
+     */
     private static boolean isByBucketScanNecessaryForQuery(BitMaskScanConfig bitmaskScanInformation) {
-		if (bitmaskScanInformation.first == null ||
-			 bitmaskScanInformation.last == null ||  
-			bitmaskScanInformation.first.compareTo(bitmaskScanInformation.last) == 1) 
-		{
-			return false;
-		}
-			
-		// Check to see if any of the masks cardinality is 0.  If it is, there's no need to do scan
-        for(BitmapANDIterator.CompareBits compareBits : bitmaskScanInformation.maskArray){
-            if(compareBits.getNonRangeCardinality() == 0 && compareBits.getRangeBitmaps().size() == 0){
-                return false;
-            }
-        }
-
-        return true;
+        return bitmaskScanInformation.first != null && bitmaskScanInformation.last != null
+                && !isQueryKnownEmpty(bitmaskScanInformation);
     }
 
-    private QueryResult persistQueryResults(String ownerId, Hypothesis hypothesis, List<QueryEntry>results, String error) throws Exception {
-        final Gson gson = new Gson();
-        final Long reverseTimestamp = Long.MAX_VALUE - new Date().getTime();
-		final String cf = reverseTimestamp.toString();
-
-        ArrayList<Mutation> mutations = new ArrayList<Mutation>(5);
-
-        mutations.add(persistenceService.createInsertMutation(ownerId, cf, "result_count", hypothesis.btVisibility, String.valueOf(results.size())));
-        mutations.add(persistenceService.createInsertMutation(ownerId, cf, "result_set", hypothesis.btVisibility, gson.toJson(results)));
+    /**
+     * @return The cells of a result other than its result set
+     */
+    private List<Mutation> resultSummaryMutations(String ownerId, String cf, Hypothesis hypothesis, long resultCount, String error) {
+        final ArrayList<Mutation> mutations = new ArrayList<Mutation>(6);
+        if(error != null){
+            mutations.add(persistenceService.createInsertMutation(ownerId, cf, "error", hypothesis.btVisibility, error));
+        }
+        mutations.add(persistenceService.createInsertMutation(ownerId, cf, "result_count", hypothesis.btVisibility, String.valueOf(resultCount)));
+        mutations.add(persistenceService.createInsertMutation(ownerId, cf, ResultSetChunks.CHUNK_SIZE, hypothesis.btVisibility, String.valueOf(resultChunkSize)));
         mutations.add(persistenceService.createInsertMutation(ownerId, cf, "id", hypothesis.btVisibility, hypothesis.id));
         mutations.add(persistenceService.createInsertMutation(ownerId, cf, "name", hypothesis.btVisibility, hypothesis.name));
         mutations.add(persistenceService.createInsertMutation(ownerId, cf, "hypothesis_at_runtime", hypothesis.btVisibility, hypothesis.toJson()));
-
-        persistenceService.insertRows(mutations, resultsTable);
-        final QueryResult result = new QueryResult();
-        result.id = cf;
-        result.timestamp = Long.MAX_VALUE - reverseTimestamp;
-        result.result_count = (long) results.size();
-        result.result_set = results;
-        result.hypothesisid = hypothesis.id;
-        result.hypothesisname = hypothesis.name;
-        result.hypothesis_at_runtime = hypothesis;
-        result.error = error;
-        return result;
+        return mutations;
     }
 
     // TODO This should be cleaned up - Jeremy
     private static void  addResultComponent(QueryResult result, String cq, String value) {
-        if (cq.compareTo("result_set") == 0) {
-            result.result_set = new Gson().fromJson(value, new TypeToken<List<QueryEntry>>(){}.getType());
-        } else if (cq.compareTo("result_count") == 0) {
+        // The result set is read separately, see ResultSetChunks
+        if (cq.compareTo("result_count") == 0) {
             result.result_count = Long.parseLong(value);
         } else if (cq.compareTo("name") == 0) {
 		    result.hypothesisname = value;
@@ -1556,6 +2075,8 @@ public class AccumuloQueryService implements AminoQueryService {
 			result.hypothesisid = value;
 		} else if (cq.compareTo("hypothesis_at_runtime") == 0) {
 			result.hypothesis_at_runtime = new Gson().fromJson(value, Hypothesis.class);
+		} else if (cq.compareTo("error") == 0) {
+			result.error = value;
 		}
     }
 		
@@ -1636,10 +2157,12 @@ public class AccumuloQueryService implements AminoQueryService {
 	 * @param resultScanRowId String in the form of  hypothesis.datasourceid + ":" + bucketName
 	 * @param shardCount The number of shards in the byBucket table
 	 * @param auths Accumulo Authorizations
+	 * @param scanInformation The bitmask scan information for the features if it was already fetched, else null
 	 * @return  true if a scan is necessary, false if no values would be found
 	 */
 	private boolean configureByValueScanner(BatchScanner scanner, String bucketName,
-		Set<HypothesisFeature> features, String resultScanRowId, Integer shardCount, Authorizations auths, Set<String> restrictions) throws Exception {
+		Set<HypothesisFeature> features, String resultScanRowId, Integer shardCount, Authorizations auths, Set<String> restrictions,
+		BitMaskScanConfig scanInformation) throws Exception {
 		Preconditions.checkNotNull(scanner, "BatchScanner can not be null");
 		
 		// Special case - we want to know if certain values are in the the byBucket table but we don't need to combine
@@ -1659,7 +2182,8 @@ public class AccumuloQueryService implements AminoQueryService {
 			return true;
 		}
 		
-		final BitMaskScanConfig bitmaskScanInformation = getBitmaskScanInformationForQuery(features, bucketName, auths);
+		final BitMaskScanConfig bitmaskScanInformation = (scanInformation != null) ? scanInformation
+				: getBitmaskScanInformationForQuery(features, bucketName, auths);
 		
 		if (!isByBucketScanNecessaryForQuery(bitmaskScanInformation)){
 			log.debug("ByBucketScan is not necessary for Query");
@@ -1671,8 +2195,7 @@ public class AccumuloQueryService implements AminoQueryService {
 		
 		// Create the configuration for the scanner iterator
         final IteratorSetting iteratorSetting = new IteratorSetting(30, "queryScanIterator", BitmapANDIterator.class.getCanonicalName());
-        final String optionString = new Gson().toJson(bitmaskScanInformation.maskArray);
-        iteratorSetting.addOption(BitmapANDIterator.OPTION_BITS, optionString);
+        iteratorSetting.addOption(BitmapANDIterator.OPTION_BITS, BitmapANDIterator.encodeBits(bitmaskScanInformation.maskArray));
 
         final AccumuloScanConfig config = new AccumuloScanConfig();
         config.setStartRow(resultScanRowId);
@@ -1694,6 +2217,46 @@ public class AccumuloQueryService implements AminoQueryService {
 		return true;
 	}
 
+	/**
+	 * Configures a BatchScanner for matching the values in the byBucket table against many hypotheses at once with
+	 * the HypothesisMatchIterator.  Each result has the bucket value as the column family and the id of the matching
+	 * hypothesis as the column qualifier.
+	 * @param scanner The BatchScanner to configure
+	 * @param resultScanRowId String in the form of  hypothesis.datasourceid + ":" + bucketName
+	 * @param bitsPerHypothesis The CompareBits, indexed by salt, of each hypothesis.  An empty list matches every value
+	 * @param first The first bucket value to scan, or null to scan from the start of the row
+	 * @param last The last bucket value to scan, or null to scan to the end of the row
+	 * @param shardCount The number of shards in the byBucket table
+	 * @param restrictions The bucket values to restrict the scan to
+	 */
+	private void configureHypothesisMatchScanner(BatchScanner scanner, String resultScanRowId,
+		Map<String, List<BitmapANDIterator.CompareBits>> bitsPerHypothesis, String first, String last, Integer shardCount,
+		Set<String> restrictions) {
+		Preconditions.checkNotNull(scanner, "BatchScanner can not be null");
+
+		scanner.clearScanIterators();
+		final IteratorSetting iteratorSetting = new IteratorSetting(30, "hypothesisMatchIterator", HypothesisMatchIterator.class.getCanonicalName());
+		iteratorSetting.addOption(HypothesisMatchIterator.OPTION_HYPOTHESES, HypothesisMatchIterator.encodeHypotheses(bitsPerHypothesis));
+		scanner.addScanIterator(iteratorSetting);
+
+		// The ranges have to hold every salt of the bucket values, so they start and end on column family boundaries
+		final List<Range> ranges = new ArrayList<Range>(shardCount);
+		for(int i = 0; i < shardCount; i++){
+			final Text row = new Text(i + ":" + resultScanRowId);
+			final Key startKey = (first != null) ? new Key(row, new Text(first)) : new Key(row);
+			final Key endKey = (last != null) ? new Key(row, new Text(last)).followingKey(PartialKey.ROW_COLFAM) : new Key(row).followingKey(PartialKey.ROW);
+			ranges.add(new Range(startKey, true, endKey, false));
+		}
+		scanner.setRanges(ranges);
+
+		// If there are restrictions, use them to optimize the scan
+		if(restrictions != null){
+			for(String it : restrictions){
+				scanner.fetchColumnFamily(new Text(it));
+			}
+		}
+	}
+
 	///////////////////////////////////////////////////////////////////////////
 	// Inner Classes
 	///////////////////////////////////////////////////////////////////////////
@@ -1702,11 +2265,16 @@ public class AccumuloQueryService implements AminoQueryService {
         public final String first;
         public final String last;
         public final List<BitmapANDIterator.CompareBits> maskArray; // One CompareBit per hash
+        public final List<? extends Map<String, AminoBitmap>> rangeBitmaps; // The Range bitmaps of each hash, by featureMetadataId
+        public final Map<String, Long> counts; // The number of bucket values per featureMetadataId
 
-        public BitMaskScanConfig(List<BitmapANDIterator.CompareBits> maskArray, String first, String last){
+        public BitMaskScanConfig(List<BitmapANDIterator.CompareBits> maskArray, List<? extends Map<String, AminoBitmap>> rangeBitmaps,
+                                 String first, String last, Map<String, Long> counts){
             this.maskArray = maskArray;
+            this.rangeBitmaps = rangeBitmaps;
             this.first = first;
             this.last = last;
+            this.counts = counts;
         }
     }
 
@@ -1737,7 +2305,7 @@ public class AccumuloQueryService implements AminoQueryService {
 
 		@Override
 		protected Collection<Hypothesis> flaggableCall() throws Exception {
-			return createNonPersistedHypotheses(datasourceid, bucketid, bucketValues, visibility, userid, justification, keepWorking, featureIds);
+			return createNonPersistedHypotheses(datasourceid, bucketid, bucketValues, visibility, userid, justification, cancellation, featureIds);
 		}
 	}
 	
@@ -1752,7 +2320,7 @@ public class AccumuloQueryService implements AminoQueryService {
 				
 		@Override
 		protected List<Hypothesis> flaggableCall() throws Exception {
-			return findHypothesesByBucketValues(bvRequest, keepWorking);
+			return findHypothesesByBucketValues(bvRequest, cancellation);
 		}
 	}
 	
@@ -1763,20 +2331,23 @@ public class AccumuloQueryService implements AminoQueryService {
 		final String justification;
 		final String userId;
 		final Authorizations auths;
+		final QueryResultListener listener;
 		
-		public CreateQueryResultCall(String owner, String hypothesisId, int maxResults, String justification, String userId, String[] visibility) {
+		public CreateQueryResultCall(String owner, String hypothesisId, int maxResults, String justification, String userId, String[] visibility,
+									 QueryResultListener listener) {
 			this.owner = owner;
 			this.hypothesisId = hypothesisId;
 			this.maxResults = maxResults;
 			this.justification = justification;
 			this.userId = userId;
 			this.auths = new Authorizations(visibility);
+			this.listener = listener;
 			this.threadName = "CreateQueryResultCall";				
 		}
 		
 		@Override
 		protected QueryResult flaggableCall() throws Exception {
-			return createQueryResult(owner, hypothesisId, maxResults, justification, userId, auths, keepWorking);
+			return createQueryResult(owner, hypothesisId, maxResults, justification, userId, auths, cancellation, listener);
 		}
 	}
 
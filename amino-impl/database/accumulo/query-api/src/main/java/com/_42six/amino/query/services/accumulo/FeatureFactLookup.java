@@ -0,0 +1,181 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import com.googlecode.javaewah.IntIterator;
+import org.apache.accumulo.core.data.Range;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inverted lookup from the [feature fact index, salt] pairs set in the byBucket bitmaps to the bucket values whose
+ * bitmaps they were set in.
+ *
+ * Each entry is packed into a single long as index(31 bits) | salt(8 bits) | bucket value id(24 bits), so the whole
+ * lookup is one primitive array that is sorted and de-duplicated once, and looked up with a binary search.  Bucket
+ * values are referred to by an id, which is their position in whatever list the caller keeps them in.
+ */
+public final class FeatureFactLookup {
+
+    public static final int MAX_SALTS = 1 << 8;
+    public static final int MAX_BUCKET_VALUES = 1 << 24;
+
+    private static final int SALT_SHIFT = 24;
+    private static final int INDEX_SHIFT = 32;
+    private static final long BUCKET_VALUE_MASK = MAX_BUCKET_VALUES - 1;
+
+    private long[] entries = new long[1024];
+    private int size = 0;
+    private boolean built = false;
+
+    /**
+     * Adds every bit of a byBucket bitmap
+     * @param bucketValueId The id of the bucket value the bitmap belongs to
+     * @param salt The salt of the bitmap
+     * @param bitmap The feature fact indexes
+     */
+    public void add(int bucketValueId, int salt, AminoBitmap bitmap) {
+        checkIds(bucketValueId, salt);
+        final long suffix = ((long) salt << SALT_SHIFT) | bucketValueId;
+        final IntIterator bits = bitmap.getBitmap().intIterator();
+        while (bits.hasNext()) {
+            append(((long) bits.next() << INDEX_SHIFT) | suffix);
+        }
+    }
+
+    /**
+     * Adds a single feature fact index
+     */
+    public void add(int bucketValueId, int salt, int featureFactIndex) {
+        checkIds(bucketValueId, salt);
+        append(((long) featureFactIndex << INDEX_SHIFT) | ((long) salt << SALT_SHIFT) | bucketValueId);
+    }
+
+    /**
+     * Sorts and de-duplicates the entries.  Must be called after the last add and before any lookups.
+     */
+    public void build() {
+        Arrays.sort(entries, 0, size);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || entries[n - 1] != entries[i]) {
+                entries[n++] = entries[i];
+            }
+        }
+        size = n;
+        built = true;
+    }
+
+    /**
+     * @return The number of unique [feature fact index, salt, bucket value] entries
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Finds the first entry for a feature fact index and salt
+     * @return The position of the first entry, or -1 if no bucket value had the index set for the salt
+     */
+    public int indexOf(int featureFactIndex, int salt) {
+        checkBuilt();
+        if (featureFactIndex < 0 || salt < 0 || salt >= MAX_SALTS) {
+            return -1;
+        }
+        final long prefix = ((long) featureFactIndex << INDEX_SHIFT) | ((long) salt << SALT_SHIFT);
+        int pos = Arrays.binarySearch(entries, 0, size, prefix);
+        if (pos < 0) {
+            pos = -(pos + 1);
+        }
+        return matches(pos, featureFactIndex, salt) ? pos : -1;
+    }
+
+    /**
+     * @return true if the entry at the position is for the feature fact index and salt.  Used to walk the entries
+     * starting at {@link #indexOf(int, int)}.
+     */
+    public boolean matches(int position, int featureFactIndex, int salt) {
+        return position < size &&
+                (entries[position] & ~BUCKET_VALUE_MASK) == (((long) featureFactIndex << INDEX_SHIFT) | ((long) salt << SALT_SHIFT));
+    }
+
+    /**
+     * @return The bucket value id of the entry at the position
+     */
+    public int bucketValueAt(int position) {
+        return (int) (entries[position] & BUCKET_VALUE_MASK);
+    }
+
+    /**
+     * Creates the row Ranges of the feature lookup table that hold the feature facts of every entry.  There is one
+     * Range per feature fact index no matter how many salts or bucket values it has, and numerically consecutive
+     * indexes of the same length (i.e. "1234" and "1235") share a Range.  Such a Range can also cover the rows of other
+     * indexes ("12340"), so the caller must check each row with {@link #indexOf(int, int)}.
+     */
+    public Collection<Range> getRanges() {
+        checkBuilt();
+
+        // The unique indexes, in the order that their rows sort
+        final List<String> rows = new ArrayList<>();
+        long lastIndex = -1;
+        for (int i = 0; i < size; i++) {
+            final long index = entries[i] >>> INDEX_SHIFT;
+            if (index != lastIndex) {
+                rows.add(Long.toString(index));
+                lastIndex = index;
+            }
+        }
+        Collections.sort(rows);
+
+        final List<Range> ranges = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= rows.size(); i++) {
+            if (i == rows.size() || !isNextRow(rows.get(i - 1), rows.get(i))) {
+                final Text startRow = new Text(rows.get(start));
+                ranges.add((start == i - 1) ? new Range(startRow) : new Range(startRow, true, new Text(rows.get(i - 1)), true));
+                start = i;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * @return true if the row comes right after the previous row, numerically and in sort order
+     */
+    private static boolean isNextRow(String previous, String row) {
+        return previous.length() == row.length() && Long.parseLong(row) == Long.parseLong(previous) + 1;
+    }
+
+    private void append(long entry) {
+        if (built) {
+            throw new IllegalStateException("Entries can not be added after build()");
+        }
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size++] = entry;
+    }
+
+    private void checkBuilt() {
+        if (!built) {
+            throw new IllegalStateException("build() has not been called");
+        }
+    }
+
+    private static void checkIds(int bucketValueId, int salt) {
+        if (bucketValueId < 0 || bucketValueId >= MAX_BUCKET_VALUES) {
+            throw new IllegalArgumentException("Bucket value id out of range: " + bucketValueId);
+        }
+        if (salt < 0 || salt >= MAX_SALTS) {
+            throw new IllegalArgumentException("Salt out of range: " + salt);
+        }
+    }
+}
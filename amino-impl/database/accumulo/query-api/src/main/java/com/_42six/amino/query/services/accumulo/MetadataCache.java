@@ -0,0 +1,172 @@
+package com._42six.amino.query.services.accumulo;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.accumulo.core.security.Authorizations;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size and time bounded cache of the JSON of metadata entities, keyed by the row of the entity and the authorizations
+ * it was read with.  Entries are refreshed in the background once they are older than the refresh time, so hot
+ * entries are never waited on, and dropped once they are older than the expire time.  Entities that were not found
+ * are cached as well.
+ *
+ * Only the JSON is cached, the entities are still parsed per call because callers are free to modify them.
+ */
+public class MetadataCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_EXPIRE_SECONDS = 600;
+    public static final long DEFAULT_REFRESH_SECONDS = 60;
+
+    /**
+     * Reads the JSON of an entity from the metadata table
+     */
+    public interface Loader {
+        /**
+         * @return The JSON, or absent if the entity was not found
+         */
+        Optional<String> load(String row, Authorizations auths) throws IOException;
+    }
+
+    private final LoadingCache<EntityKey, Optional<String>> cache;
+    private final ExecutorService refreshExecutor;
+
+    public MetadataCache(Loader loader) {
+        this(loader, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_SECONDS, DEFAULT_REFRESH_SECONDS);
+    }
+
+    /**
+     * @param loader Reads entities that are not cached
+     * @param maximumSize The maximum number of entries
+     * @param expireSeconds How long an entry is kept after it was loaded
+     * @param refreshSeconds How long after it was loaded an entry is reloaded in the background, the next time it is
+     *                       read.  Should be less than expireSeconds, 0 to never refresh.
+     */
+    public MetadataCache(final Loader loader, long maximumSize, long expireSeconds, long refreshSeconds) {
+        refreshExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("amino-metadata-refresh-%d").build());
+
+        final CacheLoader<EntityKey, Optional<String>> cacheLoader = new CacheLoader<EntityKey, Optional<String>>() {
+            @Override
+            public Optional<String> load(EntityKey key) throws IOException {
+                return loader.load(key.row, key.auths);
+            }
+        };
+
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats();
+        if (refreshSeconds > 0) {
+            builder.refreshAfterWrite(refreshSeconds, TimeUnit.SECONDS);
+        }
+        cache = builder.build(CacheLoader.asyncReloading(cacheLoader, refreshExecutor));
+    }
+
+    /**
+     * Gets the JSON of an entity, loading it if it is not cached
+     * @param row The row of the entity in the metadata table
+     * @param auths The authorizations to read the entity with
+     * @return The JSON, or null if the entity was not found
+     */
+    public String get(String row, Authorizations auths) throws IOException {
+        try {
+            return cache.get(new EntityKey(row, auths)).orNull();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Drops a single entity, for every authorization set it was read with
+     */
+    public void invalidate(String row) {
+        final List<EntityKey> keys = new ArrayList<>();
+        for (EntityKey key : cache.asMap().keySet()) {
+            if (key.row.equals(row)) {
+                keys.add(key);
+            }
+        }
+        cache.invalidateAll(keys);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return The hit, miss and load statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Stops the background refresh thread.  Refreshes happen synchronously afterwards.
+     */
+    public void shutdown() {
+        refreshExecutor.shutdown();
+    }
+
+    /**
+     * The row of an entity and the authorizations it was read with.  The authorizations are compared as a sorted
+     * list, so the same set of authorizations in a different order shares the entry.
+     */
+    private static final class EntityKey {
+        final String row;
+        final Authorizations auths;
+        final String sortedAuths;
+
+        EntityKey(String row, Authorizations auths) {
+            this.row = row;
+            this.auths = auths;
+
+            final List<String> names = new ArrayList<>(auths.size());
+            for (byte[] auth : auths.getAuthorizations()) {
+                names.add(new String(auth, StandardCharsets.UTF_8));
+            }
+            Collections.sort(names);
+            this.sortedAuths = Joiner.on(',').join(names);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EntityKey)) {
+                return false;
+            }
+            final EntityKey other = (EntityKey) o;
+            return row.equals(other.row) && sortedAuths.equals(other.sortedAuths);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * row.hashCode() + sortedAuths.hashCode();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com._42six.amino.query.services.accumulo;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of [bucket value id, feature id] pairs in an open addressed table of primitive longs and ints,
+ * so that counting does not box or allocate per increment.  Used to weed out bitmap hash collisions, where a feature
+ * fact is only a real match for a bucket value if it was found for every salt.
+ */
+public final class PairCounter {
+
+    private static final long EMPTY = -1L;
+    private static final int MAX_INITIAL_CAPACITY = 1 << 20;
+
+    private long[] keys;
+    private int[] counts;
+    private int size = 0;
+    private int mask;
+
+    public PairCounter() {
+        this(64);
+    }
+
+    public PairCounter(int expectedPairs) {
+        int capacity = 16;
+        while (capacity < expectedPairs * 2L && capacity < MAX_INITIAL_CAPACITY) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds one to the count of the pair
+     * @return The new count
+     */
+    public int increment(int bucketValueId, int featureId) {
+        final long key = pack(bucketValueId, featureId);
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return ++counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        counts[slot] = 1;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return 1;
+    }
+
+    public int get(int bucketValueId, int featureId) {
+        final long key = pack(bucketValueId, featureId);
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of slots.  Use with {@link #countAt(int)}, {@link #bucketValueAt(int)} and
+     * {@link #featureAt(int)} to walk the pairs; empty slots have a count of 0.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public int countAt(int slot) {
+        return (keys[slot] == EMPTY) ? 0 : counts[slot];
+    }
+
+    public int bucketValueAt(int slot) {
+        return (int) (keys[slot] >>> 32);
+    }
+
+    public int featureAt(int slot) {
+        return (int) keys[slot];
+    }
+
+    private static long pack(int bucketValueId, int featureId) {
+        if (bucketValueId < 0 || featureId < 0) {
+            throw new IllegalArgumentException("Ids can not be negative");
+        }
+        return ((long) bucketValueId << 32) | featureId;
+    }
+
+    private int slot(long key) {
+        // Spread the bits so that neighbouring ids don't cluster
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
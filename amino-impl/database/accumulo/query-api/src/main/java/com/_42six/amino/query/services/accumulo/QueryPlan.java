@@ -0,0 +1,70 @@
+package com._42six.amino.query.services.accumulo;
+
+import com.google.gson.Gson;
+
+import java.util.List;
+
+/**
+ * How a hypothesis will be run by {@link AccumuloQueryService#createResult}, and the estimates the choice was based
+ * on.  Returned by {@link AccumuloQueryService#explainResult}.
+ */
+public class QueryPlan {
+
+    public enum AccessPath {
+        /** Scan the byBucket table, testing every bucket value against the combined feature bitmaps */
+        BY_BUCKET,
+        /** AND the reverse bitmaps of the features per shard, then look up the bucket values of the matching bits */
+        REVERSE_BY_BUCKET,
+        /** A feature matches no bucket values, so nothing is scanned */
+        NONE
+    }
+
+    /**
+     * The statistics of one feature of the hypothesis
+     */
+    public static class FeatureEstimate {
+        public final String featureMetadataId;
+        public final String type;
+        /** The number of bucket values with a matching feature fact, from the bucketName:COUNT cells */
+        public final long count;
+        /** The fraction of the bucket values that match */
+        public double selectivity;
+
+        public FeatureEstimate(String featureMetadataId, String type, long count) {
+            this.featureMetadataId = featureMetadataId;
+            this.type = type;
+            this.count = count;
+        }
+    }
+
+    public AccessPath accessPath;
+
+    /** Why the access path was chosen */
+    public String reason;
+
+    /**
+     * The features, most selective first.  The byBucket path tests the bitmaps of the interval features in this order.
+     * The other features are combined into one bitmap per salt and tested at once, and the reverse path ANDs every
+     * feature of a shard together, so for them the order only reports the estimates.
+     */
+    public List<FeatureEstimate> features;
+
+    /** The number of bucket values in the bucket */
+    public long bucketValueCount;
+
+    /** The estimated number of results, assuming the features are independent */
+    public double estimatedResults;
+
+    /** The estimated cost of each path, in units of reading one cell */
+    public double byBucketCost;
+    public double reverseByBucketCost;
+
+    public String toJson() {
+        return new Gson().toJson(this);
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
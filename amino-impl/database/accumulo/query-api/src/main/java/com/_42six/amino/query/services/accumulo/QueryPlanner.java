@@ -0,0 +1,86 @@
+package com._42six.amino.query.services.accumulo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Chooses between the byBucket and reverse byBucket paths for a hypothesis from the feature statistics written by the
+ * StatsReducer and FeatureMetadataJob.
+ *
+ * The byBucket path reads every bucket value of the bucket once per salt, sequentially.  The reverse path seeks to
+ * every (shard, salt, feature) in the reverse byBucket table and then seeks once per salt for each result in the
+ * reverse feature lookup table.  A seek costs seekCost cell reads.  The number of results is estimated as the number of
+ * bucket values times the product of the feature selectivities, as if the features were independent.
+ */
+public class QueryPlanner {
+
+    public static final double DEFAULT_SEEK_COST = 100;
+
+    private double seekCost = DEFAULT_SEEK_COST;
+
+    public void setSeekCost(double seekCost) {
+        this.seekCost = seekCost;
+    }
+
+    /**
+     * @param features The statistics of the non RESTRICTION features
+     * @param bucketValueCount The number of bucket values in the bucket
+     * @param shardCount The number of shards
+     * @param hashCount The number of salts
+     * @param restrictionCount The number of RESTRICTION values, 0 if there are none
+     * @param statisticsAvailable false if the counts or bucketValueCount are missing, in which case the estimates mean
+     *                            nothing and the reverse path is used when it can be
+     * @param matchesPossible false if one of the features is known to match nothing
+     * @return The plan
+     */
+    public QueryPlan plan(List<QueryPlan.FeatureEstimate> features, long bucketValueCount, int shardCount, int hashCount,
+                          int restrictionCount, boolean statisticsAvailable, boolean matchesPossible) {
+        final QueryPlan plan = new QueryPlan();
+        final long total = Math.max(bucketValueCount, 1);
+        plan.bucketValueCount = bucketValueCount;
+
+        double estimatedResults = (restrictionCount > 0) ? Math.min(restrictionCount, total) : total;
+        plan.features = new ArrayList<QueryPlan.FeatureEstimate>(features);
+        for (QueryPlan.FeatureEstimate feature : plan.features) {
+            feature.selectivity = Math.min(1.0, (double) feature.count / total);
+            estimatedResults *= feature.selectivity;
+        }
+        Collections.sort(plan.features, new Comparator<QueryPlan.FeatureEstimate>() {
+            @Override
+            public int compare(QueryPlan.FeatureEstimate a, QueryPlan.FeatureEstimate b) {
+                return Double.compare(a.selectivity, b.selectivity);
+            }
+        });
+        plan.estimatedResults = matchesPossible ? estimatedResults : 0;
+
+        // With restrictions the byBucket scan only reads the restricted values, fetched with a seek per shard each
+        final long scannedValues = (restrictionCount > 0) ? Math.min(restrictionCount, total) : total;
+        final long byBucketSeeks = (long) shardCount * Math.max(restrictionCount, 1);
+        plan.byBucketCost = byBucketSeeks * seekCost + (double) scannedValues * hashCount;
+        plan.reverseByBucketCost = (double) shardCount * hashCount * features.size() * seekCost
+                + plan.estimatedResults * hashCount * seekCost;
+
+        if (!matchesPossible) {
+            plan.accessPath = QueryPlan.AccessPath.NONE;
+            plan.reason = "A feature matches no bucket values";
+        } else if (restrictionCount > 0) {
+            plan.accessPath = QueryPlan.AccessPath.BY_BUCKET;
+            plan.reason = "RESTRICTION features are only supported by the byBucket path";
+        } else if (features.isEmpty()) {
+            plan.accessPath = QueryPlan.AccessPath.BY_BUCKET;
+            plan.reason = "There are no features to look up in the reverse tables";
+        } else if (!statisticsAvailable) {
+            plan.accessPath = QueryPlan.AccessPath.REVERSE_BY_BUCKET;
+            plan.reason = "There are no statistics for the features";
+        } else if (plan.reverseByBucketCost <= plan.byBucketCost) {
+            plan.accessPath = QueryPlan.AccessPath.REVERSE_BY_BUCKET;
+            plan.reason = "Estimated reverse byBucket cost is lower";
+        } else {
+            plan.accessPath = QueryPlan.AccessPath.BY_BUCKET;
+            plan.reason = "Estimated byBucket cost is lower";
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,119 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.entity.QueryEntry;
+import com._42six.amino.common.util.concurrent.Cancellation;
+import com._42six.amino.query.services.QueryResultListener;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Takes the QueryEntry's of a running query.  Stops the query once maxResults have been found, the query is
+ * cancelled or the caller's listener asks to, and otherwise writes each entry to the result set and hands it
+ * to the listener.  The scans register their scanners with the cancellation.  If a scan fails, what it found is
+ * still written and the failure is reported by {@link #getError()}.
+ */
+class ResultCollector {
+    private static final Logger log = Logger.getLogger(ResultCollector.class);
+
+    private final ResultSetChunks.Writer chunks;
+    private final QueryResultListener listener;
+    private final List<QueryEntry> results;
+    final Cancellation cancellation;
+    private final long maxResults;
+
+    private long count = 0;
+    private boolean hitCap = false;
+    private boolean stoppedByListener = false;
+    private Exception failure = null;
+
+    /**
+     * @param chunks Where to write the result set
+     * @param listener The caller's listener, or null
+     * @param results Also collects the entries if not null
+     * @param cancellation Cancelled when the query should give up
+     * @param maxResults The most entries to take
+     */
+    ResultCollector(ResultSetChunks.Writer chunks, QueryResultListener listener, List<QueryEntry> results,
+                    Cancellation cancellation, long maxResults) {
+        this.chunks = chunks;
+        this.listener = listener;
+        this.results = results;
+        this.cancellation = cancellation;
+        this.maxResults = maxResults;
+        cancellation.setProgressUnits("results");
+    }
+
+    /**
+     * @return false if the query should stop
+     */
+    boolean isWorking() {
+        if (!cancellation.keepWorking()) {
+            log.warn("createQueryResult told to stop working");
+            return false;
+        }
+        return !stoppedByListener;
+    }
+
+    /**
+     * @return true to keep going, false if the query should stop
+     */
+    boolean add(QueryEntry entry) throws MutationsRejectedException {
+        if (!isWorking()) {
+            return false;
+        }
+        if (count == maxResults) {
+            hitCap = true;
+            return false;
+        }
+        count++;
+        cancellation.addProgress(1);
+        chunks.add(entry);
+        if (results != null) {
+            results.add(entry);
+        }
+        if (listener != null && !listener.onEntry(entry)) {
+            stoppedByListener = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the scan failed part way through.  The entries taken so far are kept.
+     */
+    void failed(Exception cause) {
+        failure = cause;
+    }
+
+    /**
+     * Writes the last partial chunk.  Call once the scan has finished, whether or not it failed.
+     */
+    void finish() throws MutationsRejectedException {
+        chunks.flush();
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Why the query stopped early, or null if it ran to completion
+     */
+    String getError() {
+        if (failure != null) {
+            return "Query failed after " + count + " results: " + failure;
+        }
+        if (hitCap) {
+            return "Query exceeded " + maxResults + " results.";
+        }
+        if (stoppedByListener) {
+            return "Query stopped after " + count + " results.";
+        }
+        if (!cancellation.keepWorking()) {
+            return "Query timed out after " + count + " results.";
+        }
+        return null;
+    }
+}
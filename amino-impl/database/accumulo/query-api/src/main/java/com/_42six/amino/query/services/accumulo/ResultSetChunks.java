@@ -0,0 +1,178 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.entity.QueryEntry;
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Storage of the result set of a QueryResult as fixed size chunks.  Each chunk is a gzipped JSON array of up to
+ * chunkSize QueryEntries in its own column qualifier, result_set_chunk_00000000, result_set_chunk_00000001, ..., so
+ * no cell grows with the size of the result and a reader only holds one chunk at a time.  The chunk size is kept in the
+ * result_chunk_size column so that a page can be read by seeking straight to the chunk that holds it.
+ *
+ * Results written before chunking have their whole result set as JSON in the result_set column; the readers accept
+ * either.
+ */
+public final class ResultSetChunks {
+
+    public static final String LEGACY_RESULT_SET = "result_set";
+    public static final String CHUNK_PREFIX = "result_set_chunk_";
+    public static final String CHUNK_SIZE = "result_chunk_size";
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    private static final Gson gson = new Gson();
+
+    private ResultSetChunks() {
+        // Static methods only
+    }
+
+    /**
+     * @return The column qualifier of a chunk.  Zero padded so that the chunks sort in order.
+     */
+    public static String qualifier(int chunk) {
+        return String.format("%s%08d", CHUNK_PREFIX, chunk);
+    }
+
+    public static boolean isChunk(Text columnQualifier) {
+        return columnQualifier.toString().startsWith(CHUNK_PREFIX);
+    }
+
+    /**
+     * Gzips the entries as a JSON array, without building the JSON String
+     */
+    public static byte[] encode(List<QueryEntry> entries) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(bytes), Charsets.UTF_8))) {
+            writer.beginArray();
+            for (QueryEntry entry : entries) {
+                gson.toJson(entry, QueryEntry.class, writer);
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            // Can't happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<QueryEntry> decode(byte[] chunk) throws IOException {
+        final List<QueryEntry> entries = new ArrayList<QueryEntry>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(chunk)), Charsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                entries.add(gson.<QueryEntry>fromJson(reader, QueryEntry.class));
+            }
+            reader.endArray();
+        }
+        return entries;
+    }
+
+    /**
+     * Writes a result set a chunk at a time as its entries arrive, so only the current chunk is held in memory.  The
+     * BatchWriter sends the chunks in the background.
+     */
+    public static class Writer {
+        private final BatchWriter writer;
+        private final Text row;
+        private final Text columnFamily;
+        private final ColumnVisibility visibility;
+        private final int chunkSize;
+        private final List<QueryEntry> chunk;
+        private int chunks = 0;
+
+        /**
+         * @param writer Where to write the chunks.  Not closed by this.
+         * @param row The owner of the result
+         * @param columnFamily The id of the result
+         * @param visibility The visibility of the cells
+         * @param chunkSize The number of entries per chunk
+         */
+        public Writer(BatchWriter writer, String row, String columnFamily, String visibility, int chunkSize) {
+            this.writer = writer;
+            this.row = new Text(row);
+            this.columnFamily = new Text(columnFamily);
+            this.visibility = new ColumnVisibility(visibility);
+            this.chunkSize = chunkSize;
+            this.chunk = new ArrayList<QueryEntry>(chunkSize);
+        }
+
+        public void add(QueryEntry entry) throws MutationsRejectedException {
+            chunk.add(entry);
+            if (chunk.size() == chunkSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes the entries that do not fill a whole chunk.  Call once all of the entries have been added.
+         */
+        public void flush() throws MutationsRejectedException {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            final Mutation m = new Mutation(row);
+            m.put(columnFamily, new Text(qualifier(chunks)), visibility, new Value(encode(chunk)));
+            writer.addMutation(m);
+            chunk.clear();
+            chunks++;
+        }
+
+        /**
+         * @return The number of chunks written so far
+         */
+        public int getChunkCount() {
+            return chunks;
+        }
+    }
+
+    /**
+     * Reads the entries of a result set from its cells, one chunk at a time
+     * @param cells The chunk cells in order, or the legacy result_set cell.  Other cells are skipped.
+     * @return The entries, decoding the next chunk once the previous one has been used up
+     */
+    public static Iterator<QueryEntry> entries(final Iterator<Map.Entry<Key, Value>> cells) {
+        return new AbstractIterator<QueryEntry>() {
+            private Iterator<QueryEntry> chunk = Iterators.emptyIterator();
+
+            @Override
+            protected QueryEntry computeNext() {
+                while (!chunk.hasNext()) {
+                    if (!cells.hasNext()) {
+                        return endOfData();
+                    }
+                    final Map.Entry<Key, Value> cell = cells.next();
+                    final Text cq = cell.getKey().getColumnQualifier();
+                    if (isChunk(cq)) {
+                        try {
+                            chunk = decode(cell.getValue().get()).iterator();
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Corrupt result set chunk " + cell.getKey(), e);
+                        }
+                    } else if (cq.toString().equals(LEGACY_RESULT_SET)) {
+                        final List<QueryEntry> all = gson.fromJson(cell.getValue().toString(),
+                                new TypeToken<List<QueryEntry>>(){}.getType());
+                        chunk = all.iterator();
+                    }
+                }
+                return chunk.next();
+            }
+        };
+    }
+}
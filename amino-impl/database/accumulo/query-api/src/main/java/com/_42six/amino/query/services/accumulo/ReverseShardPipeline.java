@@ -0,0 +1,163 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.entity.QueryEntry;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the per shard lookups of a reverse byBucket query on a shared executor, a bounded number at a time, and feeds
+ * the bucket values they find to a ResultCollector on the calling thread.  The shards hand their values over through a
+ * bounded queue, so a slow collector holds the shards back rather than letting the values pile up in memory.  Once the
+ * collector wants no more, the shards still running are told to stop.  One instance per query.
+ */
+class ReverseShardPipeline {
+    private static final Logger log = Logger.getLogger(ReverseShardPipeline.class);
+
+    /**
+     * Marks the end of the bucket values of a shard
+     */
+    private static final QueryEntry SHARD_DONE = new QueryEntry();
+    static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Looks up the bucket values of one shard
+     */
+    interface ShardLookup {
+        /**
+         * Hands each bucket value to {@link ReverseShardPipeline#handOver}, giving up once it returns false
+         *
+         * @param shard The shard to look up
+         * @param pipeline Where to hand the bucket values
+         */
+        void lookup(int shard, ReverseShardPipeline pipeline) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final int concurrency;
+    private final BlockingQueue<QueryEntry> found;
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+
+    /**
+     * @param executor Runs the shard lookups.  May be shared between queries.
+     * @param concurrency The most shards of this query to look up at the same time
+     * @param queueSize The most bucket values waiting for the collector
+     */
+    ReverseShardPipeline(ExecutorService executor, int concurrency, int queueSize) {
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.found = new ArrayBlockingQueue<QueryEntry>(queueSize);
+    }
+
+    /**
+     * Looks up every shard, or until the collector wants no more.  If every shard was looked up, the first that failed
+     * has its exception rethrown.
+     *
+     * @param shardCount The number of shards
+     * @param lookup Looks up each shard
+     * @param results Takes the bucket values as they are found
+     */
+    void run(int shardCount, ShardLookup lookup, ResultCollector results) throws Exception {
+        final List<Future<Void>> shards = new ArrayList<Future<Void>>(shardCount);
+        int nextShard = 0;
+        int running = 0;
+        boolean finished = false;
+        try {
+            while(nextShard < shardCount && running < concurrency){
+                shards.add(executor.submit(new Shard(nextShard, lookup)));
+                nextShard++;
+                running++;
+            }
+
+            while(running > 0){
+                if(!results.isWorking()){
+                    return;
+                }
+                final QueryEntry entry = found.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if(entry == null){
+                    continue;
+                }
+                if(entry == SHARD_DONE){
+                    running--;
+                    if(nextShard < shardCount){
+                        shards.add(executor.submit(new Shard(nextShard, lookup)));
+                        nextShard++;
+                        running++;
+                    }
+                } else if(!results.add(entry)){
+                    return;
+                }
+            }
+            finished = true;
+        } finally {
+            // Tells the shards still running to give up
+            stop.set(true);
+        }
+
+        // Every shard has finished.  Surface any that failed.
+        if(finished){
+            for(Future<Void> shard : shards){
+                try {
+                    shard.get();
+                } catch (ExecutionException e) {
+                    log.error(e.getCause());
+                    throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true once the query has stopped taking bucket values
+     */
+    boolean isStopped() {
+        return stop.get();
+    }
+
+    /**
+     * Passes a bucket value to the query thread, waiting while the queue is full
+     *
+     * @return false if the query stopped before the entry could be handed over
+     */
+    boolean handOver(QueryEntry entry) throws InterruptedException {
+        while(!stop.get()){
+            if(found.offer(entry, POLL_MILLIS, TimeUnit.MILLISECONDS)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the lookup of a shard, ending by handing over SHARD_DONE whether or not it failed
+     */
+    private class Shard implements Callable<Void> {
+        private final int shard;
+        private final ShardLookup lookup;
+
+        Shard(int shard, ShardLookup lookup) {
+            this.shard = shard;
+            this.lookup = lookup;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try {
+                lookup.lookup(shard, ReverseShardPipeline.this);
+                return null;
+            } finally {
+                handOver(SHARD_DONE);
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com._42six.amino.query.services.accumulo;
 
 import com._42six.amino.common.Group;
 import com._42six.amino.common.GroupMember;
+import com._42six.amino.common.entity.Hypothesis;
+import com._42six.amino.common.entity.HypothesisFeature;
 import com._42six.amino.common.query.requests.AddUsersRequest;
 import com._42six.amino.common.query.requests.CreateGroupRequest;
 import com.google.common.collect.Sets;
@@ -22,7 +24,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,6 +46,8 @@ public class AccumuloGroupServiceTest {
     private static final String METADATA_TABLE = "amino_group_metadata";
     private static final String MEMBERSHIP_TABLE = "amino_group_membership";
     private static final String HYPOTHESIS_LOOKUP = "amino_group_hypothesis_lookup";
+    private static final String HYPOTHESIS_TABLE = "amino_hypothesis";
+    private static final String USER_HYPOTHESIS_INDEX = "amino_user_hypothesis_index";
 
     static AccumuloGroupService groupService;
     static AccumuloPersistenceService persistenceService;
@@ -371,6 +378,67 @@ public class AccumuloGroupServiceTest {
         groupService.addToGroup(request);
     }
 
+    @Test
+    /**
+     * Tests that the user Hypothesis index follows the group membership and is what the group Hypotheses are listed from
+     */
+    public void userHypothesisIndex() throws Exception {
+        initalizeTables();
+        for(String table : Arrays.asList(HYPOTHESIS_TABLE, HYPOTHESIS_LOOKUP, USER_HYPOTHESIS_INDEX)){
+            if(tableOps.exists(table)){
+                tableOps.delete(table);
+            }
+            tableOps.create(table);
+        }
+        groupService.setHypothesisTable(HYPOTHESIS_TABLE);
+        groupService.setUserHypothesisIndex(USER_HYPOTHESIS_INDEX);
+
+        try {
+            // A Hypothesis owned by member1 that group1 can see
+            final Hypothesis hypothesis = new Hypothesis();
+            hypothesis.owner = "member1";
+            hypothesis.id = "hypothesis1";
+            hypothesis.name = "Shared";
+            hypothesis.btVisibility = "U";
+            hypothesis.canView = new ArrayList<>(Arrays.asList("group1"));
+            hypothesis.hypothesisFeatures = new HashSet<HypothesisFeature>();
+            persistenceService.insertRow("member1", "hypothesis1", "name", "U", "Shared", HYPOTHESIS_TABLE);
+            persistenceService.insertRow("member1", "hypothesis1", "canView", "U", "[\"group1\"]", HYPOTHESIS_TABLE);
+            persistenceService.insertRow("group1", "member1", "hypothesis1", "U", "", HYPOTHESIS_LOOKUP);
+            groupService.indexHypothesis(hypothesis, auths);
+
+            assertEquals(1, groupService.getIndexedHypothesesOwnedBy("member1", auths).size());
+            assertEquals(0, groupService.getIndexedHypothesesOwnedBy("member2", auths).size());
+
+            List<Hypothesis> found = groupService.getGroupHypothesesForUser("member2", perms);
+            assertEquals(1, found.size());
+            assertEquals("Shared", found.get(0).name);
+            assertEquals(1, groupService.getGroupHypothesesForUser("member1", perms, true).size());
+            assertEquals(0, groupService.getGroupHypothesesForUser("newMember", perms).size());
+
+            // Adding a member to the group lets them see the group's Hypotheses
+            final AddUsersRequest request = new AddUsersRequest();
+            request.setGroupName("group1");
+            request.setSecurityTokens(perms.toArray(new String[0]));
+            request.setRequester("member1");
+            request.setUsers(Sets.newHashSet(new GroupMember("newMember", Sets.newHashSet(Group.GroupRole.VIEWER))));
+            groupService.addToGroup(request);
+
+            found = groupService.getGroupHypothesesForUser("newMember", perms);
+            assertEquals(1, found.size());
+            assertEquals("hypothesis1", found.get(0).id);
+            assertEquals("member1", found.get(0).owner);
+
+            // And removing them takes it away again
+            groupService.removeUsersFromGroup("member1", "group1", Sets.newHashSet("newMember"), auths);
+            assertEquals(0, groupService.getGroupHypothesesForUser("newMember", perms).size());
+        } finally {
+            // The other tests run without the index
+            tableOps.delete(USER_HYPOTHESIS_INDEX);
+            groupService.refreshUserHypothesisIndexed();
+        }
+    }
+
     @Test
     /**
      * Tests that we can retrieve a Group from the DB and rehydrate the object
@@ -1,24 +1,36 @@
 package com._42six.amino.query.services.accumulo;
 
+import com._42six.amino.common.bigtable.TableConstants;
 import com._42six.amino.common.bitmap.AminoBitmap;
 import com._42six.amino.common.bitmap.BitmapUtils;
+import com._42six.amino.common.entity.Hypothesis;
+import com._42six.amino.common.entity.QueryResult;
+import com._42six.amino.common.entity.QueryResultPage;
+import com._42six.amino.common.util.concurrent.Cancellation;
+import org.apache.accumulo.core.client.BatchWriter;
 import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.hadoop.io.Text;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 public class AccumuloQueryServiceTest extends AccumuloTest {
 	
@@ -117,11 +129,77 @@ public class AccumuloQueryServiceTest extends AccumuloTest {
         System.out.println("Done");
     }
 
-	@Ignore("Not implemented Yet") @Test
-    public void listResults() {
- 
+	private static void resetResultsTable() throws Exception {
+		deleteAndCreateTable(resultsTable);
+		final BatchWriter writer = createBatchWriter(resultsTable);
+		final ColumnVisibility colVis = new ColumnVisibility(visibilityString);
+		for (int i = 0; i < 5; i++) {
+			final Mutation m = new Mutation(testOwnerPrefix);
+			final String resultId = Long.toString(1000 + i);
+			m.put(resultId, "result_count", colVis, "1");
+			m.put(resultId, "name", colVis, "Hypothesis " + i);
+			m.put(resultId, "id", colVis, "hypothesis" + i);
+			m.put(resultId, "result_set", colVis, "[{\"bucketValue\":\"value\"}]");
+			m.put(resultId, "hypothesis_at_runtime", colVis, "{}");
+			writer.addMutation(m);
+		}
+		writer.close();
+	}
+
+	@Test
+    public void listResults() throws Exception {
+		resetResultsTable();
+
+		final List<QueryResult> all = queryService.listResults(testOwnerPrefix, visArray);
+		assertEquals(5, all.size());
+		for (int i = 0; i < 5; i++) {
+			final QueryResult result = all.get(i);
+			assertEquals(Long.toString(1000 + i), result.id);
+			assertEquals("Hypothesis " + i, result.hypothesisname);
+			assertEquals("hypothesis" + i, result.hypothesisid);
+			assertEquals(Long.valueOf(1), result.result_count);
+			assertNull(result.result_set);
+			assertNull(result.hypothesis_at_runtime);
+		}
+
+		// start and count are in results, not cells
+		final List<QueryResult> batch = queryService.listResults(3L, 10L, testOwnerPrefix, visArray);
+		assertEquals(2, batch.size());
+		assertEquals("1003", batch.get(0).id);
+		assertEquals("hypothesis3", batch.get(0).hypothesisid);
     }
 
+	@Test
+	public void listResultsPage() throws Exception {
+		resetResultsTable();
+
+		final List<String> ids = new ArrayList<String>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			final QueryResultPage page = queryService.listResultsPage(cursor, 2, testOwnerPrefix, visArray);
+			assertTrue(page.results.size() <= 2);
+			for (QueryResult result : page.results) {
+				assertNull(result.result_set);
+				ids.add(result.id);
+			}
+			cursor = page.cursor;
+			pages++;
+		} while (cursor != null);
+
+		assertEquals(3, pages);
+		assertEquals(Arrays.asList("1000", "1001", "1002", "1003", "1004"), ids);
+
+		// Exactly one full page leaves no cursor
+		assertNull(queryService.listResultsPage(null, 5, testOwnerPrefix, visArray).cursor);
+		assertTrue(queryService.listResultsPage(null, 5, "nobody", visArray).results.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void listResultsPageBadCursor() throws Exception {
+		queryService.listResultsPage("not a cursor!", 2, testOwnerPrefix, visArray);
+	}
+
 	@Ignore("Not implemented Yet") @Test
     public void getResult() {
 
@@ -168,9 +246,82 @@ public class AccumuloQueryServiceTest extends AccumuloTest {
 		assertFalse(AccumuloQueryService.isNumeric("bad"));
 		assertFalse(AccumuloQueryService.isNumeric("12bad4"));
 	}
+
+	/**
+	 * The Range bitmaps are tested in the order of the plan, and bitmaps of features missing from it are still tested
+	 */
+	@Test
+	public void rangeBitmapsInOrder() {
+		final AminoBitmap first = new AminoBitmap(1);
+		final AminoBitmap second = new AminoBitmap(2);
+		final AminoBitmap unplanned = new AminoBitmap(3);
+		final Map<String, AminoBitmap> bitmaps = new HashMap<String, AminoBitmap>();
+		bitmaps.put("second", second);
+		bitmaps.put("unplanned", unplanned);
+		bitmaps.put("first", first);
+
+		assertEquals(Arrays.asList(first, second, unplanned),
+				AccumuloQueryService.rangeBitmapsInOrder(bitmaps, Arrays.asList("first", "nonRange", "second")));
+		assertTrue(AccumuloQueryService.rangeBitmapsInOrder(new HashMap<String, AminoBitmap>(), Arrays.asList("first")).isEmpty());
+	}
 	
 	@Ignore("Not implemented Yet") @Test
 	public void getBitmaskScanInformationForQuery() {
 
 	}	
+
+	/**
+	 * findHypothesesByBucketValues matches the hypotheses the user owns, whether or not the user hypothesis index is kept
+	 */
+	@Test
+	public void ownedHypothesesWithAndWithoutIndex() throws Exception {
+		final String userHypothesisIndex = "amino_user_hypothesis_index";
+		final Authorizations authorizations = new Authorizations(visArray);
+		final AccumuloGroupService groupService = new AccumuloGroupService(persistenceService);
+		groupService.setHypothesisTable(hypothesisTable);
+		groupService.setUserHypothesisIndex(userHypothesisIndex);
+		queryService.setGroupService(groupService);
+
+		// A hypothesis that everybody can see, but that the user does not own
+		final BatchWriter writer = createBatchWriter(hypothesisTable);
+		final ColumnVisibility colVis = new ColumnVisibility(visibilityString);
+		final Mutation m = new Mutation(testOwnerPrefix + "3");
+		m.put("PublicHypothesis", "canView", colVis, "[\"" + TableConstants.PUBLIC_GROUP + "\"]");
+		m.put("PublicHypothesis", "features", colVis, "[]");
+		writer.addMutation(m);
+		writer.close();
+
+		try {
+			assertFalse(groupService.isUserHypothesisIndexed());
+			final Map<String, Integer> withoutIndex = featureCounts(queryService.findOwnedHypotheses(testOwnerPrefix + "1",
+					authorizations, new Cancellation(new AtomicBoolean(true))));
+
+			deleteAndCreateTable(userHypothesisIndex);
+			assertTrue(groupService.rebuildUserHypothesisIndex(authorizations) > 0);
+			assertTrue(groupService.isUserHypothesisIndexed());
+			final Map<String, Integer> withIndex = featureCounts(queryService.findOwnedHypotheses(testOwnerPrefix + "1",
+					authorizations, new Cancellation(new AtomicBoolean(true))));
+
+			assertFalse(withoutIndex.isEmpty());
+			assertFalse(withoutIndex.containsKey("PublicHypothesis"));
+			assertEquals(withoutIndex, withIndex);
+
+			// A cancelled call gives up
+			assertNull(queryService.findOwnedHypotheses(testOwnerPrefix + "1", authorizations,
+					new Cancellation(new AtomicBoolean(false))));
+		} finally {
+			conn.tableOperations().delete(userHypothesisIndex);
+			groupService.refreshUserHypothesisIndexed();
+			queryService.setGroupService(null);
+			resetHypothesisTable();
+		}
+	}
+
+	private static Map<String, Integer> featureCounts(List<Hypothesis> hypotheses) {
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (Hypothesis h : hypotheses) {
+			counts.put(h.id, h.hypothesisFeatures.size());
+		}
+		return counts;
+	}
 }
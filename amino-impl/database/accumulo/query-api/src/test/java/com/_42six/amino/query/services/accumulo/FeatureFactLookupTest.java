@@ -0,0 +1,117 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.bitmap.AminoBitmap;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FeatureFactLookupTest {
+
+    private static List<Integer> bucketValues(FeatureFactLookup lookup, int index, int salt) {
+        final List<Integer> ids = new ArrayList<>();
+        final int position = lookup.indexOf(index, salt);
+        if (position >= 0) {
+            for (int p = position; lookup.matches(p, index, salt); p++) {
+                ids.add(lookup.bucketValueAt(p));
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void testLookup() {
+        final FeatureFactLookup lookup = new FeatureFactLookup();
+        final AminoBitmap bitmap = new AminoBitmap();
+        bitmap.set(5);
+        bitmap.set(Integer.MAX_VALUE - 64);
+        lookup.add(3, 0, bitmap);
+        lookup.add(1, 0, bitmap);
+        lookup.add(1, 1, 5);
+        lookup.add(3, 0, 5); // duplicate
+        lookup.build();
+
+        assertEquals(5, lookup.size());
+        assertEquals(Arrays.asList(1, 3), bucketValues(lookup, 5, 0));
+        assertEquals(Arrays.asList(1), bucketValues(lookup, 5, 1));
+        assertEquals(Arrays.asList(1, 3), bucketValues(lookup, Integer.MAX_VALUE - 64, 0));
+        assertEquals(-1, lookup.indexOf(6, 0));
+        assertEquals(-1, lookup.indexOf(5, 2));
+    }
+
+    @Test
+    public void testRangesCoalesceConsecutiveRows() {
+        final FeatureFactLookup lookup = new FeatureFactLookup();
+        for (int index : new int[] { 1234, 1235, 1236, 99, 100, 7 }) {
+            lookup.add(0, 0, index);
+            lookup.add(0, 1, index);
+        }
+        lookup.build();
+
+        final List<Range> expected = Arrays.asList(
+                new Range(new Text("100")),
+                new Range(new Text("1234"), true, new Text("1236"), true),
+                new Range(new Text("7")),
+                new Range(new Text("99")));
+        assertEquals(expected, new ArrayList<>(lookup.getRanges()));
+    }
+
+    @Test
+    public void testRangesCoverEveryEntry() {
+        final Random random = new Random(7);
+        final FeatureFactLookup lookup = new FeatureFactLookup();
+        final Set<Integer> indexes = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            final int index = random.nextInt(5000);
+            indexes.add(index);
+            lookup.add(random.nextInt(50), random.nextInt(2), index);
+        }
+        lookup.build();
+
+        final Collection<Range> ranges = lookup.getRanges();
+        for (int index : indexes) {
+            boolean covered = false;
+            for (Range range : ranges) {
+                covered |= range.contains(new Key(Integer.toString(index)));
+            }
+            assertTrue("Row " + index + " is not in a Range", covered);
+        }
+        assertTrue(ranges.size() < indexes.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLookupBeforeBuild() {
+        new FeatureFactLookup().indexOf(1, 0);
+    }
+
+    @Test
+    public void testPairCounter() {
+        final Random random = new Random(11);
+        final PairCounter counter = new PairCounter();
+        final Map<List<Integer>, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            final int bucketValue = random.nextInt(300);
+            final int feature = random.nextInt(100);
+            final List<Integer> pair = Arrays.asList(bucketValue, feature);
+            final Integer count = expected.get(pair);
+            expected.put(pair, (count == null) ? 1 : count + 1);
+            assertEquals((int) expected.get(pair), counter.increment(bucketValue, feature));
+        }
+
+        assertEquals(expected.size(), counter.size());
+        int pairs = 0;
+        for (int slot = 0; slot < counter.capacity(); slot++) {
+            if (counter.countAt(slot) > 0) {
+                pairs++;
+                assertEquals(expected.get(Arrays.asList(counter.bucketValueAt(slot), counter.featureAt(slot))),
+                        Integer.valueOf(counter.countAt(slot)));
+            }
+        }
+        assertEquals(expected.size(), pairs);
+        assertEquals(0, counter.get(301, 0));
+    }
+}
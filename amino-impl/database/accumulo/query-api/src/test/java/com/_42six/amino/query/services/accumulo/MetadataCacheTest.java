@@ -0,0 +1,82 @@
+package com._42six.amino.query.services.accumulo;
+
+import com.google.common.base.Optional;
+import org.apache.accumulo.core.security.Authorizations;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MetadataCacheTest {
+
+    /** Returns the row and auths as the JSON, except for rows starting with "missing" */
+    private static class RecordingLoader implements MetadataCache.Loader {
+        final List<String> loads = new ArrayList<>();
+
+        @Override
+        public Optional<String> load(String row, Authorizations auths) throws IOException {
+            loads.add(row);
+            if (row.startsWith("missing")) {
+                return Optional.absent();
+            }
+            if (row.startsWith("broken")) {
+                throw new IOException("Table not found");
+            }
+            return Optional.of(row + "@" + auths);
+        }
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        final RecordingLoader loader = new RecordingLoader();
+        final MetadataCache cache = new MetadataCache(loader);
+
+        assertEquals("feature:1@A,B", cache.get("feature:1", new Authorizations("A", "B")));
+        assertEquals("feature:1@A,B", cache.get("feature:1", new Authorizations("B", "A")));
+        assertNotNull(cache.get("feature:1", new Authorizations("A")));
+        assertNull(cache.get("missing:1", new Authorizations("A")));
+        assertNull(cache.get("missing:1", new Authorizations("A")));
+
+        assertEquals(3, loader.loads.size());
+        assertEquals(2, cache.stats().hitCount());
+        assertEquals(3, cache.stats().missCount());
+        cache.shutdown();
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        final RecordingLoader loader = new RecordingLoader();
+        final MetadataCache cache = new MetadataCache(loader);
+
+        cache.get("bucket:1", new Authorizations("A"));
+        cache.get("bucket:1", new Authorizations("B"));
+        cache.get("bucket:2", new Authorizations("A"));
+        cache.invalidate("bucket:1");
+        assertEquals(1, cache.size());
+
+        cache.get("bucket:1", new Authorizations("A"));
+        assertEquals(4, loader.loads.size());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        cache.shutdown();
+    }
+
+    @Test
+    public void testMaximumSize() throws IOException {
+        final MetadataCache cache = new MetadataCache(new RecordingLoader(), 10, 60, 0);
+        for (int i = 0; i < 100; i++) {
+            cache.get("datasource:" + i, new Authorizations());
+        }
+        assertTrue(cache.size() <= 10);
+        cache.shutdown();
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadFailure() throws IOException {
+        new MetadataCache(new RecordingLoader()).get("broken:1", new Authorizations());
+    }
+}
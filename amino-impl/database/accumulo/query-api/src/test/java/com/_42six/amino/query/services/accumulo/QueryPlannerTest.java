@@ -0,0 +1,75 @@
+package com._42six.amino.query.services.accumulo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QueryPlannerTest {
+
+    private static List<QueryPlan.FeatureEstimate> features(long... counts) {
+        final List<QueryPlan.FeatureEstimate> features = new ArrayList<QueryPlan.FeatureEstimate>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            features.add(new QueryPlan.FeatureEstimate("feature" + i, "NOMINAL", counts[i]));
+        }
+        return features;
+    }
+
+    @Test
+    public void selectiveFeaturesUseReversePath() {
+        final QueryPlan plan = new QueryPlanner().plan(features(1000, 100), 1000000, 10, 2, 0, true, true);
+
+        assertEquals(QueryPlan.AccessPath.REVERSE_BY_BUCKET, plan.accessPath);
+        assertTrue(plan.reverseByBucketCost < plan.byBucketCost);
+        assertEquals(0.1, plan.estimatedResults, 0.0001);
+
+        // Most selective first
+        assertEquals("feature1", plan.features.get(0).featureMetadataId);
+        assertEquals(0.0001, plan.features.get(0).selectivity, 0.000001);
+        assertEquals("feature0", plan.features.get(1).featureMetadataId);
+    }
+
+    @Test
+    public void unselectiveFeaturesUseByBucketPath() {
+        final QueryPlan plan = new QueryPlanner().plan(features(900, 800), 1000, 10, 2, 0, true, true);
+
+        assertEquals(QueryPlan.AccessPath.BY_BUCKET, plan.accessPath);
+        assertTrue(plan.byBucketCost < plan.reverseByBucketCost);
+        assertEquals(720, plan.estimatedResults, 0.0001);
+    }
+
+    @Test
+    public void seekCostChangesTheChoice() {
+        final QueryPlanner planner = new QueryPlanner();
+        planner.setSeekCost(1);
+        assertEquals(QueryPlan.AccessPath.REVERSE_BY_BUCKET,
+                planner.plan(features(900, 800), 1000, 10, 2, 0, true, true).accessPath);
+    }
+
+    @Test
+    public void restrictionsUseByBucketPath() {
+        final QueryPlan plan = new QueryPlanner().plan(features(1), 1000000, 10, 2, 3, true, true);
+        assertEquals(QueryPlan.AccessPath.BY_BUCKET, plan.accessPath);
+    }
+
+    @Test
+    public void noMatchesScansNothing() {
+        final QueryPlan plan = new QueryPlanner().plan(features(10, 10), 1000, 10, 2, 0, true, false);
+        assertEquals(QueryPlan.AccessPath.NONE, plan.accessPath);
+        assertEquals(0, plan.estimatedResults, 0);
+    }
+
+    @Test
+    public void missingStatisticsUseReversePath() {
+        final QueryPlan plan = new QueryPlanner().plan(features(0, 0), 0, 10, 2, 0, false, true);
+        assertEquals(QueryPlan.AccessPath.REVERSE_BY_BUCKET, plan.accessPath);
+    }
+
+    @Test
+    public void toJson() {
+        final QueryPlan plan = new QueryPlanner().plan(features(10), 100, 1, 1, 0, true, true);
+        assertTrue(plan.toJson().contains("\"accessPath\":\"" + plan.accessPath.name() + "\""));
+    }
+}
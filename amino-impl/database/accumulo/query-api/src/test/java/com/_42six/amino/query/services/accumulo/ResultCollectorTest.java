@@ -0,0 +1,147 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.entity.QueryEntry;
+import com._42six.amino.common.util.concurrent.Cancellation;
+import com._42six.amino.query.services.QueryResultListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ResultCollectorTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    /** Keeps the bucket names it is handed, and stops the query after stopAfter of them */
+    static class RecordingListener implements QueryResultListener {
+        final List<String> bucketNames = new ArrayList<String>();
+        final int stopAfter;
+
+        RecordingListener(int stopAfter) {
+            this.stopAfter = stopAfter;
+        }
+
+        @Override
+        public boolean onEntry(QueryEntry entry) {
+            bucketNames.add(entry.bucketName);
+            return bucketNames.size() < stopAfter;
+        }
+    }
+
+    private ResultSetChunksTest.RecordingBatchWriter batchWriter;
+    private Cancellation cancellation;
+
+    @Before
+    public void setUp() {
+        batchWriter = new ResultSetChunksTest.RecordingBatchWriter();
+        cancellation = new Cancellation(new AtomicBoolean(true));
+    }
+
+    private ResultCollector collector(QueryResultListener listener, List<QueryEntry> results, long maxResults) {
+        return new ResultCollector(new ResultSetChunks.Writer(batchWriter, "owner", "123", "U", CHUNK_SIZE), listener,
+                results, cancellation, maxResults);
+    }
+
+    /** The bucket names in the chunks that were written */
+    private List<String> persisted() {
+        final List<String> bucketNames = new ArrayList<String>();
+        for (Iterator<QueryEntry> it = ResultSetChunks.entries(batchWriter.cells.entrySet().iterator()); it.hasNext(); ) {
+            bucketNames.add(it.next().bucketName);
+        }
+        return bucketNames;
+    }
+
+    @Test
+    public void writesAndCollectsEveryEntry() throws Exception {
+        final List<QueryEntry> results = new ArrayList<QueryEntry>();
+        final ResultCollector collector = collector(null, results, 10);
+        for (String bucketName : Arrays.asList("a", "b", "c")) {
+            assertTrue(collector.add(new QueryEntry(bucketName)));
+        }
+        collector.finish();
+
+        assertEquals(Arrays.asList("a", "b", "c"), persisted());
+        assertEquals(3, results.size());
+        assertEquals(3, collector.getCount());
+        assertEquals(3, cancellation.getProgress());
+        assertNull(collector.getError());
+    }
+
+    @Test
+    public void handsEachEntryToTheListener() throws Exception {
+        final RecordingListener listener = new RecordingListener(Integer.MAX_VALUE);
+        final ResultCollector collector = collector(listener, null, 10);
+        for (String bucketName : Arrays.asList("a", "b", "c")) {
+            assertTrue(collector.add(new QueryEntry(bucketName)));
+        }
+        collector.finish();
+
+        assertEquals(Arrays.asList("a", "b", "c"), listener.bucketNames);
+        assertEquals(Arrays.asList("a", "b", "c"), persisted());
+        assertNull(collector.getError());
+    }
+
+    @Test
+    public void theListenerCanStopTheQuery() throws Exception {
+        final RecordingListener listener = new RecordingListener(2);
+        final ResultCollector collector = collector(listener, null, 10);
+        assertTrue(collector.add(new QueryEntry("a")));
+        assertFalse(collector.add(new QueryEntry("b")));
+        assertFalse(collector.isWorking());
+        assertFalse(collector.add(new QueryEntry("c")));
+        collector.finish();
+
+        // The entry that stopped the query is kept
+        assertEquals(Arrays.asList("a", "b"), listener.bucketNames);
+        assertEquals(Arrays.asList("a", "b"), persisted());
+        assertEquals("Query stopped after 2 results.", collector.getError());
+    }
+
+    @Test
+    public void stopsAtMaxResults() throws Exception {
+        final ResultCollector collector = collector(null, null, 2);
+        assertTrue(collector.add(new QueryEntry("a")));
+        assertTrue(collector.add(new QueryEntry("b")));
+        assertFalse(collector.add(new QueryEntry("c")));
+        collector.finish();
+
+        assertEquals(Arrays.asList("a", "b"), persisted());
+        assertEquals("Query exceeded 2 results.", collector.getError());
+    }
+
+    @Test
+    public void stopsWhenCancelled() throws Exception {
+        final ResultCollector collector = collector(null, null, 10);
+        assertTrue(collector.add(new QueryEntry("a")));
+        cancellation.cancel();
+        assertFalse(collector.add(new QueryEntry("b")));
+        collector.finish();
+
+        assertEquals(Arrays.asList("a"), persisted());
+        assertEquals("Query timed out after 1 results.", collector.getError());
+    }
+
+    @Test
+    public void aFailedScanKeepsWhatItFound() throws Exception {
+        final RecordingListener listener = new RecordingListener(Integer.MAX_VALUE);
+        final ResultCollector collector = collector(listener, null, 10);
+        for (String bucketName : Arrays.asList("a", "b", "c")) {
+            collector.add(new QueryEntry(bucketName));
+        }
+        // Only the full chunk has been written when the scan fails
+        assertEquals(1, batchWriter.mutations);
+        collector.failed(new IllegalStateException("tablet server went away"));
+        collector.finish();
+
+        assertEquals(Arrays.asList("a", "b", "c"), persisted());
+        assertEquals(Arrays.asList("a", "b", "c"), listener.bucketNames);
+        assertEquals("Query failed after 3 results: java.lang.IllegalStateException: tablet server went away",
+                collector.getError());
+    }
+}
@@ -0,0 +1,111 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.entity.QueryEntry;
+import com.google.gson.Gson;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ResultSetChunksTest {
+
+    private static List<QueryEntry> entries(int count) {
+        final List<QueryEntry> entries = new ArrayList<QueryEntry>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new QueryEntry("bucket" + i));
+        }
+        return entries;
+    }
+
+    private static List<String> bucketNames(Iterator<QueryEntry> entries) {
+        final List<String> names = new ArrayList<String>();
+        while (entries.hasNext()) {
+            names.add(entries.next().bucketName);
+        }
+        return names;
+    }
+
+    /** Keeps the cells that were written, in table order */
+    static class RecordingBatchWriter implements BatchWriter {
+        final TreeMap<Key, Value> cells = new TreeMap<Key, Value>();
+        int mutations = 0;
+
+        @Override
+        public void addMutation(Mutation m) {
+            mutations++;
+            for (ColumnUpdate update : m.getUpdates()) {
+                cells.put(new Key(new Text(m.getRow()), new Text(update.getColumnFamily()), new Text(update.getColumnQualifier())),
+                        new Value(update.getValue()));
+            }
+        }
+
+        @Override
+        public void addMutations(Iterable<Mutation> iterable) {
+            for (Mutation m : iterable) {
+                addMutation(m);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static RecordingBatchWriter write(List<QueryEntry> entries, int chunkSize) throws Exception {
+        final RecordingBatchWriter batchWriter = new RecordingBatchWriter();
+        final ResultSetChunks.Writer writer = new ResultSetChunks.Writer(batchWriter, "owner", "123", "U", chunkSize);
+        for (QueryEntry entry : entries) {
+            writer.add(entry);
+        }
+        writer.flush();
+        return batchWriter;
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        assertEquals(bucketNames(entries(3).iterator()), bucketNames(ResultSetChunks.decode(ResultSetChunks.encode(entries(3))).iterator()));
+        assertTrue(ResultSetChunks.decode(ResultSetChunks.encode(new ArrayList<QueryEntry>())).isEmpty());
+    }
+
+    @Test
+    public void testChunkedRoundTrip() throws Exception {
+        final TreeMap<Key, Value> cells = write(entries(25), 10).cells;
+        assertEquals(3, cells.size());
+        assertEquals(ResultSetChunks.qualifier(0), cells.firstKey().getColumnQualifier().toString());
+        assertEquals(ResultSetChunks.qualifier(2), cells.lastKey().getColumnQualifier().toString());
+
+        assertEquals(bucketNames(entries(25).iterator()), bucketNames(ResultSetChunks.entries(cells.entrySet().iterator())));
+
+        // Starting at a later chunk
+        final List<String> fromSecond = bucketNames(ResultSetChunks.entries(
+                cells.tailMap(new Key("owner", "123", ResultSetChunks.qualifier(1))).entrySet().iterator()));
+        assertEquals(15, fromSecond.size());
+        assertEquals("bucket10", fromSecond.get(0));
+    }
+
+    @Test
+    public void testNoEntriesNoChunks() throws Exception {
+        assertEquals(0, write(entries(0), 10).mutations);
+        // A full last chunk is written when it fills, not again on flush
+        assertEquals(1, write(entries(10), 10).mutations);
+    }
+
+    @Test
+    public void testLegacyResultSet() {
+        final TreeMap<Key, Value> cells = new TreeMap<Key, Value>();
+        cells.put(new Key("owner", "123", "id"), new Value("hypothesis".getBytes()));
+        cells.put(new Key("owner", "123", ResultSetChunks.LEGACY_RESULT_SET), new Value(new Gson().toJson(entries(4)).getBytes()));
+        assertEquals(bucketNames(entries(4).iterator()), bucketNames(ResultSetChunks.entries(cells.entrySet().iterator())));
+    }
+}
@@ -0,0 +1,145 @@
+package com._42six.amino.query.services.accumulo;
+
+import com._42six.amino.common.entity.QueryEntry;
+import com._42six.amino.common.util.concurrent.Cancellation;
+import com._42six.amino.query.services.QueryResultListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ReverseShardPipelineTest {
+
+    private ExecutorService executor;
+    private Cancellation cancellation;
+    private List<QueryEntry> collected;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        cancellation = new Cancellation(new AtomicBoolean(true));
+        collected = new ArrayList<QueryEntry>();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ResultCollector collector(long maxResults, QueryResultListener listener) {
+        return new ResultCollector(new ResultSetChunks.Writer(new ResultSetChunksTest.RecordingBatchWriter(), "owner", "123", "U", 10),
+                listener, collected, cancellation, maxResults);
+    }
+
+    /** Hands over count bucket values per shard, or keeps handing them over until told to stop if count is negative */
+    private static class FakeShards implements ReverseShardPipeline.ShardLookup {
+        final int count;
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger returned = new AtomicInteger();
+
+        FakeShards(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void lookup(int shard, ReverseShardPipeline pipeline) throws Exception {
+            started.incrementAndGet();
+            try {
+                for (int i = 0; count < 0 || i < count; i++) {
+                    if (!pipeline.handOver(new QueryEntry(shard + ":" + i))) {
+                        return;
+                    }
+                }
+            } finally {
+                returned.incrementAndGet();
+            }
+        }
+    }
+
+    /** Waits for the shards to notice that the pipeline stopped */
+    private void assertShardsReturned(FakeShards shards) throws InterruptedException {
+        executor.shutdown();
+        assertTrue("Shards still running", executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(shards.started.get(), shards.returned.get());
+    }
+
+    @Test
+    public void collectsEveryShard() throws Exception {
+        final ResultCollector results = collector(100, null);
+        final FakeShards shards = new FakeShards(3);
+        new ReverseShardPipeline(executor, 2, 4).run(5, shards, results);
+
+        assertEquals(5, shards.started.get());
+        assertEquals(15, results.getCount());
+        assertEquals(15, collected.size());
+        assertNull(results.getError());
+    }
+
+    @Test
+    public void stopsAtMaxResults() throws Exception {
+        final ResultCollector results = collector(10, null);
+        final FakeShards shards = new FakeShards(-1);
+        new ReverseShardPipeline(executor, 2, 4).run(4, shards, results);
+
+        assertEquals(10, results.getCount());
+        assertEquals("Query exceeded 10 results.", results.getError());
+        assertShardsReturned(shards);
+        // The shards never finished, so the others were never started
+        assertEquals(2, shards.started.get());
+    }
+
+    @Test
+    public void stopsWhenCancelled() throws Exception {
+        final ResultCollector results = collector(1000, new QueryResultListener() {
+            @Override
+            public boolean onEntry(QueryEntry entry) {
+                if (collected.size() == 3) {
+                    cancellation.cancel();
+                }
+                return true;
+            }
+        });
+        final FakeShards shards = new FakeShards(-1);
+        new ReverseShardPipeline(executor, 2, 4).run(4, shards, results);
+
+        assertEquals(3, results.getCount());
+        assertEquals("Query timed out after 3 results.", results.getError());
+        assertShardsReturned(shards);
+    }
+
+    @Test
+    public void rethrowsFailedShard() throws Exception {
+        final ResultCollector results = collector(100, null);
+        final FakeShards working = new FakeShards(2);
+        final ReverseShardPipeline.ShardLookup failing = new ReverseShardPipeline.ShardLookup() {
+            @Override
+            public void lookup(int shard, ReverseShardPipeline pipeline) throws Exception {
+                if (shard == 1) {
+                    pipeline.handOver(new QueryEntry("partial"));
+                    throw new IOException("shard 1 failed");
+                }
+                working.lookup(shard, pipeline);
+            }
+        };
+
+        try {
+            new ReverseShardPipeline(executor, 2, 4).run(4, failing, results);
+            fail("The failed shard should have been rethrown");
+        } catch (IOException e) {
+            assertEquals("shard 1 failed", e.getMessage());
+        }
+        // The other shards still ran to the end
+        assertEquals(3, working.started.get());
+        assertEquals(7, results.getCount());
+    }
+}
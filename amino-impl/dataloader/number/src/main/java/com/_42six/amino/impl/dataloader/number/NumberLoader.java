@@ -1,7 +1,7 @@
 package com._42six.amino.impl.dataloader.number;
 
 import com._42six.amino.common.AminoConfiguration;
-import com._42six.amino.data.DataLoader;
+import com._42six.amino.data.SchemaAwareDataLoader;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
@@ -14,11 +14,12 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 
-public class NumberLoader implements DataLoader {
+public class NumberLoader implements SchemaAwareDataLoader {
 
     @SuppressWarnings("rawtypes")
     private RecordReader reader;
@@ -81,6 +82,12 @@ public class NumberLoader implements DataLoader {
         return NumberLoader.bucketsAndDisplayNames;
     }
 
+    @Override
+    public List<Text> getFieldNames() {
+        // The records only hold the buckets
+        return Collections.emptyList();
+    }
+
     @Override
     public String getDataSourceName() {
         return "numbers";